@@ -0,0 +1,240 @@
+package com.jamiewang.secure3d.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores card ranges in a compact hand-written binary layout, everything else as JSON
+ *
+ * A {@link CardRangeDataDTO} is written as:
+ * - a tag byte, which JSON text never starts with
+ * - a byte flagging the fields present (null fields take no space)
+ * - startRange as a zigzag varint, endRange as a zigzag varint of its distance to startRange
+ * - threeDSMethodURL as the varint index (plus one, 0 for none) of its longest prefix in the
+ *   URL dictionary followed by the rest of the URL
+ * - the other strings as a varint length followed by UTF-8 bytes, acsInfoInd as a varint
+ *   count followed by its strings
+ *
+ * The URL dictionary (app.redis.codec.url-prefixes) is part of the format: nodes sharing a
+ * Redis need the same list, and entries may only be appended to it.
+ */
+@Component
+@ConditionalOnProperty(name = "app.redis.codec.type", havingValue = "binary")
+public class BinaryRedisValueCodec implements IRedisValueCodec {
+
+    private static final byte CARD_RANGE_TAG = 0x01;
+
+    private static final int HAS_START_RANGE = 1;
+    private static final int HAS_END_RANGE = 1 << 1;
+    private static final int HAS_ACTION_IND = 1 << 2;
+    private static final int HAS_METHOD_URL = 1 << 3;
+    private static final int HAS_START_PROTOCOL_VERSION = 1 << 4;
+    private static final int HAS_END_PROTOCOL_VERSION = 1 << 5;
+    private static final int HAS_ACS_INFO_IND = 1 << 6;
+
+    private final ObjectMapper objectMapper;
+    private final List<String> urlPrefixes;
+
+    @Autowired
+    public BinaryRedisValueCodec(ObjectMapper objectMapper,
+                                 @Value("${app.redis.codec.url-prefixes:https://,http://}") String urlPrefixes) {
+        this(objectMapper, Arrays.asList(urlPrefixes.split(",")));
+    }
+
+    public BinaryRedisValueCodec(ObjectMapper objectMapper, List<String> urlPrefixes) {
+        this.objectMapper = objectMapper;
+        List<String> prefixes = new ArrayList<>(urlPrefixes.size());
+        for (String prefix : urlPrefixes) {
+            prefixes.add(prefix.trim());
+        }
+        this.urlPrefixes = Collections.unmodifiableList(prefixes);
+    }
+
+    public byte[] encode(Object value) throws IOException {
+        if (value instanceof CardRangeDataDTO) {
+            return encodeCardRange((CardRangeDataDTO) value);
+        }
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    public <T> T decode(byte[] bytes, Class<T> valueType) throws IOException {
+        if (bytes.length > 0 && bytes[0] == CARD_RANGE_TAG) {
+            if (!valueType.isAssignableFrom(CardRangeDataDTO.class)) {
+                throw new IOException("Binary card range cannot be read as " + valueType.getName());
+            }
+            return valueType.cast(decodeCardRange(bytes));
+        }
+        return objectMapper.readValue(bytes, valueType);
+    }
+
+    private byte[] encodeCardRange(CardRangeDataDTO dto) {
+        int flags = 0;
+        flags |= dto.getStartRange() != null ? HAS_START_RANGE : 0;
+        flags |= dto.getEndRange() != null ? HAS_END_RANGE : 0;
+        flags |= dto.getActionInd() != null ? HAS_ACTION_IND : 0;
+        flags |= dto.getThreeDsMethodUrl() != null ? HAS_METHOD_URL : 0;
+        flags |= dto.getAcsStartProtocolVersion() != null ? HAS_START_PROTOCOL_VERSION : 0;
+        flags |= dto.getAcsEndProtocolVersion() != null ? HAS_END_PROTOCOL_VERSION : 0;
+        flags |= dto.getAcsInfoInd() != null ? HAS_ACS_INFO_IND : 0;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(CARD_RANGE_TAG);
+        out.write(flags);
+
+        long start = dto.getStartRange() != null ? dto.getStartRange() : 0L;
+        if (dto.getStartRange() != null) {
+            writeVarLong(out, zigzag(start));
+        }
+        if (dto.getEndRange() != null) {
+            writeVarLong(out, zigzag(dto.getEndRange() - start));
+        }
+        if (dto.getActionInd() != null) {
+            writeString(out, dto.getActionInd());
+        }
+        if (dto.getThreeDsMethodUrl() != null) {
+            writeUrl(out, dto.getThreeDsMethodUrl());
+        }
+        if (dto.getAcsStartProtocolVersion() != null) {
+            writeString(out, dto.getAcsStartProtocolVersion());
+        }
+        if (dto.getAcsEndProtocolVersion() != null) {
+            writeString(out, dto.getAcsEndProtocolVersion());
+        }
+        if (dto.getAcsInfoInd() != null) {
+            writeVarLong(out, dto.getAcsInfoInd().size());
+            for (String value : dto.getAcsInfoInd()) {
+                // Elements are never null in PRes data, stored as empty if they are
+                writeString(out, value == null ? "" : value);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private CardRangeDataDTO decodeCardRange(byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        try {
+            int flags = in.get() & 0xFF;
+            CardRangeDataDTO dto = new CardRangeDataDTO();
+
+            long start = 0L;
+            if ((flags & HAS_START_RANGE) != 0) {
+                start = unzigzag(readVarLong(in));
+                dto.setStartRange(start);
+            }
+            if ((flags & HAS_END_RANGE) != 0) {
+                dto.setEndRange(start + unzigzag(readVarLong(in)));
+            }
+            if ((flags & HAS_ACTION_IND) != 0) {
+                dto.setActionInd(readString(in));
+            }
+            if ((flags & HAS_METHOD_URL) != 0) {
+                dto.setThreeDsMethodUrl(readUrl(in));
+            }
+            if ((flags & HAS_START_PROTOCOL_VERSION) != 0) {
+                dto.setAcsStartProtocolVersion(readString(in));
+            }
+            if ((flags & HAS_END_PROTOCOL_VERSION) != 0) {
+                dto.setAcsEndProtocolVersion(readString(in));
+            }
+            if ((flags & HAS_ACS_INFO_IND) != 0) {
+                int count = (int) readVarLong(in);
+                if (count < 0 || count > in.remaining()) {
+                    throw new IllegalArgumentException("Invalid acsInfoInd count " + count);
+                }
+                List<String> acsInfoInd = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    acsInfoInd.add(readString(in));
+                }
+                dto.setAcsInfoInd(acsInfoInd);
+            }
+            return dto;
+
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt binary card range", e);
+        }
+    }
+
+    private void writeUrl(ByteArrayOutputStream out, String url) {
+        int match = -1;
+        for (int i = 0; i < urlPrefixes.size(); i++) {
+            String prefix = urlPrefixes.get(i);
+            if (!prefix.isEmpty() && url.startsWith(prefix)
+                    && (match < 0 || prefix.length() > urlPrefixes.get(match).length())) {
+                match = i;
+            }
+        }
+        writeVarLong(out, match + 1);
+        writeString(out, match < 0 ? url : url.substring(urlPrefixes.get(match).length()));
+    }
+
+    private String readUrl(ByteBuffer in) throws IOException {
+        int index = (int) readVarLong(in);
+        String rest = readString(in);
+        if (index == 0) {
+            return rest;
+        }
+        if (index > urlPrefixes.size()) {
+            throw new IOException("Unknown URL prefix " + index + ", the URL dictionary differs between nodes");
+        }
+        return urlPrefixes.get(index - 1) + rest;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 64 bits");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.jamiewang.secure3d.codec;
+
+import java.io.IOException;
+
+/**
+ * Encodes the values RedisServiceImpl stores in Redis
+ *
+ * One implementation is active, chosen with app.redis.codec.type. Every node sharing a
+ * Redis must use the same codec, values written by one codec are not readable by another.
+ */
+public interface IRedisValueCodec {
+
+    /**
+     * Encode a value to the bytes stored in Redis
+     *
+     * @param value Value to encode, not null
+     * @return Encoded bytes
+     * @throws IOException if the value cannot be encoded
+     */
+    public byte[] encode(Object value) throws IOException;
+
+    /**
+     * Decode bytes read from Redis
+     *
+     * @param bytes Encoded bytes
+     * @param valueType Class type of the value
+     * @param <T> Type of the value
+     * @return Decoded value
+     * @throws IOException if the bytes are not a valid encoding of the type
+     */
+    public <T> T decode(byte[] bytes, Class<T> valueType) throws IOException;
+
+}
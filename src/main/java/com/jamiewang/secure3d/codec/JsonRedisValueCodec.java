@@ -0,0 +1,34 @@
+package com.jamiewang.secure3d.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Stores values as UTF-8 JSON, the default codec
+ *
+ * Produces the same bytes values were stored with before codecs were pluggable.
+ */
+@Component
+@ConditionalOnProperty(name = "app.redis.codec.type", havingValue = "json", matchIfMissing = true)
+public class JsonRedisValueCodec implements IRedisValueCodec {
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public JsonRedisValueCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public byte[] encode(Object value) throws IOException {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    public <T> T decode(byte[] bytes, Class<T> valueType) throws IOException {
+        return objectMapper.readValue(bytes, valueType);
+    }
+
+}
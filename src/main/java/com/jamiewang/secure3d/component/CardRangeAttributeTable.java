@@ -0,0 +1,153 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deduplicated table of card range attributes, addressed by a small integer id
+ *
+ * Hundreds of thousands of ranges typically share a handful of ACS URL / protocol version /
+ * acsInfoInd combinations. The index stores one int per range and resolves it here, instead
+ * of keeping an entity with its own strings and list for every range.
+ */
+final class CardRangeAttributeTable {
+
+    private static final CardRangeAttributeTable EMPTY = new CardRangeAttributeTable(new CardRangeAttributes[0]);
+
+    private final CardRangeAttributes[] attributes;
+
+    private CardRangeAttributeTable(CardRangeAttributes[] attributes) {
+        this.attributes = attributes;
+    }
+
+    static CardRangeAttributeTable empty() {
+        return EMPTY;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Create a builder holding the attributes of this table under their current ids
+     *
+     * Lets an incremental update intern new attributes without renumbering existing ones.
+     */
+    Builder toBuilder() {
+        Builder builder = new Builder();
+        for (CardRangeAttributes shared : attributes) {
+            builder.ids.put(shared, builder.attributes.size());
+            builder.attributes.add(shared);
+            builder.pool(shared.getThreeDsMethodUrl());
+        }
+        return builder;
+    }
+
+    /**
+     * Drop the attributes no range refers to any more, renumbering ids in place
+     *
+     * Incremental updates keep the ids of the previous snapshot, so attributes of deleted or
+     * modified ranges would otherwise stay in the table for the life of the process.
+     *
+     * @param ids Attribute id of every range, rewritten to the ids of the returned table
+     * @return A table holding only referenced attributes, or this table if all are referenced
+     */
+    CardRangeAttributeTable compact(int[] ids) {
+        int[] remap = new int[attributes.length];
+        for (int id : ids) {
+            remap[id] = 1;
+        }
+
+        int used = 0;
+        for (int id = 0; id < remap.length; id++) {
+            remap[id] = remap[id] == 0 ? -1 : used++;
+        }
+        if (used == attributes.length) {
+            return this;
+        }
+
+        CardRangeAttributes[] compacted = new CardRangeAttributes[used];
+        for (int id = 0; id < remap.length; id++) {
+            if (remap[id] >= 0) {
+                compacted[remap[id]] = attributes[id];
+            }
+        }
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = remap[ids[i]];
+        }
+        return new CardRangeAttributeTable(compacted);
+    }
+
+    /**
+     * Get the attributes stored under an id
+     */
+    CardRangeAttributes get(int id) {
+        return attributes[id];
+    }
+
+    /**
+     * Get the number of distinct attribute combinations
+     */
+    int size() {
+        return attributes.length;
+    }
+
+    /**
+     * Interns attributes while ranges are being loaded
+     */
+    static final class Builder {
+
+        private final Map<CardRangeAttributes, Integer> ids = new HashMap<>();
+        private final List<CardRangeAttributes> attributes = new ArrayList<>();
+        // Strings are pooled too, the same URL often appears in several combinations
+        private final Map<String, String> strings = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Get the id of the attributes of a card range, adding them if not seen before
+         *
+         * @param range Card range to intern
+         * @return Id of the shared attributes
+         */
+        int intern(CardRangeEntity range) {
+            List<String> acsInfoInd = null;
+            if (range.getAcsInfoInd() != null) {
+                List<String> values = new ArrayList<>(range.getAcsInfoInd().size());
+                for (String value : range.getAcsInfoInd()) {
+                    values.add(pool(value));
+                }
+                acsInfoInd = Collections.unmodifiableList(values);
+            }
+
+            CardRangeAttributes candidate = new CardRangeAttributes(
+                    pool(range.getActionInd()),
+                    pool(range.getThreeDsMethodUrl()),
+                    pool(range.getAcsStartProtocolVersion()),
+                    pool(range.getAcsEndProtocolVersion()),
+                    acsInfoInd);
+
+            Integer id = ids.get(candidate);
+            if (id == null) {
+                id = attributes.size();
+                ids.put(candidate, id);
+                attributes.add(candidate);
+            }
+            return id;
+        }
+
+        CardRangeAttributeTable build() {
+            return new CardRangeAttributeTable(attributes.toArray(new CardRangeAttributes[0]));
+        }
+
+        private String pool(String value) {
+            return value == null ? null : strings.computeIfAbsent(value, key -> key);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Attributes shared by every card range pointing at the same ACS configuration
+ *
+ * Instances are immutable and interned by {@link CardRangeAttributeTable}, so the index keeps
+ * a single copy per distinct combination and only stores its id for each range.
+ */
+@Value
+class CardRangeAttributes {
+
+    String actionInd;
+    String threeDsMethodUrl;
+    String acsStartProtocolVersion;
+    String acsEndProtocolVersion;
+    List<String> acsInfoInd;
+
+    /**
+     * Build the lookup response for a range carrying these attributes
+     *
+     * The strings and the (unmodifiable) acsInfoInd list are shared, not copied.
+     */
+    CardRangeDataDTO toDto(long startRange, long endRange) {
+        CardRangeDataDTO dto = new CardRangeDataDTO();
+        dto.setStartRange(startRange);
+        dto.setEndRange(endRange);
+        dto.setActionInd(actionInd);
+        dto.setThreeDsMethodUrl(threeDsMethodUrl);
+        dto.setAcsStartProtocolVersion(acsStartProtocolVersion);
+        dto.setAcsEndProtocolVersion(acsEndProtocolVersion);
+        dto.setAcsInfoInd(acsInfoInd);
+        return dto;
+    }
+}
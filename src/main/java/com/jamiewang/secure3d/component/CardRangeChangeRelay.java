@@ -0,0 +1,160 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.event.CardRangesImportedEvent;
+import com.jamiewang.secure3d.sync.CardRangeChangeMessage;
+import com.jamiewang.secure3d.sync.ICardRangeChangeBus;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relays committed PRes imports between the nodes sharing the database
+ *
+ * Imports committed on this node are sent over the change bus with their changes. Messages
+ * from other nodes are published locally as remote {@link CardRangesImportedEvent}s, so the
+ * in-memory index and the near caches of every node apply the same delta without polling
+ * MySQL. Imports with more changes than a message may carry are sent without them, and
+ * receivers reload instead.
+ *
+ * The bus may lose messages. A gap in the sequence numbers of an origin node means changes
+ * were missed, and the next message from it is turned into a reload whatever it carries.
+ */
+@Component
+@Slf4j
+public class CardRangeChangeRelay {
+
+    @Value("${app.sync.enabled:true}")
+    private boolean syncEnabled;
+
+    @Value("${app.sync.max-changes:5000}")
+    private int maxChanges;
+
+    @Autowired
+    private ICardRangeChangeBus cardRangeChangeBus;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Sequence of the last message received from each other node
+    private final Map<String, Long> lastSequences = new HashMap<>();
+
+    @PostConstruct
+    public void initialize() {
+        if (!syncEnabled) {
+            log.info("Cross-node card range sync is disabled. Set app.sync.enabled=true to enable.");
+            return;
+        }
+
+        cardRangeChangeBus.subscribe(this::onMessage);
+        log.info("Relaying card range changes as node {}", nodeId);
+    }
+
+    /**
+     * Send the changes of an import committed on this node to the other nodes
+     *
+     * Failures are logged, the other nodes converge once their cached entries expire or
+     * they detect the missed message.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardRangesImported(CardRangesImportedEvent event) {
+        if (!syncEnabled || event.isRemote()) {
+            return;
+        }
+
+        List<CardRangeDataDTO> changes = null;
+        if (event.getChanges() != null && event.getChanges().size() <= maxChanges) {
+            changes = new ArrayList<>(event.getChanges().size());
+            for (CardRangeEntity change : event.getChanges()) {
+                changes.add(toDto(change));
+            }
+        }
+
+        CardRangeChangeMessage message = new CardRangeChangeMessage(nodeId, sequence.incrementAndGet(),
+                event.getSerialNum(), event.getImportedCount(), changes);
+        try {
+            cardRangeChangeBus.publish(message);
+            log.debug("Sent card range change message {} ({} changes)",
+                    message.getSequence(), changes == null ? "no" : changes.size());
+        } catch (Exception e) {
+            log.warn("Failed to send card range changes of import {} to other nodes", event.getSerialNum(), e);
+        }
+    }
+
+    /**
+     * Publish a message from another node as a remote import event
+     */
+    synchronized void onMessage(CardRangeChangeMessage message) {
+        if (nodeId.equals(message.getOrigin())) {
+            return;
+        }
+
+        Long previous = lastSequences.put(message.getOrigin(), message.getSequence());
+        boolean missed = previous != null && message.getSequence() != previous + 1;
+        if (missed) {
+            log.warn("Missed card range change messages {} to {} from node {}, reloading",
+                    previous + 1, message.getSequence() - 1, message.getOrigin());
+        }
+
+        List<CardRangeEntity> changes = null;
+        if (!missed && message.getChanges() != null) {
+            changes = new ArrayList<>(message.getChanges().size());
+            for (CardRangeDataDTO change : message.getChanges()) {
+                changes.add(toEntity(change));
+            }
+        }
+
+        log.debug("Received card range change message {} from node {}", message.getSequence(), message.getOrigin());
+        applicationEventPublisher.publishEvent(new CardRangesImportedEvent(
+                message.getSerialNum(), message.getImportedCount(), changes, true));
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    private static CardRangeDataDTO toDto(CardRangeEntity entity) {
+        CardRangeDataDTO dto = new CardRangeDataDTO();
+        dto.setStartRange(entity.getStartRange());
+        dto.setEndRange(entity.getEndRange());
+        dto.setActionInd(entity.getActionInd());
+        dto.setThreeDsMethodUrl(entity.getThreeDsMethodUrl());
+        dto.setAcsStartProtocolVersion(entity.getAcsStartProtocolVersion());
+        dto.setAcsEndProtocolVersion(entity.getAcsEndProtocolVersion());
+        // A copy, the entity may hold a persistence collection
+        dto.setAcsInfoInd(entity.getAcsInfoInd() == null ? null : new ArrayList<>(entity.getAcsInfoInd()));
+        return dto;
+    }
+
+    private static CardRangeEntity toEntity(CardRangeDataDTO dto) {
+        CardRangeEntity entity = new CardRangeEntity();
+        entity.setStartRange(dto.getStartRange());
+        entity.setEndRange(dto.getEndRange());
+        entity.setActionInd(dto.getActionInd());
+        entity.setThreeDsMethodUrl(dto.getThreeDsMethodUrl());
+        entity.setAcsStartProtocolVersion(dto.getAcsStartProtocolVersion());
+        entity.setAcsEndProtocolVersion(dto.getAcsEndProtocolVersion());
+        entity.setAcsInfoInd(dto.getAcsInfoInd());
+        // Received in commit order, so later messages stay the more recent ones
+        entity.setCreatedAt(LocalDateTime.now());
+        entity.setUpdatedAt(LocalDateTime.now());
+        return entity;
+    }
+}
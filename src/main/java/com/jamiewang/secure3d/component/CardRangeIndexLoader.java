@@ -0,0 +1,125 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.event.CardRangesImportedEvent;
+import com.jamiewang.secure3d.repository.CardRangeJdbcRepository;
+import com.jamiewang.secure3d.repository.ICardRangeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Loads the shared in-memory card range index from MySQL and keeps it in sync
+ *
+ * The index is warmed up once the application is ready (after the startup data import)
+ * by mapping an existing index file (mapped engine) or streaming card_range rows through
+ * a database cursor. When a PRes import commits, its changes are merged into the current
+ * snapshot as a delta, and the index is only reloaded from the database when that is not
+ * possible. Imports committed on other nodes arrive the same way, relayed by
+ * {@link CardRangeChangeRelay}. Until the first load completes the index reports not ready and lookups
+ * fall back to Redis and the database.
+ */
+@Component
+@Slf4j
+public class CardRangeIndexLoader {
+
+    @Value("${app.index.enabled:true}")
+    private boolean indexEnabled;
+
+    @Value("${app.index.delta.enabled:true}")
+    private boolean deltaEnabled;
+
+    @Autowired
+    private SharedIntervalTreeComponent sharedIntervalTreeComponent;
+
+    @Autowired
+    private CardRangeJdbcRepository cardRangeJdbcRepository;
+
+    @Autowired
+    private ICardRangeRepository cardRangeRepository;
+
+    /**
+     * Warm up the index at startup unless an import has already loaded it
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void warmUp() {
+        if (!indexEnabled) {
+            log.info("In-memory card range index is disabled. Set app.index.enabled=true to enable.");
+            return;
+        }
+
+        if (sharedIntervalTreeComponent.isReady()) {
+            log.info("In-memory card range index already loaded, skipping warm-up");
+            return;
+        }
+
+        // With the mapped engine an existing index file makes warm-up a single map call
+        if (sharedIntervalTreeComponent.loadMappedFile()) {
+            return;
+        }
+
+        reload();
+    }
+
+    /**
+     * Update the index after a PRes import has been committed
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onCardRangesImported(CardRangesImportedEvent event) {
+        if (!indexEnabled) {
+            return;
+        }
+
+        if (deltaEnabled && event.getChanges() != null && applyDelta(event)) {
+            return;
+        }
+
+        log.info("Card ranges imported ({}), reloading in-memory index", event);
+        reload();
+    }
+
+    /**
+     * Merge the changes of an import into the current index snapshot
+     *
+     * @return true if the delta was published, false if the index has to be reloaded
+     */
+    private boolean applyDelta(CardRangesImportedEvent event) {
+        try {
+            log.info("Card ranges imported ({}), applying {} changes to in-memory index",
+                    event, event.getChanges().size());
+            return sharedIntervalTreeComponent.applyDelta(event.getChanges());
+        } catch (Exception e) {
+            log.warn("Failed to apply card range delta to in-memory index", e);
+            return false;
+        }
+    }
+
+    /**
+     * Stream every card range from the database into a new index snapshot
+     *
+     * The builder is created before the first read, so deltas of imports committed after the
+     * rows were read wait for this snapshot and are applied on top of it.
+     * Failures are logged and leave the previously published snapshot in place.
+     */
+    public void reload() {
+        try (SharedIntervalTreeComponent.SnapshotBuilder builder = sharedIntervalTreeComponent.newSnapshotBuilder()) {
+            builder.expect(cardRangeRepository.count());
+
+            int streamed = cardRangeJdbcRepository.streamAllOrderedByStartRange(builder::add);
+            log.info("Streamed {} card ranges from database", streamed);
+
+            builder.publish();
+
+        } catch (Exception e) {
+            log.error("Failed to load in-memory card range index", e);
+        }
+    }
+}
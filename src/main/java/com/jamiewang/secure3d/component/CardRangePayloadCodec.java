@@ -0,0 +1,140 @@
+package com.jamiewang.secure3d.component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary encoding of the card range attributes stored as payloads in the mapped index file
+ *
+ * Payloads hold interned {@link CardRangeAttributes} and are shared by every slot with the
+ * same attributes, the range bounds then come from the slot itself. Only when nested ranges
+ * were flattened into segments does a payload also carry the bounds of its range, marked by
+ * a leading flag byte. Strings are written as a length (-1 for null) followed by UTF-8 bytes.
+ */
+final class CardRangePayloadCodec {
+
+    private static final byte NO_BOUNDS = 0;
+    private static final byte WITH_BOUNDS = 1;
+
+    private CardRangePayloadCodec() {
+    }
+
+    /**
+     * Encode attributes shared by slots whose bounds are those of their range
+     */
+    static byte[] encode(CardRangeAttributes attributes) {
+        return encode(attributes, false, 0L, 0L);
+    }
+
+    /**
+     * Encode attributes together with the bounds of the range they belong to
+     */
+    static byte[] encode(CardRangeAttributes attributes, long startRange, long endRange) {
+        return encode(attributes, true, startRange, endRange);
+    }
+
+    private static byte[] encode(CardRangeAttributes attributes, boolean withBounds, long startRange, long endRange) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(withBounds ? WITH_BOUNDS : NO_BOUNDS);
+            if (withBounds) {
+                out.writeLong(startRange);
+                out.writeLong(endRange);
+            }
+            writeString(out, attributes.getActionInd());
+            writeString(out, attributes.getThreeDsMethodUrl());
+            writeString(out, attributes.getAcsStartProtocolVersion());
+            writeString(out, attributes.getAcsEndProtocolVersion());
+
+            List<String> acsInfoInd = attributes.getAcsInfoInd();
+            if (acsInfoInd == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(acsInfoInd.size());
+                for (String value : acsInfoInd) {
+                    writeString(out, value);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Check whether a payload carries its own range bounds
+     */
+    static boolean hasBounds(ByteBuffer payload) {
+        return payload.get(payload.position()) == WITH_BOUNDS;
+    }
+
+    /**
+     * Read the range start of a payload carrying bounds
+     */
+    static long startRange(ByteBuffer payload) {
+        return payload.getLong(payload.position() + 1);
+    }
+
+    /**
+     * Read the range end of a payload carrying bounds
+     */
+    static long endRange(ByteBuffer payload) {
+        return payload.getLong(payload.position() + 1 + Long.BYTES);
+    }
+
+    /**
+     * Decode the attributes of a payload
+     *
+     * @param payload Encoded payload, read from its current position
+     */
+    static CardRangeAttributes decode(ByteBuffer payload) {
+        if (payload.get() == WITH_BOUNDS) {
+            payload.position(payload.position() + Long.BYTES + Long.BYTES);
+        }
+
+        String actionInd = readString(payload);
+        String threeDsMethodUrl = readString(payload);
+        String acsStartProtocolVersion = readString(payload);
+        String acsEndProtocolVersion = readString(payload);
+
+        List<String> acsInfoInd = null;
+        int count = payload.getInt();
+        if (count >= 0) {
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                values.add(readString(payload));
+            }
+            acsInfoInd = Collections.unmodifiableList(values);
+        }
+
+        return new CardRangeAttributes(actionInd, threeDsMethodUrl,
+                acsStartProtocolVersion, acsEndProtocolVersion, acsInfoInd);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,257 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.dto.BulkImportResponseDTO;
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.event.CardRangesImportedEvent;
+import com.jamiewang.secure3d.repository.CardRangeJdbcRepository;
+import com.jamiewang.secure3d.repository.CardRangeTableSwapRepository;
+import com.jamiewang.secure3d.util.ErrorReservoir;
+import com.jamiewang.secure3d.util.RangeSnapshotDiff;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.jamiewang.secure3d.repository.CardRangeTableSwapRepository.ACS_INFO_STAGING_TABLE;
+import static com.jamiewang.secure3d.repository.CardRangeTableSwapRepository.CARD_RANGE_STAGING_TABLE;
+
+/**
+ * Full reloads of the card ranges into staging tables, swapped in once complete
+ *
+ * Lookups keep reading the live tables at their usual latency while a reload writes its
+ * ranges into the staging tables of {@link CardRangeTableSwapRepository}. Once every range is
+ * written, the staging indexes are built and the load is validated: no more errors than
+ * app.import.swap.max-errors, row counts matching what was written, and at least
+ * app.import.swap.min-size-percent of the live range count, so a truncated snapshot cannot
+ * replace a complete one. Only then are the tables swapped and a
+ * {@link CardRangesImportedEvent} without changes published, for the index, caches and other
+ * nodes to reload. A reload that fails or is refused leaves the live tables untouched.
+ *
+ * The file is a full snapshot, of which only the last entry per bounds is written, and none
+ * when that entry is a "D". Imports into the live tables while a reload runs are lost when the
+ * tables are swapped.
+ */
+@Component
+@Slf4j
+public class CardRangeTableSwap {
+
+    @Value("${app.import.bulk.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.import.pipeline.max-errors:100}")
+    private int errorSampleSize;
+
+    @Value("${app.import.swap.max-errors:0}")
+    private int maxErrors;
+
+    @Value("${app.import.swap.min-size-percent:50}")
+    private int minSizePercent;
+
+    @Autowired
+    private CardRangeTableSwapRepository tableSwapRepository;
+
+    @Autowired
+    private CardRangeJdbcRepository cardRangeJdbcRepository;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    private final AtomicBoolean busy = new AtomicBoolean(false);
+
+    /**
+     * Start a reload into freshly created staging tables
+     *
+     * @param snapshot Keys of every range of the snapshot with bounds, deletes included
+     * @return Reload to add the card ranges to, then finish; close it in any case
+     * @throws IllegalStateException if a reload or rollback is already running
+     */
+    public Reload begin(RangeSnapshotDiff.Keys snapshot) {
+        if (!busy.compareAndSet(false, true)) {
+            throw new IllegalStateException("A card range reload or rollback is already running");
+        }
+        try {
+            // Against nothing stored, exactly the last entry per bounds is added, unless it deletes them
+            RangeSnapshotDiff.Result latest = RangeSnapshotDiff.diff(snapshot, new RangeSnapshotDiff.Keys());
+            return new Reload(latest, tableSwapRepository.createStaging());
+        } catch (RuntimeException e) {
+            busy.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Make the generation replaced by the last reload live again
+     *
+     * @return false if there is no previous generation or a reload is running
+     */
+    public boolean rollback() {
+        if (!busy.compareAndSet(false, true)) {
+            log.warn("A card range reload is running, not rolling back");
+            return false;
+        }
+        try {
+            if (!tableSwapRepository.rollback()) {
+                return false;
+            }
+            int restored = (int) tableSwapRepository.countRows(CardRangeJdbcRepository.CARD_RANGE_TABLE);
+            applicationEventPublisher.publishEvent(new CardRangesImportedEvent(null, restored, null));
+            return true;
+        } finally {
+            busy.set(false);
+        }
+    }
+
+    /**
+     * A running reload
+     *
+     * Card ranges must be added from one thread, the one that finishes the reload.
+     */
+    public final class Reload implements AutoCloseable {
+
+        private final RangeSnapshotDiff.Result latest;
+        private final Map<String, List<String>> deferredIndexes;
+        private final long startTime = System.currentTimeMillis();
+        private final List<CardRangeEntity> pending = new ArrayList<>(batchSize);
+        private final ErrorReservoir errors = new ErrorReservoir(errorSampleSize);
+        private int processed = 0;
+        private int inserted = 0;
+        private long acsInfoRows = 0;
+        private int skipped = 0;
+        private int errorCount = 0;
+        private boolean closed = false;
+
+        private Reload(RangeSnapshotDiff.Result latest, Map<String, List<String>> deferredIndexes) {
+            this.latest = latest;
+            this.deferredIndexes = deferredIndexes;
+        }
+
+        /**
+         * Write a card range of the snapshot to the staging tables, batched
+         *
+         * Ranges replaced by a later entry with the same bounds, and deletes, are skipped.
+         *
+         * @param position Position of the range in the snapshot, as in the keys the reload began with
+         * @param cardRange Card range to write
+         */
+        public void add(int position, CardRangeDataDTO cardRange) {
+            processed++;
+            if (cardRange.getStartRange() == null || cardRange.getEndRange() == null) {
+                errorCount++;
+                errors.offer(String.format("Range %d has no bounds", position + 1));
+                return;
+            }
+            if (latest.getAction(position) != RangeSnapshotDiff.ADD) {
+                skipped++;
+                return;
+            }
+
+            pending.add(toEntity(cardRange));
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        /**
+         * Build the staging indexes, validate the load and swap the staging tables in
+         *
+         * @param serialNum Serial number of the PRes message reloaded
+         * @return Totals of the reload, with a sample of the errors
+         * @throws IllegalStateException if the load is refused, the live tables are left as they are
+         */
+        public BulkImportResponseDTO finish(String serialNum) {
+            try {
+                flush();
+                tableSwapRepository.buildIndexes(deferredIndexes);
+                validate();
+                tableSwapRepository.swap();
+            } finally {
+                close();
+            }
+
+            long duration = Math.max(1, System.currentTimeMillis() - startTime);
+            log.info("Reloaded PRes message {} through staging tables in {} ms ({} ranges/s): {} card ranges, "
+                            + "{} superseded or deleted skipped, {} errors",
+                    serialNum, duration, inserted * 1000L / duration, inserted, skipped, errorCount);
+
+            applicationEventPublisher.publishEvent(new CardRangesImportedEvent(serialNum, inserted, null));
+            return new BulkImportResponseDTO(processed, inserted, errorCount, errors.getSample(), LocalDateTime.now());
+        }
+
+        /**
+         * Let another reload start, without swapping if not finished
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                busy.set(false);
+            }
+        }
+
+        private void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            try {
+                cardRangeJdbcRepository.insertAll(pending, CARD_RANGE_STAGING_TABLE, ACS_INFO_STAGING_TABLE);
+                inserted += pending.size();
+                for (CardRangeEntity range : pending) {
+                    acsInfoRows += range.getAcsInfoInd() == null ? 0 : range.getAcsInfoInd().size();
+                }
+            } catch (Exception e) {
+                // The failed batch left nothing behind in the staging tables
+                errorCount += pending.size();
+                errors.offer(String.format("Batch of %d ranges from %s-%s failed: %s", pending.size(),
+                        pending.get(0).getStartRange(), pending.get(0).getEndRange(), e.getMessage()));
+                log.warn("Writing {} card ranges to staging failed", pending.size(), e);
+            }
+            pending.clear();
+        }
+
+        private void validate() {
+            if (errorCount > maxErrors) {
+                throw refused(errorCount + " ranges failed, at most " + maxErrors + " allowed");
+            }
+
+            long stagedRanges = tableSwapRepository.countRows(CARD_RANGE_STAGING_TABLE);
+            long stagedAcsInfo = tableSwapRepository.countRows(ACS_INFO_STAGING_TABLE);
+            if (stagedRanges != inserted || stagedAcsInfo != acsInfoRows) {
+                throw refused(String.format("staging holds %d ranges and %d acs_info rows, %d and %d were written",
+                        stagedRanges, stagedAcsInfo, inserted, acsInfoRows));
+            }
+
+            long liveRanges = tableSwapRepository.countRows(CardRangeJdbcRepository.CARD_RANGE_TABLE);
+            if (stagedRanges * 100 < liveRanges * minSizePercent) {
+                throw refused(String.format("%d ranges would replace %d, below %d%%",
+                        stagedRanges, liveRanges, minSizePercent));
+            }
+        }
+
+        private IllegalStateException refused(String reason) {
+            log.error("Refusing to swap in reloaded card ranges: {}", reason);
+            return new IllegalStateException("Card range reload refused: " + reason);
+        }
+    }
+
+    private static CardRangeEntity toEntity(CardRangeDataDTO data) {
+        CardRangeEntity cardRange = new CardRangeEntity();
+        cardRange.setStartRange(data.getStartRange());
+        cardRange.setEndRange(data.getEndRange());
+        cardRange.setActionInd(data.getActionInd());
+        cardRange.setThreeDsMethodUrl(data.getThreeDsMethodUrl());
+        cardRange.setAcsStartProtocolVersion(data.getAcsStartProtocolVersion());
+        cardRange.setAcsEndProtocolVersion(data.getAcsEndProtocolVersion());
+        cardRange.setAcsInfoInd(data.getAcsInfoInd());
+        cardRange.setCreatedAt(LocalDateTime.now());
+        cardRange.setUpdatedAt(LocalDateTime.now());
+        return cardRange;
+    }
+}
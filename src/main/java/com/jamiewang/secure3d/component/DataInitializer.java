@@ -1,9 +1,15 @@
 package com.jamiewang.secure3d.component;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
 import com.jamiewang.secure3d.dto.PResMessageDTO;
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.repository.CardRangeJdbcRepository;
 import com.jamiewang.secure3d.service.IStorePResService;
+import com.jamiewang.secure3d.util.RangeSnapshotDiff;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -12,6 +18,7 @@ import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -21,6 +28,19 @@ import java.util.List;
  *
  * Runs after application startup to load initial card range data from JSON files.
  * Can be enabled/disabled via configuration and supports multiple data sources.
+ *
+ * With streaming enabled the file is parsed incrementally: cardRangeData elements are read
+ * one at a time and handed to {@link PResImportPipeline} in chunks, each imported in its own
+ * transaction, so memory use depends on the chunk size and not on the file size. The
+ * in-memory index is rebuilt once at the end, streamed from the database.
+ *
+ * With diff enabled the file is taken as a full snapshot and only the ranges that differ
+ * from the stored ones are written, so restarting with the same (or a slightly changed) file
+ * neither duplicates the stored ranges nor rewrites the unchanged ones.
+ *
+ * With swap enabled the file is also taken as a full snapshot, but loaded into staging tables
+ * by {@link CardRangeTableSwap} and swapped in once complete, so lookups never read a partial
+ * load nor compete with it for the live tables.
  */
 @Component
 @Slf4j
@@ -35,9 +55,30 @@ public class DataInitializer implements CommandLineRunner {
     @Value("${app.data.init.clear-existing}")
     private boolean clearExisting;
 
+    @Value("${app.data.init.streaming.enabled:true}")
+    private boolean streamingEnabled;
+
+    @Value("${app.data.init.streaming.chunk-size:10000}")
+    private int chunkSize;
+
+    @Value("${app.data.init.diff.enabled:false}")
+    private boolean diffEnabled;
+
+    @Value("${app.data.init.swap.enabled:false}")
+    private boolean swapEnabled;
+
     @Autowired
     private IStorePResService storePResService;
 
+    @Autowired
+    private CardRangeJdbcRepository cardRangeJdbcRepository;
+
+    @Autowired
+    private PResImportPipeline importPipeline;
+
+    @Autowired
+    private CardRangeTableSwap tableSwap;
+
     @Autowired
     private ResourceLoader resourceLoader;
 
@@ -53,6 +94,21 @@ public class DataInitializer implements CommandLineRunner {
 
         log.info("Starting batch data initialization...");
 
+        if (swapEnabled || diffEnabled || streamingEnabled) {
+            try {
+                if (swapEnabled) {
+                    swapDataFromFile();
+                } else if (diffEnabled) {
+                    diffDataFromFile();
+                } else {
+                    streamDataFromFile();
+                }
+            } catch (Exception e) {
+                log.error("Failed to initialize batch data", e);
+            }
+            return;
+        }
+
         try {
             // Load data from JSON file
             PResMessageDTO presMessages = loadDataFromFile();
@@ -101,6 +157,235 @@ public class DataInitializer implements CommandLineRunner {
         }
     }
 
+    /**
+     * Stream card ranges from the JSON file into the import pipeline chunk by chunk
+     *
+     * Chunks already imported stay imported when a later one fails or the file turns out to
+     * be malformed.
+     */
+    private void streamDataFromFile() throws Exception {
+        log.info("Streaming data from file: {}", dataFilePath);
+
+        Resource resource = resourceLoader.getResource(dataFilePath);
+
+        if (!resource.exists()) {
+            log.warn("Data file not found: {}", dataFilePath);
+            return;
+        }
+
+        PResMessageDTO header = new PResMessageDTO();
+        ChunkSubmitter submitter = new ChunkSubmitter(header, resource.contentLength());
+        try {
+            parseDataFile(resource, header, submitter::add);
+            submitter.flush();
+        } finally {
+            // Whatever was imported before a failure still has to reach the index
+            submitter.finish();
+        }
+    }
+
+    /**
+     * Import only the differences between the data file and the stored card ranges
+     *
+     * The file is taken as a full snapshot. A first pass reduces it to bounds and attribute
+     * hashes, which are sort-merged with the stored ranges streamed from the database (see
+     * {@link RangeSnapshotDiff}). A second pass picks the ranges to add or modify, after the
+     * removals. Up to a chunk of changes is applied as one PRes message, so the index and the
+     * caches only see the changed ranges; larger diffs go through the import pipeline.
+     */
+    private void diffDataFromFile() throws Exception {
+        log.info("Diffing data file against stored card ranges: {}", dataFilePath);
+
+        Resource resource = resourceLoader.getResource(dataFilePath);
+
+        if (!resource.exists()) {
+            log.warn("Data file not found: {}", dataFilePath);
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        PResMessageDTO header = new PResMessageDTO();
+        RangeSnapshotDiff.Keys snapshot = readSnapshotKeys(resource, header);
+
+        RangeSnapshotDiff.Keys stored = new RangeSnapshotDiff.Keys();
+        int[] storedCount = new int[1];
+        cardRangeJdbcRepository.streamAllOrderedByStartRange(cardRange -> stored.add(storedCount[0]++,
+                cardRange.getStartRange(), cardRange.getEndRange(),
+                RangeSnapshotDiff.attributeHash(cardRange.getThreeDsMethodUrl(),
+                        cardRange.getAcsStartProtocolVersion(), cardRange.getAcsEndProtocolVersion(),
+                        cardRange.getAcsInfoInd())));
+
+        RangeSnapshotDiff.Result diff = RangeSnapshotDiff.diff(snapshot, stored);
+        log.info("Diffed {} snapshot ranges against {} stored in {} ms: {}",
+                snapshot.size(), stored.size(), System.currentTimeMillis() - startTime, diff);
+
+        if (diff.getChangeCount() == 0) {
+            log.info("Stored card ranges already match the data file, nothing to import");
+            return;
+        }
+
+        List<CardRangeDataDTO> removals = new ArrayList<>(diff.getRemovedCount());
+        for (int i = 0; i < diff.getRemovedCount(); i++) {
+            CardRangeDataDTO removal = new CardRangeDataDTO();
+            removal.setStartRange(diff.getRemovedStart(i));
+            removal.setEndRange(diff.getRemovedEnd(i));
+            removal.setActionInd(CardRangeEntity.ACTION_DELETE);
+            removals.add(removal);
+        }
+
+        if (diff.getChangeCount() <= chunkSize) {
+            List<CardRangeDataDTO> changes = new ArrayList<>(removals);
+            parseDataFile(resource, new PResMessageDTO(), (position, cardRange, byteOffset) -> {
+                if (withDiffAction(cardRange, diff.getAction(position))) {
+                    changes.add(cardRange);
+                }
+            });
+            processBatchData(newChunk(header, changes));
+            return;
+        }
+
+        ChunkSubmitter submitter = new ChunkSubmitter(header, -1);
+        try {
+            // Removals first, a collapsed group of duplicates is added again afterwards
+            for (CardRangeDataDTO removal : removals) {
+                submitter.add(-1, removal, -1);
+            }
+            submitter.flush();
+            parseDataFile(resource, new PResMessageDTO(), (position, cardRange, byteOffset) -> {
+                if (withDiffAction(cardRange, diff.getAction(position))) {
+                    submitter.add(position, cardRange, -1);
+                }
+            });
+            submitter.flush();
+        } finally {
+            submitter.finish();
+        }
+    }
+
+    /**
+     * Reload every card range of the data file through staging tables swapped in at the end
+     *
+     * A first pass reduces the file to keys, so the reload writes only the last entry per
+     * bounds; a file that cannot be parsed to its end never gets to the staging tables.
+     */
+    private void swapDataFromFile() throws Exception {
+        log.info("Reloading data file through staging tables: {}", dataFilePath);
+
+        Resource resource = resourceLoader.getResource(dataFilePath);
+
+        if (!resource.exists()) {
+            log.warn("Data file not found: {}", dataFilePath);
+            return;
+        }
+
+        PResMessageDTO header = new PResMessageDTO();
+        RangeSnapshotDiff.Keys snapshot = readSnapshotKeys(resource, header);
+        try (CardRangeTableSwap.Reload reload = tableSwap.begin(snapshot)) {
+            parseDataFile(resource, new PResMessageDTO(),
+                    (position, cardRange, byteOffset) -> reload.add(position, cardRange));
+            var response = reload.finish(header.getSerialNum());
+
+            if (!response.getErrors().isEmpty()) {
+                log.warn("Errors during batch initialization ({} in total, sample):", response.getErrorCount());
+                response.getErrors().forEach(error -> log.warn("  - {}", error));
+            }
+        }
+    }
+
+    /**
+     * Reduce the data file to the bounds and attribute hashes of its card ranges, deletes included
+     *
+     * Card ranges without bounds are left out.
+     */
+    private RangeSnapshotDiff.Keys readSnapshotKeys(Resource resource, PResMessageDTO header) throws Exception {
+        RangeSnapshotDiff.Keys snapshot = new RangeSnapshotDiff.Keys();
+        int[] invalid = new int[1];
+        parseDataFile(resource, header, (position, cardRange, byteOffset) -> {
+            if (cardRange.getStartRange() == null || cardRange.getEndRange() == null) {
+                invalid[0]++;
+                return;
+            }
+            if (CardRangeEntity.ACTION_DELETE.equals(cardRange.getActionInd())) {
+                snapshot.addDelete(position, cardRange.getStartRange(), cardRange.getEndRange());
+                return;
+            }
+            snapshot.add(position, cardRange.getStartRange(), cardRange.getEndRange(),
+                    RangeSnapshotDiff.attributeHash(cardRange.getThreeDsMethodUrl(),
+                            cardRange.getAcsStartProtocolVersion(), cardRange.getAcsEndProtocolVersion(),
+                            cardRange.getAcsInfoInd()));
+        });
+        if (invalid[0] > 0) {
+            log.warn("Skipping {} card ranges without bounds", invalid[0]);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Set the actionInd a diff action is applied with
+     *
+     * @return false if the range is unchanged or a delete, whose bounds the removals cover
+     */
+    private static boolean withDiffAction(CardRangeDataDTO cardRange, byte action) {
+        if (CardRangeEntity.ACTION_DELETE.equals(cardRange.getActionInd())) {
+            return false;
+        }
+        if (action == RangeSnapshotDiff.ADD) {
+            cardRange.setActionInd(CardRangeEntity.ACTION_ADD);
+            return true;
+        }
+        if (action == RangeSnapshotDiff.MODIFY) {
+            cardRange.setActionInd(CardRangeEntity.ACTION_MODIFY);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parse the PRes message of the data file, handing its card ranges over one at a time
+     *
+     * Header fields are set on the header as they are met; fields following cardRangeData in
+     * the file are not known yet while its card ranges are handled.
+     */
+    private void parseDataFile(Resource resource, PResMessageDTO header, CardRangeHandler handler) throws Exception {
+        try (InputStream inputStream = resource.getInputStream();
+             JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Data file does not hold a PRes message object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if ("cardRangeData".equals(field) && value == JsonToken.START_ARRAY) {
+                    int position = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        CardRangeDataDTO cardRange = objectMapper.readValue(parser, CardRangeDataDTO.class);
+                        handler.handle(position++, cardRange, parser.currentLocation().getByteOffset());
+                    }
+                } else if ("serialNum".equals(field)) {
+                    header.setSerialNum(parser.getValueAsString());
+                } else if ("messageType".equals(field)) {
+                    header.setMessageType(parser.getValueAsString());
+                } else if ("dsTransID".equals(field)) {
+                    header.setDsTransId(parser.getValueAsString());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private PResMessageDTO newChunk(PResMessageDTO header, List<CardRangeDataDTO> cardRanges) {
+        PResMessageDTO chunk = new PResMessageDTO();
+        chunk.setSerialNum(header.getSerialNum());
+        chunk.setMessageType(header.getMessageType());
+        chunk.setDsTransId(header.getDsTransId());
+        chunk.setCardRangeData(cardRanges);
+        return chunk;
+    }
+
     /**
      * Process batch data using the StorePRes service
      */
@@ -125,4 +410,64 @@ public class DataInitializer implements CommandLineRunner {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Receives the card ranges of the data file in file order
+     */
+    @FunctionalInterface
+    private interface CardRangeHandler {
+        void handle(int position, CardRangeDataDTO cardRange, long byteOffset) throws Exception;
+    }
+
+    /**
+     * Groups card ranges into chunks for the import pipeline, starting the import with the first
+     */
+    private class ChunkSubmitter {
+
+        private final PResMessageDTO header;
+        private final long fileLength;
+        private PResImportPipeline.Import pipelineImport;
+        private List<CardRangeDataDTO> chunk = new ArrayList<>(chunkSize);
+        private long submitted = 0;
+
+        ChunkSubmitter(PResMessageDTO header, long fileLength) {
+            this.header = header;
+            this.fileLength = fileLength;
+        }
+
+        void add(int position, CardRangeDataDTO cardRange, long byteOffset) throws InterruptedException {
+            chunk.add(cardRange);
+            if (chunk.size() < chunkSize) {
+                return;
+            }
+            flush();
+
+            // Ranges are about the same size, so the share of the file read tells the total
+            if (fileLength > 0 && byteOffset > 0) {
+                pipelineImport.setExpectedRanges(submitted * fileLength / byteOffset);
+            }
+        }
+
+        void flush() throws InterruptedException {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            if (pipelineImport == null) {
+                pipelineImport = importPipeline.begin(header.getSerialNum());
+            }
+            submitted += chunk.size();
+            pipelineImport.submit(newChunk(header, chunk));
+            chunk = new ArrayList<>(chunkSize);
+        }
+
+        void finish() {
+            if (pipelineImport == null) {
+                return;
+            }
+            var response = pipelineImport.finish();
+            if (!response.getErrors().isEmpty()) {
+                log.warn("Errors during batch initialization ({} in total, sample):", response.getErrorCount());
+                response.getErrors().forEach(error -> log.warn("  - {}", error));
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.dto.BulkImportResponseDTO;
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import com.jamiewang.secure3d.dto.PResMessageDTO;
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.service.IStorePResService;
+import com.jamiewang.secure3d.util.ErrorReservoir;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports PRes card ranges chunk by chunk on a bounded worker pool
+ *
+ * Each chunk is applied by {@link IStorePResService#processPResChunk} in a transaction of its
+ * own, so a failing chunk only rolls back its own ranges and no transaction grows with the
+ * file. Chunks holding only adds run concurrently. A chunk holding a delete or modification
+ * waits for every earlier chunk and runs alone, so ranges are still applied in file order
+ * wherever the order matters. Submitting blocks while the workers and the queue are full,
+ * which keeps the number of chunks held in memory bounded.
+ *
+ * Errors are kept in a bounded {@link ErrorReservoir} and counted exactly. Progress of the
+ * running (or last) import is available from {@link #getProgress()} and logged periodically.
+ */
+@Component
+@Slf4j
+public class PResImportPipeline {
+
+    @Value("${app.import.pipeline.workers:4}")
+    private int workers;
+
+    @Value("${app.import.pipeline.queue-capacity:4}")
+    private int queueCapacity;
+
+    @Value("${app.import.pipeline.max-errors:100}")
+    private int maxErrors;
+
+    @Value("${app.import.pipeline.progress-log-seconds:10}")
+    private long progressLogSeconds;
+
+    @Autowired
+    private IStorePResService storePResService;
+
+    private volatile Import current;
+
+    /**
+     * Start an import
+     *
+     * @param serialNum Serial number of the PRes message being imported
+     * @return Import to submit chunks to and finish
+     */
+    public Import begin(String serialNum) {
+        Import started = new Import(serialNum);
+        current = started;
+        log.info("Starting chunked import of PRes message {} with {} workers", serialNum, workers);
+        return started;
+    }
+
+    /**
+     * Get the progress of the running import, or of the last one once finished
+     *
+     * @return Progress snapshot, null if no import was started
+     */
+    public Progress getProgress() {
+        Import last = current;
+        return last == null ? null : last.progress();
+    }
+
+    /**
+     * A running chunked import
+     *
+     * Chunks must be submitted from one thread, the one that finishes the import.
+     */
+    public final class Import {
+
+        private final String serialNum;
+        private final long startNanos = System.nanoTime();
+        private final ExecutorService executor;
+        private final Semaphore slots;
+        private final List<Future<?>> inFlight = new ArrayList<>();
+        private final ErrorReservoir errors = new ErrorReservoir(maxErrors);
+
+        private final AtomicInteger chunksSubmitted = new AtomicInteger();
+        private final AtomicInteger chunksDone = new AtomicInteger();
+        private final AtomicLong rangesSubmitted = new AtomicLong();
+        private final AtomicLong rangesDone = new AtomicLong();
+        private final AtomicLong successCount = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final AtomicLong lastLogNanos = new AtomicLong(System.nanoTime());
+        private volatile long expectedRanges = -1;
+        private volatile boolean finished = false;
+
+        private Import(String serialNum) {
+            if (workers <= 0 || queueCapacity < 0) {
+                throw new IllegalArgumentException("Workers must be positive and queue capacity not negative");
+            }
+            this.serialNum = serialNum;
+            this.slots = new Semaphore(workers + queueCapacity);
+            AtomicInteger threads = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+                Thread thread = new Thread(runnable, "pres-import-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * Queue a chunk, blocking while the workers and the queue are full
+         *
+         * @param chunk PRes message header with the next card ranges
+         * @throws InterruptedException if interrupted while waiting
+         */
+        public void submit(PResMessageDTO chunk) throws InterruptedException {
+            int number = chunksSubmitted.incrementAndGet();
+            rangesSubmitted.addAndGet(chunk.getCardRangeData().size());
+
+            if (!addsOnly(chunk)) {
+                // Deletes and modifications may depend on ranges of any earlier chunk
+                awaitInFlight();
+                process(number, chunk);
+                return;
+            }
+
+            slots.acquire();
+            try {
+                inFlight.add(executor.submit(() -> {
+                    try {
+                        process(number, chunk);
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                slots.release();
+                throw e;
+            }
+            inFlight.removeIf(Future::isDone);
+        }
+
+        /**
+         * Set the expected number of card ranges, used for the ETA
+         *
+         * @param expectedRanges Estimate of the total, -1 if unknown
+         */
+        public void setExpectedRanges(long expectedRanges) {
+            this.expectedRanges = expectedRanges;
+        }
+
+        /**
+         * Wait for every submitted chunk and let derived copies resynchronize
+         *
+         * @return Totals of the import, with a sample of the errors
+         */
+        public BulkImportResponseDTO finish() {
+            try {
+                awaitInFlight();
+            } finally {
+                executor.shutdown();
+                finished = true;
+                storePResService.finishChunkedImport(serialNum, (int) successCount.get());
+            }
+
+            Progress progress = progress();
+            log.info("Chunked import of PRes message {} completed: {} chunks, {} ranges in {} ms ({} ranges/s), "
+                            + "{} successful, {} errors",
+                    serialNum, progress.getChunksDone(), progress.getRangesDone(), progress.getElapsedMillis(),
+                    progress.getRangesPerSecond(), progress.getSuccessCount(), progress.getErrorCount());
+
+            return new BulkImportResponseDTO((int) rangesDone.get(), (int) successCount.get(),
+                    (int) errorCount.get(), errors.getSample(), LocalDateTime.now());
+        }
+
+        private void process(int number, PResMessageDTO chunk) {
+            int size = chunk.getCardRangeData().size();
+            try {
+                BulkImportResponseDTO response = storePResService.processPResChunk(chunk);
+                successCount.addAndGet(response.getSuccessCount());
+                errorCount.addAndGet(response.getErrorCount());
+                for (String error : response.getErrors()) {
+                    errors.offer("Chunk " + number + ": " + error);
+                }
+            } catch (Exception e) {
+                // The chunk's transaction was rolled back, none of its ranges were applied
+                errorCount.addAndGet(size);
+                errors.offer("Chunk " + number + " (" + size + " ranges) failed: " + e.getMessage());
+                log.warn("Chunk {} of PRes message {} failed", number, serialNum, e);
+            }
+            rangesDone.addAndGet(size);
+            chunksDone.incrementAndGet();
+            logProgress();
+        }
+
+        private void awaitInFlight() {
+            Iterator<Future<?>> futures = inFlight.iterator();
+            while (futures.hasNext()) {
+                try {
+                    futures.next().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for import chunks", e);
+                } catch (ExecutionException e) {
+                    // process() handles its own failures
+                    log.warn("Import chunk failed unexpectedly", e.getCause());
+                }
+                futures.remove();
+            }
+        }
+
+        private void logProgress() {
+            long now = System.nanoTime();
+            long last = lastLogNanos.get();
+            if (now - last < progressLogSeconds * 1_000_000_000L || !lastLogNanos.compareAndSet(last, now)) {
+                return;
+            }
+
+            Progress progress = progress();
+            log.info("Import of PRes message {}: {} of {} chunks, {} ranges, {} ranges/s, {} errors, ETA {}",
+                    serialNum, progress.getChunksDone(), progress.getChunksSubmitted(), progress.getRangesDone(),
+                    progress.getRangesPerSecond(), progress.getErrorCount(),
+                    progress.getEtaSeconds() < 0 ? "unknown" : progress.getEtaSeconds() + " s");
+        }
+
+        private Progress progress() {
+            long elapsedMillis = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+            long done = rangesDone.get();
+            long rate = done * 1000L / elapsedMillis;
+            long expected = finished ? rangesSubmitted.get() : expectedRanges;
+
+            long etaSeconds = -1;
+            if (finished) {
+                etaSeconds = 0;
+            } else if (expected >= 0 && rate > 0) {
+                etaSeconds = Math.max(0, expected - done) / rate;
+            }
+
+            return new Progress(serialNum, !finished, chunksSubmitted.get(), chunksDone.get(), done,
+                    successCount.get(), errorCount.get(), elapsedMillis, rate, expected, etaSeconds);
+        }
+    }
+
+    private static boolean addsOnly(PResMessageDTO chunk) {
+        for (CardRangeDataDTO cardRange : chunk.getCardRangeData()) {
+            if (CardRangeEntity.ACTION_DELETE.equals(cardRange.getActionInd())
+                    || CardRangeEntity.ACTION_MODIFY.equals(cardRange.getActionInd())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Progress class for chunked import metrics
+     */
+    public static class Progress {
+        private final String serialNum;
+        private final boolean running;
+        private final int chunksSubmitted;
+        private final int chunksDone;
+        private final long rangesDone;
+        private final long successCount;
+        private final long errorCount;
+        private final long elapsedMillis;
+        private final long rangesPerSecond;
+        private final long expectedRanges;
+        private final long etaSeconds;
+
+        public Progress(String serialNum, boolean running, int chunksSubmitted, int chunksDone, long rangesDone,
+                        long successCount, long errorCount, long elapsedMillis, long rangesPerSecond,
+                        long expectedRanges, long etaSeconds) {
+            this.serialNum = serialNum;
+            this.running = running;
+            this.chunksSubmitted = chunksSubmitted;
+            this.chunksDone = chunksDone;
+            this.rangesDone = rangesDone;
+            this.successCount = successCount;
+            this.errorCount = errorCount;
+            this.elapsedMillis = elapsedMillis;
+            this.rangesPerSecond = rangesPerSecond;
+            this.expectedRanges = expectedRanges;
+            this.etaSeconds = etaSeconds;
+        }
+
+        public String getSerialNum() {
+            return serialNum;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public int getChunksSubmitted() {
+            return chunksSubmitted;
+        }
+
+        public int getChunksDone() {
+            return chunksDone;
+        }
+
+        public long getRangesDone() {
+            return rangesDone;
+        }
+
+        public long getSuccessCount() {
+            return successCount;
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getRangesPerSecond() {
+            return rangesPerSecond;
+        }
+
+        /**
+         * @return Expected total of card ranges, -1 if unknown
+         */
+        public long getExpectedRanges() {
+            return expectedRanges;
+        }
+
+        /**
+         * @return Estimated seconds until the import completes, -1 if unknown
+         */
+        public long getEtaSeconds() {
+            return etaSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{" +
+                    "serialNum=" + serialNum +
+                    ", running=" + running +
+                    ", chunksSubmitted=" + chunksSubmitted +
+                    ", chunksDone=" + chunksDone +
+                    ", rangesDone=" + rangesDone +
+                    ", successCount=" + successCount +
+                    ", errorCount=" + errorCount +
+                    ", elapsedMillis=" + elapsedMillis +
+                    ", rangesPerSecond=" + rangesPerSecond +
+                    ", expectedRanges=" + expectedRanges +
+                    ", etaSeconds=" + etaSeconds +
+                    '}';
+        }
+    }
+}
@@ -1,48 +1,116 @@
 package com.jamiewang.secure3d.component;
 
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
 import com.jamiewang.secure3d.entity.CardRangeEntity;
-import com.jamiewang.secure3d.util.IntervalTree;
+import com.jamiewang.secure3d.util.BinPrefixTable;
+import com.jamiewang.secure3d.util.MappedRangeIndex;
+import com.jamiewang.secure3d.util.NestedRangeFlattener;
+import com.jamiewang.secure3d.util.RangeIndex;
+import com.jamiewang.secure3d.util.SortedRangeIndex;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Shared in-memory card range index
+ *
+ * Readers go through a single volatile reference to an immutable {@link IndexSnapshot}
+ * and never take a lock. Writers build a complete new snapshot off to the side and
+ * publish it with one volatile write (RCU style); lookups already running keep using the
+ * snapshot they loaded, and the old snapshot is reclaimed by the GC once unreferenced.
+ * Heap snapshots can also be advanced by a delta of added, modified and deleted ranges
+ * ({@link #applyDelta(List)}), merged into the previous version instead of reloading every range.
+ *
+ * Two storage engines are supported behind the same lookup API ({@code app.index.engine}):
+ * - heap: ranges in primitive arrays plus an interned attribute table on the Java heap
+ * - mapped: ranges and encoded payloads in a memory-mapped file ({@link MappedRangeIndex}),
+ *   shared through the page cache by every JVM on the host and reopened on restart
+ *   without touching the database
+ *
+ * Feeds may nest narrower sub-ranges inside a broad issuer range. Unless disabled
+ * ({@code app.index.most-specific.enabled}), overlapping input is flattened at build time by
+ * {@link NestedRangeFlattener} so each PAN resolves to its narrowest containing range, ties
+ * going to the most recently updated one. Non-overlapping input is indexed as is.
+ *
+ * Optionally ({@code app.index.bin-prefix.enabled}) each snapshot also carries a
+ * {@link BinPrefixTable} indexed by the leading PAN digits. BINs covered by a single range
+ * (or by none) are answered in one array access, and only BINs split across several
+ * ranges go on to the binary search.
+ */
 @Component
 @Slf4j
 public class SharedIntervalTreeComponent {
 
-    private IntervalTree<CardRangeEntity> intervalTree;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private volatile boolean isInitialized = false;
+    private static final String ENGINE_MAPPED = "mapped";
+    private static final int PAN_LENGTH = 16;
+
+    @Value("${app.index.engine:heap}")
+    private String engine;
+
+    @Value("${app.index.mapped.file:data/card-range.idx}")
+    private String mappedFile;
+
+    @Value("${app.index.most-specific.enabled:true}")
+    private boolean mostSpecificEnabled;
+
+    @Value("${app.index.bin-prefix.enabled:false}")
+    private boolean binPrefixEnabled;
+
+    @Value("${app.index.bin-prefix.digits:6}")
+    private int binPrefixDigits;
+
+    private volatile IndexSnapshot snapshot;
+
+    // Serializes writers, readers never touch it. A full rebuild holds it from its first read
+    // until it publishes, so it can never be published over a newer delta
+    private final ReentrantLock writerLock = new ReentrantLock();
+
+    // Lookups answered by the BIN prefix table vs. sent on to the range search
+    private final LongAdder binPrefixResolved = new LongAdder();
+    private final LongAdder binPrefixFallbacks = new LongAdder();
 
     @PostConstruct
     public void initialize() {
         log.info("Initializing shared interval tree component...");
-        lock.writeLock().lock();
-        try {
-            intervalTree = new IntervalTree<>();
-            isInitialized = true;
-            log.info("Shared interval tree component initialized successfully");
-        } finally {
-            lock.writeLock().unlock();
-        }
+        snapshot = new HeapIndexSnapshot(SortedRangeIndex.empty(), null, CardRangeAttributeTable.empty(),
+                null, null, null, new long[0], 0L);
+        log.info("Shared interval tree component initialized successfully, engine: {}, BIN prefix table: {}",
+                isMappedEngine() ? ENGINE_MAPPED : "heap",
+                binPrefixEnabled ? binPrefixDigits + " digits" : "disabled");
     }
 
     /**
      * Find the most specific card range for a given PAN
      *
-     * This method provides thread-safe read access to the shared interval tree.
-     * Multiple services can call this method concurrently without blocking each other.
+     * When ranges are nested this is the narrowest range containing the PAN.
+     *
+     * This method reads the currently published snapshot without locking, so any number
+     * of threads can call it concurrently, including while a rebuild is in progress.
      *
      * @param pan Primary Account Number as Long (16 digits)
-     * @return Optional containing the most specific matching CardRange, empty if not found
+     * @return Optional containing the most specific matching card range, empty if not found
      * @throws IllegalArgumentException if PAN is null
      */
-    public Optional<CardRangeEntity> findCardRange(Long pan) {
+    public Optional<CardRangeDataDTO> findCardRange(Long pan) {
         // Validate input
         if (pan == null) {
             log.debug("Invalid PAN provided: null");
@@ -54,36 +122,89 @@ public class SharedIntervalTreeComponent {
             throw new IllegalArgumentException("PAN must be positive");
         }
 
+        // Read the snapshot once so the whole lookup sees a single version
+        IndexSnapshot current = snapshot;
+
         // Check if tree is initialized
-        if (!isInitialized) {
+        if (current == null) {
             log.warn("Interval tree not initialized yet");
             return Optional.empty();
         }
 
-        lock.readLock().lock();
-        try {
-            Optional<CardRangeEntity> result = intervalTree.findMostSpecific(pan);
+        int slot = current.find(pan);
 
-            if (result.isPresent()) {
-                log.debug("Found card range for PAN {} in shared tree", pan);
-            } else {
-                log.debug("No card range found for PAN {} in shared tree", pan);
+        if (slot != RangeIndex.NOT_FOUND) {
+            log.debug("Found card range for PAN {} in shared tree", pan);
+            return Optional.of(current.cardRangeAt(slot));
+        }
+
+        log.debug("No card range found for PAN {} in shared tree", pan);
+        return Optional.empty();
+    }
+
+    /**
+     * Find the most specific card range for each of several PANs
+     *
+     * The PANs are sorted and resolved in a single forward pass over one snapshot, each search
+     * starting where the previous one ended, instead of a full search per PAN.
+     *
+     * @param pans Primary Account Numbers, null entries never match
+     * @return Matching card range per PAN, in request order
+     * @throws IllegalArgumentException if pans is null or contains a negative PAN
+     */
+    public List<Optional<CardRangeDataDTO>> findCardRanges(List<Long> pans) {
+        if (pans == null) {
+            throw new IllegalArgumentException("PAN list cannot be null");
+        }
+
+        List<Optional<CardRangeDataDTO>> results = new ArrayList<>(Collections.nCopies(pans.size(), Optional.empty()));
+
+        // Request positions ordered by PAN
+        List<Integer> order = new ArrayList<>(pans.size());
+        for (int i = 0; i < pans.size(); i++) {
+            Long pan = pans.get(i);
+            if (pan == null) {
+                continue;
+            }
+            if (pan < 0) {
+                throw new IllegalArgumentException("PAN must be positive");
             }
+            order.add(i);
+        }
+        order.sort(Comparator.comparingLong(pans::get));
+
+        IndexSnapshot current = snapshot;
+        if (current == null) {
+            log.warn("Interval tree not initialized yet");
+            return results;
+        }
 
-            return result;
+        RangeIndex rangeIndex = current.rangeIndex;
+        int from = 0;
+        for (int position : order) {
+            long pan = pans.get(position);
+            int slot = rangeIndex.floorSlot(pan, from);
+            if (slot < 0) {
+                continue;
+            }
 
-        } finally {
-            lock.readLock().unlock();
+            from = slot;
+            if (pan <= rangeIndex.endAt(slot)) {
+                results.set(position, Optional.of(current.cardRangeAt(slot)));
+            }
         }
+
+        log.debug("Resolved {} PANs in shared tree", pans.size());
+        return results;
     }
 
     /**
      * Rebuild the interval tree with new card range data
      *
-     * This method performs a complete rebuild of the interval tree with the provided
-     * card ranges. It uses write lock to ensure no other operations interfere during
-     * the rebuild process. All concurrent read operations will be blocked until
-     * the rebuild is complete.
+     * This method performs a complete rebuild of the range index with the provided
+     * card ranges. The new snapshot is built without blocking readers, which keep being
+     * served from the previous snapshot until the new one is published atomically.
+     * Rebuilds and deltas are applied one at a time, in the order they start.
      *
      * @param cardRanges List of CardRange objects to rebuild the tree with
      * @throws IllegalArgumentException if cardRanges is null
@@ -93,82 +214,588 @@ public class SharedIntervalTreeComponent {
             throw new IllegalArgumentException("Card ranges list cannot be null");
         }
 
-        log.info("Starting interval tree rebuild with {} card ranges", cardRanges.size());
+        try (SnapshotBuilder builder = newSnapshotBuilder(cardRanges.size())) {
+            cardRanges.forEach(builder::add);
+            builder.publish();
+        }
+    }
+
+    /**
+     * Start a rebuild fed one card range at a time
+     *
+     * Lets callers stream ranges straight from their source (e.g. a database cursor)
+     * into the new snapshot without first collecting them into a list. Nothing is
+     * visible to readers until {@link SnapshotBuilder#publish()} is called.
+     *
+     * The builder holds back deltas and other rebuilds until it is published or closed,
+     * so callers should create it before reading their source: a delta committed after
+     * that read then waits and is applied on top of the rebuilt snapshot, instead of
+     * being overwritten by it. It must be published or closed by the creating thread.
+     *
+     * @param expectedSize Expected number of ranges, used for sizing and progress logs
+     * @return New snapshot builder
+     */
+    public SnapshotBuilder newSnapshotBuilder(int expectedSize) {
+        writerLock.lock();
+        try {
+            return new SnapshotBuilder(expectedSize);
+        } catch (RuntimeException | Error e) {
+            writerLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Start a rebuild whose size is not known yet, see {@link #newSnapshotBuilder(int)}
+     *
+     * @return New snapshot builder, to be sized with {@link SnapshotBuilder#expect(long)}
+     */
+    public SnapshotBuilder newSnapshotBuilder() {
+        return newSnapshotBuilder(0);
+    }
+
+    /**
+     * Collects card ranges for a full rebuild and publishes them as one snapshot
+     *
+     * Only the bounds and an interned attribute id are kept per range while loading, so the
+     * entities handed to {@link #add(CardRangeEntity)} can be collected straight away.
+     */
+    public class SnapshotBuilder implements AutoCloseable {
+
+        private long expectedSize;
+        private final long startTime = System.currentTimeMillis();
+        private final CardRangeAttributeTable.Builder attributeTable = CardRangeAttributeTable.builder();
+        private long[] starts;
+        private long[] ends;
+        private long[] recency;
+        private int[] attributeIds;
+        private int processedCount = 0;
+        private int receivedCount = 0;
+        private boolean locked = true;
+
+        private SnapshotBuilder(int expectedSize) {
+            this.expectedSize = expectedSize;
+            int capacity = Math.max(expectedSize, 16);
+            this.starts = new long[capacity];
+            this.ends = new long[capacity];
+            this.recency = new long[capacity];
+            this.attributeIds = new int[capacity];
+            if (expectedSize > 0) {
+                log.info("Starting interval tree rebuild with {} card ranges", expectedSize);
+            }
+        }
+
+        /**
+         * Set the expected number of ranges once it is known, growing the buffers to fit
+         *
+         * @param expectedSize Expected number of ranges, used for sizing and progress logs
+         */
+        public void expect(long expectedSize) {
+            this.expectedSize = expectedSize;
+            int capacity = (int) Math.min(expectedSize, Integer.MAX_VALUE - 8);
+            if (capacity > starts.length) {
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                recency = Arrays.copyOf(recency, capacity);
+                attributeIds = Arrays.copyOf(attributeIds, capacity);
+            }
+            log.info("Starting interval tree rebuild with {} card ranges", expectedSize);
+        }
+
+        /**
+         * Add a card range to the snapshot being built, invalid ranges are skipped
+         *
+         * @param range Card range to add
+         */
+        public void add(CardRangeEntity range) {
+            receivedCount++;
+
+            if (range == null || !isValidCardRange(range)) {
+                log.warn("Skipping invalid card range: {}", range);
+                return;
+            }
+
+            if (processedCount == starts.length) {
+                int capacity = processedCount + (processedCount >> 1);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                recency = Arrays.copyOf(recency, capacity);
+                attributeIds = Arrays.copyOf(attributeIds, capacity);
+            }
+
+            starts[processedCount] = range.getStartRange();
+            ends[processedCount] = range.getEndRange();
+            recency[processedCount] = recencyOf(range);
+            attributeIds[processedCount] = attributeTable.intern(range);
+            processedCount++;
+
+            // Log progress for large datasets
+            if (processedCount % 50000 == 0) {
+                log.info("Processed {} of {} card ranges", processedCount, expectedSize);
+            }
+        }
+
+        /**
+         * Build the index and publish it as the current snapshot, then let waiting writers go
+         *
+         * @throws RuntimeException if the index cannot be built, the previous snapshot stays published
+         */
+        public void publish() {
+            if (!locked) {
+                throw new IllegalStateException("Snapshot builder is already closed");
+            }
+            try {
+                CardRangeAttributeTable attributes = attributeTable.build();
+                SourceRanges source = SourceRanges.sorted(starts, ends, recency, attributeIds, processedCount);
+
+                starts = new long[0];
+                ends = new long[0];
+                recency = new long[0];
+                attributeIds = new int[0];
+
+                IndexSnapshot next;
+                if (isMappedEngine()) {
+                    SlotIndex slotIndex = buildSlotIndex(source);
+                    next = publishMapped(slotIndex.rangeIndex, attributes, slotIndex.rangeStarts, slotIndex.rangeEnds);
+                } else {
+                    next = publishHeap(source, attributes);
+                }
+
+                long endTime = System.currentTimeMillis();
+                long duration = endTime - startTime;
+
+                log.info("Interval tree rebuild completed successfully");
+                log.info("Processed {} valid ranges out of {} total in {} ms, {} distinct attribute sets",
+                        processedCount, receivedCount, duration, attributes.size());
+                log.info("Snapshot version: {}, Search depth: {}, Index size: {}, Index footprint: {} bytes",
+                        next.version, next.rangeIndex.getSearchDepth(), next.rangeIndex.size(),
+                        next.rangeIndex.getMemoryFootprintBytes());
+
+            } catch (Exception e) {
+                log.error("Error during interval tree rebuild", e);
+                // The previous snapshot stays published if rebuild fails
+                throw new RuntimeException("Failed to rebuild interval tree", e);
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Let waiting writers go without publishing, if not published already
+         */
+        @Override
+        public void close() {
+            if (locked) {
+                locked = false;
+                writerLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Apply a batch of added, modified and deleted card ranges to the live index
+     *
+     * Changes follow the PRes actionInd semantics: a range with actionInd "D" is removed, any
+     * other range replaces the range with the same bounds or is added if there is none. The
+     * changes are sorted and merged into the ranges of the current snapshot in one pass, copying
+     * the unchanged runs between them in blocks, and published as a new version. Attribute ids
+     * of the current snapshot are kept, so only attributes not seen before are interned, and
+     * attributes no range refers to any more are then dropped from the table.
+     *
+     * Only heap snapshots built from real data can be updated this way. Otherwise nothing is
+     * published and the caller should fall back to a full rebuild. A delta started while a
+     * rebuild is running waits for it and is applied to the rebuilt snapshot.
+     *
+     * @param changes Card ranges to apply, the last change to a range wins
+     * @return true if a new snapshot was published, false if a full rebuild is needed
+     * @throws IllegalArgumentException if changes is null
+     */
+    public boolean applyDelta(List<CardRangeEntity> changes) {
+        if (changes == null) {
+            throw new IllegalArgumentException("Card range changes cannot be null");
+        }
 
         long startTime = System.currentTimeMillis();
 
-        lock.writeLock().lock();
+        // Order the changes like the source ranges, stable so later changes to a range stay last
+        List<CardRangeEntity> ordered = new ArrayList<>(changes.size());
+        for (CardRangeEntity change : changes) {
+            if (change == null || !isValidCardRange(change)) {
+                log.warn("Skipping invalid card range change: {}", change);
+                continue;
+            }
+            ordered.add(change);
+        }
+        ordered.sort(Comparator.comparingLong(CardRangeEntity::getStartRange)
+                .thenComparingLong(CardRangeEntity::getEndRange));
+
+        writerLock.lock();
         try {
-            // Create new tree instance
-            IntervalTree<CardRangeEntity> newTree = new IntervalTree<>();
-
-            // Insert all card ranges into the new tree
-            int processedCount = 0;
-            for (CardRangeEntity range : cardRanges) {
-                if (range != null && isValidCardRange(range)) {
-                    newTree.insert(range);
-                    processedCount++;
-
-                    // Log progress for large datasets
-                    if (processedCount % 50000 == 0) {
-                        log.info("Processed {} of {} card ranges", processedCount, cardRanges.size());
-                    }
+            IndexSnapshot current = snapshot;
+            if (!(current instanceof HeapIndexSnapshot) || current.version == 0) {
+                log.info("Current snapshot cannot be updated incrementally, a full rebuild is needed");
+                return false;
+            }
+
+            HeapIndexSnapshot heap = (HeapIndexSnapshot) current;
+            DeltaMerge merge = new DeltaMerge(heap.sourceRanges(), heap.attributes.toBuilder(), ordered.size());
+            ordered.forEach(merge::apply);
+            SourceRanges source = merge.finish();
+            // The merged ids are a fresh copy, so they can be renumbered here
+            CardRangeAttributeTable attributes = merge.attributeTable.build().compact(source.attributeIds);
+
+            IndexSnapshot next = publishHeap(source, attributes);
+
+            log.info("Applied card range delta in {} ms: {} added, {} modified, {} deleted, {} deletes not found",
+                    System.currentTimeMillis() - startTime, merge.added, merge.modified, merge.deleted, merge.missing);
+            log.info("Snapshot version: {}, Index size: {}, Source ranges: {}, Distinct attributes: {}",
+                    next.version, next.rangeIndex.size(), source.size(), attributes.size());
+            return true;
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Merges sorted changes into the source ranges of a snapshot
+     */
+    private final class DeltaMerge {
+
+        private final SourceRanges base;
+        private final CardRangeAttributeTable.Builder attributeTable;
+        private final long[] starts;
+        private final long[] ends;
+        private final long[] recency;
+        private final int[] attributeIds;
+        private int count = 0;
+        private int from = 0;
+        private CardRangeEntity pending;
+        private int added = 0;
+        private int modified = 0;
+        private int deleted = 0;
+        private int missing = 0;
+
+        private DeltaMerge(SourceRanges base, CardRangeAttributeTable.Builder attributeTable, int changeCount) {
+            this.base = base;
+            this.attributeTable = attributeTable;
+            // Every change adds at most one range
+            int capacity = base.size() + changeCount;
+            this.starts = new long[capacity];
+            this.ends = new long[capacity];
+            this.recency = new long[capacity];
+            this.attributeIds = new int[capacity];
+        }
+
+        /**
+         * Take the next change in source order, only the last change to a range is merged
+         */
+        void apply(CardRangeEntity change) {
+            if (pending != null && !sameBounds(pending, change)) {
+                merge(pending);
+            }
+            pending = change;
+        }
+
+        SourceRanges finish() {
+            if (pending != null) {
+                merge(pending);
+                pending = null;
+            }
+            copyUnchanged(base.size());
+            return new SourceRanges(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count),
+                    Arrays.copyOf(recency, count), Arrays.copyOf(attributeIds, count));
+        }
+
+        private void merge(CardRangeEntity change) {
+            long start = change.getStartRange();
+            long end = change.getEndRange();
+
+            // Unchanged ranges before this one are copied over in one block
+            copyUnchanged(base.lowerBound(start, end, from));
+
+            boolean exists = from < base.size() && base.starts[from] == start && base.ends[from] == end;
+            if (exists) {
+                from++;
+            }
+
+            if (CardRangeEntity.ACTION_DELETE.equals(change.getActionInd())) {
+                if (exists) {
+                    deleted++;
                 } else {
-                    log.warn("Skipping invalid card range: {}", range);
+                    missing++;
                 }
+                return;
+            }
+
+            starts[count] = start;
+            ends[count] = end;
+            recency[count] = recencyOf(change);
+            attributeIds[count] = attributeTable.intern(change);
+            count++;
+
+            if (exists) {
+                modified++;
+            } else {
+                added++;
             }
+        }
+
+        private void copyUnchanged(int to) {
+            int run = to - from;
+            if (run <= 0) {
+                return;
+            }
+            System.arraycopy(base.starts, from, starts, count, run);
+            System.arraycopy(base.ends, from, ends, count, run);
+            System.arraycopy(base.recency, from, recency, count, run);
+            System.arraycopy(base.attributeIds, from, attributeIds, count, run);
+            count += run;
+            from = to;
+        }
+    }
 
-            // Replace the old tree with the new one atomically
-            intervalTree = newTree;
-            isInitialized = true;
+    /**
+     * Tie-breaker between overlapping ranges of equal width, the most recently updated wins
+     */
+    private static long recencyOf(CardRangeEntity range) {
+        LocalDateTime updatedAt = range.getUpdatedAt();
+        if (updatedAt == null) {
+            return Long.MIN_VALUE;
+        }
+        return updatedAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + updatedAt.getNano();
+    }
 
-            long endTime = System.currentTimeMillis();
-            long duration = endTime - startTime;
+    private static boolean sameBounds(CardRangeEntity a, CardRangeEntity b) {
+        return a.getStartRange().equals(b.getStartRange()) && a.getEndRange().equals(b.getEndRange());
+    }
 
-            log.info("Interval tree rebuild completed successfully");
-            log.info("Processed {} valid ranges out of {} total in {} ms",
-                    processedCount, cardRanges.size(), duration);
-            log.info("Tree height: {}, Tree size: {}",
-                    intervalTree.getHeight(), intervalTree.size());
+    /**
+     * Publish a fully built index as the next snapshot version
+     *
+     * Called with the writer lock held. Readers only see the volatile write, so the
+     * expensive build never delays them.
+     */
+    private IndexSnapshot publish(SnapshotFactory factory) {
+        IndexSnapshot previous = snapshot;
+        IndexSnapshot next = factory.create(previous == null ? 1L : previous.version + 1);
+        snapshot = next;
+        return next;
+    }
 
+    /**
+     * Index sorted source ranges on the heap and publish the result
+     *
+     * @return Published snapshot
+     */
+    private IndexSnapshot publishHeap(SourceRanges source, CardRangeAttributeTable attributes) {
+        SlotIndex slotIndex = buildSlotIndex(source);
+        BinPrefixTable binPrefixTable = buildBinPrefixTable(slotIndex.rangeIndex);
+
+        // Without flattening the slots are the source ranges, so only their recency is kept
+        boolean flattened = slotIndex.rangeStarts != null;
+        SnapshotFactory factory = version -> new HeapIndexSnapshot(slotIndex.rangeIndex, binPrefixTable, attributes,
+                slotIndex.rangeStarts, slotIndex.rangeEnds, flattened ? source : null,
+                flattened ? null : source.recency, version);
+
+        return publish(factory);
+    }
+
+    /**
+     * Turn sorted source ranges into a non-overlapping index pointing at interned attribute ids
+     */
+    private SlotIndex buildSlotIndex(SourceRanges source) {
+        int count = source.size();
+
+        if (!mostSpecificEnabled || !source.hasOverlaps()) {
+            SortedRangeIndex.Builder builder = SortedRangeIndex.builder(count);
+            for (int i = 0; i < count; i++) {
+                builder.add(source.starts[i], source.ends[i], source.attributeIds[i]);
+            }
+            return new SlotIndex(builder.build(), null, null);
+        }
+
+        SortedRangeIndex byPosition = NestedRangeFlattener.flatten(source.starts, source.ends, source.recency, count);
+        log.info("Card ranges overlap, flattened {} ranges into {} most specific segments",
+                count, byPosition.size());
+
+        // Point every slot at its interned attributes, flattened segments also keep
+        // the bounds of the range they belong to
+        int slotCount = byPosition.size();
+        SortedRangeIndex.Builder builder = SortedRangeIndex.builder(slotCount);
+        long[] rangeStarts = new long[slotCount];
+        long[] rangeEnds = new long[slotCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            int position = byPosition.payloadIdAt(slot);
+            builder.add(byPosition.startAt(slot), byPosition.endAt(slot), source.attributeIds[position]);
+            rangeStarts[slot] = source.starts[position];
+            rangeEnds[slot] = source.ends[position];
+        }
+        return new SlotIndex(builder.build(), rangeStarts, rangeEnds);
+    }
+
+    /**
+     * Write the index to the mapped file and publish a snapshot backed by the new mapping
+     *
+     * Payloads are deduplicated by content: slots sharing attributes share one payload, and
+     * flattened segments of the same range share one payload carrying the range bounds.
+     */
+    private IndexSnapshot publishMapped(SortedRangeIndex rangeIndex, CardRangeAttributeTable attributes,
+                                        long[] rangeStarts, long[] rangeEnds) throws IOException {
+        List<byte[]> encodedPayloads = new ArrayList<>(attributes.size());
+        for (int id = 0; id < attributes.size(); id++) {
+            encodedPayloads.add(CardRangePayloadCodec.encode(attributes.get(id)));
+        }
+
+        RangeIndex fileIndex = rangeIndex;
+        if (rangeStarts != null) {
+            Map<ByteBuffer, Integer> payloadIds = new HashMap<>();
+            for (int id = 0; id < encodedPayloads.size(); id++) {
+                payloadIds.put(ByteBuffer.wrap(encodedPayloads.get(id)), id);
+            }
+
+            SortedRangeIndex.Builder builder = SortedRangeIndex.builder(rangeIndex.size());
+            for (int slot = 0; slot < rangeIndex.size(); slot++) {
+                int payloadId = rangeIndex.payloadIdAt(slot);
+                if (rangeStarts[slot] != rangeIndex.startAt(slot) || rangeEnds[slot] != rangeIndex.endAt(slot)) {
+                    byte[] payload = CardRangePayloadCodec.encode(
+                            attributes.get(payloadId), rangeStarts[slot], rangeEnds[slot]);
+                    payloadId = payloadIds.computeIfAbsent(ByteBuffer.wrap(payload), key -> {
+                        encodedPayloads.add(payload);
+                        return encodedPayloads.size() - 1;
+                    });
+                }
+                builder.add(rangeIndex.startAt(slot), rangeIndex.endAt(slot), payloadId);
+            }
+            fileIndex = builder.build();
+        }
+
+        Path path = Paths.get(mappedFile);
+        MappedRangeIndex.write(path, fileIndex, encodedPayloads);
+        MappedRangeIndex mapped = MappedRangeIndex.open(path);
+        BinPrefixTable binPrefixTable = buildBinPrefixTable(mapped);
+
+        log.info("Wrote mapped range index {} ({} bytes, {} payloads)",
+                path, mapped.getMappedBytes(), mapped.getPayloadCount());
+        return publish(version -> new MappedIndexSnapshot(mapped, binPrefixTable, version));
+    }
+
+    /**
+     * Build the BIN prefix table for a new index, if enabled
+     *
+     * @return Front table, or null when the layer is disabled
+     */
+    private BinPrefixTable buildBinPrefixTable(RangeIndex rangeIndex) {
+        if (!binPrefixEnabled) {
+            return null;
+        }
+
+        long startTime = System.currentTimeMillis();
+        BinPrefixTable table = BinPrefixTable.build(rangeIndex, binPrefixDigits, PAN_LENGTH);
+        log.info("Built {}-digit BIN prefix table in {} ms: {} of {} BINs resolve to a single range, {} bytes",
+                table.getPrefixDigits(), System.currentTimeMillis() - startTime,
+                table.getDirectBins(), table.getBinCount(), table.getMemoryFootprintBytes());
+        return table;
+    }
+
+    /**
+     * Publish the existing mapped index file, if the mapped engine is configured and the file exists
+     *
+     * This is how a restarted instance (or a second JVM on the same host) comes up without
+     * reloading card ranges from the database.
+     *
+     * @return true if a mapped snapshot was published, false otherwise
+     */
+    public boolean loadMappedFile() {
+        if (!isMappedEngine()) {
+            return false;
+        }
+
+        Path path = Paths.get(mappedFile);
+        if (!Files.exists(path)) {
+            log.info("No mapped range index file at {}", path);
+            return false;
+        }
+
+        writerLock.lock();
+        try {
+            MappedRangeIndex mapped = MappedRangeIndex.open(path);
+            BinPrefixTable binPrefixTable = buildBinPrefixTable(mapped);
+            IndexSnapshot next = publish(version -> new MappedIndexSnapshot(mapped, binPrefixTable, version));
+            log.info("Mapped existing range index {}: {} ranges, {} bytes, snapshot version {}",
+                    path, mapped.size(), mapped.getMappedBytes(), next.version);
+            return true;
         } catch (Exception e) {
-            log.error("Error during interval tree rebuild", e);
-            // Keep the old tree intact if rebuild fails
-            throw new RuntimeException("Failed to rebuild interval tree", e);
+            log.warn("Failed to map range index file {}, it will be rebuilt", path, e);
+            return false;
         } finally {
-            lock.writeLock().unlock();
+            writerLock.unlock();
         }
     }
 
+    private boolean isMappedEngine() {
+        return ENGINE_MAPPED.equalsIgnoreCase(engine);
+    }
+
     /**
      * Get statistics about the current interval tree state
      *
-     * @return TreeStatistics object containing size, height, and other metrics
+     * @return TreeStatistics object containing size, search depth, and other metrics
      */
     public TreeStatistics getStatistics() {
-        lock.readLock().lock();
-        try {
-            if (!isInitialized || intervalTree == null) {
-                return new TreeStatistics(0, 0, false);
-            }
-
-            return new TreeStatistics(
-                    intervalTree.size(),
-                    intervalTree.getHeight(),
-                    isInitialized
-            );
-        } finally {
-            lock.readLock().unlock();
+        IndexSnapshot current = snapshot;
+        if (current == null) {
+            return new TreeStatistics(0, 0, false);
         }
+
+        return new TreeStatistics(
+                current.rangeIndex.size(),
+                current.rangeIndex.getSearchDepth(),
+                true
+        );
+    }
+
+    /**
+     * Get statistics about the BIN prefix table of the current snapshot
+     *
+     * Lookup counters are cumulative since startup and survive rebuilds.
+     *
+     * @return BinPrefixStatistics object containing table coverage and hit counts
+     */
+    public BinPrefixStatistics getBinPrefixStatistics() {
+        IndexSnapshot current = snapshot;
+        BinPrefixTable table = current == null ? null : current.binPrefixTable;
+
+        return new BinPrefixStatistics(
+                table != null,
+                table == null ? 0 : table.getPrefixDigits(),
+                table == null ? 0 : table.getDirectBins(),
+                table == null ? 0 : table.getBinCount(),
+                binPrefixResolved.sum(),
+                binPrefixFallbacks.sum()
+        );
+    }
+
+    /**
+     * Get the version of the currently published snapshot
+     *
+     * @return Snapshot version, incremented on every rebuild (0 before the first one)
+     */
+    public long getVersion() {
+        IndexSnapshot current = snapshot;
+        return current == null ? 0L : current.version;
     }
 
     /**
      * Check if the interval tree is ready for operations
      *
-     * @return true if tree is initialized and ready, false otherwise
+     * The index only counts as ready once a snapshot built from real data has been
+     * published; until then callers should fall back to their other data sources.
+     *
+     * @return true if tree is loaded and ready, false otherwise
      */
     public boolean isReady() {
-        return isInitialized && intervalTree != null;
+        IndexSnapshot current = snapshot;
+        return current != null && current.version > 0;
     }
 
     /**
@@ -201,6 +828,258 @@ public class SharedIntervalTreeComponent {
         return startRange <= endRange;
     }
 
+    /**
+     * Creates a snapshot once its version number is known
+     */
+    @FunctionalInterface
+    private interface SnapshotFactory {
+        IndexSnapshot create(long version);
+    }
+
+    /**
+     * Immutable view of the index published to readers
+     */
+    private abstract class IndexSnapshot {
+        final RangeIndex rangeIndex;
+        final BinPrefixTable binPrefixTable;
+        final long version;
+
+        IndexSnapshot(RangeIndex rangeIndex, BinPrefixTable binPrefixTable, long version) {
+            this.rangeIndex = rangeIndex;
+            this.binPrefixTable = binPrefixTable;
+            this.version = version;
+        }
+
+        /**
+         * Find the index slot containing a value, trying the BIN prefix table first
+         */
+        int find(long value) {
+            if (binPrefixTable == null) {
+                return rangeIndex.find(value);
+            }
+
+            int slot = binPrefixTable.lookup(value);
+            if (slot != BinPrefixTable.SPLIT) {
+                binPrefixResolved.increment();
+                return slot;
+            }
+
+            binPrefixFallbacks.increment();
+            return rangeIndex.find(value);
+        }
+
+        /**
+         * Resolve the card range stored in an index slot
+         */
+        abstract CardRangeDataDTO cardRangeAt(int slot);
+    }
+
+    /**
+     * Snapshot holding its interned attribute table on the heap
+     */
+    private final class HeapIndexSnapshot extends IndexSnapshot {
+        private final CardRangeAttributeTable attributes;
+        // Bounds of the range owning each slot, only set when nested ranges were flattened
+        private final long[] rangeStarts;
+        private final long[] rangeEnds;
+        // Ranges the index was built from, kept for incremental updates. When nothing was
+        // flattened they are the index slots themselves and only their recency is stored
+        private final SourceRanges source;
+        private final long[] slotRecency;
+
+        HeapIndexSnapshot(RangeIndex rangeIndex, BinPrefixTable binPrefixTable, CardRangeAttributeTable attributes,
+                          long[] rangeStarts, long[] rangeEnds, SourceRanges source, long[] slotRecency,
+                          long version) {
+            super(rangeIndex, binPrefixTable, version);
+            this.attributes = attributes;
+            this.rangeStarts = rangeStarts;
+            this.rangeEnds = rangeEnds;
+            this.source = source;
+            this.slotRecency = slotRecency;
+        }
+
+        /**
+         * Get the sorted ranges this snapshot was built from
+         */
+        SourceRanges sourceRanges() {
+            if (source != null) {
+                return source;
+            }
+
+            int size = rangeIndex.size();
+            long[] starts = new long[size];
+            long[] ends = new long[size];
+            int[] attributeIds = new int[size];
+            for (int slot = 0; slot < size; slot++) {
+                starts[slot] = rangeIndex.startAt(slot);
+                ends[slot] = rangeIndex.endAt(slot);
+                attributeIds[slot] = rangeIndex.payloadIdAt(slot);
+            }
+            return new SourceRanges(starts, ends, slotRecency, attributeIds);
+        }
+
+        @Override
+        CardRangeDataDTO cardRangeAt(int slot) {
+            CardRangeAttributes shared = attributes.get(rangeIndex.payloadIdAt(slot));
+            if (rangeStarts != null) {
+                return shared.toDto(rangeStarts[slot], rangeEnds[slot]);
+            }
+            return shared.toDto(rangeIndex.startAt(slot), rangeIndex.endAt(slot));
+        }
+    }
+
+    /**
+     * Snapshot reading payloads from the mapped file, each payload is decoded only once
+     */
+    private final class MappedIndexSnapshot extends IndexSnapshot {
+        private final MappedRangeIndex mappedIndex;
+        // Racy but safe: decoded attributes are immutable, at worst a payload is decoded twice
+        private final CardRangeAttributes[] decoded;
+
+        MappedIndexSnapshot(MappedRangeIndex mappedIndex, BinPrefixTable binPrefixTable, long version) {
+            super(mappedIndex, binPrefixTable, version);
+            this.mappedIndex = mappedIndex;
+            this.decoded = new CardRangeAttributes[mappedIndex.getPayloadCount()];
+        }
+
+        @Override
+        CardRangeDataDTO cardRangeAt(int slot) {
+            int payloadId = mappedIndex.payloadIdAt(slot);
+            ByteBuffer payload = mappedIndex.payload(payloadId);
+
+            CardRangeAttributes shared = decoded[payloadId];
+            if (shared == null) {
+                shared = CardRangePayloadCodec.decode(payload.duplicate());
+                decoded[payloadId] = shared;
+            }
+
+            if (CardRangePayloadCodec.hasBounds(payload)) {
+                return shared.toDto(CardRangePayloadCodec.startRange(payload), CardRangePayloadCodec.endRange(payload));
+            }
+            return shared.toDto(mappedIndex.startAt(slot), mappedIndex.endAt(slot));
+        }
+    }
+
+    /**
+     * Non-overlapping index over source ranges, with the owning range bounds of each slot when flattened
+     */
+    private static final class SlotIndex {
+        final SortedRangeIndex rangeIndex;
+        final long[] rangeStarts;
+        final long[] rangeEnds;
+
+        SlotIndex(SortedRangeIndex rangeIndex, long[] rangeStarts, long[] rangeEnds) {
+            this.rangeIndex = rangeIndex;
+            this.rangeStarts = rangeStarts;
+            this.rangeEnds = rangeEnds;
+        }
+    }
+
+    /**
+     * Card ranges as loaded, sorted by start then end with exact duplicates collapsed
+     *
+     * Unlike the index slots these are not cut by flattening, so changes can be merged into
+     * them by bounds and the index rebuilt from the result.
+     */
+    private static final class SourceRanges {
+        final long[] starts;
+        final long[] ends;
+        final long[] recency;
+        final int[] attributeIds;
+
+        SourceRanges(long[] starts, long[] ends, long[] recency, int[] attributeIds) {
+            this.starts = starts;
+            this.ends = ends;
+            this.recency = recency;
+            this.attributeIds = attributeIds;
+        }
+
+        /**
+         * Sort ranges collected in any order, the range added last wins between exact duplicates
+         */
+        static SourceRanges sorted(long[] starts, long[] ends, long[] recency, int[] attributeIds, int count) {
+            // Stable sort by start, adjacent duplicates are already collapsed here
+            SortedRangeIndex.Builder positionBuilder = SortedRangeIndex.builder(count);
+            for (int i = 0; i < count; i++) {
+                positionBuilder.add(starts[i], ends[i], i);
+            }
+            SortedRangeIndex byStart = positionBuilder.build();
+
+            int size = byStart.size();
+            int[] order = new int[size];
+            for (int slot = 0; slot < size; slot++) {
+                order[slot] = byStart.payloadIdAt(slot);
+            }
+
+            // Ranges sharing a start are ordered by end, these runs are almost always one range long
+            for (int i = 1; i < size; i++) {
+                int position = order[i];
+                int j = i - 1;
+                while (j >= 0 && starts[order[j]] == starts[position] && ends[order[j]] > ends[position]) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = position;
+            }
+
+            long[] sortedStarts = new long[size];
+            long[] sortedEnds = new long[size];
+            long[] sortedRecency = new long[size];
+            int[] sortedAttributeIds = new int[size];
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                int position = order[i];
+                if (unique > 0 && sortedStarts[unique - 1] == starts[position]
+                        && sortedEnds[unique - 1] == ends[position]) {
+                    unique--;
+                }
+                sortedStarts[unique] = starts[position];
+                sortedEnds[unique] = ends[position];
+                sortedRecency[unique] = recency[position];
+                sortedAttributeIds[unique] = attributeIds[position];
+                unique++;
+            }
+
+            return new SourceRanges(Arrays.copyOf(sortedStarts, unique), Arrays.copyOf(sortedEnds, unique),
+                    Arrays.copyOf(sortedRecency, unique), Arrays.copyOf(sortedAttributeIds, unique));
+        }
+
+        int size() {
+            return starts.length;
+        }
+
+        /**
+         * Check whether any range starts before an earlier range ends
+         */
+        boolean hasOverlaps() {
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < starts.length; i++) {
+                if (i > 0 && starts[i] <= maxEnd) {
+                    return true;
+                }
+                maxEnd = Math.max(maxEnd, ends[i]);
+            }
+            return false;
+        }
+
+        /**
+         * Find the first position at or after from whose bounds are not below the given bounds
+         */
+        int lowerBound(long start, long end, int from) {
+            int low = from;
+            int high = starts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] < start || (starts[mid] == start && ends[mid] < end)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
     /**
      * Statistics class for interval tree metrics
      */
@@ -236,4 +1115,72 @@ public class SharedIntervalTreeComponent {
                     '}';
         }
     }
+
+    /**
+     * Statistics class for BIN prefix table metrics
+     */
+    public static class BinPrefixStatistics {
+        private final boolean enabled;
+        private final int prefixDigits;
+        private final int directBins;
+        private final int binCount;
+        private final long resolvedLookups;
+        private final long fallbackLookups;
+
+        public BinPrefixStatistics(boolean enabled, int prefixDigits, int directBins, int binCount,
+                                   long resolvedLookups, long fallbackLookups) {
+            this.enabled = enabled;
+            this.prefixDigits = prefixDigits;
+            this.directBins = directBins;
+            this.binCount = binCount;
+            this.resolvedLookups = resolvedLookups;
+            this.fallbackLookups = fallbackLookups;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getPrefixDigits() {
+            return prefixDigits;
+        }
+
+        public int getDirectBins() {
+            return directBins;
+        }
+
+        public int getBinCount() {
+            return binCount;
+        }
+
+        public long getResolvedLookups() {
+            return resolvedLookups;
+        }
+
+        public long getFallbackLookups() {
+            return fallbackLookups;
+        }
+
+        /**
+         * Get the fraction of lookups answered by the table without a range search
+         *
+         * @return Ratio between 0 and 1, 0 when no lookup went through the table yet
+         */
+        public double getResolvedRatio() {
+            long total = resolvedLookups + fallbackLookups;
+            return total == 0 ? 0.0 : (double) resolvedLookups / total;
+        }
+
+        @Override
+        public String toString() {
+            return "BinPrefixStatistics{" +
+                    "enabled=" + enabled +
+                    ", prefixDigits=" + prefixDigits +
+                    ", directBins=" + directBins +
+                    ", binCount=" + binCount +
+                    ", resolvedLookups=" + resolvedLookups +
+                    ", fallbackLookups=" + fallbackLookups +
+                    '}';
+        }
+    }
 }
@@ -0,0 +1,96 @@
+package com.jamiewang.secure3d.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Expiry and size limits of the entries RedisServiceImpl writes (app.redis.cache)
+ *
+ * Limits are resolved per key prefix: a plain key or range-keyed cache name takes the
+ * settings of the longest configured prefix it starts with, falling back to the defaults.
+ * Prefixes holding characters other than letters, digits, '-' and '.' must be written in
+ * brackets in YAML ("[look_up]") or Spring strips those characters from the map key.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.redis.cache")
+public class RedisCacheProperties {
+
+    // Default expiry of written entries, 0 or less for none
+    private long ttlSeconds = 3600;
+
+    // Entries expire up to this share of their TTL earlier, at random
+    private int jitterPercent = 10;
+
+    // Reads in the last seconds of an entry's life may report a miss so it is reloaded early, 0 for off
+    private long earlyRefreshSeconds = 0;
+
+    // Settings by key prefix or range-keyed cache name
+    private Map<String, Prefix> prefixes = new LinkedHashMap<>();
+
+    @Data
+    public static class Prefix {
+
+        // Expiry of entries under the prefix, the default TTL if not set
+        private Long ttlSeconds;
+
+        // Most keys (or ranges of a range-keyed cache) kept under the prefix, 0 or less for no limit
+        private long maxKeys = 0;
+
+        // Early refresh window of entries under the prefix, the default window if not set
+        private Long earlyRefreshSeconds;
+    }
+
+    /**
+     * Get the TTL of entries written to a key
+     *
+     * @param key Redis key or range-keyed cache name
+     * @return TTL before jitter, null if entries should not expire
+     */
+    public Duration ttlFor(String key) {
+        Map.Entry<String, Prefix> prefix = prefixOf(key);
+        long seconds = prefix != null && prefix.getValue().getTtlSeconds() != null
+                ? prefix.getValue().getTtlSeconds()
+                : ttlSeconds;
+        return seconds > 0 ? Duration.ofSeconds(seconds) : null;
+    }
+
+    /**
+     * Get the early refresh window of entries read from a key
+     *
+     * @param key Redis key or range-keyed cache name
+     * @return Window in seconds, 0 or less if reads never refresh early
+     */
+    public long earlyRefreshSecondsFor(String key) {
+        Map.Entry<String, Prefix> prefix = prefixOf(key);
+        return prefix != null && prefix.getValue().getEarlyRefreshSeconds() != null
+                ? prefix.getValue().getEarlyRefreshSeconds()
+                : earlyRefreshSeconds;
+    }
+
+    /**
+     * Get the longest configured prefix of a key
+     *
+     * @param key Redis key or range-keyed cache name
+     * @return Prefix and its settings, null if no configured prefix matches
+     */
+    public Map.Entry<String, Prefix> prefixOf(String key) {
+        Map.Entry<String, Prefix> match = null;
+        if (key == null) {
+            return null;
+        }
+        for (Map.Entry<String, Prefix> entry : prefixes.entrySet()) {
+            if (entry.getValue() != null && key.startsWith(entry.getKey())
+                    && (match == null || entry.getKey().length() > match.getKey().length())) {
+                match = entry;
+            }
+        }
+        return match;
+    }
+
+}
@@ -1,5 +1,9 @@
 package com.jamiewang.secure3d.controller;
 
+import com.jamiewang.secure3d.component.CardRangeTableSwap;
+import com.jamiewang.secure3d.component.PResImportPipeline;
+import com.jamiewang.secure3d.dto.BatchLookupRequestDTO;
+import com.jamiewang.secure3d.dto.BatchLookupResultDTO;
 import com.jamiewang.secure3d.dto.CardRangeDataDTO;
 import com.jamiewang.secure3d.service.ILookUpService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -10,21 +14,30 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.constraints.NotBlank;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * REST Controller for 3DS Card Range Lookup API
  *
- * Simplified API with only two essential endpoints:
+ * Simplified API with only the essential endpoints:
  * - Card range lookup by PAN
+ * - Batch card range lookup for several PANs
  * - Bulk import of PRes messages
+ * - Progress of the running chunked import
+ * - Rollback of the last full reload
  */
 @RestController
 @RequestMapping("/api/v1/3d-secure")
@@ -36,6 +49,15 @@ public class SecureController {
     @Autowired
     private ILookUpService lookUpService;
 
+    @Autowired
+    private PResImportPipeline importPipeline;
+
+    @Autowired
+    private CardRangeTableSwap tableSwap;
+
+    @Value("${app.lookup.batch.max-size:1000}")
+    private int batchMaxSize;
+
     /**
      * Lookup card range by PAN
      */
@@ -66,4 +88,84 @@ public class SecureController {
             return ResponseEntity.notFound().build();
         }
     }
+
+    /**
+     * Lookup card ranges for several PANs in one request
+     */
+    @PostMapping("/lookup/batch")
+    @Operation(
+            summary = "Lookup 3DS Method URLs and card ranges for several PANs",
+            description = "Find the matching card range for each Primary Account Number (PAN) in the request. "
+                    + "Results are returned in request order."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Lookup result for every PAN"),
+            @ApiResponse(responseCode = "400", description = "Missing PANs, too many PANs or invalid PAN format")
+    })
+    public ResponseEntity<List<BatchLookupResultDTO>> lookupByPans(@RequestBody BatchLookupRequestDTO request) {
+        List<Long> pans = request == null ? null : request.getPans();
+
+        if (pans == null || pans.isEmpty() || pans.size() > batchMaxSize) {
+            log.info("Rejected batch lookup request with {} PANs", pans == null ? 0 : pans.size());
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (pans.stream().anyMatch(pan -> pan == null || pan < 0)) {
+            log.info("Rejected batch lookup request with invalid PANs");
+            return ResponseEntity.badRequest().build();
+        }
+
+        log.info("Received batch lookup request for {} PANs", pans.size());
+
+        List<Optional<CardRangeDataDTO>> results = lookUpService.lookupByPans(pans);
+
+        List<BatchLookupResultDTO> body = new ArrayList<>(pans.size());
+        for (int i = 0; i < pans.size(); i++) {
+            CardRangeDataDTO cardRange = results.get(i).orElse(null);
+            body.add(new BatchLookupResultDTO(pans.get(i), cardRange != null, cardRange));
+        }
+
+        log.info("Found card ranges for {} of {} PANs", body.stream().filter(BatchLookupResultDTO::isFound).count(),
+                pans.size());
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * Progress of the running chunked import, or of the last one
+     */
+    @GetMapping("/import/progress")
+    @Operation(
+            summary = "Progress of the PRes import",
+            description = "Chunks and card ranges done, throughput, errors and estimated time left of the running "
+                    + "chunked import, or the totals of the last one once finished."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Progress of the running or last import"),
+            @ApiResponse(responseCode = "404", description = "No import has been started")
+    })
+    public ResponseEntity<PResImportPipeline.Progress> getImportProgress() {
+        PResImportPipeline.Progress progress = importPipeline.getProgress();
+        return progress == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(progress);
+    }
+
+    /**
+     * Make the card ranges replaced by the last full reload live again
+     */
+    @PostMapping("/import/rollback")
+    @Operation(
+            summary = "Roll back the last full reload",
+            description = "Swaps the previous generation of the card range tables back in, as kept by the last "
+                    + "reload through staging tables. The in-memory index and the caches reload afterwards."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Previous generation is live again"),
+            @ApiResponse(responseCode = "409", description = "No previous generation, or a reload is running")
+    })
+    public ResponseEntity<Void> rollbackImport() {
+        if (!tableSwap.rollback()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        log.info("Rolled back to the previous card range generation");
+        return ResponseEntity.ok().build();
+    }
 }
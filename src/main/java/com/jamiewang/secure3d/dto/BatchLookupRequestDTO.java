@@ -0,0 +1,14 @@
+package com.jamiewang.secure3d.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchLookupRequestDTO {
+
+    @JsonProperty("pans")
+    private List<Long> pans;
+
+}
@@ -0,0 +1,22 @@
+package com.jamiewang.secure3d.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchLookupResultDTO {
+
+    @JsonProperty("pan")
+    private Long pan;
+
+    @JsonProperty("found")
+    private boolean found;
+
+    @JsonProperty("cardRange")
+    private CardRangeDataDTO cardRange;
+
+}
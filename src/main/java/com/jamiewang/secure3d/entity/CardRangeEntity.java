@@ -9,11 +9,19 @@ import java.util.List;
 
 @Entity
 @Table(name = "card_range", indexes = {
-        @Index(name = "idx_range_composite", columnList = "startRange, endRange")
+        @Index(name = "idx_range_composite", columnList = "startRange, endRange"),
+        @Index(name = "idx_end_range", columnList = "endRange")
 })
 @Data
 public class CardRangeEntity implements IntervalData {
 
+    /**
+     * PRes actionInd values
+     */
+    public static final String ACTION_ADD = "A";
+    public static final String ACTION_MODIFY = "M";
+    public static final String ACTION_DELETE = "D";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -0,0 +1,40 @@
+package com.jamiewang.secure3d.event;
+
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Published by the PRes import once card ranges have been written to the database
+ *
+ * Listeners that keep derived copies of card_range (such as the in-memory index) use it
+ * to resynchronize, normally after the import transaction has committed. The applied changes
+ * are carried along so listeners can update incrementally instead of reloading everything.
+ *
+ * Imports committed on another node are published again locally with remote set, once
+ * relayed by {@link com.jamiewang.secure3d.component.CardRangeChangeRelay}. By then the
+ * database and the shared Redis are already up to date, only node-local copies need updating.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class CardRangesImportedEvent {
+
+    private final String serialNum;
+    private final int importedCount;
+
+    // Ranges as applied, actionInd telling deletes from adds and modifications
+    @ToString.Exclude
+    private final List<CardRangeEntity> changes;
+
+    // Whether the import was committed on another node
+    private final boolean remote;
+
+    public CardRangesImportedEvent(String serialNum, int importedCount, List<CardRangeEntity> changes) {
+        this(serialNum, importedCount, changes, false);
+    }
+
+}
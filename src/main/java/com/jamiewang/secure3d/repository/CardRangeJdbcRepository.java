@@ -0,0 +1,401 @@
+package com.jamiewang.secure3d.repository;
+
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * JDBC access to card_range for bulk reads that should not go through the persistence context
+ *
+ * Rows are read with a server-side cursor (fetch size based) and handed to the caller one
+ * range at a time, so the whole table is never materialized as managed entities or in a list.
+ * Batches of PANs are resolved with one query instead of one query per PAN, and new ranges
+ * are written with multi-row inserts instead of one JPA save per range.
+ */
+@Repository
+@Slf4j
+public class CardRangeJdbcRepository {
+
+    public static final String CARD_RANGE_TABLE = "card_range";
+    public static final String ACS_INFO_TABLE = "acs_info";
+
+    private static final String SELECT_ALL_ORDERED_BY_START_RANGE =
+            "SELECT cr.id, cr.start_range, cr.end_range, cr.action_ind, cr.three_ds_method_url, "
+                    + "cr.acs_start_protocol_version, cr.acs_end_protocol_version, cr.created_at, cr.updated_at, "
+                    + "ai.acs_info_ind "
+                    + "FROM card_range cr LEFT JOIN acs_info ai ON ai.card_range_id = cr.id "
+                    + "ORDER BY cr.start_range, cr.id";
+
+    // Each PAN joins card_range through the range index, the outer ORDER BY groups rows per PAN
+    private static final String SELECT_BY_PANS_IN_RANGE =
+            "SELECT p.pan, cr.id, cr.start_range, cr.end_range, cr.action_ind, cr.three_ds_method_url, "
+                    + "cr.acs_start_protocol_version, cr.acs_end_protocol_version, cr.created_at, cr.updated_at, "
+                    + "ai.acs_info_ind "
+                    + "FROM (%s) p "
+                    + "JOIN card_range cr ON p.pan >= cr.start_range AND p.pan <= cr.end_range "
+                    + "LEFT JOIN acs_info ai ON ai.card_range_id = cr.id "
+                    + "ORDER BY p.pan, cr.id";
+
+    // Closest range end below and range start above each PAN, both through the range indexes
+    private static final String SELECT_NEIGHBOUR_BOUNDS =
+            "SELECT p.pan, "
+                    + "(SELECT MAX(cr.end_range) FROM card_range cr WHERE cr.end_range < p.pan) AS end_below, "
+                    + "(SELECT MIN(cr.start_range) FROM card_range cr WHERE cr.start_range > p.pan) AS start_above "
+                    + "FROM (%s) p";
+
+    private static final String INSERT_CARD_RANGES =
+            "INSERT INTO %s (start_range, end_range, action_ind, three_ds_method_url, "
+                    + "acs_start_protocol_version, acs_end_protocol_version, created_at, updated_at) VALUES ";
+    private static final String CARD_RANGE_VALUES = "(?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_ACS_INFO = "INSERT INTO %s (card_range_id, acs_info_ind) VALUES ";
+    private static final String ACS_INFO_VALUES = "(?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.index.warmup.fetch-size:10000}")
+    private int fetchSize;
+
+    @Value("${app.import.bulk.batch-size:1000}")
+    private int insertBatchSize;
+
+    /**
+     * Stream all card ranges ordered by start range
+     *
+     * Each range is passed to the consumer with its acsInfoInd values already attached.
+     * The entities are detached and not tracked by any persistence context.
+     *
+     * @param consumer Callback receiving each card range in start range order
+     * @return Number of card ranges streamed
+     */
+    public int streamAllOrderedByStartRange(Consumer<CardRangeEntity> consumer) {
+        CardRangeRowAssembler assembler = new CardRangeRowAssembler(consumer);
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    SELECT_ALL_ORDERED_BY_START_RANGE, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, assembler);
+
+        return assembler.finish();
+    }
+
+    /**
+     * Find the card range containing each of several PANs with a single query
+     *
+     * When a PAN falls into several ranges the narrowest one wins, ties going to the range
+     * stored last, matching what the in-memory index resolves.
+     *
+     * @param pans Distinct PANs to resolve
+     * @return Matching card range per PAN, PANs without a match are absent
+     */
+    public Map<Long, CardRangeEntity> findByPansInRange(Collection<Long> pans) {
+        if (pans == null || pans.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        String panTable = String.join(" UNION ALL ", Collections.nCopies(pans.size(), "SELECT ? AS pan"));
+        PanMatchCollector collector = new PanMatchCollector();
+        jdbcTemplate.query(String.format(SELECT_BY_PANS_IN_RANGE, panTable), collector, pans.toArray());
+
+        log.debug("Resolved {} of {} PANs in one query", collector.matches.size(), pans.size());
+        return collector.matches;
+    }
+
+    /**
+     * Find the closest range bounds around each of several PANs with a single query
+     *
+     * The batch counterpart of ICardRangeRepository.findMaxEndRangeBelow and findMinStartRangeAbove.
+     *
+     * @param pans Distinct PANs
+     * @return Highest end range below and lowest start range above, per PAN
+     */
+    public Map<Long, NeighbourBounds> findNeighbourBounds(Collection<Long> pans) {
+        Map<Long, NeighbourBounds> bounds = new HashMap<>();
+        if (pans == null || pans.isEmpty()) {
+            return bounds;
+        }
+
+        String panTable = String.join(" UNION ALL ", Collections.nCopies(pans.size(), "SELECT ? AS pan"));
+        jdbcTemplate.query(String.format(SELECT_NEIGHBOUR_BOUNDS, panTable), rs -> {
+            bounds.put(rs.getLong("pan"), new NeighbourBounds(
+                    rs.getObject("end_below", Long.class), rs.getObject("start_above", Long.class)));
+        }, pans.toArray());
+        return bounds;
+    }
+
+    /**
+     * Insert new card ranges and their acsInfoInd values with multi-row statements
+     *
+     * Ranges are written in batches of app.import.bulk.batch-size rows per statement, each
+     * followed by its acs_info rows, within the surrounding transaction. The generated ids
+     * are set on the entities. A batch whose acs_info rows fail is deleted again before the
+     * exception is thrown, so a failed call leaves no part of its failing batch behind.
+     *
+     * @param ranges New card ranges, ids unset
+     * @return Number of card ranges inserted
+     */
+    public int insertAll(List<CardRangeEntity> ranges) {
+        return insertAll(ranges, CARD_RANGE_TABLE, ACS_INFO_TABLE);
+    }
+
+    /**
+     * Insert new card ranges into another pair of tables shaped like card_range and acs_info
+     *
+     * @param ranges New card ranges, ids unset
+     * @param cardRangeTable Table receiving the card ranges
+     * @param acsInfoTable Table receiving their acsInfoInd values
+     * @return Number of card ranges inserted
+     * @see #insertAll(List)
+     */
+    public int insertAll(List<CardRangeEntity> ranges, String cardRangeTable, String acsInfoTable) {
+        long startTime = System.currentTimeMillis();
+        int acsInfoRows = 0;
+
+        for (int from = 0; from < ranges.size(); from += insertBatchSize) {
+            List<CardRangeEntity> batch = ranges.subList(from, Math.min(ranges.size(), from + insertBatchSize));
+            insertCardRanges(batch, cardRangeTable);
+            try {
+                acsInfoRows += insertAcsInfo(batch, acsInfoTable);
+            } catch (RuntimeException e) {
+                deleteInserted(batch, cardRangeTable, acsInfoTable);
+                throw e;
+            }
+        }
+
+        log.debug("Inserted {} card ranges into {} and {} rows into {} in {} ms",
+                ranges.size(), cardRangeTable, acsInfoRows, acsInfoTable, System.currentTimeMillis() - startTime);
+        return ranges.size();
+    }
+
+    private void insertCardRanges(List<CardRangeEntity> batch, String cardRangeTable) {
+        String sql = String.format(INSERT_CARD_RANGES, cardRangeTable) + String.join(", ", Collections.nCopies(batch.size(), CARD_RANGE_VALUES));
+
+        jdbcTemplate.execute(
+                (Connection connection) -> connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS),
+                (PreparedStatement statement) -> {
+                    int index = 1;
+                    for (CardRangeEntity range : batch) {
+                        statement.setObject(index++, range.getStartRange());
+                        statement.setObject(index++, range.getEndRange());
+                        statement.setString(index++, range.getActionInd());
+                        statement.setString(index++, range.getThreeDsMethodUrl());
+                        statement.setString(index++, range.getAcsStartProtocolVersion());
+                        statement.setString(index++, range.getAcsEndProtocolVersion());
+                        statement.setObject(index++, range.getCreatedAt());
+                        statement.setObject(index++, range.getUpdatedAt());
+                    }
+                    statement.executeUpdate();
+
+                    // One key per row in listed order, a multi-row insert gets consecutive ids
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        for (CardRangeEntity range : batch) {
+                            if (!keys.next()) {
+                                throw new SQLException("Fewer generated keys than inserted card ranges");
+                            }
+                            range.setId(keys.getLong(1));
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    private int insertAcsInfo(List<CardRangeEntity> batch, String acsInfoTable) {
+        List<Object> values = new ArrayList<>();
+        for (CardRangeEntity range : batch) {
+            if (range.getAcsInfoInd() == null) {
+                continue;
+            }
+            for (String acsInfoInd : range.getAcsInfoInd()) {
+                values.add(range.getId());
+                values.add(acsInfoInd);
+            }
+        }
+
+        int rows = values.size() / 2;
+        for (int from = 0; from < rows; from += insertBatchSize) {
+            int count = Math.min(rows - from, insertBatchSize);
+            String sql = String.format(INSERT_ACS_INFO, acsInfoTable) + String.join(", ", Collections.nCopies(count, ACS_INFO_VALUES));
+            jdbcTemplate.update(sql, values.subList(from * 2, (from + count) * 2).toArray());
+        }
+        return rows;
+    }
+
+    private void deleteInserted(List<CardRangeEntity> batch, String cardRangeTable, String acsInfoTable) {
+        String ids = String.join(", ", Collections.nCopies(batch.size(), "?"));
+        Object[] args = new Object[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            args[i] = batch.get(i).getId();
+            batch.get(i).setId(null);
+        }
+        jdbcTemplate.update("DELETE FROM " + acsInfoTable + " WHERE card_range_id IN (" + ids + ")", args);
+        jdbcTemplate.update("DELETE FROM " + cardRangeTable + " WHERE id IN (" + ids + ")", args);
+    }
+
+    private static CardRangeEntity mapCardRange(ResultSet rs) throws SQLException {
+        CardRangeEntity range = new CardRangeEntity();
+        range.setId(rs.getLong("id"));
+        range.setStartRange(rs.getLong("start_range"));
+        range.setEndRange(rs.getLong("end_range"));
+        range.setActionInd(rs.getString("action_ind"));
+        range.setThreeDsMethodUrl(rs.getString("three_ds_method_url"));
+        range.setAcsStartProtocolVersion(rs.getString("acs_start_protocol_version"));
+        range.setAcsEndProtocolVersion(rs.getString("acs_end_protocol_version"));
+        range.setCreatedAt(rs.getObject("created_at", LocalDateTime.class));
+        range.setUpdatedAt(rs.getObject("updated_at", LocalDateTime.class));
+        range.setAcsInfoInd(new ArrayList<>(2));
+        return range;
+    }
+
+    /**
+     * Check whether a range wins over another one containing the same PAN
+     */
+    private static boolean isMoreSpecific(CardRangeEntity candidate, CardRangeEntity current) {
+        int byWidth = Long.compare(candidate.getEndRange() - candidate.getStartRange(),
+                current.getEndRange() - current.getStartRange());
+        if (byWidth != 0) {
+            return byWidth < 0;
+        }
+
+        LocalDateTime candidateUpdatedAt = candidate.getUpdatedAt();
+        LocalDateTime currentUpdatedAt = current.getUpdatedAt();
+        if (candidateUpdatedAt != null && currentUpdatedAt != null && !candidateUpdatedAt.equals(currentUpdatedAt)) {
+            return candidateUpdatedAt.isAfter(currentUpdatedAt);
+        }
+        return candidate.getId() > current.getId();
+    }
+
+    /**
+     * Closest range bounds on either side of a PAN
+     */
+    public static final class NeighbourBounds {
+        private final Long endBelow;
+        private final Long startAbove;
+
+        public NeighbourBounds(Long endBelow, Long startAbove) {
+            this.endBelow = endBelow;
+            this.startAbove = startAbove;
+        }
+
+        /**
+         * @return Highest end range below the PAN, null if no range ends below it
+         */
+        public Long getEndBelow() {
+            return endBelow;
+        }
+
+        /**
+         * @return Lowest start range above the PAN, null if no range starts above it
+         */
+        public Long getStartAbove() {
+            return startAbove;
+        }
+    }
+
+    /**
+     * Collects the most specific range per PAN from the PAN x card_range x acs_info join rows
+     */
+    private static class PanMatchCollector implements RowCallbackHandler {
+
+        private final Map<Long, CardRangeEntity> matches = new HashMap<>();
+        // A range matching several PANs is mapped once, its acsInfoInd rows repeat per PAN
+        private final Map<Long, CardRangeEntity> ranges = new HashMap<>();
+        private final Set<Long> completedRanges = new HashSet<>();
+        private long currentPan;
+        private Long currentId;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long pan = rs.getLong("pan");
+            long id = rs.getLong("id");
+
+            if (currentId == null || currentPan != pan || currentId != id) {
+                if (currentId != null) {
+                    completedRanges.add(currentId);
+                }
+                currentPan = pan;
+                currentId = id;
+
+                CardRangeEntity range = ranges.get(id);
+                if (range == null) {
+                    range = mapCardRange(rs);
+                    ranges.put(id, range);
+                }
+
+                CardRangeEntity match = matches.get(pan);
+                if (match == null || isMoreSpecific(range, match)) {
+                    matches.put(pan, range);
+                }
+            }
+
+            String acsInfoInd = rs.getString("acs_info_ind");
+            if (acsInfoInd != null && !completedRanges.contains(id)) {
+                ranges.get(id).getAcsInfoInd().add(acsInfoInd);
+            }
+        }
+    }
+
+    /**
+     * Folds the card_range x acs_info join rows back into one entity per range
+     */
+    private static class CardRangeRowAssembler implements RowCallbackHandler {
+
+        private final Consumer<CardRangeEntity> consumer;
+        private CardRangeEntity current;
+        private int count = 0;
+
+        CardRangeRowAssembler(Consumer<CardRangeEntity> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long id = rs.getLong("id");
+
+            if (current == null || !current.getId().equals(id)) {
+                emitCurrent();
+                current = mapCardRange(rs);
+            }
+
+            String acsInfoInd = rs.getString("acs_info_ind");
+            if (acsInfoInd != null) {
+                current.getAcsInfoInd().add(acsInfoInd);
+            }
+        }
+
+        int finish() {
+            emitCurrent();
+            return count;
+        }
+
+        private void emitCurrent() {
+            if (current != null) {
+                consumer.accept(current);
+                current = null;
+                count++;
+            }
+        }
+    }
+}
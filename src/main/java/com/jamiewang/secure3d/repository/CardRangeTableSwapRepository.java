@@ -0,0 +1,216 @@
+package com.jamiewang.secure3d.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.jamiewang.secure3d.repository.CardRangeJdbcRepository.ACS_INFO_TABLE;
+import static com.jamiewang.secure3d.repository.CardRangeJdbcRepository.CARD_RANGE_TABLE;
+
+/**
+ * Blue/green generations of the card_range and acs_info tables
+ *
+ * A full reload is written into staging copies of both tables, which live lookups never read.
+ * Secondary indexes are dropped from the staging tables while they are loaded and built once
+ * at the end, which is cheaper than maintaining them row by row, together with the foreign key
+ * of acs_info on card_range that CREATE TABLE ... LIKE does not copy. A single RENAME TABLE then
+ * makes the staging tables live and keeps the previous ones as the old generation, atomically
+ * for every reader: a query sees either the old or the new tables, never a mix or a partial
+ * load. The old generation stays until the next swap, so a reload can be rolled back with
+ * another rename.
+ *
+ * RENAME TABLE waits for statements running against the tables to complete and holds back
+ * new ones meanwhile, so long-running reads (such as a cursor streaming the index) delay the
+ * swap rather than fail. DDL commits implicitly, none of this may run inside a transaction.
+ */
+@Repository
+@Slf4j
+public class CardRangeTableSwapRepository {
+
+    public static final String CARD_RANGE_STAGING_TABLE = CARD_RANGE_TABLE + "_staging";
+    public static final String ACS_INFO_STAGING_TABLE = ACS_INFO_TABLE + "_staging";
+    public static final String CARD_RANGE_OLD_TABLE = CARD_RANGE_TABLE + "_old";
+    public static final String ACS_INFO_OLD_TABLE = ACS_INFO_TABLE + "_old";
+
+    private static final String SELECT_SECONDARY_INDEXES =
+            "SELECT index_name, non_unique, column_name FROM information_schema.statistics "
+                    + "WHERE table_schema = DATABASE() AND table_name = ? AND index_name <> 'PRIMARY' "
+                    + "ORDER BY index_name, seq_in_index";
+
+    private static final String SELECT_FOREIGN_KEY_NAMES =
+            "SELECT constraint_name FROM information_schema.table_constraints "
+                    + "WHERE table_schema = DATABASE() AND constraint_type = 'FOREIGN KEY'";
+
+    private static final String FOREIGN_KEY_PREFIX = "fk_" + ACS_INFO_TABLE + "_" + CARD_RANGE_TABLE + "_";
+
+    private static final String COUNT_TABLES =
+            "SELECT COUNT(*) FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name IN (?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Create empty staging tables shaped like the live ones, without their secondary indexes
+     *
+     * Staging tables left by an earlier reload are dropped first.
+     *
+     * @return Definitions of the dropped secondary indexes per staging table, for {@link #buildIndexes}
+     */
+    public Map<String, List<String>> createStaging() {
+        dropTables(ACS_INFO_STAGING_TABLE, CARD_RANGE_STAGING_TABLE);
+        jdbcTemplate.execute("CREATE TABLE " + CARD_RANGE_STAGING_TABLE + " LIKE " + CARD_RANGE_TABLE);
+        jdbcTemplate.execute("CREATE TABLE " + ACS_INFO_STAGING_TABLE + " LIKE " + ACS_INFO_TABLE);
+
+        Map<String, List<String>> indexes = new LinkedHashMap<>();
+        for (String table : List.of(CARD_RANGE_STAGING_TABLE, ACS_INFO_STAGING_TABLE)) {
+            Map<String, IndexDefinition> definitions = secondaryIndexes(table);
+            if (definitions.isEmpty()) {
+                continue;
+            }
+
+            List<String> drops = new ArrayList<>();
+            List<String> adds = new ArrayList<>();
+            for (IndexDefinition definition : definitions.values()) {
+                drops.add("DROP INDEX " + definition.name);
+                adds.add(definition.toAddClause());
+            }
+            jdbcTemplate.execute("ALTER TABLE " + table + " " + String.join(", ", drops));
+            indexes.put(table, adds);
+        }
+
+        log.info("Created staging tables {} and {}, secondary indexes deferred: {}",
+                CARD_RANGE_STAGING_TABLE, ACS_INFO_STAGING_TABLE, indexes);
+        return indexes;
+    }
+
+    /**
+     * Build the secondary indexes dropped by {@link #createStaging} and the acs_info foreign key,
+     * one ALTER TABLE per table
+     *
+     * @param indexes Index definitions per staging table
+     */
+    public void buildIndexes(Map<String, List<String>> indexes) {
+        Map<String, List<String>> clauses = new LinkedHashMap<>();
+        indexes.forEach((table, adds) -> clauses.put(table, new ArrayList<>(adds)));
+        // Added with the indexes, the foreign key reuses the card_range_id index instead of building its own
+        clauses.computeIfAbsent(ACS_INFO_STAGING_TABLE, table -> new ArrayList<>()).add(foreignKeyClause());
+
+        for (Map.Entry<String, List<String>> table : clauses.entrySet()) {
+            long startTime = System.currentTimeMillis();
+            jdbcTemplate.execute("ALTER TABLE " + table.getKey() + " " + String.join(", ", table.getValue()));
+            log.info("Built {} indexes and constraints on {} in {} ms",
+                    table.getValue().size(), table.getKey(), System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * Count the rows of a table
+     *
+     * @param table Table name, one of the constants of this class or {@link CardRangeJdbcRepository}
+     * @return Number of rows
+     */
+    public long countRows(String table) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Make the staging tables live, keeping the live ones as the old generation
+     *
+     * The previous old generation is dropped.
+     */
+    public void swap() {
+        dropTables(ACS_INFO_OLD_TABLE, CARD_RANGE_OLD_TABLE);
+        jdbcTemplate.execute("RENAME TABLE "
+                + CARD_RANGE_TABLE + " TO " + CARD_RANGE_OLD_TABLE + ", "
+                + CARD_RANGE_STAGING_TABLE + " TO " + CARD_RANGE_TABLE + ", "
+                + ACS_INFO_TABLE + " TO " + ACS_INFO_OLD_TABLE + ", "
+                + ACS_INFO_STAGING_TABLE + " TO " + ACS_INFO_TABLE);
+        log.info("Swapped staging card range tables in, previous generation kept as {} and {}",
+                CARD_RANGE_OLD_TABLE, ACS_INFO_OLD_TABLE);
+    }
+
+    /**
+     * Make the old generation live again, keeping the live tables as staging
+     *
+     * @return false if there is no old generation to go back to
+     */
+    public boolean rollback() {
+        Long oldTables = jdbcTemplate.queryForObject(COUNT_TABLES, Long.class, CARD_RANGE_OLD_TABLE, ACS_INFO_OLD_TABLE);
+        if (oldTables == null || oldTables < 2) {
+            log.warn("No previous card range generation to roll back to");
+            return false;
+        }
+
+        dropTables(ACS_INFO_STAGING_TABLE, CARD_RANGE_STAGING_TABLE);
+        jdbcTemplate.execute("RENAME TABLE "
+                + CARD_RANGE_TABLE + " TO " + CARD_RANGE_STAGING_TABLE + ", "
+                + CARD_RANGE_OLD_TABLE + " TO " + CARD_RANGE_TABLE + ", "
+                + ACS_INFO_TABLE + " TO " + ACS_INFO_STAGING_TABLE + ", "
+                + ACS_INFO_OLD_TABLE + " TO " + ACS_INFO_TABLE);
+        log.info("Rolled card range tables back to the previous generation");
+        return true;
+    }
+
+    /**
+     * Drop tables if they exist, children first so no foreign key blocks the drop
+     */
+    private void dropTables(String... tables) {
+        for (String table : tables) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+        }
+    }
+
+    /**
+     * Foreign key of acs_info_staging on card_range_staging, as JPA maps the acs_info collection
+     *
+     * Constraint names are unique per schema and stay with their table through renames, so the
+     * first name unused by the live and old generations is taken.
+     */
+    private String foreignKeyClause() {
+        Set<String> taken = new HashSet<>(jdbcTemplate.queryForList(SELECT_FOREIGN_KEY_NAMES, String.class));
+        int generation = 1;
+        while (taken.contains(FOREIGN_KEY_PREFIX + generation)) {
+            generation++;
+        }
+        return "ADD CONSTRAINT " + FOREIGN_KEY_PREFIX + generation
+                + " FOREIGN KEY (card_range_id) REFERENCES " + CARD_RANGE_STAGING_TABLE + " (id)";
+    }
+
+    private Map<String, IndexDefinition> secondaryIndexes(String table) {
+        Map<String, IndexDefinition> definitions = new LinkedHashMap<>();
+        jdbcTemplate.query(SELECT_SECONDARY_INDEXES, rs -> {
+            String name = rs.getString("index_name");
+            boolean unique = !rs.getBoolean("non_unique");
+            definitions.computeIfAbsent(name, key -> new IndexDefinition(key, unique))
+                    .columns.add(rs.getString("column_name"));
+        }, table);
+        return definitions;
+    }
+
+    /**
+     * Name, uniqueness and columns (in index order) of a secondary index
+     */
+    private static class IndexDefinition {
+        private final String name;
+        private final boolean unique;
+        private final List<String> columns = new ArrayList<>();
+
+        IndexDefinition(String name, boolean unique) {
+            this.name = name;
+            this.unique = unique;
+        }
+
+        String toAddClause() {
+            return "ADD " + (unique ? "UNIQUE " : "") + "INDEX " + name + " (" + String.join(", ", columns) + ")";
+        }
+    }
+}
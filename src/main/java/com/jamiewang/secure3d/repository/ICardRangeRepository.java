@@ -7,19 +7,56 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
-import java.util.Optional;
 
 @Repository
 public interface ICardRangeRepository extends JpaRepository<CardRangeEntity, Long> {
 
     /**
-     * Find the card range that contains the given PAN
+     * Find the card ranges that contain the given PAN, most specific first
+     *
+     * Nested ranges and duplicates can all contain a PAN. The narrowest one comes first, ties
+     * going to the range updated last, then stored last, as CardRangeJdbcRepository.findByPansInRange
+     * and the in-memory index resolve them. acsInfoInd is fetched in the same query so the
+     * result can be mapped without an open persistence context.
      *
      * @param pan The Primary Account Number as Long to search for
-     * @return Optional containing the matching card range, empty if not found
+     * @return Matching card ranges, the one to use first, empty if not found
+     */
+    @Query("SELECT cr FROM CardRangeEntity cr LEFT JOIN FETCH cr.acsInfoInd WHERE :pan >= cr.startRange AND :pan <= cr.endRange "
+            + "ORDER BY (cr.endRange - cr.startRange), cr.updatedAt DESC, cr.id DESC")
+    List<CardRangeEntity> findByPanInRange(@Param("pan") Long pan);
+
+    /**
+     * Find the highest end range below a PAN
+     *
+     * Together with findMinStartRangeAbove this bounds the gap around a PAN no range covers.
+     *
+     * @param pan The Primary Account Number as Long
+     * @return Highest end range below the PAN, null if no range ends below it
+     */
+    @Query("SELECT MAX(cr.endRange) FROM CardRangeEntity cr WHERE cr.endRange < :pan")
+    Long findMaxEndRangeBelow(@Param("pan") Long pan);
+
+    /**
+     * Find the lowest start range above a PAN
+     *
+     * @param pan The Primary Account Number as Long
+     * @return Lowest start range above the PAN, null if no range starts above it
+     */
+    @Query("SELECT MIN(cr.startRange) FROM CardRangeEntity cr WHERE cr.startRange > :pan")
+    Long findMinStartRangeAbove(@Param("pan") Long pan);
+
+    /**
+     * Find the card ranges with exactly the given bounds
+     *
+     * PRes modify and delete actions identify a range by its bounds. More than one row can
+     * match when the same range was imported several times.
+     *
+     * @param startRange Start of the range
+     * @param endRange End of the range
+     * @return Matching card ranges, empty if none
      */
-    @Query("SELECT cr FROM CardRangeEntity cr WHERE :pan >= cr.startRange AND :pan <= cr.endRange")
-    Optional<CardRangeEntity> findByPanInRange(@Param("pan") Long pan);
+    List<CardRangeEntity> findByStartRangeAndEndRange(Long startRange, Long endRange);
 
     /**
      * Find all card ranges ordered by start range for efficient loading
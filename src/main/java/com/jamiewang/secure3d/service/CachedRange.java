@@ -0,0 +1,26 @@
+package com.jamiewang.secure3d.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Object covering a range of values, as written to or read from a range-keyed cache
+ *
+ * @param <T> Type of the cached object
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class CachedRange<T> {
+
+    // Start of the range (inclusive, not negative)
+    private final long startRange;
+
+    // End of the range (inclusive)
+    private final long endRange;
+
+    // Object to store
+    private final T value;
+
+}
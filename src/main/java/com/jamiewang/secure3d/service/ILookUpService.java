@@ -2,6 +2,7 @@ package com.jamiewang.secure3d.service;
 
 import com.jamiewang.secure3d.dto.CardRangeDataDTO;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface ILookUpService {
@@ -14,4 +15,12 @@ public interface ILookUpService {
      */
     Optional<CardRangeDataDTO> lookupByPan(Long pan);
 
+    /**
+     * Lookup card ranges for several PANs at once
+     *
+     * @param pans Primary Account Numbers
+     * @return Lookup response per PAN in request order, empty where not found
+     */
+    List<Optional<CardRangeDataDTO>> lookupByPans(List<Long> pans);
+
 }
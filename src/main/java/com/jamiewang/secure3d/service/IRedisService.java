@@ -1,19 +1,34 @@
 package com.jamiewang.secure3d.service;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface IRedisService {
 
     /**
-     * Write an object to Redis with custom TTL
+     * Write an object to Redis with the TTL of its key prefix
      *
      * @param key Redis key
-     * @param value Object to store (will be serialized to JSON)
+     * @param value Object to store (will be encoded by the value codec)
      * @param <T> Type of object to store
      * @return true if successfully written, false otherwise
      */
     public <T> boolean writeOne(String key, T value);
 
+    /**
+     * Write an object to Redis with custom TTL
+     *
+     * @param key Redis key
+     * @param value Object to store (will be encoded by the value codec)
+     * @param ttl Expiry before jitter, null for the TTL of the key prefix, zero or negative for none
+     * @param <T> Type of object to store
+     * @return true if successfully written, false otherwise
+     */
+    public <T> boolean writeOne(String key, T value, Duration ttl);
+
     /**
      * Find an object in Redis by key
      *
@@ -24,6 +39,159 @@ public interface IRedisService {
      */
     public <T> Optional<T> findOne(String key, Class<T> valueType);
 
+    /**
+     * Find several objects in Redis with a single MGET round trip
+     *
+     * @param keys Redis keys
+     * @param valueType Class type of the objects to deserialize
+     * @param <T> Type of objects to retrieve
+     * @return One Optional per key, in key order, empty if not found or unreadable
+     */
+    public <T> List<Optional<T>> findMany(List<String> keys, Class<T> valueType);
+
+    /**
+     * Write several objects to Redis, pipelined in chunks instead of one round trip per key
+     *
+     * @param values Objects to store by Redis key (will be encoded by the value codec)
+     * @param <T> Type of objects to store
+     * @return Keys written and keys that failed with the reason
+     */
+    public <T> RedisBatchResult writeMany(Map<String, T> values);
+
+    /**
+     * Delete several keys from Redis, pipelined in chunks instead of one round trip per key
+     *
+     * @param keys Redis keys to delete
+     * @return Keys deleted, keys that did not exist and keys that failed with the reason
+     */
+    public RedisBatchResult deleteMany(Collection<String> keys);
+
+    /**
+     * Write an object covering a range of values to a range-keyed cache
+     *
+     * The cache holds one entry per range, so any value inside the range finds it. Cached
+     * ranges overlapping the new one are evicted.
+     *
+     * @param key Name of the range-keyed cache
+     * @param startRange Start of the range (inclusive, not negative)
+     * @param endRange End of the range (inclusive)
+     * @param value Object to store (will be encoded by the value codec)
+     * @param <T> Type of object to store
+     * @return true if successfully written, false otherwise
+     */
+    public <T> boolean writeRange(String key, long startRange, long endRange, T value);
+
+    /**
+     * Write an object covering a range of values to a range-keyed cache, with custom TTL
+     *
+     * @param key Name of the range-keyed cache
+     * @param startRange Start of the range (inclusive, not negative)
+     * @param endRange End of the range (inclusive)
+     * @param value Object to store (will be encoded by the value codec)
+     * @param ttl Expiry before jitter, null for the TTL of the cache, zero or negative for none
+     * @param <T> Type of object to store
+     * @return true if successfully written, false otherwise
+     */
+    public <T> boolean writeRange(String key, long startRange, long endRange, T value, Duration ttl);
+
+    /**
+     * Write several ranges to a range-keyed cache, one script call per chunk of ranges
+     *
+     * @param key Name of the range-keyed cache
+     * @param ranges Ranges and the objects covering them (will be encoded by the value codec)
+     * @param ttl Expiry before jitter, null for the TTL of the cache, zero or negative for none
+     * @param <T> Type of objects to store
+     * @return Ranges written and ranges that failed with the reason, each named "start-end"
+     */
+    public <T> RedisBatchResult writeRanges(String key, List<CachedRange<T>> ranges, Duration ttl);
+
+    /**
+     * Find the object of the range containing a value, in one round trip
+     *
+     * @param key Name of the range-keyed cache
+     * @param value Value to look up
+     * @param valueType Class type of the object to deserialize
+     * @param <T> Type of object to retrieve
+     * @return Optional containing the object if a cached range contains the value, empty otherwise
+     */
+    public <T> Optional<T> findInRange(String key, long value, Class<T> valueType);
+
+    /**
+     * Find the objects of the ranges containing several values, in one round trip
+     *
+     * @param key Name of the range-keyed cache
+     * @param values Values to look up
+     * @param valueType Class type of the objects to deserialize
+     * @param <T> Type of objects to retrieve
+     * @return One Optional per value, in value order, empty where no cached range contains it
+     */
+    public <T> List<Optional<T>> findManyInRange(String key, List<Long> values, Class<T> valueType);
+
+    /**
+     * Find the range containing a value, with its bounds and object, in one round trip
+     *
+     * @param key Name of the range-keyed cache
+     * @param value Value to look up
+     * @param valueType Class type of the object to deserialize
+     * @param <T> Type of object to retrieve
+     * @return Optional containing the cached range if one contains the value, empty otherwise
+     */
+    public <T> Optional<CachedRange<T>> findRange(String key, long value, Class<T> valueType);
+
+    /**
+     * Find the ranges containing several values, with their bounds and objects, in one round trip
+     *
+     * @param key Name of the range-keyed cache
+     * @param values Values to look up
+     * @param valueType Class type of the objects to deserialize
+     * @param <T> Type of objects to retrieve
+     * @return One Optional per value, in value order, empty where no cached range contains it
+     */
+    public <T> List<Optional<CachedRange<T>>> findRanges(String key, List<Long> values, Class<T> valueType);
+
+    /**
+     * Find the ranges containing several values in a range-keyed cache, or else in a fallback cache, in one round trip
+     *
+     * @param key Name of the range-keyed cache
+     * @param valueType Class type of the objects of the cache
+     * @param fallbackKey Name of the range-keyed cache asked for values the first does not have, null for none
+     * @param fallbackType Class type of the objects of the fallback cache
+     * @param values Values to look up
+     * @param <T> Type of the objects of the cache
+     * @param <F> Type of the objects of the fallback cache
+     * @return One lookup per value, in value order
+     */
+    public <T, F> List<RangeLookup<T, F>> findRanges(String key, Class<T> valueType,
+                                                     String fallbackKey, Class<F> fallbackType, List<Long> values);
+
+    /**
+     * Delete the entry of a range from a range-keyed cache
+     *
+     * @param key Name of the range-keyed cache
+     * @param startRange Start of the range
+     * @param endRange End of the range
+     * @return true if the range was cached and deleted, false otherwise
+     */
+    public boolean deleteRange(String key, long startRange, long endRange);
+
+    /**
+     * Delete every cached range overlapping a range of values
+     *
+     * @param key Name of the range-keyed cache
+     * @param startRange Start of the range (inclusive)
+     * @param endRange End of the range (inclusive)
+     * @return Number of cached ranges deleted
+     */
+    public int deleteOverlappingRanges(String key, long startRange, long endRange);
+
+    /**
+     * Delete a whole range-keyed cache
+     *
+     * @param key Name of the range-keyed cache
+     * @return true if the cache existed and was deleted, false otherwise
+     */
+    public boolean deleteRanges(String key);
+
     /**
      * Delete an object from Redis by key
      *
@@ -7,4 +7,8 @@ public interface IStorePResService {
 
     BulkImportResponseDTO processPResMessage(PResMessageDTO presMessage);
 
+    BulkImportResponseDTO processPResChunk(PResMessageDTO chunk);
+
+    void finishChunkedImport(String serialNum, int importedCount);
+
 }
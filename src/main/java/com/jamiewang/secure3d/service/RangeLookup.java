@@ -0,0 +1,48 @@
+package com.jamiewang.secure3d.service;
+
+import lombok.AllArgsConstructor;
+import lombok.ToString;
+
+import java.util.Optional;
+
+/**
+ * Outcome of looking a value up in a range-keyed cache and its fallback cache
+ *
+ * The fallback cache is only asked for values no range of the first cache contains, so at
+ * most one of the two is present.
+ *
+ * @param <T> Type of the objects of the cache
+ * @param <F> Type of the objects of the fallback cache
+ */
+@AllArgsConstructor
+@ToString
+public class RangeLookup<T, F> {
+
+    // Range of the cache containing the value, null if none
+    private final CachedRange<T> range;
+
+    // Range of the fallback cache containing the value, null if none or not asked
+    private final CachedRange<F> fallback;
+
+    /**
+     * Create the outcome of a value found in neither cache
+     */
+    public static <T, F> RangeLookup<T, F> none() {
+        return new RangeLookup<>(null, null);
+    }
+
+    /**
+     * @return Range of the cache containing the value, empty if none
+     */
+    public Optional<CachedRange<T>> getRange() {
+        return Optional.ofNullable(range);
+    }
+
+    /**
+     * @return Range of the fallback cache containing the value, empty if none or not asked
+     */
+    public Optional<CachedRange<F>> getFallback() {
+        return Optional.ofNullable(fallback);
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.jamiewang.secure3d.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-key outcome of a multi-key Redis operation
+ *
+ * A batch is not all-or-nothing: some keys can fail (unserializable value, command error,
+ * connection lost mid-pipeline) while the others are applied.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class RedisBatchResult {
+
+    // Keys the operation was applied to
+    private final List<String> succeeded;
+
+    // Keys with nothing to apply, such as deleting a key that does not exist
+    private final List<String> skipped;
+
+    // Keys that failed, with the reason
+    private final Map<String, String> failed;
+
+    /**
+     * Check whether every key was applied or skipped
+     *
+     * @return true if no key failed
+     */
+    public boolean isComplete() {
+        return failed.isEmpty();
+    }
+
+}
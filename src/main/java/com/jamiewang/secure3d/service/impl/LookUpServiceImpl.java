@@ -1,16 +1,42 @@
 package com.jamiewang.secure3d.service.impl;
 
+import com.jamiewang.secure3d.component.SharedIntervalTreeComponent;
 import com.jamiewang.secure3d.dto.CardRangeDataDTO;
 import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.event.CardRangesImportedEvent;
+import com.jamiewang.secure3d.repository.CardRangeJdbcRepository;
 import com.jamiewang.secure3d.repository.ICardRangeRepository;
+import com.jamiewang.secure3d.service.CachedRange;
 import com.jamiewang.secure3d.service.ILookUpService;
 import com.jamiewang.secure3d.service.IRedisService;
+import com.jamiewang.secure3d.service.RangeLookup;
+import com.jamiewang.secure3d.service.RedisBatchResult;
+import com.jamiewang.secure3d.util.RangeNearCache;
+import com.jamiewang.secure3d.util.SingleFlight;
+import com.jamiewang.secure3d.util.WriteBehindQueue;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 @Slf4j
@@ -19,18 +45,138 @@ public class LookUpServiceImpl implements ILookUpService {
     @Autowired
     private ICardRangeRepository cardRangeRepository;
 
+    @Autowired
+    private CardRangeJdbcRepository cardRangeJdbcRepository;
+
     @Autowired
     private IRedisService redisService;
 
-    private static final String LOOK_UP_FUNC_PREFIX = "look_up_";
+    @Autowired
+    private SharedIntervalTreeComponent sharedIntervalTreeComponent;
+
+    @Value("${app.lookup.gap.enabled:true}")
+    private boolean gapCacheEnabled;
+
+    @Value("${app.lookup.gap.ttl-seconds:60}")
+    private long gapTtlSeconds;
+
+    @Value("${app.lookup.cache.clear-threshold:1000}")
+    private int cacheClearThreshold;
+
+    @Value("${app.lookup.single-flight.enabled:true}")
+    private boolean singleFlightEnabled;
+
+    @Value("${app.lookup.single-flight.timeout-ms:2000}")
+    private long singleFlightTimeoutMs;
+
+    @Value("${app.lookup.near-cache.enabled:true}")
+    private boolean nearCacheEnabled;
+
+    @Value("${app.lookup.near-cache.max-size:10000}")
+    private long nearCacheMaxSize;
+
+    @Value("${app.lookup.near-cache.ttl-seconds:30}")
+    private long nearCacheTtlSeconds;
+
+    @Value("${app.lookup.write-behind.enabled:true}")
+    private boolean writeBehindEnabled;
+
+    @Value("${app.lookup.write-behind.capacity:10000}")
+    private int writeBehindCapacity;
+
+    @Value("${app.lookup.write-behind.batch-size:500}")
+    private int writeBehindBatchSize;
+
+    @Value("${app.lookup.write-behind.linger-ms:5}")
+    private long writeBehindLingerMs;
+
+    // Ranges (present) and gaps (empty) held in this JVM, null when the near cache is disabled
+    private RangeNearCache<Optional<CardRangeDataDTO>> nearCache;
+
+    // Range and gap writes waiting to be flushed to Redis, null when writes are made inline
+    private WriteBehindQueue<PendingRange, PendingWrite> writeBehind;
+
+    // Bumped by every import before it evicts, so entries loaded earlier are known to be stale
+    private volatile long cacheGeneration = 0L;
+
+    // Held while bumping the generation and while writing loaded entries, so no write checked
+    // against the old generation can land after the eviction that follows the bump
+    private final ReentrantLock cacheWriteLock = new ReentrantLock();
+
+    // Database loads in flight per PAN, null when coalescing is disabled
+    private SingleFlight<Long, Optional<CardRangeDataDTO>> panLoads;
+
+    // Range-keyed cache: one entry per card range, shared by every PAN inside it
+    private static final String LOOK_UP_RANGE_CACHE = "look_up";
+
+    // Range-keyed cache of the spans between card ranges, each holding its expiry time. Named
+    // after the range cache so both share a Redis Cluster slot and are read in one script call
+    private static final String LOOK_UP_GAP_CACHE = "look_up:gap";
+
+    @PostConstruct
+    public void initialize() {
+        if (singleFlightEnabled) {
+            panLoads = new SingleFlight<>(singleFlightTimeoutMs);
+        }
+        if (nearCacheEnabled) {
+            nearCache = new RangeNearCache<>(nearCacheMaxSize, Duration.ofSeconds(nearCacheTtlSeconds));
+        }
+        if (writeBehindEnabled) {
+            writeBehind = new WriteBehindQueue<>("lookup-write-behind", writeBehindCapacity,
+                    writeBehindBatchSize, writeBehindLingerMs, this::flushRanges);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+    }
+
+    /**
+     * Get the counters of the Redis write-behind queue
+     *
+     * @return Statistics of the write-behind queue, null when writes are made inline
+     */
+    public WriteBehindQueue.Statistics getWriteBehindStatistics() {
+        return writeBehind == null ? null : writeBehind.getStatistics();
+    }
+
+    /**
+     * Get the counters of the in-process near cache
+     *
+     * @return Statistics of the near cache, null when it is disabled
+     */
+    public RangeNearCache.Statistics getNearCacheStatistics() {
+        return nearCache == null ? null : nearCache.getStatistics();
+    }
+
+    /**
+     * Get the counters of coalesced database loads
+     *
+     * @return Statistics of the single-flight loader, null when coalescing is disabled
+     */
+    public SingleFlight.Statistics getSingleFlightStatistics() {
+        return panLoads == null ? null : panLoads.getStatistics();
+    }
 
     /**
      * Lookup card range by PAN
      *
+     * The in-memory index is authoritative once loaded, so Redis and the database are
+     * only consulted while it is still warming up (or when it is disabled). A PAN matching
+     * no range caches the whole gap around it, so retries of any PAN in that gap skip the
+     * database until the gap expires or an import fills it; Redis is asked for the range and
+     * the gap in the same round trip. Concurrent misses for the same
+     * PAN share a single database load. Ranges and gaps are also kept in a bounded near
+     * cache in this JVM, sparing hot ranges the Redis round trip. Ranges and gaps loaded
+     * from the database are written to Redis by a background queue, so the caller does not
+     * wait for the write.
+     *
      * @param pan Primary Account Number
      * @return Optional containing the lookup response, empty if not found
      */
-    @Transactional
     public Optional<CardRangeDataDTO> lookupByPan(Long pan) {
         log.debug("Looking up card range for PAN: {}", pan);
 
@@ -38,32 +184,434 @@ public class LookUpServiceImpl implements ILookUpService {
             return Optional.empty();
         }
 
-        // First try Redis cache
-        Optional<CardRangeDataDTO> result = redisService.findOne(LOOK_UP_FUNC_PREFIX+String.valueOf(pan), CardRangeDataDTO.class);
+        // First try the in-memory index
+        if (sharedIntervalTreeComponent.isReady()) {
+            Optional<CardRangeDataDTO> indexResult = sharedIntervalTreeComponent.findCardRange(pan);
+            log.debug("Resolved PAN from in-memory index, found: {}", indexResult.isPresent());
+            return indexResult;
+        }
 
-        if (result.isPresent()) {
-            log.debug("Found card range in shared tree");
-            return result;
+        // Then try the near cache in this JVM
+        if (nearCache != null) {
+            Optional<CardRangeDataDTO> nearResult = nearCache.get(pan);
+            if (nearResult != null) {
+                log.debug("Resolved PAN from near cache, found: {}", nearResult.isPresent());
+                return nearResult;
+            }
         }
 
-        // Fallback to database if not found in cache
-        log.debug("No match found in shared tree, falling back to database");
+        // Then try Redis cache and its gaps, an import committing once they are read makes them stale
+        long generation = cacheGeneration;
+        List<RangeLookup<CardRangeDataDTO, Long>> cached = findCached(List.of(pan));
+        RangeLookup<CardRangeDataDTO, Long> lookup = cached.isEmpty() ? RangeLookup.none() : cached.get(0);
 
-        Optional<CardRangeEntity> databaseResult = cardRangeRepository.findByPanInRange(pan);
-        if (databaseResult.isPresent()) {
-            log.debug("Found card range in database");
-            CardRangeDataDTO dto = cardRangeEntityToDTO(databaseResult.get());
+        if (lookup.getRange().isPresent()) {
+            log.debug("Found card range in Redis cache");
+            CachedRange<CardRangeDataDTO> range = lookup.getRange().get();
+            // Kept near under the segment Redis matched, so any PAN inside it hits next time
+            putNear(range.getStartRange(), range.getEndRange(), Optional.of(range.getValue()), generation);
+            return Optional.of(range.getValue());
+        }
 
-            // Write to cache
-            redisService.writeOne(LOOK_UP_FUNC_PREFIX+String.valueOf(pan), dto);
-            // TODO: Write a line of record to cached_record table.
+        if (isLiveGap(lookup)) {
+            log.debug("PAN is in a cached gap between card ranges");
+            CachedRange<Long> gap = lookup.getFallback().get();
+            putNear(gap.getStartRange(), gap.getEndRange(), Optional.empty(), generation);
+            return Optional.empty();
+        }
+
+        // Fallback to database if not found in cache, one load per PAN however many requests miss at once
+        log.debug("No match found in Redis cache, falling back to database");
+
+        if (panLoads == null) {
+            return loadFromDatabase(pan);
+        }
+        return panLoads.execute(pan, () -> loadFromDatabase(pan));
+    }
+
+    /**
+     * Resolve a PAN from the database and cache the range, or the gap around the PAN
+     */
+    private Optional<CardRangeDataDTO> loadFromDatabase(long pan) {
+        // Taken before reading, an import committing meanwhile makes what is read stale
+        long generation = cacheGeneration;
+        List<CardRangeEntity> databaseResults = cardRangeRepository.findByPanInRange(pan);
+        if (!databaseResults.isEmpty()) {
+            log.debug("Found {} card ranges containing the PAN in database", databaseResults.size());
+            CardRangeEntity entity = databaseResults.get(0);
+            CardRangeDataDTO dto = cardRangeEntityToDTO(entity);
+
+            // Write to cache, keyed by the segment of the range this PAN is in so any PAN inside it hits next time
+            cacheSegment(segmentAround(entity,
+                    cardRangeRepository.findMaxEndRangeBelow(pan), cardRangeRepository.findMinStartRangeAbove(pan)),
+                    dto, generation);
 
             return Optional.of(dto);
         }
 
+        if (gapCacheEnabled) {
+            cacheGap(gapAround(cardRangeRepository.findMaxEndRangeBelow(pan),
+                    cardRangeRepository.findMinStartRangeAbove(pan)), generation);
+        }
         return Optional.empty();
     }
 
+    /**
+     * Lookup card ranges for several PANs at once
+     *
+     * With the in-memory index loaded, all PANs are resolved in one pass over it. Otherwise
+     * each tier is asked once for the whole batch: the near cache, one Redis lookup of ranges
+     * and gaps for the distinct PANs it did not settle, then a single database query for the
+     * ones Redis did not have. PANs the database has no range for cache the gap around them,
+     * as single lookups do.
+     *
+     * @param pans Primary Account Numbers
+     * @return Lookup response per PAN in request order, empty where not found
+     */
+    public List<Optional<CardRangeDataDTO>> lookupByPans(List<Long> pans) {
+        if (pans == null || pans.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        log.debug("Looking up card ranges for {} PANs", pans.size());
+
+        // First try the in-memory index
+        if (sharedIntervalTreeComponent.isReady()) {
+            return sharedIntervalTreeComponent.findCardRanges(pans);
+        }
+
+        Set<Long> distinctPans = new LinkedHashSet<>(pans);
+        distinctPans.remove(null);
+        Map<Long, CardRangeDataDTO> found = new HashMap<>();
+
+        // Then try the near cache in this JVM, PANs in a cached gap are settled as not found
+        List<Long> keyPans = new ArrayList<>(distinctPans.size());
+        for (Long pan : distinctPans) {
+            Optional<CardRangeDataDTO> nearResult = nearCache == null ? null : nearCache.get(pan);
+            if (nearResult == null) {
+                keyPans.add(pan);
+            } else {
+                nearResult.ifPresent(dto -> found.put(pan, dto));
+            }
+        }
+
+        if (keyPans.isEmpty()) {
+            return collectResults(pans, found);
+        }
+
+        // Then try Redis cache and its gaps, one round trip for the whole batch
+        long cachedGeneration = cacheGeneration;
+        List<RangeLookup<CardRangeDataDTO, Long>> cached = findCached(keyPans);
+        List<Long> misses = new ArrayList<>();
+        for (int i = 0; i < keyPans.size(); i++) {
+            RangeLookup<CardRangeDataDTO, Long> lookup = i < cached.size() ? cached.get(i) : RangeLookup.none();
+            if (lookup.getRange().isPresent()) {
+                CachedRange<CardRangeDataDTO> range = lookup.getRange().get();
+                found.put(keyPans.get(i), range.getValue());
+                putNear(range.getStartRange(), range.getEndRange(), Optional.of(range.getValue()), cachedGeneration);
+            } else if (isLiveGap(lookup)) {
+                CachedRange<Long> gap = lookup.getFallback().get();
+                putNear(gap.getStartRange(), gap.getEndRange(), Optional.empty(), cachedGeneration);
+            } else {
+                misses.add(keyPans.get(i));
+            }
+        }
+        log.debug("Settled {} of {} PANs from Redis cache", keyPans.size() - misses.size(), keyPans.size());
+
+        // Fallback to one database query for every PAN missing from the cache
+        if (!misses.isEmpty()) {
+            long generation = cacheGeneration;
+            Map<Long, CardRangeEntity> databaseResults = cardRangeJdbcRepository.findByPansInRange(misses);
+            // Found PANs need the bounds around them for their segment, the others for their gap
+            Collection<Long> boundedPans = gapCacheEnabled ? misses : databaseResults.keySet();
+            Map<Long, CardRangeJdbcRepository.NeighbourBounds> neighbours = boundedPans.isEmpty()
+                    ? Map.of() : cardRangeJdbcRepository.findNeighbourBounds(boundedPans);
+            Set<PendingRange> cachedSegments = new HashSet<>();
+            Map<CardRangeEntity, CardRangeDataDTO> dtos = new IdentityHashMap<>();
+            databaseResults.forEach((pan, entity) -> {
+                CardRangeDataDTO dto = dtos.computeIfAbsent(entity, this::cardRangeEntityToDTO);
+                found.put(pan, dto);
+
+                // Write to cache, once per segment however many PANs it matched
+                CardRangeJdbcRepository.NeighbourBounds bounds = neighbours.get(pan);
+                PendingRange segment = bounds == null
+                        ? segmentAround(entity, null, null)
+                        : segmentAround(entity, bounds.getEndBelow(), bounds.getStartAbove());
+                if (cachedSegments.add(segment)) {
+                    cacheSegment(segment, dto, generation);
+                }
+            });
+            log.debug("Found {} of {} PANs in database", databaseResults.size(), misses.size());
+
+            // Write the gap around every PAN without a range, once per gap
+            if (gapCacheEnabled) {
+                Set<PendingRange> cachedGaps = new HashSet<>();
+                for (Long pan : misses) {
+                    CardRangeJdbcRepository.NeighbourBounds bounds = neighbours.get(pan);
+                    if (databaseResults.containsKey(pan) || bounds == null) {
+                        continue;
+                    }
+                    PendingRange gap = gapAround(bounds.getEndBelow(), bounds.getStartAbove());
+                    if (cachedGaps.add(gap)) {
+                        cacheGap(gap, generation);
+                    }
+                }
+            }
+        }
+
+        return collectResults(pans, found);
+    }
+
+    private static List<Optional<CardRangeDataDTO>> collectResults(List<Long> pans, Map<Long, CardRangeDataDTO> found) {
+        List<Optional<CardRangeDataDTO>> results = new ArrayList<>(Collections.nCopies(pans.size(), Optional.empty()));
+        for (int i = 0; i < pans.size(); i++) {
+            Long pan = pans.get(i);
+            if (pan != null && found.containsKey(pan)) {
+                results.set(i, Optional.of(found.get(pan)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Evict the cached ranges and gaps an import has changed
+     *
+     * Runs after the import has committed. Each change evicts the cached entries overlapping
+     * its bounds, which also drops any gap a new range fills. Large imports clear both
+     * caches instead of evicting range by range. Imports relayed from another node only
+     * touch this node's near cache and pending writes, the shared Redis caches were
+     * already evicted by the importing node.
+     *
+     * Entries loaded from the database before the eviction may still be on their way, read
+     * before the commit but written after it. Every import bumps the cache generation first,
+     * and writes of entries loaded under an older generation are dropped instead of made.
+     *
+     * @param event Committed PRes import
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCardRangesImported(CardRangesImportedEvent event) {
+        List<CardRangeEntity> changes = event.getChanges();
+
+        cacheWriteLock.lock();
+        try {
+            cacheGeneration++;
+        } finally {
+            cacheWriteLock.unlock();
+        }
+
+        if (changes == null || changes.size() > cacheClearThreshold) {
+            log.info("Card ranges imported ({}), clearing lookup caches", event);
+            if (writeBehind != null) {
+                writeBehind.removeIf(range -> true);
+            }
+            if (nearCache != null) {
+                nearCache.invalidateAll();
+            }
+            if (!event.isRemote()) {
+                redisService.deleteRanges(LOOK_UP_RANGE_CACHE);
+                redisService.deleteRanges(LOOK_UP_GAP_CACHE);
+            }
+            return;
+        }
+
+        // Pending writes may hold what the import replaced, drop them before they reach Redis
+        int evicted = writeBehind == null ? 0 : writeBehind.removeIf(range -> overlapsAny(range, changes));
+        for (CardRangeEntity change : changes) {
+            if (change.getStartRange() == null || change.getEndRange() == null) {
+                continue;
+            }
+            if (nearCache != null) {
+                evicted += nearCache.invalidateOverlapping(change.getStartRange(), change.getEndRange());
+            }
+            if (event.isRemote()) {
+                continue;
+            }
+            evicted += redisService.deleteOverlappingRanges(
+                    LOOK_UP_RANGE_CACHE, change.getStartRange(), change.getEndRange());
+            evicted += redisService.deleteOverlappingRanges(
+                    LOOK_UP_GAP_CACHE, change.getStartRange(), change.getEndRange());
+        }
+        log.debug("Card ranges imported ({}), evicted {} cached ranges and gaps", event, evicted);
+    }
+
+    /**
+     * Look PANs up in the Redis range cache and, when gaps are cached, in the gap cache in the same round trip
+     */
+    private List<RangeLookup<CardRangeDataDTO, Long>> findCached(List<Long> pans) {
+        return redisService.findRanges(LOOK_UP_RANGE_CACHE, CardRangeDataDTO.class,
+                gapCacheEnabled ? LOOK_UP_GAP_CACHE : null, Long.class, pans);
+    }
+
+    // Gaps hold their expiry time, checked here too in case the clocks of Redis and this node differ
+    private static boolean isLiveGap(RangeLookup<CardRangeDataDTO, Long> lookup) {
+        return lookup.getFallback().isPresent() && lookup.getFallback().get().getValue() != null
+                && lookup.getFallback().get().getValue() > System.currentTimeMillis();
+    }
+
+    /**
+     * Bounds of the span between the closest ranges around a PAN no range covers
+     *
+     * Nothing covers the PAN, so every range ending below it ends before the gap and every
+     * range starting above it starts after the gap; no range can overlap the span between.
+     *
+     * @param endBelow Highest end range below the PAN, null if none
+     * @param startAbove Lowest start range above the PAN, null if none
+     */
+    private static PendingRange gapAround(Long endBelow, Long startAbove) {
+        long gapStart = endBelow == null ? 0L : endBelow + 1;
+        long gapEnd = startAbove == null ? Long.MAX_VALUE : startAbove - 1;
+        return new PendingRange(LOOK_UP_GAP_CACHE, gapStart, gapEnd);
+    }
+
+    private void cacheGap(PendingRange gap, long generation) {
+        long expiresAt = System.currentTimeMillis() + gapTtlSeconds * 1000L;
+        if (writeRange(gap.cache, gap.startRange, gap.endRange, expiresAt, generation)) {
+            putNear(gap.startRange, gap.endRange, Optional.empty(), generation);
+            log.debug("Cached gap {}-{} around PAN", gap.startRange, gap.endRange);
+        }
+    }
+
+    /**
+     * Write a range or gap loaded from the database to Redis, through the write-behind queue when it is enabled
+     *
+     * A full queue drops the write (counted in its statistics): the entry is only a cache,
+     * the next miss loads it again. Nothing is written if an import has evicted since the
+     * entry was loaded.
+     *
+     * @param generation Cache generation taken before the entry was read from the database
+     * @return true if the entry was written or queued, false if it is stale
+     */
+    private boolean writeRange(String cache, long startRange, long endRange, Object value, long generation) {
+        if (generation != cacheGeneration) {
+            log.debug("Cache generation moved on, dropped stale write of {}-{} to {}", startRange, endRange, cache);
+            return false;
+        }
+
+        if (writeBehind != null) {
+            if (!writeBehind.offer(new PendingRange(cache, startRange, endRange), new PendingWrite(value, generation))) {
+                log.debug("Write-behind queue full, dropped write of {}-{} to {}", startRange, endRange, cache);
+            }
+            return true;
+        }
+
+        cacheWriteLock.lock();
+        try {
+            if (generation != cacheGeneration) {
+                return false;
+            }
+            Duration ttl = ttlOf(cache);
+            if (ttl == null) {
+                redisService.writeRange(cache, startRange, endRange, value);
+            } else {
+                redisService.writeRange(cache, startRange, endRange, value, ttl);
+            }
+        } finally {
+            cacheWriteLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Write a batch of queued ranges and gaps, one Redis call per cache and chunk
+     *
+     * Writes loaded under an older cache generation are dropped, an import has evicted
+     * since and they may hold what it replaced.
+     */
+    private void flushRanges(Map<PendingRange, PendingWrite> batch) {
+        cacheWriteLock.lock();
+        try {
+            long generation = cacheGeneration;
+            int stale = 0;
+            Map<String, List<CachedRange<Object>>> rangesByCache = new LinkedHashMap<>();
+            for (Map.Entry<PendingRange, PendingWrite> entry : batch.entrySet()) {
+                PendingRange range = entry.getKey();
+                if (entry.getValue().generation != generation) {
+                    stale++;
+                    continue;
+                }
+                rangesByCache.computeIfAbsent(range.cache, cache -> new ArrayList<>())
+                        .add(new CachedRange<>(range.startRange, range.endRange, entry.getValue().value));
+            }
+            if (stale > 0) {
+                log.debug("Write-behind dropped {} writes loaded before the last import", stale);
+            }
+
+            rangesByCache.forEach((cache, ranges) -> {
+                RedisBatchResult result = redisService.writeRanges(cache, ranges, ttlOf(cache));
+                if (!result.isComplete()) {
+                    log.debug("Write-behind failed to write {} of {} ranges to {}", result.getFailed().size(), ranges.size(), cache);
+                }
+            });
+        } finally {
+            cacheWriteLock.unlock();
+        }
+    }
+
+    // Gaps expire with their payload, ranges with the TTL configured for the cache
+    private Duration ttlOf(String cache) {
+        return LOOK_UP_GAP_CACHE.equals(cache) ? Duration.ofSeconds(gapTtlSeconds) : null;
+    }
+
+    private static boolean overlapsAny(PendingRange range, List<CardRangeEntity> changes) {
+        for (CardRangeEntity change : changes) {
+            if (change.getStartRange() != null && change.getEndRange() != null
+                    && change.getStartRange() <= range.endRange && range.startRange <= change.getEndRange()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bounds of the segment of a range around a PAN that no other range starts or ends in
+     *
+     * Redis and the near cache answer for every PAN within the bounds an entry is cached under,
+     * so a range cached under its own bounds would also answer for the PANs of a narrower range
+     * nested in it. Within the segment every range containing a PAN also contains this one, so
+     * the range resolved for this PAN is the most specific one across the segment. Ranges that
+     * neither nest nor overlap keep their own bounds.
+     *
+     * @param endBelow Highest end range below the PAN, null if none
+     * @param startAbove Lowest start range above the PAN, null if none
+     */
+    private static PendingRange segmentAround(CardRangeEntity range, Long endBelow, Long startAbove) {
+        long startRange = range.getStartRange();
+        long endRange = range.getEndRange();
+        if (endBelow != null && endBelow >= startRange) {
+            startRange = endBelow + 1;
+        }
+        if (startAbove != null && startAbove <= endRange) {
+            endRange = startAbove - 1;
+        }
+        return new PendingRange(LOOK_UP_RANGE_CACHE, startRange, endRange);
+    }
+
+    private void cacheSegment(PendingRange segment, CardRangeDataDTO dto, long generation) {
+        if (writeRange(segment.cache, segment.startRange, segment.endRange, dto, generation)) {
+            putNear(segment.startRange, segment.endRange, Optional.of(dto), generation);
+        }
+    }
+
+    /**
+     * Keep a range or gap in the near cache, unless an import has evicted since it was read
+     *
+     * @param generation Cache generation taken before the entry was read from Redis or the database
+     */
+    private void putNear(long startRange, long endRange, Optional<CardRangeDataDTO> entry, long generation) {
+        if (nearCache == null || startRange > endRange) {
+            return;
+        }
+
+        cacheWriteLock.lock();
+        try {
+            if (generation == cacheGeneration) {
+                nearCache.put(startRange, endRange, entry);
+            }
+        } finally {
+            cacheWriteLock.unlock();
+        }
+    }
+
     private CardRangeDataDTO cardRangeEntityToDTO(CardRangeEntity cardRange) {
         CardRangeDataDTO cardRangeDataDTO = new CardRangeDataDTO();
         cardRangeDataDTO.setStartRange(cardRange.getStartRange());
@@ -77,4 +625,45 @@ public class LookUpServiceImpl implements ILookUpService {
         return cardRangeDataDTO;
     }
 
+    /**
+     * Value of a queued write and the cache generation it was loaded under
+     */
+    private static final class PendingWrite {
+        private final Object value;
+        private final long generation;
+
+        private PendingWrite(Object value, long generation) {
+            this.value = value;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Range or gap waiting to be written, the write-behind key
+     */
+    private static final class PendingRange {
+        private final String cache;
+        private final long startRange;
+        private final long endRange;
+
+        private PendingRange(String cache, long startRange, long endRange) {
+            this.cache = cache;
+            this.startRange = startRange;
+            this.endRange = endRange;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PendingRange)) return false;
+            PendingRange other = (PendingRange) o;
+            return startRange == other.startRange && endRange == other.endRange && cache.equals(other.cache);
+        }
+
+        @Override
+        public int hashCode() {
+            return (cache.hashCode() * 31 + Long.hashCode(startRange)) * 31 + Long.hashCode(endRange);
+        }
+    }
+
 }
@@ -1,41 +1,324 @@
 package com.jamiewang.secure3d.service.impl;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jamiewang.secure3d.codec.IRedisValueCodec;
+import com.jamiewang.secure3d.config.RedisCacheProperties;
+import com.jamiewang.secure3d.service.CachedRange;
 import com.jamiewang.secure3d.service.IRedisService;
+import com.jamiewang.secure3d.service.RangeLookup;
+import com.jamiewang.secure3d.service.RedisBatchResult;
+import com.jamiewang.secure3d.util.CircuitBreaker;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Redis service for basic CRUD operations
  *
  * Provides simple writeOne, deleteOne, and findOne operations for storing
- * and retrieving objects in Redis with JSON serialization.
+ * and retrieving objects in Redis. Values are encoded by the configured
+ * {@link IRedisValueCodec} (JSON unless app.redis.codec.type selects another) and stored as bytes.
+ *
+ * Multi-key operations are pipelined in chunks of app.redis.pipeline.batch-size commands,
+ * one round trip per chunk, and report the outcome of every key.
+ *
+ * Entries expire after the TTL of their key prefix (app.redis.cache) unless the write gives
+ * one, shortened at random by up to jitter-percent so entries written together do not all
+ * expire at once. In the last early-refresh-seconds of an entry's life (per prefix, off by
+ * default), findOne and range lookups report it as a miss with a chance growing toward expiry:
+ * one reader of a hot entry reloads it ahead of time instead of every reader right after it
+ * expires. A prefix with max-keys keeps at most that many keys (ranges, for a range-keyed
+ * cache), evicting the ones closest to expiry first.
+ *
+ * Reads and writes go through a circuit breaker (app.redis.circuit-breaker). When too many
+ * recent calls failed or were slow it opens, and they return the same empty or false results
+ * as a failed call without waiting on Redis, so lookups fall through to the in-memory index
+ * or the database. Deletes are never short-circuited: they invalidate cached data and must
+ * still be attempted.
+ *
+ * Range-keyed caches store one entry per range instead of one per looked up value. Each
+ * cache is a sorted set of range members plus a hash of payloads by member, and a lookup
+ * is resolved server-side by a Lua script in one round trip. Members are the zero-padded
+ * bounds "start:end", all with score 0, so lexical order is numeric order (scores are
+ * doubles and cannot hold 16+ digit PANs exactly). Writing a range evicts the cached ranges
+ * overlapping it, so the ranges of a cache never overlap and the floor search is exact. A
+ * third sorted set scores each member by its expiry time, as hash fields cannot expire.
+ * A lookup can fall back to a second cache in the same script call; a cache named
+ * "name:other" is hash-tagged like "name", so the two share a cluster slot.
  */
 @Service
 @Slf4j
 public class RedisServiceImpl implements IRedisService {
 
+    // Wide enough for any non-negative long
+    private static final String RANGE_BOUND_FORMAT = "%019d";
+
+    // Server time in milliseconds, so expiry does not depend on the clocks of the nodes
+    private static final String NOW =
+            "local time = redis.call('TIME') "
+                    + "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) ";
+
+    // For each (upper bound, padded value) pair: take the member with the greatest start at or
+    // below the value and return it with its payload if its end is not below the value and it
+    // has not expired, followed by its remaining TTL in milliseconds (-1 if none). Values with
+    // no such member are then looked up the same way in the fallback cache of KEYS[4..6], if
+    // given. Each reply is preceded by the cache it came from: 1, 2 for the fallback, 0 if none.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> FIND_IN_RANGE_SCRIPT = new DefaultRedisScript<>(
+            NOW
+                    + "local function find(ranges, payloads, expiry, upper, value) "
+                    + "  local member = redis.call('ZREVRANGEBYLEX', ranges, upper, '-', 'LIMIT', 0, 1)[1] "
+                    + "  if not member or string.sub(member, 21) < value then "
+                    + "    return false, false, -1 "
+                    + "  end "
+                    + "  local expiresAt = tonumber(redis.call('ZSCORE', expiry, member)) "
+                    + "  if not expiresAt or expiresAt == math.huge then "
+                    + "    return member, redis.call('HGET', payloads, member), -1 "
+                    + "  elseif expiresAt > now then "
+                    + "    return member, redis.call('HGET', payloads, member), expiresAt - now "
+                    + "  end "
+                    + "  return false, false, -1 "
+                    + "end "
+                    + "local results = {} "
+                    + "for i = 1, #ARGV, 2 do "
+                    + "  local source = 1 "
+                    + "  local member, payload, remaining = find(KEYS[1], KEYS[2], KEYS[3], ARGV[i], ARGV[i + 1]) "
+                    + "  if not payload and #KEYS > 3 then "
+                    + "    source = 2 "
+                    + "    member, payload, remaining = find(KEYS[4], KEYS[5], KEYS[6], ARGV[i], ARGV[i + 1]) "
+                    + "  end "
+                    + "  results[#results + 1] = payload and source or 0 "
+                    + "  results[#results + 1] = payload and member or false "
+                    + "  results[#results + 1] = payload "
+                    + "  results[#results + 1] = remaining "
+                    + "end "
+                    + "return results",
+            List.class);
+
+    // Removes the members overlapping [low, high] (padded bounds): the one starting below the
+    // range if it reaches into it, and every member starting inside it
+    private static final String EVICT_OVERLAPPING =
+            "local function evictOverlapping(low, high) "
+                    + "  local members = redis.call('ZRANGEBYLEX', KEYS[1], '[' .. low, '(' .. high .. ';') "
+                    + "  local below = redis.call('ZREVRANGEBYLEX', KEYS[1], '(' .. low, '-', 'LIMIT', 0, 1)[1] "
+                    + "  if below and string.sub(below, 21) >= low then "
+                    + "    members[#members + 1] = below "
+                    + "  end "
+                    + "  for _, member in ipairs(members) do "
+                    + "    redis.call('ZREM', KEYS[1], member) "
+                    + "    redis.call('HDEL', KEYS[2], member) "
+                    + "    redis.call('ZREM', KEYS[3], member) "
+                    + "  end "
+                    + "  return #members "
+                    + "end ";
+
+    // For each (start, end, member, payload, ttl ms or 0 for never) group from ARGV[2] on,
+    // evicts the members overlapping the range and stores the payload. Then drops expired
+    // members and, above ARGV[1] ranges (0 for no limit), the unwritten ones closest to expiry.
+    // Returns the number of overlapping members evicted.
+    private static final RedisScript<Long> WRITE_RANGES_SCRIPT = new DefaultRedisScript<>(
+            EVICT_OVERLAPPING
+                    + NOW
+                    + "local evicted = 0 "
+                    + "local written = {} "
+                    + "for i = 2, #ARGV, 5 do "
+                    + "  evicted = evicted + evictOverlapping(ARGV[i], ARGV[i + 1]) "
+                    + "  redis.call('HSET', KEYS[2], ARGV[i + 2], ARGV[i + 3]) "
+                    + "  redis.call('ZADD', KEYS[1], 0, ARGV[i + 2]) "
+                    + "  local ttl = tonumber(ARGV[i + 4]) "
+                    + "  redis.call('ZADD', KEYS[3], ttl > 0 and now + ttl or '+inf', ARGV[i + 2]) "
+                    + "  written[ARGV[i + 2]] = true "
+                    + "end "
+                    + "local dropped = redis.call('ZRANGEBYSCORE', KEYS[3], '-inf', now, 'LIMIT', 0, 100) "
+                    + "local maxKeys = tonumber(ARGV[1]) "
+                    + "if maxKeys > 0 then "
+                    + "  local overflow = redis.call('ZCARD', KEYS[1]) - #dropped - maxKeys "
+                    + "  local popped = 0 "
+                    + "  if overflow > 0 then "
+                    + "    local last = #dropped + overflow + (#ARGV - 1) / 5 - 1 "
+                    + "    for _, member in ipairs(redis.call('ZRANGE', KEYS[3], #dropped, last)) do "
+                    + "      if popped < overflow and not written[member] then "
+                    + "        dropped[#dropped + 1] = member "
+                    + "        popped = popped + 1 "
+                    + "      end "
+                    + "    end "
+                    + "  end "
+                    + "end "
+                    + "for _, member in ipairs(dropped) do "
+                    + "  redis.call('ZREM', KEYS[1], member) "
+                    + "  redis.call('HDEL', KEYS[2], member) "
+                    + "  redis.call('ZREM', KEYS[3], member) "
+                    + "end "
+                    + "return evicted",
+            Long.class);
+
+    private static final RedisScript<Long> DELETE_OVERLAPPING_SCRIPT = new DefaultRedisScript<>(
+            EVICT_OVERLAPPING
+                    + "return evictOverlapping(ARGV[1], ARGV[2])",
+            Long.class);
+
+    private static final RedisScript<Long> DELETE_RANGE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('ZREM', KEYS[1], ARGV[1]) "
+                    + "redis.call('ZREM', KEYS[3], ARGV[1]) "
+                    + "return redis.call('HDEL', KEYS[2], ARGV[1])",
+            Long.class);
+
+    // Drops expired keys from a budget set and pops the keys closest to expiry beyond maxKeys,
+    // returned for the caller to delete (they may live in other cluster slots)
+    private static final String TRIM_BUDGET =
+            "local function trimBudget(budget, maxKeys) "
+                    + "  redis.call('ZREMRANGEBYSCORE', budget, '-inf', now) "
+                    + "  local overflow = redis.call('ZCARD', budget) - maxKeys "
+                    + "  if overflow <= 0 then "
+                    + "    return {} "
+                    + "  end "
+                    + "  local victims = redis.call('ZRANGE', budget, 0, overflow - 1) "
+                    + "  redis.call('ZREMRANGEBYRANK', budget, 0, overflow - 1) "
+                    + "  return victims "
+                    + "end ";
+
+    // Records (key, ttl ms) pairs from ARGV[2] on in the budget set of a prefix, scored by
+    // expiry, and returns the keys closest to expiry beyond ARGV[1] keys for the caller to delete
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TRACK_KEYS_SCRIPT = new DefaultRedisScript<>(
+            NOW
+                    + TRIM_BUDGET
+                    + "for i = 2, #ARGV, 2 do "
+                    + "  local ttl = tonumber(ARGV[i + 1]) "
+                    + "  redis.call('ZADD', KEYS[1], ttl > 0 and now + ttl or '+inf', ARGV[i]) "
+                    + "end "
+                    + "return trimBudget(KEYS[1], tonumber(ARGV[1]))",
+            List.class);
+
+    // Sets KEYS[1] to ARGV[1] with a TTL of ARGV[2] ms (0 for none) and records it in the budget
+    // set KEYS[2] in the same round trip, returning the keys beyond ARGV[3] like TRACK_KEYS_SCRIPT.
+    // Both keys must hash to the same slot on Redis Cluster.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> WRITE_TRACKED_SCRIPT = new DefaultRedisScript<>(
+            NOW
+                    + TRIM_BUDGET
+                    + "local ttl = tonumber(ARGV[2]) "
+                    + "if ttl > 0 then "
+                    + "  redis.call('SET', KEYS[1], ARGV[1], 'PX', ttl) "
+                    + "else "
+                    + "  redis.call('SET', KEYS[1], ARGV[1]) "
+                    + "end "
+                    + "redis.call('ZADD', KEYS[2], ttl > 0 and now + ttl or '+inf', KEYS[1]) "
+                    + "return trimBudget(KEYS[2], tonumber(ARGV[3]))",
+            List.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> GET_WITH_TTL_SCRIPT = new DefaultRedisScript<>(
+            "return {redis.call('GET', KEYS[1]), redis.call('PTTL', KEYS[1])}",
+            List.class);
+
     @Autowired
-    private RedisTemplate<String, String> redisTemplate;
+    private RedisTemplate<String, byte[]> redisTemplate;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private IRedisValueCodec valueCodec;
+
+    @Autowired
+    private RedisCacheProperties cacheProperties;
+
+    @Value("${app.redis.pipeline.batch-size:1000}")
+    private int pipelineBatchSize;
+
+    @Value("${app.redis.circuit-breaker.enabled:true}")
+    private boolean circuitBreakerEnabled;
+
+    @Value("${app.redis.circuit-breaker.window-size:100}")
+    private int circuitBreakerWindowSize;
+
+    @Value("${app.redis.circuit-breaker.minimum-calls:20}")
+    private int circuitBreakerMinimumCalls;
+
+    @Value("${app.redis.circuit-breaker.failure-rate-threshold:50}")
+    private int circuitBreakerFailureRateThreshold;
+
+    @Value("${app.redis.circuit-breaker.slow-call-rate-threshold:50}")
+    private int circuitBreakerSlowCallRateThreshold;
+
+    @Value("${app.redis.circuit-breaker.slow-call-ms:50}")
+    private long circuitBreakerSlowCallMs;
+
+    @Value("${app.redis.circuit-breaker.open-ms:5000}")
+    private long circuitBreakerOpenMs;
+
+    @Value("${app.redis.circuit-breaker.half-open-probes:5}")
+    private int circuitBreakerHalfOpenProbes;
+
+    // Null when the circuit breaker is disabled
+    private CircuitBreaker circuitBreaker;
+
+    @PostConstruct
+    public void initialize() {
+        if (circuitBreakerEnabled) {
+            circuitBreaker = CircuitBreaker.builder()
+                    .windowSize(circuitBreakerWindowSize)
+                    .minimumCalls(circuitBreakerMinimumCalls)
+                    .failureRateThreshold(circuitBreakerFailureRateThreshold)
+                    .slowCallRateThreshold(circuitBreakerSlowCallRateThreshold)
+                    .slowCallMillis(circuitBreakerSlowCallMs)
+                    .openMillis(circuitBreakerOpenMs)
+                    .halfOpenProbes(circuitBreakerHalfOpenProbes)
+                    .build();
+        }
+    }
 
     /**
-     * Write an object to Redis with custom TTL
+     * Get the state and counters of the Redis circuit breaker
+     *
+     * @return Statistics of the circuit breaker, null when it is disabled
+     */
+    public CircuitBreaker.Statistics getCircuitBreakerStatistics() {
+        return circuitBreaker == null ? null : circuitBreaker.getStatistics();
+    }
+
+    /**
+     * Write an object to Redis with the TTL of its key prefix
      *
      * @param key Redis key
-     * @param value Object to store (will be serialized to JSON)
+     * @param value Object to store (will be encoded by the value codec)
      * @param <T> Type of object to store
      * @return true if successfully written, false otherwise
      */
     public <T> boolean writeOne(String key, T value) {
+        return writeOne(key, value, null);
+    }
+
+    /**
+     * Write an object to Redis with custom TTL
+     *
+     * @param key Redis key
+     * @param value Object to store (will be encoded by the value codec)
+     * @param ttl Expiry before jitter, null for the TTL of the key prefix, zero or negative for none
+     * @param <T> Type of object to store
+     * @return true if successfully written, false otherwise
+     */
+    public <T> boolean writeOne(String key, T value, Duration ttl) {
         if (key == null || key.trim().isEmpty()) {
             log.warn("Cannot write to Redis: key is null or empty");
             return false;
@@ -47,14 +330,34 @@ public class RedisServiceImpl implements IRedisService {
         }
 
         try {
-            String jsonValue = objectMapper.writeValueAsString(value);
-            redisTemplate.opsForValue().set(key, jsonValue);
+            byte[] encodedValue = valueCodec.encode(value);
+            long ttlMillis = expiryMillis(key, ttl);
+            Map.Entry<String, RedisCacheProperties.Prefix> prefix = budgetedPrefixOf(key);
+            if (prefix == null) {
+                guarded(() -> {
+                    if (ttlMillis > 0) {
+                        redisTemplate.opsForValue().set(key, encodedValue, Duration.ofMillis(ttlMillis));
+                    } else {
+                        redisTemplate.opsForValue().set(key, encodedValue);
+                    }
+                    return null;
+                });
+            } else {
+                // Written and recorded in the budget set in one script, no extra round trip
+                List<?> victims = guarded(() -> redisTemplate.execute(WRITE_TRACKED_SCRIPT,
+                        List.of(key, budgetKey(prefix.getKey())), encodedValue, bytes(String.valueOf(ttlMillis)),
+                        bytes(String.valueOf(prefix.getValue().getMaxKeys()))));
+                deleteOverBudget(prefix.getKey(), victims);
+            }
 
             log.debug("Successfully wrote object to Redis with key: {}", key);
             return true;
 
-        } catch (JsonProcessingException e) {
-            log.error("Failed to serialize object to JSON for key: {}", key, e);
+        } catch (IOException e) {
+            log.error("Failed to encode object for key: {}", key, e);
+            return false;
+        } catch (CircuitBreaker.OpenException e) {
+            log.debug("Skipped writing key {}: {}", key, e.getMessage());
             return false;
         } catch (Exception e) {
             log.error("Failed to write object to Redis for key: {}", key, e);
@@ -82,20 +385,23 @@ public class RedisServiceImpl implements IRedisService {
         }
 
         try {
-            String jsonValue = redisTemplate.opsForValue().get(key);
+            byte[] encodedValue = readForLookup(key);
 
-            if (jsonValue == null) {
+            if (encodedValue == null) {
                 log.debug("No value found in Redis for key: {}", key);
                 return Optional.empty();
             }
 
-            T object = objectMapper.readValue(jsonValue, valueType);
+            T object = valueCodec.decode(encodedValue, valueType);
             log.debug("Successfully retrieved object from Redis for key: {}", key);
 
             return Optional.of(object);
 
-        } catch (JsonProcessingException e) {
-            log.error("Failed to deserialize JSON from Redis for key: {}", key, e);
+        } catch (IOException e) {
+            log.error("Failed to decode object from Redis for key: {}", key, e);
+            return Optional.empty();
+        } catch (CircuitBreaker.OpenException e) {
+            log.debug("Skipped reading key {}: {}", key, e.getMessage());
             return Optional.empty();
         } catch (Exception e) {
             log.error("Failed to retrieve object from Redis for key: {}", key, e);
@@ -103,6 +409,840 @@ public class RedisServiceImpl implements IRedisService {
         }
     }
 
+    /**
+     * Find several objects in Redis with a single MGET round trip
+     *
+     * @param keys Redis keys
+     * @param valueType Class type of the objects to deserialize
+     * @param <T> Type of objects to retrieve
+     * @return One Optional per key, in key order, empty if not found or unreadable
+     */
+    public <T> List<Optional<T>> findMany(List<String> keys, Class<T> valueType) {
+        if (keys == null || keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Optional<T>> results = new ArrayList<>(Collections.nCopies(keys.size(), Optional.empty()));
+
+        if (valueType == null) {
+            log.warn("Cannot find in Redis: valueType is null for {} keys", keys.size());
+            return results;
+        }
+
+        List<byte[]> encodedValues;
+        try {
+            encodedValues = guarded(() -> redisTemplate.opsForValue().multiGet(keys));
+        } catch (CircuitBreaker.OpenException e) {
+            log.debug("Skipped reading {} keys: {}", keys.size(), e.getMessage());
+            return results;
+        } catch (Exception e) {
+            log.error("Failed to retrieve {} objects from Redis", keys.size(), e);
+            return results;
+        }
+
+        if (encodedValues == null) {
+            return results;
+        }
+
+        for (int i = 0; i < keys.size() && i < encodedValues.size(); i++) {
+            byte[] encodedValue = encodedValues.get(i);
+            if (encodedValue == null) {
+                continue;
+            }
+
+            try {
+                results.set(i, Optional.of(valueCodec.decode(encodedValue, valueType)));
+            } catch (IOException e) {
+                log.error("Failed to decode object from Redis for key: {}", keys.get(i), e);
+            }
+        }
+
+        log.debug("Retrieved {} keys from Redis in one round trip", keys.size());
+        return results;
+    }
+
+    /**
+     * Write several objects to Redis, pipelined in chunks instead of one round trip per key
+     *
+     * @param values Objects to store by Redis key (will be encoded by the value codec)
+     * @param <T> Type of objects to store
+     * @return Keys written and keys that failed with the reason
+     */
+    public <T> RedisBatchResult writeMany(Map<String, T> values) {
+        List<String> succeeded = new ArrayList<>();
+        Map<String, String> failed = new LinkedHashMap<>();
+
+        if (values == null || values.isEmpty()) {
+            return new RedisBatchResult(succeeded, new ArrayList<>(), failed);
+        }
+
+        // Encode up front so a bad value only fails its own key
+        List<String> keys = new ArrayList<>(values.size());
+        List<byte[]> encodedValues = new ArrayList<>(values.size());
+        List<Long> ttlMillis = new ArrayList<>(values.size());
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            String key = entry.getKey();
+            if (key == null || key.trim().isEmpty()) {
+                failed.put(String.valueOf(key), "Key is null or empty");
+                continue;
+            }
+            if (entry.getValue() == null) {
+                failed.put(key, "Value is null");
+                continue;
+            }
+            try {
+                encodedValues.add(valueCodec.encode(entry.getValue()));
+                ttlMillis.add(expiryMillis(key, null));
+                keys.add(key);
+            } catch (IOException e) {
+                log.error("Failed to encode object for key: {}", key, e);
+                failed.put(key, "Encoding failed: " + describe(e));
+            }
+        }
+
+        Map<String, Long> written = new LinkedHashMap<>();
+        int chunkSize = Math.max(pipelineBatchSize, 1);
+        for (int from = 0; from < keys.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, keys.size());
+            List<String> chunkKeys = keys.subList(from, to);
+            List<byte[]> chunkValues = encodedValues.subList(from, to);
+            List<Long> chunkTtls = ttlMillis.subList(from, to);
+
+            List<Object> replies = executePipelined(chunkKeys.size(), true, operations -> {
+                for (int i = 0; i < chunkKeys.size(); i++) {
+                    if (chunkTtls.get(i) > 0) {
+                        operations.opsForValue().set(chunkKeys.get(i), chunkValues.get(i),
+                                Duration.ofMillis(chunkTtls.get(i)));
+                    } else {
+                        operations.opsForValue().set(chunkKeys.get(i), chunkValues.get(i));
+                    }
+                }
+            });
+
+            for (int i = 0; i < chunkKeys.size(); i++) {
+                Object reply = replies.get(i);
+                if (reply instanceof Throwable) {
+                    failed.put(chunkKeys.get(i), describe((Throwable) reply));
+                } else {
+                    succeeded.add(chunkKeys.get(i));
+                    written.put(chunkKeys.get(i), chunkTtls.get(i));
+                }
+            }
+        }
+        enforceKeyBudgets(written);
+
+        log.debug("Wrote {} of {} objects to Redis", succeeded.size(), values.size());
+        return new RedisBatchResult(succeeded, new ArrayList<>(), failed);
+    }
+
+    /**
+     * Delete several keys from Redis, pipelined in chunks instead of one round trip per key
+     *
+     * @param keys Redis keys to delete
+     * @return Keys deleted, keys that did not exist and keys that failed with the reason
+     */
+    public RedisBatchResult deleteMany(Collection<String> keys) {
+        List<String> succeeded = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        Map<String, String> failed = new LinkedHashMap<>();
+
+        if (keys == null || keys.isEmpty()) {
+            return new RedisBatchResult(succeeded, skipped, failed);
+        }
+
+        List<String> validKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            if (key == null || key.trim().isEmpty()) {
+                failed.put(String.valueOf(key), "Key is null or empty");
+            } else {
+                validKeys.add(key);
+            }
+        }
+
+        int chunkSize = Math.max(pipelineBatchSize, 1);
+        for (int from = 0; from < validKeys.size(); from += chunkSize) {
+            List<String> chunkKeys = validKeys.subList(from, Math.min(from + chunkSize, validKeys.size()));
+
+            List<Object> replies = executePipelined(chunkKeys.size(), false, operations -> {
+                for (String key : chunkKeys) {
+                    operations.delete(key);
+                }
+            });
+
+            for (int i = 0; i < chunkKeys.size(); i++) {
+                Object reply = replies.get(i);
+                if (reply instanceof Throwable) {
+                    failed.put(chunkKeys.get(i), describe((Throwable) reply));
+                } else if (Boolean.TRUE.equals(reply) || (reply instanceof Long && (Long) reply > 0)) {
+                    succeeded.add(chunkKeys.get(i));
+                } else {
+                    skipped.add(chunkKeys.get(i));
+                }
+            }
+        }
+
+        log.debug("Deleted {} of {} keys from Redis", succeeded.size(), keys.size());
+        return new RedisBatchResult(succeeded, skipped, failed);
+    }
+
+    /**
+     * Run commands in one pipeline and return one reply per command
+     *
+     * Commands that failed are reported by their exception. If the pipeline as a whole fails
+     * (for example the connection is lost) or the circuit breaker rejects it, every command
+     * without a reply gets that exception.
+     *
+     * @param shortCircuit Whether the pipeline goes through the circuit breaker
+     */
+    private List<Object> executePipelined(int commandCount, boolean shortCircuit,
+                                          Consumer<RedisOperations<String, byte[]>> commands) {
+        Supplier<List<Object>> pipeline = () -> redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                commands.accept((RedisOperations<String, byte[]>) operations);
+                return null;
+            }
+        });
+
+        List<Object> replies;
+        try {
+            replies = shortCircuit ? guarded(pipeline) : pipeline.get();
+        } catch (CircuitBreaker.OpenException e) {
+            log.debug("Skipped a Redis pipeline of {} commands: {}", commandCount, e.getMessage());
+            replies = Collections.nCopies(commandCount, e);
+        } catch (RedisPipelineException e) {
+            log.error("Redis pipeline of {} commands partly failed", commandCount, e);
+            replies = e.getResults();
+        } catch (Exception e) {
+            log.error("Redis pipeline of {} commands failed", commandCount, e);
+            replies = Collections.nCopies(commandCount, e);
+        }
+
+        List<Object> padded = new ArrayList<>(replies == null ? List.of() : replies);
+        while (padded.size() < commandCount) {
+            padded.add(new IllegalStateException("No reply from Redis"));
+        }
+        return padded;
+    }
+
+    private static String describe(Throwable error) {
+        return error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+    }
+
+    /**
+     * Run Redis commands through the circuit breaker, timed as one call
+     *
+     * @param commands Commands to run
+     * @return Result of the commands
+     * @throws CircuitBreaker.OpenException without running the commands if the breaker rejects them
+     */
+    private <T> T guarded(Supplier<T> commands) {
+        if (circuitBreaker == null) {
+            return commands.get();
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            throw new CircuitBreaker.OpenException("Redis circuit breaker is " + circuitBreaker.getState());
+        }
+
+        CircuitBreaker.State before = circuitBreaker.getState();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = commands.get();
+            failed = false;
+            return result;
+        } finally {
+            circuitBreaker.record(System.nanoTime() - start, failed);
+            CircuitBreaker.State after = circuitBreaker.getState();
+            if (after != before) {
+                log.warn("Redis circuit breaker went from {} to {}: {}", before, after, circuitBreaker.getStatistics());
+            }
+        }
+    }
+
+    /**
+     * Get the value of a key, or null if it is missing or due for an early refresh
+     */
+    private byte[] readForLookup(String key) {
+        // Only keys whose prefix refreshes early need the TTL, the others are read with a plain GET
+        if (cacheProperties.earlyRefreshSecondsFor(key) <= 0) {
+            return guarded(() -> redisTemplate.opsForValue().get(key));
+        }
+
+        List<?> reply = guarded(() -> redisTemplate.execute(GET_WITH_TTL_SCRIPT, List.of(key)));
+        if (reply == null || reply.isEmpty() || !(reply.get(0) instanceof byte[])) {
+            return null;
+        }
+        if (reply.size() > 1 && reply.get(1) instanceof Long && shouldRefreshEarly(key, (Long) reply.get(1))) {
+            log.debug("Reporting key {} as missing so it is reloaded before it expires", key);
+            return null;
+        }
+        return (byte[]) reply.get(0);
+    }
+
+    /**
+     * Decide whether a read of a live entry should be reported as a miss so the caller reloads it
+     *
+     * The chance grows linearly from 0 at the start of the early refresh window to 1 at expiry,
+     * so a hot entry is reloaded by one of its readers shortly into the window while an entry
+     * read once in a while is mostly left to expire.
+     *
+     * @param key Redis key or range-keyed cache name the entry was read from
+     * @param remainingMillis Remaining TTL of the entry, negative if it does not expire
+     */
+    private boolean shouldRefreshEarly(String key, long remainingMillis) {
+        long windowMillis = cacheProperties.earlyRefreshSecondsFor(key) * 1000L;
+        if (windowMillis <= 0 || remainingMillis < 0 || remainingMillis >= windowMillis) {
+            return false;
+        }
+        return ThreadLocalRandom.current().nextLong(windowMillis) >= remainingMillis;
+    }
+
+    /**
+     * Get the TTL of a write in milliseconds, after jitter
+     *
+     * @param key Redis key or range-keyed cache name
+     * @param ttl TTL given by the caller, null for the TTL of the key prefix
+     * @return TTL in milliseconds, 0 if the entry should not expire
+     */
+    private long expiryMillis(String key, Duration ttl) {
+        Duration resolved = ttl != null ? ttl : cacheProperties.ttlFor(key);
+        if (resolved == null || resolved.isNegative() || resolved.isZero()) {
+            return 0L;
+        }
+
+        // Only ever shortened, so the TTL stays an upper bound on how stale an entry can get
+        long millis = resolved.toMillis();
+        long jitter = millis * Math.min(Math.max(cacheProperties.getJitterPercent(), 0), 100) / 100;
+        if (jitter <= 0) {
+            return millis;
+        }
+        return Math.max(millis - ThreadLocalRandom.current().nextLong(jitter + 1), 1L);
+    }
+
+    /**
+     * Record written keys in the budget sets of their prefixes and delete the keys over budget
+     *
+     * Best effort: a failure is logged and leaves the written keys in place.
+     *
+     * @param ttlMillisByKey TTL in milliseconds (0 for none) of each written key
+     */
+    private void enforceKeyBudgets(Map<String, Long> ttlMillisByKey) {
+        Map<String, List<byte[]>> argsByPrefix = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : ttlMillisByKey.entrySet()) {
+            Map.Entry<String, RedisCacheProperties.Prefix> prefix = budgetedPrefixOf(entry.getKey());
+            if (prefix == null) {
+                continue;
+            }
+            List<byte[]> args = argsByPrefix.computeIfAbsent(prefix.getKey(),
+                    p -> new ArrayList<>(List.of(bytes(String.valueOf(prefix.getValue().getMaxKeys())))));
+            args.add(bytes(entry.getKey()));
+            args.add(bytes(String.valueOf(entry.getValue())));
+        }
+
+        for (Map.Entry<String, List<byte[]>> entry : argsByPrefix.entrySet()) {
+            try {
+                List<?> victims = guarded(() -> redisTemplate.execute(TRACK_KEYS_SCRIPT,
+                        List.of(budgetKey(entry.getKey())), entry.getValue().toArray()));
+                deleteOverBudget(entry.getKey(), victims);
+            } catch (CircuitBreaker.OpenException e) {
+                log.debug("Skipped the key budget of prefix {}: {}", entry.getKey(), e.getMessage());
+            } catch (Exception e) {
+                log.warn("Failed to enforce the key budget of prefix: {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Get the configured prefix of a key if it limits its number of keys
+     *
+     * @return Prefix and its settings, null if the key has no key budget
+     */
+    private Map.Entry<String, RedisCacheProperties.Prefix> budgetedPrefixOf(String key) {
+        Map.Entry<String, RedisCacheProperties.Prefix> prefix = cacheProperties.prefixOf(key);
+        return prefix == null || prefix.getValue().getMaxKeys() <= 0 ? null : prefix;
+    }
+
+    private static String budgetKey(String prefix) {
+        return "{" + prefix + "}:budget";
+    }
+
+    /**
+     * Delete the keys a budget script popped beyond the budget of their prefix
+     *
+     * @param victims Keys returned by the script, as bytes
+     */
+    private void deleteOverBudget(String prefix, List<?> victims) {
+        if (victims == null || victims.isEmpty()) {
+            return;
+        }
+
+        List<String> victimKeys = new ArrayList<>(victims.size());
+        for (Object victim : victims) {
+            if (victim instanceof byte[]) {
+                victimKeys.add(new String((byte[]) victim, StandardCharsets.UTF_8));
+            }
+        }
+        RedisBatchResult deleted = deleteMany(victimKeys);
+        log.info("Evicted {} keys over the budget of prefix: {}", deleted.getSucceeded().size(), prefix);
+    }
+
+    /**
+     * Write an object covering a range of values to a range-keyed cache, with the TTL of the cache
+     *
+     * Cached ranges overlapping the new one are evicted in the same script.
+     *
+     * @param key Name of the range-keyed cache
+     * @param startRange Start of the range (inclusive, not negative)
+     * @param endRange End of the range (inclusive)
+     * @param value Object to store (will be encoded by the value codec)
+     * @param <T> Type of object to store
+     * @return true if successfully written, false otherwise
+     */
+    public <T> boolean writeRange(String key, long startRange, long endRange, T value) {
+        return writeRange(key, startRange, endRange, value, null);
+    }
+
+    /**
+     * Write an object covering a range of values to a range-keyed cache, with custom TTL
+     *
+     * Cached ranges overlapping the new one are evicted in the same script, as are expired
+     * ranges and, if the cache is over its key budget, the ranges closest to expiry.
+     *
+     * @param key Name of the range-keyed cache
+     * @param startRange Start of the range (inclusive, not negative)
+     * @param endRange End of the range (inclusive)
+     * @param value Object to store (will be encoded by the value codec)
+     * @param ttl Expiry before jitter, null for the TTL of the cache, zero or negative for none
+     * @param <T> Type of object to store
+     * @return true if successfully written, false otherwise
+     */
+    public <T> boolean writeRange(String key, long startRange, long endRange, T value, Duration ttl) {
+        if (key == null || key.trim().isEmpty()) {
+            log.warn("Cannot write range to Redis: key is null or empty");
+            return false;
+        }
+
+        if (value == null) {
+            log.warn("Cannot write range to Redis: value is null for key: {}", key);
+            return false;
+        }
+
+        if (startRange < 0 || startRange > endRange) {
+            log.warn("Cannot write range to Redis: invalid range {}-{} for key: {}", startRange, endRange, key);
+            return false;
+        }
+
+        try {
+            byte[] encodedValue = valueCodec.encode(value);
+            Map.Entry<String, RedisCacheProperties.Prefix> prefix = cacheProperties.prefixOf(key);
+            long maxKeys = prefix == null ? 0L : prefix.getValue().getMaxKeys();
+            byte[] ttlMillis = bytes(String.valueOf(expiryMillis(key, ttl)));
+            guarded(() -> redisTemplate.execute(WRITE_RANGES_SCRIPT, rangeKeys(key), bytes(String.valueOf(maxKeys)),
+                    bytes(pad(startRange)), bytes(pad(endRange)), bytes(rangeMember(startRange, endRange)),
+                    encodedValue, ttlMillis));
+
+            log.debug("Successfully wrote range {}-{} to Redis with key: {}", startRange, endRange, key);
+            return true;
+
+        } catch (IOException e) {
+            log.error("Failed to encode object for key: {}", key, e);
+            return false;
+        } catch (CircuitBreaker.OpenException e) {
+            log.debug("Skipped writing range to key {}: {}", key, e.getMessage());
+            return false;
+        } catch (Exception e) {
+            log.error("Failed to write range to Redis for key: {}", key, e);
+            return false;
+        }
+    }
+
+    /**
+     * Write several ranges to a range-keyed cache, one script call per chunk of ranges
+     *
+     * Ranges are written in order, so a range overlapping an earlier one of the same call
+     * evicts it as a separate writeRange would.
+     *
+     * @param key Name of the range-keyed cache
+     * @param ranges Ranges and the objects covering them (will be encoded by the value codec)
+     * @param ttl Expiry before jitter, null for the TTL of the cache, zero or negative for none
+     * @param <T> Type of objects to store
+     * @return Ranges written and ranges that failed with the reason, each named "start-end"
+     */
+    public <T> RedisBatchResult writeRanges(String key, List<CachedRange<T>> ranges, Duration ttl) {
+        List<String> succeeded = new ArrayList<>();
+        Map<String, String> failed = new LinkedHashMap<>();
+
+        if (ranges == null || ranges.isEmpty()) {
+            return new RedisBatchResult(succeeded, new ArrayList<>(), failed);
+        }
+
+        if (key == null || key.trim().isEmpty()) {
+            log.warn("Cannot write ranges to Redis: key is null or empty");
+            for (CachedRange<T> range : ranges) {
+                failed.put(rangeName(range), "Key is null or empty");
+            }
+            return new RedisBatchResult(succeeded, new ArrayList<>(), failed);
+        }
+
+        // Encode up front so a bad value only fails its own range
+        List<String> names = new ArrayList<>(ranges.size());
+        List<byte[]> args = new ArrayList<>(ranges.size() * 5);
+        for (CachedRange<T> range : ranges) {
+            String name = rangeName(range);
+            if (range.getValue() == null) {
+                failed.put(name, "Value is null");
+                continue;
+            }
+            if (range.getStartRange() < 0 || range.getStartRange() > range.getEndRange()) {
+                failed.put(name, "Invalid range");
+                continue;
+            }
+            try {
+                byte[] encodedValue = valueCodec.encode(range.getValue());
+                args.add(bytes(pad(range.getStartRange())));
+                args.add(bytes(pad(range.getEndRange())));
+                args.add(bytes(rangeMember(range.getStartRange(), range.getEndRange())));
+                args.add(encodedValue);
+                args.add(bytes(String.valueOf(expiryMillis(key, ttl))));
+                names.add(name);
+            } catch (IOException e) {
+                log.error("Failed to encode object for key: {}", key, e);
+                failed.put(name, "Encoding failed: " + describe(e));
+            }
+        }
+
+        Map.Entry<String, RedisCacheProperties.Prefix> prefix = cacheProperties.prefixOf(key);
+        byte[] maxKeys = bytes(String.valueOf(prefix == null ? 0L : prefix.getValue().getMaxKeys()));
+        int chunkSize = Math.max(pipelineBatchSize, 1);
+        for (int from = 0; from < names.size(); from += chunkSize) {
+            List<String> chunkNames = names.subList(from, Math.min(from + chunkSize, names.size()));
+            List<byte[]> chunkArgs = new ArrayList<>(chunkNames.size() * 5 + 1);
+            chunkArgs.add(maxKeys);
+            chunkArgs.addAll(args.subList(from * 5, (from + chunkNames.size()) * 5));
+
+            try {
+                guarded(() -> redisTemplate.execute(WRITE_RANGES_SCRIPT, rangeKeys(key), chunkArgs.toArray()));
+                succeeded.addAll(chunkNames);
+            } catch (CircuitBreaker.OpenException e) {
+                log.debug("Skipped writing {} ranges to key {}: {}", chunkNames.size(), key, e.getMessage());
+                chunkNames.forEach(name -> failed.put(name, e.getMessage()));
+            } catch (Exception e) {
+                log.error("Failed to write {} ranges to Redis for key: {}", chunkNames.size(), key, e);
+                chunkNames.forEach(name -> failed.put(name, describe(e)));
+            }
+        }
+
+        log.debug("Wrote {} of {} ranges to Redis with key: {}", succeeded.size(), ranges.size(), key);
+        return new RedisBatchResult(succeeded, new ArrayList<>(), failed);
+    }
+
+    private static String rangeName(CachedRange<?> range) {
+        return range.getStartRange() + "-" + range.getEndRange();
+    }
+
+    /**
+     * Find the object of the range containing a value, in one round trip
+     *
+     * @param key Name of the range-keyed cache
+     * @param value Value to look up
+     * @param valueType Class type of the object to deserialize
+     * @param <T> Type of object to retrieve
+     * @return Optional containing the object if a cached range contains the value, empty otherwise
+     */
+    public <T> Optional<T> findInRange(String key, long value, Class<T> valueType) {
+        return findRange(key, value, valueType).map(CachedRange::getValue);
+    }
+
+    /**
+     * Find the objects of the ranges containing several values, in one round trip
+     *
+     * @param key Name of the range-keyed cache
+     * @param values Values to look up
+     * @param valueType Class type of the objects to deserialize
+     * @param <T> Type of objects to retrieve
+     * @return One Optional per value, in value order, empty where no cached range contains it
+     */
+    public <T> List<Optional<T>> findManyInRange(String key, List<Long> values, Class<T> valueType) {
+        List<Optional<CachedRange<T>>> ranges = findRanges(key, values, valueType);
+        List<Optional<T>> results = new ArrayList<>(ranges.size());
+        for (Optional<CachedRange<T>> range : ranges) {
+            results.add(range.map(CachedRange::getValue));
+        }
+        return results;
+    }
+
+    /**
+     * Find the range containing a value, with its bounds and object, in one round trip
+     *
+     * @param key Name of the range-keyed cache
+     * @param value Value to look up
+     * @param valueType Class type of the object to deserialize
+     * @param <T> Type of object to retrieve
+     * @return Optional containing the cached range if one contains the value, empty otherwise
+     */
+    public <T> Optional<CachedRange<T>> findRange(String key, long value, Class<T> valueType) {
+        List<Optional<CachedRange<T>>> results = findRanges(key, List.of(value), valueType);
+        return results.isEmpty() ? Optional.empty() : results.get(0);
+    }
+
+    /**
+     * Find the ranges containing several values, with their bounds and objects, in one round trip
+     *
+     * @param key Name of the range-keyed cache
+     * @param values Values to look up
+     * @param valueType Class type of the objects to deserialize
+     * @param <T> Type of objects to retrieve
+     * @return One Optional per value, in value order, empty where no cached range contains it
+     */
+    public <T> List<Optional<CachedRange<T>>> findRanges(String key, List<Long> values, Class<T> valueType) {
+        List<RangeLookup<T, Void>> lookups = findRanges(key, valueType, null, Void.class, values);
+        List<Optional<CachedRange<T>>> results = new ArrayList<>(lookups.size());
+        for (RangeLookup<T, Void> lookup : lookups) {
+            results.add(lookup.getRange());
+        }
+        return results;
+    }
+
+    /**
+     * Find the ranges containing several values in a range-keyed cache, or else in a fallback cache, in one round trip
+     *
+     * Values no range of the cache contains are looked up in the fallback cache by the same
+     * script call, such as the cached gaps between the ranges of the cache. On Redis Cluster
+     * the fallback cache must be named after the cache ("name:other"), which keeps both in
+     * one hash slot.
+     *
+     * @param key Name of the range-keyed cache
+     * @param valueType Class type of the objects of the cache
+     * @param fallbackKey Name of the range-keyed cache asked for values the first does not have, null for none
+     * @param fallbackType Class type of the objects of the fallback cache
+     * @param values Values to look up
+     * @param <T> Type of the objects of the cache
+     * @param <F> Type of the objects of the fallback cache
+     * @return One lookup per value, in value order
+     */
+    public <T, F> List<RangeLookup<T, F>> findRanges(String key, Class<T> valueType,
+                                                     String fallbackKey, Class<F> fallbackType, List<Long> values) {
+        if (values == null || values.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<RangeLookup<T, F>> results = new ArrayList<>(Collections.nCopies(values.size(), RangeLookup.<T, F>none()));
+
+        if (key == null || key.trim().isEmpty()) {
+            log.warn("Cannot find range in Redis: key is null or empty");
+            return results;
+        }
+
+        if (valueType == null) {
+            log.warn("Cannot find range in Redis: valueType is null for key: {}", key);
+            return results;
+        }
+
+        if (fallbackKey != null && fallbackType == null) {
+            log.warn("Cannot find range in Redis: fallbackType is null for key: {}", fallbackKey);
+            return results;
+        }
+
+        // Values that cannot be in any range are not sent
+        List<Integer> positions = new ArrayList<>(values.size());
+        List<byte[]> args = new ArrayList<>(values.size() * 2);
+        for (int i = 0; i < values.size(); i++) {
+            Long value = values.get(i);
+            if (value == null || value < 0) {
+                continue;
+            }
+            String padded = pad(value);
+            positions.add(i);
+            args.add(bytes("(" + padded + ";"));
+            args.add(bytes(padded));
+        }
+
+        if (positions.isEmpty()) {
+            return results;
+        }
+
+        List<String> keys = new ArrayList<>(rangeKeys(key));
+        if (fallbackKey != null) {
+            keys.addAll(rangeKeys(fallbackKey));
+        }
+
+        List<?> replies;
+        try {
+            replies = guarded(() -> redisTemplate.execute(FIND_IN_RANGE_SCRIPT, keys, args.toArray()));
+        } catch (CircuitBreaker.OpenException e) {
+            log.debug("Skipped reading ranges from key {}: {}", key, e.getMessage());
+            return results;
+        } catch (Exception e) {
+            log.error("Failed to retrieve ranges from Redis for key: {}", key, e);
+            return results;
+        }
+
+        if (replies == null) {
+            return results;
+        }
+
+        // Four replies per value: the cache it was found in, the member, its payload and its remaining TTL
+        for (int i = 0; i < positions.size() && 4 * i + 3 < replies.size(); i++) {
+            Object source = replies.get(4 * i);
+            if (Long.valueOf(1L).equals(source)) {
+                CachedRange<T> range = decodeRange(key, replies, 4 * i + 1, valueType);
+                if (range != null) {
+                    results.set(positions.get(i), new RangeLookup<>(range, null));
+                }
+            } else if (Long.valueOf(2L).equals(source) && fallbackKey != null) {
+                CachedRange<F> fallback = decodeRange(fallbackKey, replies, 4 * i + 1, fallbackType);
+                if (fallback != null) {
+                    results.set(positions.get(i), new RangeLookup<>(null, fallback));
+                }
+            }
+        }
+
+        log.debug("Looked up {} values in Redis range cache: {}", positions.size(), key);
+        return results;
+    }
+
+    /**
+     * Decode the member, payload and remaining TTL replied for a value by FIND_IN_RANGE_SCRIPT
+     *
+     * @return The cached range, null if there is none, it is refreshed early or cannot be decoded
+     */
+    private <T> CachedRange<T> decodeRange(String key, List<?> replies, int offset, Class<T> valueType) {
+        Object member = replies.get(offset);
+        Object encodedValue = replies.get(offset + 1);
+        if (!(member instanceof byte[]) || !(encodedValue instanceof byte[])) {
+            return null;
+        }
+
+        Object remaining = replies.get(offset + 2);
+        if (remaining instanceof Long && shouldRefreshEarly(key, (Long) remaining)) {
+            log.debug("Reporting a range of {} as missing so it is reloaded before it expires", key);
+            return null;
+        }
+
+        try {
+            // Members are the padded bounds "start:end"
+            String bounds = new String((byte[]) member, StandardCharsets.UTF_8);
+            long startRange = Long.parseLong(bounds.substring(0, 19));
+            long endRange = Long.parseLong(bounds.substring(20));
+            return new CachedRange<>(startRange, endRange, valueCodec.decode((byte[]) encodedValue, valueType));
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to decode range from Redis for key: {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Delete the entry of a range from a range-keyed cache
+     *
+     * @param key Name of the range-keyed cache
+     * @param startRange Start of the range
+     * @param endRange End of the range
+     * @return true if the range was cached and deleted, false otherwise
+     */
+    public boolean deleteRange(String key, long startRange, long endRange) {
+        if (key == null || key.trim().isEmpty()) {
+            log.warn("Cannot delete range from Redis: key is null or empty");
+            return false;
+        }
+
+        if (startRange < 0 || startRange > endRange) {
+            return false;
+        }
+
+        try {
+            Long deleted = redisTemplate.execute(DELETE_RANGE_SCRIPT, rangeKeys(key),
+                    bytes(rangeMember(startRange, endRange)));
+            log.debug("Deleted range {}-{} from Redis with key: {}", startRange, endRange, key);
+            return deleted != null && deleted > 0;
+
+        } catch (Exception e) {
+            log.error("Failed to delete range from Redis for key: {}", key, e);
+            return false;
+        }
+    }
+
+    /**
+     * Delete every cached range overlapping a range of values
+     *
+     * @param key Name of the range-keyed cache
+     * @param startRange Start of the range (inclusive)
+     * @param endRange End of the range (inclusive)
+     * @return Number of cached ranges deleted
+     */
+    public int deleteOverlappingRanges(String key, long startRange, long endRange) {
+        if (key == null || key.trim().isEmpty()) {
+            log.warn("Cannot delete ranges from Redis: key is null or empty");
+            return 0;
+        }
+
+        if (startRange > endRange || endRange < 0) {
+            return 0;
+        }
+
+        try {
+            Long deleted = redisTemplate.execute(DELETE_OVERLAPPING_SCRIPT, rangeKeys(key),
+                    bytes(pad(Math.max(startRange, 0L))), bytes(pad(endRange)));
+            log.debug("Deleted {} ranges overlapping {}-{} from Redis with key: {}", deleted, startRange, endRange, key);
+            return deleted == null ? 0 : deleted.intValue();
+
+        } catch (Exception e) {
+            log.error("Failed to delete ranges from Redis for key: {}", key, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Delete a whole range-keyed cache
+     *
+     * @param key Name of the range-keyed cache
+     * @return true if the cache existed and was deleted, false otherwise
+     */
+    public boolean deleteRanges(String key) {
+        if (key == null || key.trim().isEmpty()) {
+            log.warn("Cannot delete ranges from Redis: key is null or empty");
+            return false;
+        }
+
+        try {
+            Long deleted = redisTemplate.delete(rangeKeys(key));
+            log.debug("Deleted range cache from Redis with key: {}", key);
+            return deleted != null && deleted > 0;
+
+        } catch (Exception e) {
+            log.error("Failed to delete range cache from Redis for key: {}", key, e);
+            return false;
+        }
+    }
+
+    /**
+     * Sorted set, payload hash and expiry set of a range-keyed cache, hash-tagged into the same cluster slot
+     *
+     * The hash tag is the cache name up to its first ':', so a cache "name:other" shares the
+     * slot of the cache "name" and a script can read both.
+     */
+    private static List<String> rangeKeys(String key) {
+        int separator = key.indexOf(':');
+        String prefix = separator < 0
+                ? "{" + key + "}"
+                : "{" + key.substring(0, separator) + "}" + key.substring(separator);
+        return Arrays.asList(prefix + ":ranges", prefix + ":payloads", prefix + ":expiry");
+    }
+
+    private static String rangeMember(long startRange, long endRange) {
+        return pad(startRange) + ":" + pad(endRange);
+    }
+
+    private static String pad(long value) {
+        return String.format(RANGE_BOUND_FORMAT, value);
+    }
+
+    // Script arguments go through the byte[] value serializer
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
     /**
      * Delete an object from Redis by key
      *
@@ -144,9 +1284,12 @@ public class RedisServiceImpl implements IRedisService {
         }
 
         try {
-            Boolean exists = redisTemplate.hasKey(key);
+            Boolean exists = guarded(() -> redisTemplate.hasKey(key));
             return Boolean.TRUE.equals(exists);
 
+        } catch (CircuitBreaker.OpenException e) {
+            log.debug("Skipped checking key {}: {}", key, e.getMessage());
+            return false;
         } catch (Exception e) {
             log.error("Failed to check key existence in Redis: {}", key, e);
             return false;
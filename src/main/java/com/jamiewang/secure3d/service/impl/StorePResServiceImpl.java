@@ -4,10 +4,14 @@ import com.jamiewang.secure3d.dto.BulkImportResponseDTO;
 import com.jamiewang.secure3d.dto.CardRangeDataDTO;
 import com.jamiewang.secure3d.dto.PResMessageDTO;
 import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.event.CardRangesImportedEvent;
+import com.jamiewang.secure3d.repository.CardRangeJdbcRepository;
 import com.jamiewang.secure3d.repository.ICardRangeRepository;
 import com.jamiewang.secure3d.service.IStorePResService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,54 +26,227 @@ public class StorePResServiceImpl implements IStorePResService {
     @Autowired
     private ICardRangeRepository cardRangeRepository;
 
+    @Autowired
+    private CardRangeJdbcRepository cardRangeJdbcRepository;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Value("${app.import.bulk.enabled:true}")
+    private boolean bulkInsertEnabled;
+
+    @Value("${app.import.bulk.batch-size:1000}")
+    private int bulkInsertBatchSize;
+
     /**
      * Process a PRes message containing multiple card ranges
      *
+     * Each range is applied according to its actionInd: "D" deletes the stored range with the
+     * same bounds, "M" updates it (or adds it if there is none) and anything else adds it.
+     *
+     * With bulk insert enabled, consecutive adds are written by CardRangeJdbcRepository in
+     * multi-row statements instead of one JPA save (and one acs_info insert per value) each.
+     * Pending adds are written before any delete or modification, so the ranges are still
+     * applied in message order.
+     *
      * @param presMessage Complete PRes message with card range data
      * @return Bulk import response with processing statistics
      */
     @Transactional
     public BulkImportResponseDTO processPResMessage(PResMessageDTO presMessage) {
+        return applyCardRanges(presMessage, true);
+    }
+
+    /**
+     * Process one chunk of a PRes message streamed from a file too large to hold in memory
+     *
+     * Each chunk is applied like a message of its own, in its own transaction, but without
+     * publishing {@link CardRangesImportedEvent}: resynchronizing derived copies chunk by
+     * chunk would cost more than the import. Call {@link #finishChunkedImport} once the
+     * last chunk is processed.
+     *
+     * @param chunk PRes message header with the next card ranges of the stream
+     * @return Bulk import response for the chunk
+     */
+    @Transactional
+    public BulkImportResponseDTO processPResChunk(PResMessageDTO chunk) {
+        return applyCardRanges(chunk, false);
+    }
+
+    /**
+     * Let derived copies resynchronize after a chunked import
+     *
+     * The event carries no changes, so listeners reload or clear instead of applying a delta.
+     *
+     * @param serialNum Serial number of the imported PRes message
+     * @param importedCount Number of card ranges applied over all chunks
+     */
+    public void finishChunkedImport(String serialNum, int importedCount) {
+        if (importedCount > 0) {
+            applicationEventPublisher.publishEvent(new CardRangesImportedEvent(serialNum, importedCount, null));
+        }
+    }
+
+    private BulkImportResponseDTO applyCardRanges(PResMessageDTO presMessage, boolean publishEvent) {
         log.info("Processing PRes message: serialNum={}, messageType={}, cardRanges={}",
                 presMessage.getSerialNum(), presMessage.getMessageType(), presMessage.getCardRangeData().size());
 
         List<String> errors = new ArrayList<>();
+        List<CardRangeEntity> changes = new ArrayList<>();
+        List<PendingAdd> pendingAdds = new ArrayList<>();
         int successCount = 0;
         int errorCount = 0;
         int totalProcessed = presMessage.getCardRangeData().size();
+        long startTime = System.currentTimeMillis();
 
         for (int i = 0; i < presMessage.getCardRangeData().size(); i++) {
             CardRangeDataDTO cardRangeData = presMessage.getCardRangeData().get(i);
+            boolean add = !CardRangeEntity.ACTION_DELETE.equals(cardRangeData.getActionInd())
+                    && !CardRangeEntity.ACTION_MODIFY.equals(cardRangeData.getActionInd());
+
+            if (!pendingAdds.isEmpty() && (!add || pendingAdds.size() >= bulkInsertBatchSize)) {
+                int inserted = insertPendingAdds(pendingAdds, changes, errors);
+                successCount += inserted;
+                errorCount += pendingAdds.size() - inserted;
+                pendingAdds.clear();
+            }
 
             try {
                 log.debug("Processing card range data: {} - {}",
                         cardRangeData.getStartRange(), cardRangeData.getEndRange());
 
-                // TODO： Consider delete and update action. When delete and update card range data, remember to remove
-                //  influenced cached data (recording to cached_record table).
+                // Cached lookups of a changed range are evicted once the import commits, by the
+                // listeners of the CardRangesImportedEvent carrying the collected changes
 
-                // Here we only consider adding card ranges
                 CardRangeEntity cardRange = createCardRangeFromData(cardRangeData);
-                log.debug("Creating new card range: {} - {}", cardRangeData.getStartRange(), cardRangeData.getEndRange());
 
-                cardRangeRepository.save(cardRange);
+                if (CardRangeEntity.ACTION_DELETE.equals(cardRangeData.getActionInd())) {
+                    deleteCardRange(cardRange);
+                } else if (CardRangeEntity.ACTION_MODIFY.equals(cardRangeData.getActionInd())) {
+                    modifyCardRange(cardRange);
+                } else if (bulkInsertEnabled) {
+                    // Counted once written
+                    pendingAdds.add(new PendingAdd(i, cardRange));
+                    continue;
+                } else {
+                    log.debug("Creating new card range: {} - {}", cardRangeData.getStartRange(), cardRangeData.getEndRange());
+                    cardRangeRepository.save(cardRange);
+                }
 
+                changes.add(cardRange);
                 successCount++;
             } catch (Exception e) {
                 errorCount++;
-                String errorMsg = String.format("Error processing range %d (%s-%s): %s",
-                        i + 1, cardRangeData.getStartRange(), cardRangeData.getEndRange(), e.getMessage());
-                errors.add(errorMsg);
-                log.warn(errorMsg);
+                errors.add(errorMessage(i, cardRangeData.getStartRange(), cardRangeData.getEndRange(), e));
             }
         }
 
-        log.info("PRes message processing completed: {} successful, {} errors out of {} total",
-                successCount, errorCount, totalProcessed);
+        if (!pendingAdds.isEmpty()) {
+            int inserted = insertPendingAdds(pendingAdds, changes, errors);
+            successCount += inserted;
+            errorCount += pendingAdds.size() - inserted;
+        }
+
+        long duration = Math.max(1, System.currentTimeMillis() - startTime);
+        log.info("PRes message processing completed in {} ms ({} ranges/s): {} successful, {} errors out of {} total",
+                duration, totalProcessed * 1000L / duration, successCount, errorCount, totalProcessed);
+
+        // Let derived copies (in-memory index) resync once this transaction commits
+        if (publishEvent && successCount > 0) {
+            applicationEventPublisher.publishEvent(
+                    new CardRangesImportedEvent(presMessage.getSerialNum(), successCount, changes));
+        }
 
         return new BulkImportResponseDTO(totalProcessed, successCount, errorCount, errors, LocalDateTime.now());
     }
 
+    /**
+     * Write pending adds with multi-row inserts
+     *
+     * If the batch fails as a whole (nothing of it is kept), its ranges are saved one by one
+     * so only the offending ones are reported as errors.
+     *
+     * @param pendingAdds Adds in message order
+     * @param changes Receives the ranges written
+     * @param errors Receives an error message per range that could not be written
+     * @return Number of ranges written
+     */
+    private int insertPendingAdds(List<PendingAdd> pendingAdds, List<CardRangeEntity> changes, List<String> errors) {
+        List<CardRangeEntity> ranges = new ArrayList<>(pendingAdds.size());
+        for (PendingAdd pendingAdd : pendingAdds) {
+            ranges.add(pendingAdd.cardRange);
+        }
+
+        try {
+            cardRangeJdbcRepository.insertAll(ranges);
+            changes.addAll(ranges);
+            return ranges.size();
+        } catch (Exception e) {
+            log.warn("Bulk insert of {} card ranges failed, saving them one by one: {}", ranges.size(), e.getMessage());
+        }
+
+        int inserted = 0;
+        for (PendingAdd pendingAdd : pendingAdds) {
+            try {
+                pendingAdd.cardRange.setId(null);
+                cardRangeRepository.save(pendingAdd.cardRange);
+                changes.add(pendingAdd.cardRange);
+                inserted++;
+            } catch (Exception e) {
+                errors.add(errorMessage(pendingAdd.position,
+                        pendingAdd.cardRange.getStartRange(), pendingAdd.cardRange.getEndRange(), e));
+            }
+        }
+        return inserted;
+    }
+
+    private String errorMessage(int position, Long startRange, Long endRange, Exception e) {
+        String errorMsg = String.format("Error processing range %d (%s-%s): %s",
+                position + 1, startRange, endRange, e.getMessage());
+        log.warn(errorMsg);
+        return errorMsg;
+    }
+
+    /**
+     * Delete every stored range with the bounds of the given range
+     */
+    private void deleteCardRange(CardRangeEntity cardRange) {
+        List<CardRangeEntity> existing = cardRangeRepository.findByStartRangeAndEndRange(
+                cardRange.getStartRange(), cardRange.getEndRange());
+        if (existing.isEmpty()) {
+            throw new IllegalArgumentException("Card range to delete does not exist");
+        }
+
+        log.debug("Deleting card range: {} - {}", cardRange.getStartRange(), cardRange.getEndRange());
+        cardRangeRepository.deleteAll(existing);
+    }
+
+    /**
+     * Update every stored range with the bounds of the given range, adding it if there is none
+     */
+    private void modifyCardRange(CardRangeEntity cardRange) {
+        List<CardRangeEntity> existing = cardRangeRepository.findByStartRangeAndEndRange(
+                cardRange.getStartRange(), cardRange.getEndRange());
+        if (existing.isEmpty()) {
+            log.debug("Card range to modify does not exist, creating it: {} - {}",
+                    cardRange.getStartRange(), cardRange.getEndRange());
+            cardRangeRepository.save(cardRange);
+            return;
+        }
+
+        log.debug("Updating card range: {} - {}", cardRange.getStartRange(), cardRange.getEndRange());
+        for (CardRangeEntity stored : existing) {
+            stored.setThreeDsMethodUrl(cardRange.getThreeDsMethodUrl());
+            // Each entity needs its own collection instance
+            stored.setAcsInfoInd(cardRange.getAcsInfoInd() == null ? null : new ArrayList<>(cardRange.getAcsInfoInd()));
+            stored.setActionInd(cardRange.getActionInd());
+            stored.setAcsStartProtocolVersion(cardRange.getAcsStartProtocolVersion());
+            stored.setAcsEndProtocolVersion(cardRange.getAcsEndProtocolVersion());
+            stored.setUpdatedAt(cardRange.getUpdatedAt());
+        }
+        cardRangeRepository.saveAll(existing);
+    }
+
     /**
      * Create CardRange entity from CardRangeDataDTO
      */
@@ -87,4 +264,17 @@ public class StorePResServiceImpl implements IStorePResService {
 
         return cardRangeEntity;
     }
+
+    /**
+     * Add waiting for the next bulk insert, with its position in the message
+     */
+    private static class PendingAdd {
+        private final int position;
+        private final CardRangeEntity cardRange;
+
+        PendingAdd(int position, CardRangeEntity cardRange) {
+            this.position = position;
+            this.cardRange = cardRange;
+        }
+    }
 }
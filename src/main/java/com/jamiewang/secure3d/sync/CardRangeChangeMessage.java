@@ -0,0 +1,34 @@
+package com.jamiewang.secure3d.sync;
+
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Card range changes of a committed PRes import, as sent to the other nodes
+ *
+ * The sequence numbers the messages of one origin node, so receivers can tell when they
+ * missed some. Without changes the message only says the data changed and receivers
+ * reload instead of applying a delta.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardRangeChangeMessage {
+
+    // Node the import was committed on
+    private String origin;
+
+    // Position in the messages of the origin node, starting at 1
+    private long sequence;
+
+    private String serialNum;
+    private int importedCount;
+
+    // Ranges as applied, null if there were too many to send
+    private List<CardRangeDataDTO> changes;
+
+}
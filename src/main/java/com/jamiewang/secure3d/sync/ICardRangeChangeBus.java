@@ -0,0 +1,29 @@
+package com.jamiewang.secure3d.sync;
+
+import java.util.function.Consumer;
+
+/**
+ * Channel carrying card range changes between the nodes sharing a database
+ *
+ * One implementation is active, chosen with app.sync.bus. Every message is delivered to the
+ * subscribers of every node, the node that published it included. Delivery is at most once:
+ * a node that is disconnected while a message is sent does not get it.
+ */
+public interface ICardRangeChangeBus {
+
+    /**
+     * Send a message to every subscribed node
+     *
+     * @param message Changes to send
+     * @throws RuntimeException if the message cannot be sent
+     */
+    public void publish(CardRangeChangeMessage message);
+
+    /**
+     * Receive the messages sent from now on
+     *
+     * @param subscriber Called with each message, from a thread of the bus
+     */
+    public void subscribe(Consumer<CardRangeChangeMessage> subscriber);
+
+}
@@ -0,0 +1,40 @@
+package com.jamiewang.secure3d.sync;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers messages to the subscribers of this JVM only, the default bus
+ *
+ * Enough for a single node, and stands in for a shared bus in tests: components simulating
+ * several nodes subscribe to the same instance. Messages are delivered on the publishing
+ * thread, in order.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "app.sync.bus", havingValue = "in-process", matchIfMissing = true)
+public class InProcessCardRangeChangeBus implements ICardRangeChangeBus {
+
+    private final List<Consumer<CardRangeChangeMessage>> subscribers = new CopyOnWriteArrayList<>();
+
+    public void publish(CardRangeChangeMessage message) {
+        for (Consumer<CardRangeChangeMessage> subscriber : subscribers) {
+            try {
+                subscriber.accept(message);
+            } catch (RuntimeException e) {
+                // One failing subscriber must not keep the message from the others
+                log.warn("Card range change subscriber failed for message {}", message.getSequence(), e);
+            }
+        }
+    }
+
+    public void subscribe(Consumer<CardRangeChangeMessage> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.jamiewang.secure3d.sync;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Sends messages as JSON over a Redis pub/sub channel
+ *
+ * Every node connected to the Redis receives each message within milliseconds. Pub/sub
+ * keeps nothing: a node whose subscription connection is down misses the messages sent
+ * meanwhile, which receivers detect from the sequence numbers once messages arrive again.
+ * The listener container resubscribes on its own after a connection loss.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "app.sync.bus", havingValue = "redis")
+public class RedisCardRangeChangeBus implements ICardRangeChangeBus {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final RedisMessageListenerContainer container;
+    private final String channel;
+
+    private final List<Consumer<CardRangeChangeMessage>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public RedisCardRangeChangeBus(RedisConnectionFactory connectionFactory,
+                                   StringRedisTemplate stringRedisTemplate,
+                                   ObjectMapper objectMapper,
+                                   @Value("${app.sync.redis.channel:card-range-changes}") String channel) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.channel = channel;
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        // Deliver on the subscription thread, one message at a time and in the order sent
+        this.container.setTaskExecutor(new SyncTaskExecutor());
+    }
+
+    @PostConstruct
+    public void initialize() {
+        container.addMessageListener(this::onMessage, new ChannelTopic(channel));
+        container.afterPropertiesSet();
+        container.start();
+        log.info("Subscribed to card range changes on Redis channel {}", channel);
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        container.destroy();
+    }
+
+    public void publish(CardRangeChangeMessage message) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize card range change message", e);
+        }
+        stringRedisTemplate.convertAndSend(channel, json);
+    }
+
+    public void subscribe(Consumer<CardRangeChangeMessage> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        CardRangeChangeMessage change;
+        try {
+            change = objectMapper.readValue(message.getBody(), CardRangeChangeMessage.class);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable message on Redis channel {}", channel, e);
+            return;
+        }
+
+        for (Consumer<CardRangeChangeMessage> subscriber : subscribers) {
+            try {
+                subscriber.accept(change);
+            } catch (RuntimeException e) {
+                log.warn("Card range change subscriber failed for message {}", change.getSequence(), e);
+            }
+        }
+    }
+
+}
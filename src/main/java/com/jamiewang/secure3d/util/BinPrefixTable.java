@@ -0,0 +1,155 @@
+package com.jamiewang.secure3d.util;
+
+import java.util.Arrays;
+
+/**
+ * Direct-mapped front table over a {@link RangeIndex}, indexed by the leading PAN digits (BIN)
+ *
+ * Most card ranges are aligned on BIN boundaries, so for a given BIN the answer is usually
+ * the same for every PAN in it. Each table entry records one of:
+ * - the index slot of the single range covering the whole BIN, resolved in one array access
+ * - {@link #NO_RANGE} when no range intersects the BIN at all, a definitive miss
+ * - {@link #SPLIT} when the BIN is shared by several ranges or only partly covered, in which
+ *   case the caller falls back to the range search
+ *
+ * The table holds {@code 10^prefixDigits} ints (4 MB for 6 digits) and is immutable once built.
+ */
+public final class BinPrefixTable {
+
+    /**
+     * No range intersects the BIN
+     */
+    public static final int NO_RANGE = RangeIndex.NOT_FOUND;
+
+    /**
+     * The BIN cannot be resolved by the table, search the range index instead
+     */
+    public static final int SPLIT = -2;
+
+    /**
+     * Largest supported prefix length (10^8 entries, 400 MB)
+     */
+    public static final int MAX_PREFIX_DIGITS = 8;
+
+    private final int[] table;
+    private final int prefixDigits;
+    private final long binSize;
+    private final long valueLimit;
+    private final int directBins;
+
+    private BinPrefixTable(int[] table, int prefixDigits, long binSize, long valueLimit, int directBins) {
+        this.table = table;
+        this.prefixDigits = prefixDigits;
+        this.binSize = binSize;
+        this.valueLimit = valueLimit;
+        this.directBins = directBins;
+    }
+
+    /**
+     * Build a front table for an index
+     *
+     * @param index Range index the table resolves into
+     * @param prefixDigits Number of leading digits forming the BIN (1 to 8)
+     * @param panLength Number of digits of the values stored in the index (16 for card ranges)
+     * @return New front table
+     * @throws IllegalArgumentException if the digit counts are out of range
+     */
+    public static BinPrefixTable build(RangeIndex index, int prefixDigits, int panLength) {
+        if (prefixDigits < 1 || prefixDigits > MAX_PREFIX_DIGITS) {
+            throw new IllegalArgumentException("Prefix digits must be between 1 and " + MAX_PREFIX_DIGITS);
+        }
+        if (panLength <= prefixDigits || panLength > 18) {
+            throw new IllegalArgumentException("PAN length must be greater than prefix digits and at most 18");
+        }
+
+        int binCount = (int) pow10(prefixDigits);
+        long binSize = pow10(panLength - prefixDigits);
+        long valueLimit = pow10(panLength);
+
+        int[] table = new int[binCount];
+        Arrays.fill(table, NO_RANGE);
+
+        for (int slot = 0; slot < index.size(); slot++) {
+            long start = index.startAt(slot);
+            long end = index.endAt(slot);
+            if (end < 0 || start >= valueLimit) {
+                continue;
+            }
+
+            long clampedStart = Math.max(start, 0L);
+            long clampedEnd = Math.min(end, valueLimit - 1);
+            int firstBin = (int) (clampedStart / binSize);
+            int lastBin = (int) (clampedEnd / binSize);
+
+            for (int bin = firstBin; bin <= lastBin; bin++) {
+                long binStart = bin * binSize;
+                long binEnd = binStart + binSize - 1;
+                boolean coversBin = start <= binStart && end >= binEnd;
+
+                // A second range touching the BIN, or a partial cover, needs the range search
+                table[bin] = (table[bin] == NO_RANGE && coversBin) ? slot : SPLIT;
+            }
+        }
+
+        int directBins = 0;
+        for (int entry : table) {
+            if (entry >= 0) {
+                directBins++;
+            }
+        }
+
+        return new BinPrefixTable(table, prefixDigits, binSize, valueLimit, directBins);
+    }
+
+    /**
+     * Resolve a value through the front table
+     *
+     * @param value Value (PAN) to resolve
+     * @return Index slot of the containing range, {@link #NO_RANGE} for a definitive miss,
+     *         or {@link #SPLIT} if the caller must search the range index
+     */
+    public int lookup(long value) {
+        if (value < 0 || value >= valueLimit) {
+            return SPLIT;
+        }
+        return table[(int) (value / binSize)];
+    }
+
+    /**
+     * Get the number of leading digits forming the BIN
+     */
+    public int getPrefixDigits() {
+        return prefixDigits;
+    }
+
+    /**
+     * Get the number of BINs resolved to a single range
+     */
+    public int getDirectBins() {
+        return directBins;
+    }
+
+    /**
+     * Get the total number of BINs in the table
+     */
+    public int getBinCount() {
+        return table.length;
+    }
+
+    /**
+     * Get the heap footprint of the table
+     *
+     * @return Size in bytes of the table array
+     */
+    public long getMemoryFootprintBytes() {
+        return (long) table.length * Integer.BYTES;
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1L;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10L;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,340 @@
+package com.jamiewang.secure3d.util;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency-aware circuit breaker over a sliding window of the most recent calls
+ *
+ * Closed, every call is let through and its outcome recorded: failed, slow (longer than the
+ * slow call duration) or fine. Once the window holds the minimum number of calls and either
+ * the failure or the slow call rate reaches its threshold, the breaker opens and rejects
+ * every call without running it. After the open duration it turns half-open and lets a few
+ * probe calls through: if all of them are fine it closes with an empty window, if any of
+ * them fails or is slow it opens again.
+ *
+ * Rejecting is a read of a volatile field, recording an outcome takes a lock.
+ */
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final LongSupplier clock;
+
+    // Outcome flags of the most recent calls, a ring buffer
+    private final byte[] window;
+    private int windowNext;
+    private int windowCalls;
+    private int windowFailures;
+    private int windowSlowCalls;
+
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder slowCalls = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    private CircuitBreaker(Builder builder, LongSupplier clock) {
+        if (builder.windowSize <= 0 || builder.minimumCalls <= 0 || builder.halfOpenProbes <= 0) {
+            throw new IllegalArgumentException("Window size, minimum calls and half-open probes must be positive");
+        }
+        if (builder.failureRateThreshold <= 0 || builder.failureRateThreshold > 100
+                || builder.slowCallRateThreshold <= 0 || builder.slowCallRateThreshold > 100) {
+            throw new IllegalArgumentException("Rate thresholds must be between 1 and 100 percent");
+        }
+        if (builder.slowCallMillis <= 0 || builder.openMillis <= 0) {
+            throw new IllegalArgumentException("Slow call and open durations must be positive");
+        }
+
+        this.window = new byte[builder.windowSize];
+        this.minimumCalls = Math.min(builder.minimumCalls, builder.windowSize);
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallNanos = builder.slowCallMillis * 1_000_000L;
+        this.openNanos = builder.openMillis * 1_000_000L;
+        this.halfOpenProbes = builder.halfOpenProbes;
+        this.clock = clock;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Ask to make a call
+     *
+     * A permitted call must be followed by {@link #record}.
+     *
+     * @return true if the call may go ahead, false if it is rejected
+     */
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        synchronized (this) {
+            if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                probesStarted = 0;
+                probesSucceeded = 0;
+            }
+            if (state == State.CLOSED || (state == State.HALF_OPEN && probesStarted < halfOpenProbes)) {
+                if (state == State.HALF_OPEN) {
+                    probesStarted++;
+                }
+                return true;
+            }
+        }
+
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Record the outcome of a permitted call
+     *
+     * @param elapsedNanos How long the call took
+     * @param failed Whether the call failed
+     */
+    public void record(long elapsedNanos, boolean failed) {
+        boolean slow = elapsedNanos >= slowCallNanos;
+        calls.increment();
+        if (failed) {
+            failures.increment();
+        }
+        if (slow) {
+            slowCalls.increment();
+        }
+
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                if (failed || slow) {
+                    open();
+                } else if (++probesSucceeded >= halfOpenProbes) {
+                    close();
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                // A call permitted before the breaker opened
+                return;
+            }
+
+            byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+            if (windowCalls == window.length) {
+                byte evicted = window[windowNext];
+                windowFailures -= (evicted & FAILED) != 0 ? 1 : 0;
+                windowSlowCalls -= (evicted & SLOW) != 0 ? 1 : 0;
+            } else {
+                windowCalls++;
+            }
+            window[windowNext] = outcome;
+            windowNext = (windowNext + 1) % window.length;
+            windowFailures += failed ? 1 : 0;
+            windowSlowCalls += slow ? 1 : 0;
+
+            if (windowCalls >= minimumCalls
+                    && (windowFailures * 100L >= (long) failureRateThreshold * windowCalls
+                    || windowSlowCalls * 100L >= (long) slowCallRateThreshold * windowCalls)) {
+                open();
+            }
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Get call, failure, slow call, rejection and opening counters
+     *
+     * @return Statistics object with counters since creation and the current state
+     */
+    public Statistics getStatistics() {
+        return new Statistics(state, calls.sum(), failures.sum(), slowCalls.sum(), rejected.sum(), opened.sum());
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        opened.increment();
+        resetWindow();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowNext = 0;
+        windowCalls = 0;
+        windowFailures = 0;
+        windowSlowCalls = 0;
+    }
+
+    /**
+     * Thrown instead of making a call the breaker rejected
+     */
+    public static class OpenException extends RuntimeException {
+
+        public OpenException(String message) {
+            // Thrown on every rejected call, so without a stack trace
+            super(message, null, false, false);
+        }
+    }
+
+    /**
+     * Builder of circuit breakers, with every setting defaulted
+     */
+    public static final class Builder {
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private int failureRateThreshold = 50;
+        private int slowCallRateThreshold = 50;
+        private long slowCallMillis = 50;
+        private long openMillis = 5000;
+        private int halfOpenProbes = 5;
+
+        private Builder() {
+        }
+
+        /**
+         * @param windowSize Number of most recent calls the rates are computed over
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * @param minimumCalls Calls the window must hold before the breaker can open
+         */
+        public Builder minimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * @param percent Share of failed calls in the window that opens the breaker
+         */
+        public Builder failureRateThreshold(int percent) {
+            this.failureRateThreshold = percent;
+            return this;
+        }
+
+        /**
+         * @param percent Share of slow calls in the window that opens the breaker
+         */
+        public Builder slowCallRateThreshold(int percent) {
+            this.slowCallRateThreshold = percent;
+            return this;
+        }
+
+        /**
+         * @param millis Duration from which a call counts as slow
+         */
+        public Builder slowCallMillis(long millis) {
+            this.slowCallMillis = millis;
+            return this;
+        }
+
+        /**
+         * @param millis How long the breaker rejects calls before letting probes through
+         */
+        public Builder openMillis(long millis) {
+            this.openMillis = millis;
+            return this;
+        }
+
+        /**
+         * @param probes Calls let through while half-open, all of which must be fine to close
+         */
+        public Builder halfOpenProbes(int probes) {
+            this.halfOpenProbes = probes;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a setting is out of range
+         */
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this, System::nanoTime);
+        }
+
+        CircuitBreaker build(LongSupplier clock) {
+            return new CircuitBreaker(this, clock);
+        }
+    }
+
+    /**
+     * Statistics class for circuit breaker metrics
+     */
+    public static class Statistics {
+        private final State state;
+        private final long calls;
+        private final long failures;
+        private final long slowCalls;
+        private final long rejected;
+        private final long opened;
+
+        public Statistics(State state, long calls, long failures, long slowCalls, long rejected, long opened) {
+            this.state = state;
+            this.calls = calls;
+            this.failures = failures;
+            this.slowCalls = slowCalls;
+            this.rejected = rejected;
+            this.opened = opened;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getSlowCalls() {
+            return slowCalls;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getOpened() {
+            return opened;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                    "state=" + state +
+                    ", calls=" + calls +
+                    ", failures=" + failures +
+                    ", slowCalls=" + slowCalls +
+                    ", rejected=" + rejected +
+                    ", opened=" + opened +
+                    '}';
+        }
+    }
+}
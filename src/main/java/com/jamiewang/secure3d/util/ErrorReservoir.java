@@ -0,0 +1,78 @@
+package com.jamiewang.secure3d.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Bounded sample of error messages, uniform over every message offered
+ *
+ * Keeps the first messages until it is full, then replaces a random kept message with
+ * probability capacity / offered (reservoir sampling), so memory stays bounded however many
+ * errors an import produces while the sample still covers all of it. The number of messages
+ * offered is counted exactly. Safe for concurrent use.
+ */
+public final class ErrorReservoir {
+
+    private final String[] sample;
+    private final long[] positions;
+    private long offered = 0;
+
+    /**
+     * @param capacity Most messages kept
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public ErrorReservoir(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        this.sample = new String[capacity];
+        this.positions = new long[capacity];
+    }
+
+    /**
+     * Offer a message to the sample
+     *
+     * @param message Error message
+     */
+    public synchronized void offer(String message) {
+        long position = offered++;
+        if (position < sample.length) {
+            sample[(int) position] = message;
+            positions[(int) position] = position;
+            return;
+        }
+
+        long slot = ThreadLocalRandom.current().nextLong(position + 1);
+        if (slot < sample.length) {
+            sample[(int) slot] = message;
+            positions[(int) slot] = position;
+        }
+    }
+
+    /**
+     * Get the kept messages, in the order they were offered
+     */
+    public synchronized List<String> getSample() {
+        int size = (int) Math.min(offered, sample.length);
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(positions[a], positions[b]));
+
+        List<String> messages = new ArrayList<>(size);
+        for (Integer slot : order) {
+            messages.add(sample[slot]);
+        }
+        return messages;
+    }
+
+    /**
+     * Get the number of messages offered, kept or not
+     */
+    public synchronized long getOffered() {
+        return offered;
+    }
+}
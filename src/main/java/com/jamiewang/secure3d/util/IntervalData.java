@@ -1,5 +1,7 @@
 package com.jamiewang.secure3d.util;
 
+import java.time.LocalDateTime;
+
 /**
  * Interface for objects that can be stored in an IntervalTree
  *
@@ -18,4 +20,13 @@ public interface IntervalData {
      */
     Long getEndRange();
 
+    /**
+     * Get the last update time, which breaks ties between overlapping intervals of equal width
+     *
+     * Intervals without one lose to any interval that has one.
+     */
+    default LocalDateTime getUpdatedAt() {
+        return null;
+    }
+
 }
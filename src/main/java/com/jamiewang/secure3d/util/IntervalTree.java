@@ -1,5 +1,9 @@
 package com.jamiewang.secure3d.util;
 
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -22,6 +26,7 @@ public class IntervalTree<T extends IntervalData> {
     private class Node {
         T data;
         Long start, end;
+        LocalDateTime updatedAt;
         Long maxEnd;
         Node left, right;
         int height = 1;
@@ -30,10 +35,73 @@ public class IntervalTree<T extends IntervalData> {
             this.data = data;
             this.start = data.getStartRange();
             this.end = data.getEndRange();
+            this.updatedAt = data.getUpdatedAt();
             this.maxEnd = this.end;
         }
     }
 
+    /**
+     * Build a perfectly balanced interval tree from a list of ranges
+     *
+     * Ranges sorted by start are turned into a tree bottom-up in a single O(n) pass, with
+     * height and maxEnd computed as each subtree is completed. No rotations are needed.
+     * Unsorted input is first copied and sorted with a parallel sort.
+     *
+     * @param data Ranges to store, ideally sorted by start range
+     * @param <T> Type of data stored in the tree
+     * @return New balanced tree containing all ranges
+     * @throws IllegalArgumentException if data is null or contains an invalid range
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends IntervalData> IntervalTree<T> fromSorted(List<T> data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Data cannot be null");
+        }
+
+        IntervalData[] items = data.toArray(new IntervalData[0]);
+
+        boolean sorted = true;
+        for (int i = 0; i < items.length; i++) {
+            IntervalData item = items[i];
+            if (item == null) {
+                throw new IllegalArgumentException("Data cannot be null");
+            }
+            if (item.getStartRange() == null || item.getEndRange() == null) {
+                throw new IllegalArgumentException("Data must have valid start and end ranges");
+            }
+            if (i > 0 && item.getStartRange() < items[i - 1].getStartRange()) {
+                sorted = false;
+            }
+        }
+
+        if (!sorted) {
+            Arrays.parallelSort(items, Comparator.comparing(IntervalData::getStartRange));
+        }
+
+        IntervalTree<T> tree = new IntervalTree<>();
+        tree.root = tree.buildBalanced((T[]) items, 0, items.length - 1);
+        tree.size = items.length;
+        return tree;
+    }
+
+    /**
+     * Recursively build a balanced subtree from sorted items[low..high]
+     */
+    private Node buildBalanced(T[] items, int low, int high) {
+        if (low > high) {
+            return null;
+        }
+
+        int mid = (low + high) >>> 1;
+        Node node = new Node(items[mid]);
+        node.left = buildBalanced(items, low, mid - 1);
+        node.right = buildBalanced(items, mid + 1, high);
+
+        // Children are complete, so height and maxEnd can be set once
+        updateNode(node);
+        return node;
+    }
+
     /**
      * Insert data into the interval tree
      *
@@ -77,8 +145,8 @@ public class IntervalTree<T extends IntervalData> {
     }
 
     /**
-     * Find the card range that contains the given value
-     * Since ranges don't overlap, this returns at most one result
+     * Find the most specific card range that contains the given value
+     * When ranges are nested, this is the narrowest containing range
      *
      * @param value Value to search for (will be converted to Long)
      * @return Optional containing the matching data, empty if not found
@@ -98,7 +166,8 @@ public class IntervalTree<T extends IntervalData> {
     }
 
     /**
-     * Find the card range that contains the given Long value
+     * Find the most specific card range that contains the given Long value
+     * When ranges are nested, this is the narrowest containing range
      *
      * @param value Long value to search for
      * @return Optional containing the matching data, empty if not found
@@ -113,33 +182,59 @@ public class IntervalTree<T extends IntervalData> {
     }
 
     /**
-     * Recursive method to find the interval that contains the value
-     * Since ranges don't overlap, we can stop at the first match
+     * Find the narrowest interval that contains the value
+     *
+     * Subtrees whose maxEnd is below the value, and right subtrees of nodes starting after it,
+     * cannot contain a match and are skipped. For non-overlapping ranges this visits a single
+     * root-to-leaf path; with nesting it also visits the other containing ranges. For
+     * O(log n) lookups over heavily nested data see {@link NestedRangeFlattener}.
      */
     private Node findRange(Node node, Long value) {
-        if (node == null) {
-            return null;
-        }
+        return findNarrowest(node, value, null);
+    }
 
-        // Check if current node contains the value
-        if (value >= node.start && value <= node.end) {
-            return node; // Found the range, no need to continue
+    private Node findNarrowest(Node node, long value, Node best) {
+        if (node == null || node.maxEnd < value) {
+            return best;
         }
 
-        // Search left subtree if it might contain the value
-        if (node.left != null && value <= node.left.maxEnd) {
-            Node leftResult = findRange(node.left, value);
-            if (leftResult != null) {
-                return leftResult;
+        best = findNarrowest(node.left, value, best);
+
+        if (node.start <= value) {
+            // In order, so between exact duplicates the one added last wins
+            if (value <= node.end && (best == null || !isMoreSpecific(best, node))) {
+                best = node;
             }
+            best = findNarrowest(node.right, value, best);
         }
 
-        // Search right subtree if current node start is <= value
-        if (node.start <= value) {
-            return findRange(node.right, value);
+        return best;
+    }
+
+    /**
+     * Narrower range wins, then the one updated last, then the later start
+     *
+     * The same order as the most-specific index of SharedIntervalTreeComponent.
+     */
+    private boolean isMoreSpecific(Node candidate, Node other) {
+        long candidateWidth = candidate.end - candidate.start;
+        long otherWidth = other.end - other.start;
+        if (candidateWidth != otherWidth) {
+            return candidateWidth < otherWidth;
         }
 
-        return null;
+        int byUpdate = compareUpdatedAt(candidate.updatedAt, other.updatedAt);
+        if (byUpdate != 0) {
+            return byUpdate > 0;
+        }
+        return candidate.start > other.start;
+    }
+
+    private static int compareUpdatedAt(LocalDateTime a, LocalDateTime b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
     }
 
     /**
@@ -0,0 +1,259 @@
+package com.jamiewang.secure3d.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Range index served directly from a memory-mapped file
+ *
+ * The file holds the same sorted starts / ends / payload id columns as {@link SortedRangeIndex}
+ * followed by a payload section of opaque byte blobs, so neither the ranges nor their payloads
+ * live on the Java heap. Several JVMs mapping the same file share a single page-cache copy,
+ * and opening an existing file is a map call rather than a rebuild.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * header     magic:int, formatVersion:int, rangeCount:int, payloadCount:int, createdAt:long
+ * starts     long[rangeCount]
+ * ends       long[rangeCount]
+ * payloadIds int[rangeCount]
+ * offsets    int[payloadCount + 1]  (relative to the start of the payload data)
+ * payloads   byte[offsets[payloadCount]]
+ * </pre>
+ *
+ * Files are written to a temporary sibling and atomically renamed into place, so a reader
+ * never maps a partially written file and existing mappings of the old file stay valid.
+ */
+public final class MappedRangeIndex implements RangeIndex {
+
+    private static final int MAGIC = 0x33445352; // "3DSR"
+    // Bumped whenever the layout or the payloads written by the application change shape,
+    // so a stale file is rebuilt instead of being misread
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_BYTES = 24;
+
+    private final Path path;
+    private final ByteBuffer buffer;
+    private final int rangeCount;
+    private final int payloadCount;
+    private final long createdAt;
+    private final int startsOffset;
+    private final int endsOffset;
+    private final int payloadIdsOffset;
+    private final int payloadOffsetsOffset;
+    private final int payloadDataOffset;
+
+    private MappedRangeIndex(Path path, ByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a range index file: " + path);
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported range index format version "
+                    + buffer.getInt(4) + " in " + path);
+        }
+
+        this.rangeCount = buffer.getInt(8);
+        this.payloadCount = buffer.getInt(12);
+        this.createdAt = buffer.getLong(16);
+
+        long sectionsEnd = HEADER_BYTES + (long) rangeCount * (Long.BYTES + Long.BYTES + Integer.BYTES)
+                + ((long) payloadCount + 1) * Integer.BYTES;
+        if (rangeCount < 0 || payloadCount < 0 || sectionsEnd > buffer.capacity()) {
+            throw new IllegalArgumentException("Truncated or corrupt range index file: " + path);
+        }
+
+        this.startsOffset = HEADER_BYTES;
+        this.endsOffset = startsOffset + rangeCount * Long.BYTES;
+        this.payloadIdsOffset = endsOffset + rangeCount * Long.BYTES;
+        this.payloadOffsetsOffset = payloadIdsOffset + rangeCount * Integer.BYTES;
+        this.payloadDataOffset = payloadOffsetsOffset + (payloadCount + 1) * Integer.BYTES;
+
+        if ((long) payloadDataOffset + buffer.getInt(payloadOffsetsOffset + payloadCount * Integer.BYTES)
+                > buffer.capacity()) {
+            throw new IllegalArgumentException("Truncated or corrupt range index file: " + path);
+        }
+    }
+
+    /**
+     * Map an existing index file read-only
+     *
+     * @param path Index file to map
+     * @return Index backed by the mapping
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid index file
+     */
+    public static MappedRangeIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Range index file exceeds 2 GB: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedRangeIndex(path, mapped);
+        }
+    }
+
+    /**
+     * Write an index and its payloads to a file, replacing any existing file atomically
+     *
+     * @param path Target file
+     * @param index Ranges to write, sorted and non-overlapping
+     * @param payloads Encoded payloads, indexed by the payload ids stored in the index
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, RangeIndex index, List<byte[]> payloads) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (OutputStream fileOut = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+
+                int rangeCount = index.size();
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(rangeCount);
+                out.writeInt(payloads.size());
+                out.writeLong(System.currentTimeMillis());
+
+                for (int i = 0; i < rangeCount; i++) {
+                    out.writeLong(index.startAt(i));
+                }
+                for (int i = 0; i < rangeCount; i++) {
+                    out.writeLong(index.endAt(i));
+                }
+                for (int i = 0; i < rangeCount; i++) {
+                    out.writeInt(index.payloadIdAt(i));
+                }
+
+                int offset = 0;
+                out.writeInt(offset);
+                for (byte[] payload : payloads) {
+                    offset = Math.addExact(offset, payload.length);
+                    out.writeInt(offset);
+                }
+                for (byte[] payload : payloads) {
+                    out.write(payload);
+                }
+            }
+
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public int find(long value) {
+        // Locate the last range whose start is <= value
+        int low = 0;
+        int high = rangeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (startAt(mid) <= value) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        if (high >= 0 && value <= endAt(high)) {
+            return high;
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public long startAt(int slot) {
+        return buffer.getLong(startsOffset + slot * Long.BYTES);
+    }
+
+    @Override
+    public long endAt(int slot) {
+        return buffer.getLong(endsOffset + slot * Long.BYTES);
+    }
+
+    @Override
+    public int payloadIdAt(int slot) {
+        return buffer.getInt(payloadIdsOffset + slot * Integer.BYTES);
+    }
+
+    @Override
+    public int size() {
+        return rangeCount;
+    }
+
+    /**
+     * The mapped file lives outside the heap
+     *
+     * @return 0
+     */
+    @Override
+    public long getMemoryFootprintBytes() {
+        return 0L;
+    }
+
+    /**
+     * Get a read-only view of a payload
+     *
+     * @param payloadId Payload id as stored in the index
+     * @return Buffer positioned at the payload bytes, limited to its length
+     */
+    public ByteBuffer payload(int payloadId) {
+        if (payloadId < 0 || payloadId >= payloadCount) {
+            throw new IndexOutOfBoundsException("Payload id " + payloadId + " out of range");
+        }
+        int from = buffer.getInt(payloadOffsetsOffset + payloadId * Integer.BYTES);
+        int to = buffer.getInt(payloadOffsetsOffset + (payloadId + 1) * Integer.BYTES);
+        return buffer.slice(payloadDataOffset + from, to - from).asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the number of payloads stored in the file
+     */
+    public int getPayloadCount() {
+        return payloadCount;
+    }
+
+    /**
+     * Get the size of the mapping
+     *
+     * @return Mapped bytes (shared page cache, not heap)
+     */
+    public long getMappedBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Get the time the file was written
+     *
+     * @return Epoch milliseconds
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Get the mapped file
+     */
+    public Path getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,107 @@
+package com.jamiewang.secure3d.util;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Turns nested or overlapping ranges into a non-overlapping index answering "most specific" lookups
+ *
+ * A broad issuer range with narrower sub-ranges is cut at build time into disjoint segments,
+ * each pointing at the range that wins there: the narrowest containing range, ties broken by
+ * the highest recency and then by the range added last. Lookups then stay a single binary
+ * search over a {@link SortedRangeIndex}, whatever the nesting depth.
+ *
+ * The sweep runs in O(n log n) and produces at most 2n - 1 segments. Neighbouring segments
+ * won by the same range are merged back together.
+ */
+public final class NestedRangeFlattener {
+
+    private NestedRangeFlattener() {
+    }
+
+    /**
+     * Build a most-specific index over possibly overlapping ranges
+     *
+     * The payload id of every segment is the position of its winning range in the input arrays,
+     * so callers can keep their payload tables indexed by input position.
+     *
+     * @param starts Range starts (inclusive), in any order
+     * @param ends Range ends (inclusive)
+     * @param recency Tie-breaker for ranges of equal width, higher wins (e.g. last update time)
+     * @param count Number of ranges to read from the arrays
+     * @return Non-overlapping index resolving each value to its most specific range
+     * @throws IllegalArgumentException if a range start is greater than its end
+     */
+    public static SortedRangeIndex flatten(long[] starts, long[] ends, long[] recency, int count) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            if (starts[i] > ends[i]) {
+                throw new IllegalArgumentException("Range start must not be greater than end");
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+
+        // Best range on top: narrowest, then most recent, then added last
+        PriorityQueue<Integer> active = new PriorityQueue<>((a, b) -> {
+            int byWidth = Long.compare(ends[a] - starts[a], ends[b] - starts[b]);
+            if (byWidth != 0) {
+                return byWidth;
+            }
+            int byRecency = Long.compare(recency[b], recency[a]);
+            return byRecency != 0 ? byRecency : Integer.compare(b, a);
+        });
+
+        SortedRangeIndex.Builder builder = SortedRangeIndex.builder(count);
+        long segmentStart = 0L;
+        long segmentEnd = 0L;
+        int segmentWinner = -1;
+
+        int next = 0;
+        long position = 0L;
+        while (next < count || !active.isEmpty()) {
+            if (active.isEmpty()) {
+                position = starts[order[next]];
+            }
+            while (next < count && starts[order[next]] == position) {
+                active.add(order[next++]);
+            }
+
+            // Ranges that ended before this position only need to go once they reach the top
+            while (!active.isEmpty() && ends[active.peek()] < position) {
+                active.poll();
+            }
+            if (active.isEmpty()) {
+                continue;
+            }
+
+            // The winner holds until the next range starts or the winner itself ends
+            int winner = active.peek();
+            long end = ends[winner];
+            if (next < count && starts[order[next]] - 1 < end) {
+                end = starts[order[next]] - 1;
+            }
+
+            if (segmentWinner == winner && segmentEnd + 1 == position) {
+                segmentEnd = end;
+            } else {
+                if (segmentWinner >= 0) {
+                    builder.add(segmentStart, segmentEnd, segmentWinner);
+                }
+                segmentStart = position;
+                segmentEnd = end;
+                segmentWinner = winner;
+            }
+
+            if (end == Long.MAX_VALUE) {
+                break;
+            }
+            position = end + 1;
+        }
+
+        if (segmentWinner >= 0) {
+            builder.add(segmentStart, segmentEnd, segmentWinner);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,116 @@
+package com.jamiewang.secure3d.util;
+
+/**
+ * Read-only view of a sorted, non-overlapping range index
+ *
+ * Each slot holds one range and an int payload id pointing into a payload table owned
+ * by the caller. Implementations differ only in where the arrays live (heap or a
+ * memory-mapped file), so lookup code can be written once against this interface.
+ */
+public interface RangeIndex {
+
+    /**
+     * Returned by {@link #find(long)} and {@link #findPayloadId(long)} when no range matches
+     */
+    int NOT_FOUND = -1;
+
+    /**
+     * Find the slot of the range containing the given value
+     *
+     * @param value Value to search for
+     * @return Slot of the matching range, or {@link #NOT_FOUND}
+     */
+    int find(long value);
+
+    /**
+     * Find the payload id of the range containing the given value
+     *
+     * @param value Value to search for
+     * @return Payload id of the matching range, or {@link #NOT_FOUND}
+     */
+    default int findPayloadId(long value) {
+        int slot = find(value);
+        return slot == NOT_FOUND ? NOT_FOUND : payloadIdAt(slot);
+    }
+
+    /**
+     * Find the last slot whose range starts at or before a value, searching forward from a slot
+     *
+     * Lets callers resolve values in ascending order in one forward pass over the index: the
+     * slot found for one value is where the search for the next one starts. The search gallops
+     * forward from {@code fromSlot}, so values close together cost only a few probes.
+     *
+     * @param value Value to search for
+     * @param fromSlot First slot to consider, every earlier slot must start at or before value
+     * @return Last slot starting at or before value, or {@code fromSlot - 1} if there is none
+     */
+    default int floorSlot(long value, int fromSlot) {
+        int size = size();
+        int low = fromSlot;
+        int high = fromSlot;
+        int step = 1;
+
+        // Gallop until a range starting after the value (or the end of the index) is reached
+        while (high < size && startAt(high) <= value) {
+            low = high + 1;
+            high = low + step;
+            step <<= 1;
+        }
+        high = Math.min(high, size);
+
+        // Slots in [low, high) are unknown, find the first one starting after the value
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startAt(mid) <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Get the start of the range stored in a slot
+     */
+    long startAt(int slot);
+
+    /**
+     * Get the end of the range stored in a slot
+     */
+    long endAt(int slot);
+
+    /**
+     * Get the payload id of the range stored in a slot
+     */
+    int payloadIdAt(int slot);
+
+    /**
+     * Get the number of ranges in the index
+     */
+    int size();
+
+    /**
+     * Check if the index is empty
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Get the maximum number of probes a lookup takes (binary search depth)
+     *
+     * @return Search depth, 0 for an empty index
+     */
+    default int getSearchDepth() {
+        return 32 - Integer.numberOfLeadingZeros(size());
+    }
+
+    /**
+     * Get the approximate heap footprint of the index
+     *
+     * @return Size in bytes held on the Java heap
+     */
+    long getMemoryFootprintBytes();
+
+}
@@ -0,0 +1,251 @@
+package com.jamiewang.secure3d.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-process cache of values covering ranges of longs
+ *
+ * Entries are held in a Caffeine cache, which bounds them by size and age and decides
+ * admission with W-TinyLFU: a new range only displaces a cached one if it has been seen
+ * more often, so a burst of one-off ranges cannot flush the hot ones. A skip list of range
+ * starts finds the candidate range of a value; it is only an index over the Caffeine keys,
+ * entries Caffeine has dropped are pruned from it when met.
+ *
+ * Like the Redis range caches, storing a range evicts the cached ranges overlapping it.
+ * Reads are lock-free, writes and invalidations are serialized.
+ *
+ * @param <V> Type of the cached values
+ */
+public final class RangeNearCache<V> {
+
+    private final Cache<Range, V> cache;
+    private final ConcurrentSkipListMap<Long, Range> starts = new ConcurrentSkipListMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maximumSize Most ranges held
+     * @param timeToLive How long a range stays cached after being written
+     * @throws IllegalArgumentException if the size or time to live is not positive
+     */
+    public RangeNearCache(long maximumSize, Duration timeToLive) {
+        this(maximumSize, timeToLive, ForkJoinPool.commonPool());
+    }
+
+    RangeNearCache(long maximumSize, Duration timeToLive, Executor executor) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .executor(executor)
+                .evictionListener((Range range, V value, RemovalCause cause) -> {
+                    if (range != null) {
+                        starts.remove(range.start, range);
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the value of the cached range containing a value
+     *
+     * @param value Value to look up
+     * @return Cached value, null if no cached range contains the value
+     */
+    public V get(long value) {
+        Map.Entry<Long, Range> floor = starts.floorEntry(value);
+        if (floor == null || floor.getValue().end < value) {
+            misses.increment();
+            return null;
+        }
+
+        Range range = floor.getValue();
+        V cached = cache.getIfPresent(range);
+        if (cached == null) {
+            // Expired or evicted without the listener having run yet
+            starts.remove(range.start, range);
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return cached;
+    }
+
+    /**
+     * Cache a value for a range, evicting the cached ranges overlapping it
+     *
+     * @param startRange Start of the range (inclusive)
+     * @param endRange End of the range (inclusive)
+     * @param value Value to cache
+     * @throws IllegalArgumentException if the range is inverted or the value is null
+     */
+    public synchronized void put(long startRange, long endRange, V value) {
+        if (startRange > endRange) {
+            throw new IllegalArgumentException("Start range must not be greater than end range");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Value must not be null");
+        }
+
+        Range range = new Range(startRange, endRange);
+        evictOverlapping(startRange, endRange, range);
+        starts.put(startRange, range);
+        cache.put(range, value);
+    }
+
+    /**
+     * Drop every cached range overlapping a range of values
+     *
+     * @param startRange Start of the range (inclusive)
+     * @param endRange End of the range (inclusive)
+     * @return Number of ranges dropped
+     */
+    public synchronized int invalidateOverlapping(long startRange, long endRange) {
+        if (startRange > endRange) {
+            return 0;
+        }
+        return evictOverlapping(startRange, endRange, null);
+    }
+
+    /**
+     * Drop every cached range
+     */
+    public synchronized void invalidateAll() {
+        starts.clear();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Get the number of cached ranges
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Get hit, miss and eviction counters
+     *
+     * @return Statistics object with counters since creation
+     */
+    public Statistics getStatistics() {
+        return new Statistics(hits.sum(), misses.sum(), cache.stats().evictionCount(), cache.estimatedSize());
+    }
+
+    private int evictOverlapping(long startRange, long endRange, Range keep) {
+        List<Range> overlapping = new ArrayList<>(starts.subMap(startRange, true, endRange, true).values());
+        Map.Entry<Long, Range> below = starts.lowerEntry(startRange);
+        if (below != null && below.getValue().end >= startRange) {
+            overlapping.add(below.getValue());
+        }
+
+        int evicted = 0;
+        for (Range range : overlapping) {
+            if (range.equals(keep)) {
+                continue;
+            }
+            starts.remove(range.start, range);
+            cache.invalidate(range);
+            evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Bounds of a cached range, the Caffeine key
+     */
+    private static final class Range {
+        private final long start;
+        private final long end;
+
+        private Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Range)) return false;
+            Range other = (Range) o;
+            return start == other.start && end == other.end;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(start) * 31 + Long.hashCode(end);
+        }
+    }
+
+    /**
+     * Statistics class for near cache metrics
+     */
+    public static class Statistics {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long size;
+
+        public Statistics(long hits, long misses, long evictions, long size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Get the fraction of lookups answered by the near cache
+         *
+         * @return Ratio between 0 and 1, 0 when no lookup went through the cache yet
+         */
+        public double getHitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+}
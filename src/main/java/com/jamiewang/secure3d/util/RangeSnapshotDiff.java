@@ -0,0 +1,390 @@
+package com.jamiewang.secure3d.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sort-merge diff between a full snapshot of card ranges and the stored ones
+ *
+ * Each side is reduced to keys of bounds plus a 64-bit hash of the range attributes, so a
+ * snapshot of hundreds of thousands of ranges takes a few megabytes whatever its attributes.
+ * Both sides are sorted by bounds and walked once, group of equal bounds by group:
+ * <ul>
+ *   <li>bounds only in the snapshot are added</li>
+ *   <li>bounds only stored are removed</li>
+ *   <li>bounds stored once with other attributes are modified</li>
+ *   <li>bounds stored several times are removed and added again, collapsing the duplicates</li>
+ * </ul>
+ * When the snapshot itself repeats bounds, the range at the highest position wins, as it would
+ * when importing the snapshot in order. Deletes in the snapshot take part in this: bounds whose
+ * last snapshot entry is a delete count as absent from the snapshot.
+ *
+ * Keys are sorted through a primitive permutation of their indexes, so apart from the key
+ * arrays themselves (28 bytes per range) sorting costs an int per range.
+ */
+public final class RangeSnapshotDiff {
+
+    public static final byte UNCHANGED = 0;
+    public static final byte ADD = 1;
+    public static final byte MODIFY = 2;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private RangeSnapshotDiff() {
+    }
+
+    /**
+     * Hash the attributes of a card range, everything but its bounds and actionInd
+     *
+     * 64-bit FNV-1a over the length-prefixed values, so null, empty and shifted strings hash
+     * differently. A null acsInfoInd hashes like an empty one.
+     */
+    public static long attributeHash(String threeDsMethodUrl, String acsStartProtocolVersion,
+                                     String acsEndProtocolVersion, List<String> acsInfoInd) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, threeDsMethodUrl);
+        hash = mix(hash, acsStartProtocolVersion);
+        hash = mix(hash, acsEndProtocolVersion);
+        if (acsInfoInd == null) {
+            // Stored ranges read back without values have an empty list
+            return mix(hash, 0);
+        }
+        hash = mix(hash, acsInfoInd.size());
+        for (String value : acsInfoInd) {
+            hash = mix(hash, value);
+        }
+        return hash;
+    }
+
+    /**
+     * Compute the changes turning the stored ranges into the snapshot
+     *
+     * @param snapshot Keys of the incoming snapshot, positions being snapshot order
+     * @param stored Keys of the stored ranges
+     * @return Action per snapshot position and bounds to remove
+     */
+    public static Result diff(Keys snapshot, Keys stored) {
+        int[] incoming = snapshot.sortedOrder();
+        int[] existing = stored.sortedOrder();
+        Result result = new Result(snapshot.maxPosition() + 1);
+
+        int i = 0;
+        int j = 0;
+        while (i < incoming.length || j < existing.length) {
+            int order;
+            if (i == incoming.length) {
+                order = 1;
+            } else if (j == existing.length) {
+                order = -1;
+            } else {
+                order = compareBounds(snapshot, incoming[i], stored, existing[j]);
+            }
+
+            // Last snapshot range of the group, the one that wins
+            int winner = -1;
+            if (order <= 0) {
+                do {
+                    winner = incoming[i++];
+                } while (i < incoming.length && compareBounds(snapshot, incoming[i], snapshot, winner) == 0);
+
+                // The snapshot ends by deleting these bounds
+                if (snapshot.deleted[winner]) {
+                    winner = -1;
+                }
+            }
+
+            int storedCopies = 0;
+            boolean storedMatches = false;
+            if (order >= 0) {
+                int key = existing[j];
+                do {
+                    storedMatches = winner >= 0 && stored.hashes[existing[j]] == snapshot.hashes[winner];
+                    storedCopies++;
+                    j++;
+                } while (j < existing.length && compareBounds(stored, existing[j], stored, key) == 0);
+            }
+
+            if (winner < 0) {
+                if (storedCopies > 0) {
+                    int key = existing[j - 1];
+                    result.remove(stored.starts[key], stored.ends[key]);
+                }
+            } else if (storedCopies == 0) {
+                result.set(snapshot.positions[winner], ADD);
+            } else if (storedCopies > 1) {
+                result.remove(snapshot.starts[winner], snapshot.ends[winner]);
+                result.set(snapshot.positions[winner], ADD);
+                result.duplicatesCollapsed++;
+            } else if (!storedMatches) {
+                result.set(snapshot.positions[winner], MODIFY);
+            } else {
+                result.unchanged++;
+            }
+        }
+        return result;
+    }
+
+    private static int compareBounds(Keys a, int i, Keys b, int j) {
+        int byStart = Long.compare(a.starts[i], b.starts[j]);
+        return byStart != 0 ? byStart : Long.compare(a.ends[i], b.ends[j]);
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            return mix(hash, -1);
+        }
+        hash = mix(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+            hash = (hash ^ ((value >>> shift) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Bounds and attribute hashes of one side of the diff, added in any order
+     */
+    public static final class Keys {
+
+        private int[] positions = new int[16];
+        private long[] starts = new long[16];
+        private long[] ends = new long[16];
+        private long[] hashes = new long[16];
+        private boolean[] deleted = new boolean[16];
+        private int size = 0;
+
+        /**
+         * Add the key of a range
+         *
+         * @param position Position of the range on its side, not negative
+         * @param start Start of the range (inclusive)
+         * @param end End of the range (inclusive)
+         * @param hash Attribute hash of the range, see {@link #attributeHash}
+         */
+        public void add(int position, long start, long end, long hash) {
+            add(position, start, end, hash, false);
+        }
+
+        /**
+         * Add a delete of the snapshot, which wins over earlier entries with the same bounds
+         *
+         * @param position Position of the delete in the snapshot, not negative
+         * @param start Start of the deleted range (inclusive)
+         * @param end End of the deleted range (inclusive)
+         */
+        public void addDelete(int position, long start, long end) {
+            add(position, start, end, 0L, true);
+        }
+
+        private void add(int position, long start, long end, long hash, boolean delete) {
+            if (position < 0) {
+                throw new IllegalArgumentException("Position must not be negative");
+            }
+            if (size == starts.length) {
+                int capacity = size + (size >> 1);
+                positions = Arrays.copyOf(positions, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                hashes = Arrays.copyOf(hashes, capacity);
+                deleted = Arrays.copyOf(deleted, capacity);
+            }
+
+            positions[size] = position;
+            starts[size] = start;
+            ends[size] = end;
+            hashes[size] = hash;
+            deleted[size] = delete;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private int maxPosition() {
+            int max = -1;
+            for (int i = 0; i < size; i++) {
+                max = Math.max(max, positions[i]);
+            }
+            return max;
+        }
+
+        /**
+         * Key indexes sorted by bounds, then position
+         */
+        private int[] sortedOrder() {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            sort(order, 0, size - 1);
+            return order;
+        }
+
+        private int compareKeys(int a, int b) {
+            int byBounds = compareBounds(this, a, this, b);
+            return byBounds != 0 ? byBounds : Integer.compare(positions[a], positions[b]);
+        }
+
+        /**
+         * Quicksort of order[low..high] by key, recursing into the smaller part only
+         */
+        private void sort(int[] order, int low, int high) {
+            while (high - low > 16) {
+                int pivot = medianOfThree(order[low], order[(low + high) >>> 1], order[high]);
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (compareKeys(order[i], pivot) < 0) {
+                        i++;
+                    }
+                    while (compareKeys(order[j], pivot) > 0) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        int swap = order[i];
+                        order[i++] = order[j];
+                        order[j--] = swap;
+                    }
+                }
+                if (j - low < high - i) {
+                    sort(order, low, j);
+                    low = i;
+                } else {
+                    sort(order, i, high);
+                    high = j;
+                }
+            }
+
+            // Insertion sort for the small remainder
+            for (int i = low + 1; i <= high; i++) {
+                int key = order[i];
+                int j = i - 1;
+                while (j >= low && compareKeys(order[j], key) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = key;
+            }
+        }
+
+        private int medianOfThree(int a, int b, int c) {
+            if (compareKeys(a, b) > 0) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            if (compareKeys(b, c) > 0) {
+                b = c;
+            }
+            return compareKeys(a, b) > 0 ? a : b;
+        }
+    }
+
+    /**
+     * Changes found by a diff
+     *
+     * Removals are applied before the snapshot ranges marked {@link #ADD} or {@link #MODIFY},
+     * since a group of duplicates is both removed and added again.
+     */
+    public static final class Result {
+
+        private final byte[] actions;
+        private long[] removedStarts = new long[16];
+        private long[] removedEnds = new long[16];
+        private int removed = 0;
+        private int added = 0;
+        private int modified = 0;
+        private int unchanged = 0;
+        private int duplicatesCollapsed = 0;
+
+        private Result(int positions) {
+            this.actions = new byte[positions];
+        }
+
+        /**
+         * Get the action of a snapshot range
+         *
+         * @param position Position of the range in the snapshot
+         * @return {@link #ADD}, {@link #MODIFY} or {@link #UNCHANGED} (also for positions without a key)
+         */
+        public byte getAction(int position) {
+            return position < actions.length ? actions[position] : UNCHANGED;
+        }
+
+        public int getRemovedCount() {
+            return removed;
+        }
+
+        public long getRemovedStart(int index) {
+            return removedStarts[index];
+        }
+
+        public long getRemovedEnd(int index) {
+            return removedEnds[index];
+        }
+
+        public int getAddedCount() {
+            return added;
+        }
+
+        public int getModifiedCount() {
+            return modified;
+        }
+
+        public int getUnchangedCount() {
+            return unchanged;
+        }
+
+        /**
+         * @return Groups of stored duplicates removed and added again, counted in both
+         */
+        public int getDuplicatesCollapsed() {
+            return duplicatesCollapsed;
+        }
+
+        /**
+         * @return Number of removals, additions and modifications to apply
+         */
+        public int getChangeCount() {
+            return removed + added + modified;
+        }
+
+        private void set(int position, byte action) {
+            actions[position] = action;
+            if (action == ADD) {
+                added++;
+            } else {
+                modified++;
+            }
+        }
+
+        private void remove(long start, long end) {
+            if (removed == removedStarts.length) {
+                removedStarts = Arrays.copyOf(removedStarts, removed * 2);
+                removedEnds = Arrays.copyOf(removedEnds, removed * 2);
+            }
+            removedStarts[removed] = start;
+            removedEnds[removed] = end;
+            removed++;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "added=" + added +
+                    ", modified=" + modified +
+                    ", removed=" + removed +
+                    ", unchanged=" + unchanged +
+                    ", duplicatesCollapsed=" + duplicatesCollapsed +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.jamiewang.secure3d.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key into a single call
+ *
+ * The first caller for a key runs the loader; callers arriving while it is in flight wait
+ * for its result (or exception) instead of running their own. A waiter whose leader takes
+ * longer than the timeout stops waiting and runs the loader itself. Nothing is cached: once
+ * the load completes the key is released and the next caller loads again.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the loaded values
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * @param timeoutMillis Longest time a caller waits for a load started by another caller before loading itself
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    public SingleFlight(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Load the value of a key, sharing the result of a load already in flight for it
+     *
+     * @param key Key to load
+     * @param loader Loads the value, run if no load of the key is in flight or if waiting for it times out
+     * @return Value returned by the loader
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.increment();
+            return await(leader, loader);
+        }
+
+        loads.increment();
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private V await(CompletableFuture<V> leader, Supplier<V> loader) {
+        try {
+            return leader.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // A stuck leader must not fail its waiters, each loads on its own instead
+            timeouts.increment();
+            return loader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return loader.get();
+        } catch (ExecutionException e) {
+            // Waiters see the leader's failure as their own
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("In-flight load failed", cause);
+        }
+    }
+
+    /**
+     * Get the number of keys currently being loaded
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Get load and coalescing counters
+     *
+     * @return Statistics object with counters since creation
+     */
+    public Statistics getStatistics() {
+        return new Statistics(loads.sum(), coalesced.sum(), timeouts.sum(), inFlight.size());
+    }
+
+    /**
+     * Statistics class for single-flight metrics
+     */
+    public static class Statistics {
+        private final long loads;
+        private final long coalesced;
+        private final long timeouts;
+        private final int inFlight;
+
+        public Statistics(long loads, long coalesced, long timeouts, int inFlight) {
+            this.loads = loads;
+            this.coalesced = coalesced;
+            this.timeouts = timeouts;
+            this.inFlight = inFlight;
+        }
+
+        public long getLoads() {
+            return loads;
+        }
+
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                    "loads=" + loads +
+                    ", coalesced=" + coalesced +
+                    ", timeouts=" + timeouts +
+                    ", inFlight=" + inFlight +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.jamiewang.secure3d.util;
+
+import java.util.Arrays;
+
+/**
+ * Immutable range index backed by parallel primitive arrays
+ *
+ * Ranges are stored sorted by start in {@code long[] starts} / {@code long[] ends}, and each
+ * slot carries an {@code int} payload id pointing into a table owned by the caller. A lookup
+ * is a single binary search over the starts array: no boxing, no node objects and no
+ * allocation, so a built index can be shared by any number of reader threads.
+ *
+ * The index assumes ranges do not overlap; nested ranges are first cut into disjoint
+ * segments by {@link NestedRangeFlattener}.
+ * Exact duplicates (same start and end) are collapsed at build time, keeping the one added last.
+ */
+public final class SortedRangeIndex implements RangeIndex {
+
+    private static final SortedRangeIndex EMPTY =
+            new SortedRangeIndex(new long[0], new long[0], new int[0]);
+
+    private final long[] starts;
+    private final long[] ends;
+    private final int[] payloadIds;
+
+    private SortedRangeIndex(long[] starts, long[] ends, int[] payloadIds) {
+        this.starts = starts;
+        this.ends = ends;
+        this.payloadIds = payloadIds;
+    }
+
+    /**
+     * Get an index containing no ranges
+     *
+     * @return Shared empty index
+     */
+    public static SortedRangeIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create a builder for a new index
+     *
+     * @param expectedSize Expected number of ranges, used to size the backing arrays
+     * @return New builder
+     */
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    @Override
+    public int find(long value) {
+        // Locate the last range whose start is <= value
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        // Ranges don't overlap, so only that candidate can contain the value
+        if (high >= 0 && value <= ends[high]) {
+            return high;
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public int findPayloadId(long value) {
+        int slot = find(value);
+        return slot == NOT_FOUND ? NOT_FOUND : payloadIds[slot];
+    }
+
+    @Override
+    public long startAt(int slot) {
+        return starts[slot];
+    }
+
+    @Override
+    public long endAt(int slot) {
+        return ends[slot];
+    }
+
+    @Override
+    public int payloadIdAt(int slot) {
+        return payloadIds[slot];
+    }
+
+    @Override
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Get the approximate heap footprint of the index arrays
+     *
+     * @return Size in bytes of the starts, ends and payload id arrays
+     */
+    @Override
+    public long getMemoryFootprintBytes() {
+        return (long) starts.length * (Long.BYTES + Long.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Builder collecting ranges in any order before producing a sorted index
+     */
+    public static final class Builder {
+
+        private long[] starts;
+        private long[] ends;
+        private int[] payloadIds;
+        private int size = 0;
+        private boolean sorted = true;
+
+        private Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            this.starts = new long[capacity];
+            this.ends = new long[capacity];
+            this.payloadIds = new int[capacity];
+        }
+
+        /**
+         * Add a range to the index
+         *
+         * @param start Start of the range (inclusive)
+         * @param end End of the range (inclusive)
+         * @param payloadId Id of the payload associated with the range
+         * @return This builder
+         * @throws IllegalArgumentException if start is greater than end
+         */
+        public Builder add(long start, long end, int payloadId) {
+            if (start > end) {
+                throw new IllegalArgumentException("Range start must not be greater than end");
+            }
+
+            if (size == starts.length) {
+                int capacity = Math.max(16, size + (size >> 1));
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                payloadIds = Arrays.copyOf(payloadIds, capacity);
+            }
+
+            if (size > 0 && start < starts[size - 1]) {
+                sorted = false;
+            }
+
+            starts[size] = start;
+            ends[size] = end;
+            payloadIds[size] = payloadId;
+            size++;
+            return this;
+        }
+
+        /**
+         * Get the number of ranges added so far
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Build the immutable index
+         *
+         * Sorts the ranges by start (stable, so insertion order decides between equal starts)
+         * and collapses exact duplicates, keeping the range added last.
+         *
+         * @return New index
+         */
+        public SortedRangeIndex build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+
+            long[] sortedStarts;
+            long[] sortedEnds;
+            int[] sortedPayloadIds;
+
+            if (sorted) {
+                sortedStarts = starts;
+                sortedEnds = ends;
+                sortedPayloadIds = payloadIds;
+            } else {
+                int[] order = sortedOrder();
+                sortedStarts = new long[size];
+                sortedEnds = new long[size];
+                sortedPayloadIds = new int[size];
+                for (int i = 0; i < size; i++) {
+                    int from = order[i];
+                    sortedStarts[i] = starts[from];
+                    sortedEnds[i] = ends[from];
+                    sortedPayloadIds[i] = payloadIds[from];
+                }
+            }
+
+            // Collapse exact duplicates in place, the later entry wins
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (count > 0 && sortedStarts[count - 1] == sortedStarts[i]
+                        && sortedEnds[count - 1] == sortedEnds[i]) {
+                    sortedPayloadIds[count - 1] = sortedPayloadIds[i];
+                    continue;
+                }
+                sortedStarts[count] = sortedStarts[i];
+                sortedEnds[count] = sortedEnds[i];
+                sortedPayloadIds[count] = sortedPayloadIds[i];
+                count++;
+            }
+
+            SortedRangeIndex index = new SortedRangeIndex(
+                    Arrays.copyOf(sortedStarts, count),
+                    Arrays.copyOf(sortedEnds, count),
+                    Arrays.copyOf(sortedPayloadIds, count));
+
+            // The builder must not leak arrays shared with the index
+            starts = new long[0];
+            ends = new long[0];
+            payloadIds = new int[0];
+            size = 0;
+            sorted = true;
+
+            return index;
+        }
+
+        /**
+         * Stable merge sort of slot numbers by start
+         */
+        private int[] sortedOrder() {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+
+            int[] buffer = new int[size];
+            for (int width = 1; width < size; width <<= 1) {
+                for (int low = 0; low < size - width; low += width << 1) {
+                    int mid = low + width;
+                    int high = Math.min(low + (width << 1), size);
+                    merge(order, buffer, low, mid, high);
+                }
+            }
+            return order;
+        }
+
+        private void merge(int[] order, int[] buffer, int low, int mid, int high) {
+            int left = low;
+            int right = mid;
+            int out = low;
+            while (left < mid && right < high) {
+                if (starts[order[right]] < starts[order[left]]) {
+                    buffer[out++] = order[right++];
+                } else {
+                    buffer[out++] = order[left++];
+                }
+            }
+            while (left < mid) {
+                buffer[out++] = order[left++];
+            }
+            while (right < high) {
+                buffer[out++] = order[right++];
+            }
+            System.arraycopy(buffer, low, order, low, high - low);
+        }
+    }
+}
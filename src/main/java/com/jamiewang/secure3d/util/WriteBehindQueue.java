@@ -0,0 +1,278 @@
+package com.jamiewang.secure3d.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Bounded queue of pending writes, flushed in batches by a background thread
+ *
+ * Offering a key already pending replaces its value instead of queueing a second write, so
+ * only the latest value of a key is written. When the queue holds its capacity of distinct
+ * keys, writes of new keys are dropped rather than blocking the caller. The flusher waits up
+ * to the linger time for a batch to fill before writing what it has, and writes batches one
+ * at a time, so writes of the same key reach the writer in the order they were offered.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the written values
+ */
+public final class WriteBehindQueue<K, V> implements AutoCloseable {
+
+    private final int capacity;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Consumer<Map<K, V>> writer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final LinkedHashMap<K, V> pending = new LinkedHashMap<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param name Name of the flusher thread
+     * @param capacity Most distinct keys pending
+     * @param batchSize Most writes passed to the writer at once
+     * @param lingerMillis Longest wait for a batch to fill once a write is pending
+     * @param writer Writes a batch of values by key, called from the flusher thread only
+     * @throws IllegalArgumentException if the capacity or batch size is not positive or the linger time is negative
+     */
+    public WriteBehindQueue(String name, int capacity, int batchSize, long lingerMillis, Consumer<Map<K, V>> writer) {
+        if (capacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Capacity and batch size must be positive");
+        }
+        if (lingerMillis < 0) {
+            throw new IllegalArgumentException("Linger time must not be negative");
+        }
+
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.writer = writer;
+        this.flusher = new Thread(this::run, name);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queue a write, replacing the pending value of the key if there is one
+     *
+     * @param key Key to write
+     * @param value Value to write
+     * @return true if the write is pending, false if it was dropped because the queue is full or closed
+     */
+    public boolean offer(K key, V value) {
+        lock.lock();
+        try {
+            if (!running) {
+                dropped.increment();
+                return false;
+            }
+            if (pending.containsKey(key)) {
+                pending.put(key, value);
+                coalesced.increment();
+                return true;
+            }
+            if (pending.size() >= capacity) {
+                dropped.increment();
+                return false;
+            }
+
+            pending.put(key, value);
+            enqueued.increment();
+            if (pending.size() == 1 || pending.size() >= batchSize) {
+                changed.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop the pending writes of the keys matching a filter
+     *
+     * Writes already handed to the writer are not affected.
+     *
+     * @param filter Selects the keys to drop
+     * @return Number of writes dropped
+     */
+    public int removeIf(Predicate<K> filter) {
+        lock.lock();
+        try {
+            int removed = 0;
+            Iterator<K> keys = pending.keySet().iterator();
+            while (keys.hasNext()) {
+                if (filter.test(keys.next())) {
+                    keys.remove();
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of pending writes
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get enqueue, coalesce, drop and write counters
+     *
+     * @return Statistics object with counters since creation
+     */
+    public Statistics getStatistics() {
+        return new Statistics(enqueued.sum(), coalesced.sum(), dropped.sum(), written.sum(), failed.sum(), size());
+    }
+
+    /**
+     * Stop accepting writes, write the pending ones and stop the flusher thread
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Map<K, V> batch = nextBatch();
+            if (batch == null) {
+                return;
+            }
+            try {
+                writer.accept(batch);
+                written.add(batch.size());
+            } catch (RuntimeException e) {
+                // The writer is expected to handle its own failures, this only keeps the flusher alive
+                failed.add(batch.size());
+            }
+        }
+    }
+
+    /**
+     * Wait for pending writes and take up to a batch of them
+     *
+     * @return Next batch, null once the queue is closed and drained
+     */
+    private Map<K, V> nextBatch() {
+        lock.lock();
+        try {
+            while (running && pending.isEmpty()) {
+                changed.awaitUninterruptibly();
+            }
+            long remaining = lingerNanos;
+            while (running && pending.size() < batchSize && remaining > 0) {
+                remaining = changed.awaitNanos(remaining);
+            }
+            if (pending.isEmpty()) {
+                return null;
+            }
+
+            Map<K, V> batch = new LinkedHashMap<>();
+            Iterator<Map.Entry<K, V>> entries = pending.entrySet().iterator();
+            while (entries.hasNext() && batch.size() < batchSize) {
+                Map.Entry<K, V> entry = entries.next();
+                batch.put(entry.getKey(), entry.getValue());
+                entries.remove();
+            }
+            return batch;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Statistics class for write-behind metrics
+     */
+    public static class Statistics {
+        private final long enqueued;
+        private final long coalesced;
+        private final long dropped;
+        private final long written;
+        private final long failed;
+        private final int pending;
+
+        public Statistics(long enqueued, long coalesced, long dropped, long written, long failed, int pending) {
+            this.enqueued = enqueued;
+            this.coalesced = coalesced;
+            this.dropped = dropped;
+            this.written = written;
+            this.failed = failed;
+            this.pending = pending;
+        }
+
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public int getPending() {
+            return pending;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                    "enqueued=" + enqueued +
+                    ", coalesced=" + coalesced +
+                    ", dropped=" + dropped +
+                    ", written=" + written +
+                    ", failed=" + failed +
+                    ", pending=" + pending +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.jamiewang.secure3d.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryRedisValueCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BinaryRedisValueCodec codec =
+            new BinaryRedisValueCodec(objectMapper, List.of("https://", "http://", "https://acs.example.com/"));
+
+    private static CardRangeDataDTO cardRange() {
+        CardRangeDataDTO dto = new CardRangeDataDTO();
+        dto.setStartRange(4000000000000000L);
+        dto.setEndRange(4000000000999999L);
+        dto.setActionInd("A");
+        dto.setThreeDsMethodUrl("https://acs.example.com/3ds/method");
+        dto.setAcsStartProtocolVersion("2.1.0");
+        dto.setAcsEndProtocolVersion("2.2.0");
+        dto.setAcsInfoInd(List.of("01", "02", "03"));
+        return dto;
+    }
+
+    // Test a card range survives a round trip
+    @Test
+    void decode_ShouldReturnEqualCardRange_WhenEncodedByCodec() throws IOException {
+        // Arrange
+        CardRangeDataDTO dto = cardRange();
+
+        // Act
+        CardRangeDataDTO decoded = codec.decode(codec.encode(dto), CardRangeDataDTO.class);
+
+        // Assert
+        assertEquals(dto, decoded);
+    }
+
+    // Test null fields take no space and come back as null
+    @Test
+    void decode_ShouldKeepNullFields() throws IOException {
+        // Arrange
+        CardRangeDataDTO dto = new CardRangeDataDTO();
+        dto.setStartRange(5100000000000000L);
+
+        // Act
+        byte[] encoded = codec.encode(dto);
+        CardRangeDataDTO decoded = codec.decode(encoded, CardRangeDataDTO.class);
+
+        // Assert
+        assertEquals(dto, decoded);
+        assertEquals(10, encoded.length);
+    }
+
+    // Test URLs without a dictionary prefix, empty lists and an end below the start
+    @Test
+    void decode_ShouldRoundTripUnusualValues() throws IOException {
+        // Arrange
+        CardRangeDataDTO dto = cardRange();
+        dto.setThreeDsMethodUrl("ftp://acs.example.com/method");
+        dto.setAcsInfoInd(List.of());
+        dto.setEndRange(dto.getStartRange() - 1);
+
+        // Act
+        CardRangeDataDTO decoded = codec.decode(codec.encode(dto), CardRangeDataDTO.class);
+
+        // Assert
+        assertEquals(dto, decoded);
+    }
+
+    // Test the binary layout is much smaller than JSON
+    @Test
+    void encode_ShouldBeSmallerThanJson() throws IOException {
+        // Arrange
+        CardRangeDataDTO dto = cardRange();
+
+        // Act
+        byte[] binary = codec.encode(dto);
+        byte[] json = objectMapper.writeValueAsBytes(dto);
+
+        // Assert
+        assertTrue(binary.length * 3 < json.length, binary.length + " bytes vs " + json.length + " JSON bytes");
+    }
+
+    // Test values other than card ranges are stored as JSON
+    @Test
+    void encode_ShouldFallBackToJson_WhenValueIsNotCardRange() throws IOException {
+        // Act
+        byte[] encoded = codec.encode(1234L);
+
+        // Assert
+        assertEquals("1234", new String(encoded));
+        assertEquals(1234L, codec.decode(encoded, Long.class));
+    }
+
+    // Test JSON card ranges written before the codec was switched can still be read
+    @Test
+    void decode_ShouldReadJsonCardRange() throws IOException {
+        // Arrange
+        CardRangeDataDTO dto = cardRange();
+        byte[] json = objectMapper.writeValueAsBytes(dto);
+
+        // Act & Assert
+        assertEquals(dto, codec.decode(json, CardRangeDataDTO.class));
+    }
+
+    // Test truncated data is reported as an IOException
+    @Test
+    void decode_ShouldThrow_WhenDataIsTruncated() throws IOException {
+        // Arrange
+        byte[] encoded = codec.encode(cardRange());
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 3);
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> codec.decode(truncated, CardRangeDataDTO.class));
+    }
+
+    // Test data written with a longer URL dictionary is rejected
+    @Test
+    void decode_ShouldThrow_WhenUrlPrefixIsUnknown() throws IOException {
+        // Arrange
+        byte[] encoded = codec.encode(cardRange());
+        BinaryRedisValueCodec shorterDictionary = new BinaryRedisValueCodec(objectMapper, List.of("https://"));
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> shorterDictionary.decode(encoded, CardRangeDataDTO.class));
+    }
+
+    // Test a binary card range is not silently read as another type
+    @Test
+    void decode_ShouldThrow_WhenBinaryCardRangeIsReadAsOtherType() throws IOException {
+        // Arrange
+        byte[] encoded = codec.encode(cardRange());
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> codec.decode(encoded, Long.class));
+    }
+}
@@ -0,0 +1,105 @@
+package com.jamiewang.secure3d.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Size and speed of the Redis value codecs, run with -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class RedisValueCodecBenchmarkTest {
+
+    private static final int ENTRY_COUNT = 100_000;
+    private static final int ROUNDS = 5;
+
+    // Bytes per entry and encode/decode time of the binary codec against JSON
+    @Test
+    void benchmark_BinaryCodec_ShouldBeSmallerThanJson() throws IOException {
+        // Arrange
+        ObjectMapper objectMapper = new ObjectMapper();
+        IRedisValueCodec json = new JsonRedisValueCodec(objectMapper);
+        IRedisValueCodec binary = new BinaryRedisValueCodec(objectMapper, List.of("https://", "http://"));
+        List<CardRangeDataDTO> entries = randomEntries();
+
+        // Act
+        Result jsonResult = measure(json, entries);
+        Result binaryResult = measure(binary, entries);
+
+        // Assert
+        assertTrue(binaryResult.bytes < jsonResult.bytes);
+        report("json", jsonResult);
+        report("binary", binaryResult);
+    }
+
+    private static List<CardRangeDataDTO> randomEntries() {
+        Random random = new Random(42);
+        List<CardRangeDataDTO> entries = new ArrayList<>(ENTRY_COUNT);
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            CardRangeDataDTO dto = new CardRangeDataDTO();
+            long start = 4000000000000000L + i * 10_000_000_000L;
+            dto.setStartRange(start);
+            dto.setEndRange(start + 9_999_999_999L);
+            dto.setActionInd("A");
+            dto.setAcsStartProtocolVersion("2.1.0");
+            dto.setAcsEndProtocolVersion(random.nextBoolean() ? "2.2.0" : "2.3.1");
+            dto.setThreeDsMethodUrl("https://acs" + random.nextInt(50) + ".example.com/3ds/method");
+            dto.setAcsInfoInd(random.nextBoolean() ? List.of("01", "02") : List.of("01", "02", "03", "04"));
+            entries.add(dto);
+        }
+        return entries;
+    }
+
+    private static Result measure(IRedisValueCodec codec, List<CardRangeDataDTO> entries) throws IOException {
+        byte[][] encoded = new byte[entries.size()][];
+        long bestEncode = Long.MAX_VALUE;
+        long bestDecode = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = codec.encode(entries.get(i));
+            }
+            bestEncode = Math.min(bestEncode, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (byte[] bytes : encoded) {
+                codec.decode(bytes, CardRangeDataDTO.class);
+            }
+            bestDecode = Math.min(bestDecode, System.nanoTime() - start);
+        }
+
+        long bytes = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            bytes += encoded[i].length;
+            assertEquals(entries.get(i), codec.decode(encoded[i], CardRangeDataDTO.class));
+        }
+        return new Result(bytes, bestEncode, bestDecode);
+    }
+
+    private static void report(String label, Result result) {
+        System.out.printf("%-8s %6.1f bytes/entry %8.1f ns/encode %8.1f ns/decode%n", label,
+                (double) result.bytes / ENTRY_COUNT,
+                (double) result.encodeNanos / ENTRY_COUNT,
+                (double) result.decodeNanos / ENTRY_COUNT);
+    }
+
+    private static final class Result {
+        private final long bytes;
+        private final long encodeNanos;
+        private final long decodeNanos;
+
+        private Result(long bytes, long encodeNanos, long decodeNanos) {
+            this.bytes = bytes;
+            this.encodeNanos = encodeNanos;
+            this.decodeNanos = decodeNanos;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CardRangeAttributeTableTest {
+
+    private static CardRangeEntity range(long start, String url, List<String> acsInfoInd) {
+        CardRangeEntity entity = new CardRangeEntity();
+        entity.setStartRange(start);
+        entity.setEndRange(start + 999L);
+        entity.setActionInd("A");
+        entity.setThreeDsMethodUrl(url);
+        entity.setAcsStartProtocolVersion("2.1.0");
+        entity.setAcsEndProtocolVersion("2.2.0");
+        entity.setAcsInfoInd(acsInfoInd == null ? null : new ArrayList<>(acsInfoInd));
+        return entity;
+    }
+
+    // Test ranges with identical attributes share one entry
+    @Test
+    void intern_ShouldReturnSameId_WhenAttributesAreEqual() {
+        // Arrange
+        CardRangeAttributeTable.Builder builder = CardRangeAttributeTable.builder();
+
+        // Act
+        int first = builder.intern(range(1000L, "https://acs.example.com/method", List.of("01", "02")));
+        int second = builder.intern(range(2000L, "https://acs.example.com/method", List.of("01", "02")));
+        int third = builder.intern(range(3000L, "https://other.example.com/method", List.of("01", "02")));
+        int fourth = builder.intern(range(4000L, "https://acs.example.com/method", null));
+        CardRangeAttributeTable table = builder.build();
+
+        // Assert
+        assertEquals(first, second);
+        assertNotEquals(first, third);
+        assertNotEquals(first, fourth);
+        assertEquals(3, table.size());
+        assertSame(table.get(first).getThreeDsMethodUrl(), table.get(fourth).getThreeDsMethodUrl());
+    }
+
+    // Test the response is built from the shared attributes and the range bounds
+    @Test
+    void toDto_ShouldCombineSharedAttributesWithBounds() {
+        // Arrange
+        CardRangeAttributeTable.Builder builder = CardRangeAttributeTable.builder();
+        int id = builder.intern(range(1000L, "https://acs.example.com/method", List.of("01")));
+        CardRangeAttributes attributes = builder.build().get(id);
+
+        // Act
+        CardRangeDataDTO dto = attributes.toDto(5000L, 5999L);
+
+        // Assert
+        assertEquals(5000L, dto.getStartRange());
+        assertEquals(5999L, dto.getEndRange());
+        assertEquals("A", dto.getActionInd());
+        assertEquals("https://acs.example.com/method", dto.getThreeDsMethodUrl());
+        assertEquals("2.1.0", dto.getAcsStartProtocolVersion());
+        assertEquals("2.2.0", dto.getAcsEndProtocolVersion());
+        assertEquals(List.of("01"), dto.getAcsInfoInd());
+        assertThrows(UnsupportedOperationException.class, () -> dto.getAcsInfoInd().add("02"));
+    }
+
+    // Test unreferenced attributes are dropped and the remaining ids renumbered
+    @Test
+    void compact_ShouldDropUnreferencedAttributes_AndRenumberIds() {
+        // Arrange
+        CardRangeAttributeTable.Builder builder = CardRangeAttributeTable.builder();
+        int first = builder.intern(range(1000L, "https://first.example.com/method", null));
+        builder.intern(range(2000L, "https://second.example.com/method", null));
+        int third = builder.intern(range(3000L, "https://third.example.com/method", null));
+        CardRangeAttributeTable table = builder.build();
+        int[] ids = {third, first, third};
+
+        // Act
+        CardRangeAttributeTable compacted = table.compact(ids);
+
+        // Assert
+        assertEquals(2, compacted.size());
+        assertEquals("https://third.example.com/method", compacted.get(ids[0]).getThreeDsMethodUrl());
+        assertEquals("https://first.example.com/method", compacted.get(ids[1]).getThreeDsMethodUrl());
+        assertEquals(ids[0], ids[2]);
+        assertEquals(3, table.size());
+    }
+
+    // Test a table whose attributes are all referenced is returned unchanged
+    @Test
+    void compact_ShouldReturnSameTable_WhenAllAttributesAreReferenced() {
+        // Arrange
+        CardRangeAttributeTable.Builder builder = CardRangeAttributeTable.builder();
+        int first = builder.intern(range(1000L, "https://first.example.com/method", null));
+        int second = builder.intern(range(2000L, "https://second.example.com/method", null));
+        CardRangeAttributeTable table = builder.build();
+        int[] ids = {second, first};
+
+        // Act
+        CardRangeAttributeTable compacted = table.compact(ids);
+
+        // Assert
+        assertSame(table, compacted);
+        assertArrayEquals(new int[]{second, first}, ids);
+    }
+}
@@ -0,0 +1,126 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.event.CardRangesImportedEvent;
+import com.jamiewang.secure3d.sync.CardRangeChangeMessage;
+import com.jamiewang.secure3d.sync.InProcessCardRangeChangeBus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CardRangeChangeRelayTest {
+
+    private InProcessCardRangeChangeBus bus;
+    private ApplicationEventPublisher publisherA;
+    private ApplicationEventPublisher publisherB;
+    private CardRangeChangeRelay nodeA;
+    private CardRangeChangeRelay nodeB;
+
+    @BeforeEach
+    void setUp() {
+        // Two nodes sharing one bus
+        bus = new InProcessCardRangeChangeBus();
+        publisherA = mock(ApplicationEventPublisher.class);
+        publisherB = mock(ApplicationEventPublisher.class);
+        nodeA = newRelay(publisherA);
+        nodeB = newRelay(publisherB);
+    }
+
+    // Test an import on one node is published as a remote event on the other
+    @Test
+    void onCardRangesImported_ShouldPublishRemoteEvent_OnOtherNodes() {
+        // Arrange
+        CardRangeEntity change = newChange(4000000000000000L, 4000000000999999L, "M");
+
+        // Act
+        nodeA.onCardRangesImported(new CardRangesImportedEvent("1", 1, List.of(change)));
+
+        // Assert
+        ArgumentCaptor<CardRangesImportedEvent> captor = ArgumentCaptor.forClass(CardRangesImportedEvent.class);
+        verify(publisherB).publishEvent(captor.capture());
+        CardRangesImportedEvent received = captor.getValue();
+        assertTrue(received.isRemote());
+        assertEquals("1", received.getSerialNum());
+        assertEquals(1, received.getChanges().size());
+        assertEquals(4000000000000000L, received.getChanges().get(0).getStartRange());
+        assertEquals(4000000000999999L, received.getChanges().get(0).getEndRange());
+        assertEquals("M", received.getChanges().get(0).getActionInd());
+        assertEquals(List.of("01", "02"), received.getChanges().get(0).getAcsInfoInd());
+
+        // The importing node already handled its own event
+        verifyNoInteractions(publisherA);
+    }
+
+    // Test remote events are not sent back over the bus
+    @Test
+    void onCardRangesImported_ShouldNotRelay_WhenEventIsRemote() {
+        // Act
+        nodeA.onCardRangesImported(new CardRangesImportedEvent("1", 1, List.of(), true));
+
+        // Assert
+        verifyNoInteractions(publisherB);
+    }
+
+    // Test imports with too many changes are sent without them
+    @Test
+    void onCardRangesImported_ShouldSendReload_WhenImportIsLarge() {
+        // Arrange
+        ReflectionTestUtils.setField(nodeA, "maxChanges", 1);
+        List<CardRangeEntity> changes = List.of(
+                newChange(4000000000000000L, 4000000000999999L, "A"),
+                newChange(5000000000000000L, 5000000000999999L, "A"));
+
+        // Act
+        nodeA.onCardRangesImported(new CardRangesImportedEvent("1", 2, changes));
+
+        // Assert
+        ArgumentCaptor<CardRangesImportedEvent> captor = ArgumentCaptor.forClass(CardRangesImportedEvent.class);
+        verify(publisherB).publishEvent(captor.capture());
+        assertNull(captor.getValue().getChanges());
+        assertEquals(2, captor.getValue().getImportedCount());
+    }
+
+    // Test a gap in the sequence of a node turns its next message into a reload
+    @Test
+    void onMessage_ShouldReload_WhenMessagesWereMissed() {
+        // Arrange
+        List<CardRangeDataDTO> none = List.of();
+        nodeB.onMessage(new CardRangeChangeMessage("node-c", 1, "1", 1, none));
+
+        // Act
+        nodeB.onMessage(new CardRangeChangeMessage("node-c", 3, "3", 1, none));
+
+        // Assert
+        ArgumentCaptor<CardRangesImportedEvent> captor = ArgumentCaptor.forClass(CardRangesImportedEvent.class);
+        verify(publisherB, times(2)).publishEvent(captor.capture());
+        assertNotNull(captor.getAllValues().get(0).getChanges());
+        assertNull(captor.getAllValues().get(1).getChanges());
+    }
+
+    private CardRangeChangeRelay newRelay(ApplicationEventPublisher publisher) {
+        CardRangeChangeRelay relay = new CardRangeChangeRelay();
+        ReflectionTestUtils.setField(relay, "syncEnabled", true);
+        ReflectionTestUtils.setField(relay, "maxChanges", 5000);
+        ReflectionTestUtils.setField(relay, "cardRangeChangeBus", bus);
+        ReflectionTestUtils.setField(relay, "applicationEventPublisher", publisher);
+        relay.initialize();
+        return relay;
+    }
+
+    private static CardRangeEntity newChange(long startRange, long endRange, String actionInd) {
+        CardRangeEntity change = new CardRangeEntity();
+        change.setStartRange(startRange);
+        change.setEndRange(endRange);
+        change.setActionInd(actionInd);
+        change.setAcsInfoInd(List.of("01", "02"));
+        return change;
+    }
+}
@@ -0,0 +1,132 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.repository.CardRangeJdbcRepository;
+import com.jamiewang.secure3d.repository.ICardRangeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CardRangeIndexLoaderTest {
+
+    @Mock
+    private CardRangeJdbcRepository cardRangeJdbcRepository;
+
+    @Mock
+    private ICardRangeRepository cardRangeRepository;
+
+    @TempDir
+    Path directory;
+
+    private Path mappedFile;
+    private SharedIntervalTreeComponent component;
+    private CardRangeIndexLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        mappedFile = directory.resolve("card-range.idx");
+        component = mappedComponent();
+
+        loader = new CardRangeIndexLoader();
+        ReflectionTestUtils.setField(loader, "indexEnabled", true);
+        ReflectionTestUtils.setField(loader, "deltaEnabled", true);
+        ReflectionTestUtils.setField(loader, "sharedIntervalTreeComponent", component);
+        ReflectionTestUtils.setField(loader, "cardRangeJdbcRepository", cardRangeJdbcRepository);
+        ReflectionTestUtils.setField(loader, "cardRangeRepository", cardRangeRepository);
+    }
+
+    private SharedIntervalTreeComponent mappedComponent() {
+        SharedIntervalTreeComponent mapped = new SharedIntervalTreeComponent();
+        ReflectionTestUtils.setField(mapped, "engine", "mapped");
+        ReflectionTestUtils.setField(mapped, "mappedFile", mappedFile.toString());
+        ReflectionTestUtils.setField(mapped, "mostSpecificEnabled", true);
+        ReflectionTestUtils.setField(mapped, "binPrefixEnabled", false);
+        ReflectionTestUtils.setField(mapped, "binPrefixDigits", 6);
+        mapped.initialize();
+        return mapped;
+    }
+
+    private static CardRangeEntity range(long start, long end, String url) {
+        CardRangeEntity entity = new CardRangeEntity();
+        entity.setStartRange(start);
+        entity.setEndRange(end);
+        entity.setActionInd("A");
+        entity.setThreeDsMethodUrl(url);
+        return entity;
+    }
+
+    private void streamRanges(List<CardRangeEntity> ranges) {
+        when(cardRangeRepository.count()).thenReturn((long) ranges.size());
+        when(cardRangeJdbcRepository.streamAllOrderedByStartRange(any())).thenAnswer(invocation -> {
+            Consumer<CardRangeEntity> consumer = invocation.getArgument(0);
+            ranges.forEach(consumer);
+            return ranges.size();
+        });
+    }
+
+    // Test warm-up maps an existing index file instead of reading the database
+    @Test
+    void warmUp_ShouldMapFile_WhenFileIsValid() {
+        // Arrange
+        mappedComponent().rebuildTree(List.of(range(1000L, 1999L, "https://file.example.com")));
+
+        // Act
+        loader.warmUp();
+
+        // Assert
+        assertTrue(component.isReady());
+        assertEquals("https://file.example.com", component.findCardRange(1500L).get().getThreeDsMethodUrl());
+        verifyNoInteractions(cardRangeJdbcRepository, cardRangeRepository);
+    }
+
+    // Test warm-up reloads from the database when the index file was written in another format version
+    @Test
+    void warmUp_ShouldReload_WhenFileFormatIsOutdated() throws Exception {
+        // Arrange
+        mappedComponent().rebuildTree(List.of(range(1000L, 1999L, "https://stale.example.com")));
+        byte[] bytes = Files.readAllBytes(mappedFile);
+        ByteBuffer.wrap(bytes).putInt(4, ByteBuffer.wrap(bytes).getInt(4) - 1);
+        Files.write(mappedFile, bytes);
+        streamRanges(List.of(range(1000L, 1999L, "https://database.example.com")));
+
+        // Act
+        loader.warmUp();
+
+        // Assert
+        assertTrue(component.isReady());
+        assertEquals("https://database.example.com", component.findCardRange(1500L).get().getThreeDsMethodUrl());
+        verify(cardRangeJdbcRepository).streamAllOrderedByStartRange(any());
+    }
+
+    // Test warm-up reloads from the database and rewrites the file when the file is truncated
+    @Test
+    void warmUp_ShouldReloadAndRewriteFile_WhenFileIsTruncated() throws Exception {
+        // Arrange
+        Files.write(mappedFile, new byte[]{0x33, 0x44});
+        streamRanges(List.of(range(1000L, 1999L, "https://database.example.com")));
+
+        // Act
+        loader.warmUp();
+
+        // Assert
+        assertTrue(component.isReady());
+        SharedIntervalTreeComponent restarted = mappedComponent();
+        assertTrue(restarted.loadMappedFile());
+        assertEquals("https://database.example.com", restarted.findCardRange(1500L).get().getThreeDsMethodUrl());
+    }
+}
@@ -0,0 +1,92 @@
+package com.jamiewang.secure3d.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CardRangePayloadCodecTest {
+
+    private static final CardRangeAttributes ATTRIBUTES = new CardRangeAttributes("A",
+            "https://acs.example.com/m\u00e9thode", "2.1.0", "2.2.0", List.of("01", "02"));
+
+    // Test attributes without bounds decode to equal attributes
+    @Test
+    void decode_ShouldReturnEncodedAttributes_WhenPayloadHasNoBounds() {
+        // Arrange
+        ByteBuffer payload = ByteBuffer.wrap(CardRangePayloadCodec.encode(ATTRIBUTES));
+
+        // Act
+        boolean hasBounds = CardRangePayloadCodec.hasBounds(payload);
+        CardRangeAttributes decoded = CardRangePayloadCodec.decode(payload);
+
+        // Assert
+        assertFalse(hasBounds);
+        assertEquals(ATTRIBUTES, decoded);
+        assertFalse(payload.hasRemaining());
+    }
+
+    // Test bounds written with the attributes are read back without moving the payload position
+    @Test
+    void decode_ShouldSkipBounds_WhenPayloadHasBounds() {
+        // Arrange
+        ByteBuffer payload = ByteBuffer.wrap(
+                CardRangePayloadCodec.encode(ATTRIBUTES, 4000000000000000L, 4000000000999999L));
+
+        // Act & Assert
+        assertTrue(CardRangePayloadCodec.hasBounds(payload));
+        assertEquals(4000000000000000L, CardRangePayloadCodec.startRange(payload));
+        assertEquals(4000000000999999L, CardRangePayloadCodec.endRange(payload));
+        assertEquals(0, payload.position());
+        assertEquals(ATTRIBUTES, CardRangePayloadCodec.decode(payload));
+        assertFalse(payload.hasRemaining());
+    }
+
+    // Test null and empty values are told apart
+    @Test
+    void decode_ShouldKeepNullsAndEmptyValues() {
+        // Arrange
+        CardRangeAttributes nulls = new CardRangeAttributes(null, null, "", null, null);
+        CardRangeAttributes empty = new CardRangeAttributes("", "", null, "", List.of());
+
+        // Act
+        CardRangeAttributes decodedNulls = CardRangePayloadCodec.decode(ByteBuffer.wrap(CardRangePayloadCodec.encode(nulls)));
+        CardRangeAttributes decodedEmpty = CardRangePayloadCodec.decode(ByteBuffer.wrap(CardRangePayloadCodec.encode(empty)));
+
+        // Assert
+        assertEquals(nulls, decodedNulls);
+        assertEquals(empty, decodedEmpty);
+        assertNull(decodedNulls.getAcsInfoInd());
+        assertEquals(List.of(), decodedEmpty.getAcsInfoInd());
+    }
+
+    // Test a payload read from the middle of a larger buffer, as sliced from the mapped file
+    @Test
+    void decode_ShouldReadFromCurrentPosition() {
+        // Arrange
+        byte[] encoded = CardRangePayloadCodec.encode(ATTRIBUTES, 100L, 199L);
+        ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 8);
+        buffer.position(5);
+        buffer.put(encoded);
+        buffer.position(5);
+
+        // Act & Assert
+        assertEquals(100L, CardRangePayloadCodec.startRange(buffer));
+        assertEquals(199L, CardRangePayloadCodec.endRange(buffer));
+        assertEquals(ATTRIBUTES, CardRangePayloadCodec.decode(buffer));
+        assertEquals(5 + encoded.length, buffer.position());
+    }
+
+    // Test a payload cut short fails instead of decoding garbage
+    @Test
+    void decode_ShouldThrow_WhenPayloadIsTruncated() {
+        // Arrange
+        byte[] encoded = CardRangePayloadCodec.encode(ATTRIBUTES);
+        ByteBuffer truncated = ByteBuffer.wrap(encoded, 0, encoded.length - 3).slice();
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> CardRangePayloadCodec.decode(truncated));
+    }
+}
@@ -0,0 +1,186 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.dto.BulkImportResponseDTO;
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.event.CardRangesImportedEvent;
+import com.jamiewang.secure3d.repository.CardRangeJdbcRepository;
+import com.jamiewang.secure3d.repository.CardRangeTableSwapRepository;
+import com.jamiewang.secure3d.util.RangeSnapshotDiff;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CardRangeTableSwapTest {
+
+    private static final Map<String, List<String>> DEFERRED_INDEXES =
+            Map.of(CardRangeTableSwapRepository.CARD_RANGE_STAGING_TABLE,
+                    List.of("ADD INDEX idx_end_range (end_range)"));
+
+    @Mock
+    private CardRangeTableSwapRepository tableSwapRepository;
+
+    @Mock
+    private CardRangeJdbcRepository cardRangeJdbcRepository;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @InjectMocks
+    private CardRangeTableSwap tableSwap;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(tableSwap, "batchSize", 2);
+        ReflectionTestUtils.setField(tableSwap, "errorSampleSize", 10);
+        ReflectionTestUtils.setField(tableSwap, "maxErrors", 0);
+        ReflectionTestUtils.setField(tableSwap, "minSizePercent", 50);
+    }
+
+    // Test a complete reload is written to staging, indexed, validated and swapped in
+    @Test
+    void finish_ShouldSwapStagingTables_WhenLoadIsValid() {
+        // Arrange
+        when(tableSwapRepository.createStaging()).thenReturn(DEFERRED_INDEXES);
+        when(tableSwapRepository.countRows(CardRangeTableSwapRepository.CARD_RANGE_STAGING_TABLE)).thenReturn(3L);
+        when(tableSwapRepository.countRows(CardRangeTableSwapRepository.ACS_INFO_STAGING_TABLE)).thenReturn(3L);
+        when(tableSwapRepository.countRows(CardRangeJdbcRepository.CARD_RANGE_TABLE)).thenReturn(4L);
+
+        List<CardRangeDataDTO> snapshot = List.of(cardRange(1000L, 1999L, "A"), cardRange(2000L, 2999L, "D"),
+                cardRange(3000L, 3999L, "A"), cardRange(4000L, 4999L, "M"));
+
+        // Act
+        BulkImportResponseDTO response = reload(snapshot);
+
+        // Assert
+        assertEquals(4, response.getTotalProcessed());
+        assertEquals(3, response.getSuccessCount());
+        assertEquals(0, response.getErrorCount());
+        verify(cardRangeJdbcRepository, times(2)).insertAll(anyList(),
+                eq(CardRangeTableSwapRepository.CARD_RANGE_STAGING_TABLE),
+                eq(CardRangeTableSwapRepository.ACS_INFO_STAGING_TABLE));
+        verify(tableSwapRepository).buildIndexes(DEFERRED_INDEXES);
+        verify(tableSwapRepository).swap();
+
+        ArgumentCaptor<CardRangesImportedEvent> eventCaptor = ArgumentCaptor.forClass(CardRangesImportedEvent.class);
+        verify(applicationEventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals("12345", eventCaptor.getValue().getSerialNum());
+        assertEquals(3, eventCaptor.getValue().getImportedCount());
+        assertNull(eventCaptor.getValue().getChanges());
+    }
+
+    // Test only the last entry per bounds is loaded, and nothing for bounds it ends by deleting
+    @Test
+    void finish_ShouldLoadLastEntryPerBounds_WhenSnapshotRepeatsBounds() {
+        // Arrange
+        when(tableSwapRepository.createStaging()).thenReturn(DEFERRED_INDEXES);
+        when(tableSwapRepository.countRows(CardRangeTableSwapRepository.CARD_RANGE_STAGING_TABLE)).thenReturn(2L);
+        when(tableSwapRepository.countRows(CardRangeTableSwapRepository.ACS_INFO_STAGING_TABLE)).thenReturn(2L);
+        when(tableSwapRepository.countRows(CardRangeJdbcRepository.CARD_RANGE_TABLE)).thenReturn(2L);
+        CardRangeDataDTO replacement = cardRange(3000L, 3999L, "M");
+        replacement.setThreeDsMethodUrl("https://new");
+        List<CardRangeDataDTO> snapshot = List.of(cardRange(1000L, 1999L, "A"), cardRange(3000L, 3999L, "A"),
+                cardRange(1000L, 1999L, "D"), cardRange(5000L, 5999L, "A"), replacement);
+        List<List<String>> written = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<CardRangeEntity> ranges = invocation.getArgument(0);
+            ranges.forEach(range -> written.add(List.of(String.valueOf(range.getStartRange()),
+                    String.valueOf(range.getThreeDsMethodUrl()))));
+            return ranges.size();
+        }).when(cardRangeJdbcRepository).insertAll(anyList(), anyString(), anyString());
+
+        // Act
+        BulkImportResponseDTO response = reload(snapshot);
+
+        // Assert
+        assertEquals(5, response.getTotalProcessed());
+        assertEquals(2, response.getSuccessCount());
+        assertEquals(List.of(List.of("5000", "null"), List.of("3000", "https://new")), written);
+        verify(tableSwapRepository).swap();
+    }
+
+    // Test a snapshot much smaller than the live tables is refused, leaving them untouched
+    @Test
+    void finish_ShouldRefuseSwap_WhenSnapshotShrinksLiveTables() {
+        // Arrange
+        when(tableSwapRepository.createStaging()).thenReturn(DEFERRED_INDEXES);
+        when(tableSwapRepository.countRows(CardRangeTableSwapRepository.CARD_RANGE_STAGING_TABLE)).thenReturn(1L);
+        when(tableSwapRepository.countRows(CardRangeTableSwapRepository.ACS_INFO_STAGING_TABLE)).thenReturn(1L);
+        when(tableSwapRepository.countRows(CardRangeJdbcRepository.CARD_RANGE_TABLE)).thenReturn(700000L);
+
+        // Act
+        CardRangeTableSwap.Reload reload = tableSwap.begin(keys(List.of(cardRange(1000L, 1999L, "A"))));
+        reload.add(0, cardRange(1000L, 1999L, "A"));
+        IllegalStateException exception = assertThrows(IllegalStateException.class, () -> reload.finish("12345"));
+
+        // Assert
+        assertTrue(exception.getMessage().contains("would replace 700000"));
+        verify(tableSwapRepository, never()).swap();
+        verify(applicationEventPublisher, never()).publishEvent(any(Object.class));
+        assertDoesNotThrow(() -> tableSwap.begin(new RangeSnapshotDiff.Keys()).close());
+    }
+
+    // Test a rollback swaps the old generation back and lets derived copies reload
+    @Test
+    void rollback_ShouldPublishReload_WhenPreviousGenerationExists() {
+        // Arrange
+        when(tableSwapRepository.rollback()).thenReturn(true);
+        when(tableSwapRepository.countRows(CardRangeJdbcRepository.CARD_RANGE_TABLE)).thenReturn(700000L);
+
+        // Act
+        boolean rolledBack = tableSwap.rollback();
+
+        // Assert
+        assertTrue(rolledBack);
+        ArgumentCaptor<CardRangesImportedEvent> eventCaptor = ArgumentCaptor.forClass(CardRangesImportedEvent.class);
+        verify(applicationEventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals(700000, eventCaptor.getValue().getImportedCount());
+        assertNull(eventCaptor.getValue().getChanges());
+    }
+
+    private BulkImportResponseDTO reload(List<CardRangeDataDTO> snapshot) {
+        try (CardRangeTableSwap.Reload reload = tableSwap.begin(keys(snapshot))) {
+            for (int i = 0; i < snapshot.size(); i++) {
+                reload.add(i, snapshot.get(i));
+            }
+            return reload.finish("12345");
+        }
+    }
+
+    private RangeSnapshotDiff.Keys keys(List<CardRangeDataDTO> snapshot) {
+        RangeSnapshotDiff.Keys keys = new RangeSnapshotDiff.Keys();
+        for (int i = 0; i < snapshot.size(); i++) {
+            CardRangeDataDTO cardRange = snapshot.get(i);
+            if ("D".equals(cardRange.getActionInd())) {
+                keys.addDelete(i, cardRange.getStartRange(), cardRange.getEndRange());
+            } else {
+                keys.add(i, cardRange.getStartRange(), cardRange.getEndRange(), 0L);
+            }
+        }
+        return keys;
+    }
+
+    private CardRangeDataDTO cardRange(long startRange, long endRange, String actionInd) {
+        CardRangeDataDTO cardRange = new CardRangeDataDTO();
+        cardRange.setStartRange(startRange);
+        cardRange.setEndRange(endRange);
+        cardRange.setActionInd(actionInd);
+        cardRange.setAcsInfoInd(List.of("01"));
+        return cardRange;
+    }
+}
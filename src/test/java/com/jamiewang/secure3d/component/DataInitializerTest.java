@@ -5,10 +5,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jamiewang.secure3d.dto.BulkImportResponseDTO;
 import com.jamiewang.secure3d.dto.CardRangeDataDTO;
 import com.jamiewang.secure3d.dto.PResMessageDTO;
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.repository.CardRangeJdbcRepository;
 import com.jamiewang.secure3d.service.IStorePResService;
+import com.jamiewang.secure3d.util.RangeSnapshotDiff;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -23,6 +27,7 @@ import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -34,6 +39,12 @@ public class DataInitializerTest {
     @Mock
     private IStorePResService storePResService;
 
+    @Mock
+    private CardRangeJdbcRepository cardRangeJdbcRepository;
+
+    @Mock
+    private CardRangeTableSwap tableSwap;
+
     @Mock
     private ResourceLoader resourceLoader;
 
@@ -86,6 +97,15 @@ public class DataInitializerTest {
         ReflectionTestUtils.setField(dataInitializer, "initEnabled", true);
         ReflectionTestUtils.setField(dataInitializer, "dataFilePath", "classpath:test-data.json");
         ReflectionTestUtils.setField(dataInitializer, "clearExisting", false);
+
+        // Streamed imports go through a pipeline over the same service, one worker keeps chunks in order
+        PResImportPipeline importPipeline = new PResImportPipeline();
+        ReflectionTestUtils.setField(importPipeline, "workers", 1);
+        ReflectionTestUtils.setField(importPipeline, "queueCapacity", 1);
+        ReflectionTestUtils.setField(importPipeline, "maxErrors", 10);
+        ReflectionTestUtils.setField(importPipeline, "progressLogSeconds", 10L);
+        ReflectionTestUtils.setField(importPipeline, "storePResService", storePResService);
+        ReflectionTestUtils.setField(dataInitializer, "importPipeline", importPipeline);
     }
 
     // Test successful data initialization
@@ -391,4 +411,187 @@ public class DataInitializerTest {
         verify(storePResService).processPResMessage(testPresMessage);
     }
 
+    // Test streamed files are imported chunk by chunk and finished once
+    @Test
+    void run_ShouldImportInChunks_WhenStreamingEnabled() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(dataInitializer, "streamingEnabled", true);
+        ReflectionTestUtils.setField(dataInitializer, "chunkSize", 2);
+        ReflectionTestUtils.setField(dataInitializer, "objectMapper", new ObjectMapper());
+        String json = "{\"serialNum\":\"12345\",\"messageType\":\"PRes\",\"cardRangeData\":["
+                + "{\"startRange\":1000,\"endRange\":1999,\"acsInfoInd\":[\"01\"]},"
+                + "{\"startRange\":2000,\"endRange\":2999},"
+                + "{\"startRange\":3000,\"endRange\":3999}]}";
+        when(resourceLoader.getResource("classpath:test-data.json")).thenReturn(resource);
+        when(resource.exists()).thenReturn(true);
+        when(resource.getInputStream()).thenReturn(new ByteArrayInputStream(json.getBytes()));
+        when(storePResService.processPResChunk(any(PResMessageDTO.class))).thenAnswer(invocation -> {
+            int size = invocation.<PResMessageDTO>getArgument(0).getCardRangeData().size();
+            return new BulkImportResponseDTO(size, size, 0, new ArrayList<>(), LocalDateTime.now());
+        });
+
+        // Act
+        dataInitializer.run();
+
+        // Assert
+        ArgumentCaptor<PResMessageDTO> chunkCaptor = ArgumentCaptor.forClass(PResMessageDTO.class);
+        verify(storePResService, times(2)).processPResChunk(chunkCaptor.capture());
+        List<PResMessageDTO> chunks = chunkCaptor.getAllValues();
+        assertEquals(2, chunks.get(0).getCardRangeData().size());
+        assertEquals("12345", chunks.get(0).getSerialNum());
+        assertEquals(List.of("01"), chunks.get(0).getCardRangeData().get(0).getAcsInfoInd());
+        assertEquals(3000L, chunks.get(1).getCardRangeData().get(0).getStartRange());
+        verify(storePResService).finishChunkedImport("12345", 3);
+        verify(storePResService, never()).processPResMessage(any());
+    }
+
+    // Test chunks imported before a parse error still reach the index
+    @Test
+    void run_ShouldFinishImport_WhenStreamedFileIsTruncated() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(dataInitializer, "streamingEnabled", true);
+        ReflectionTestUtils.setField(dataInitializer, "chunkSize", 1);
+        ReflectionTestUtils.setField(dataInitializer, "objectMapper", new ObjectMapper());
+        String json = "{\"serialNum\":\"12345\",\"cardRangeData\":[{\"startRange\":1000,\"endRange\":1999},{\"start";
+        when(resourceLoader.getResource("classpath:test-data.json")).thenReturn(resource);
+        when(resource.exists()).thenReturn(true);
+        when(resource.getInputStream()).thenReturn(new ByteArrayInputStream(json.getBytes()));
+        when(storePResService.processPResChunk(any(PResMessageDTO.class)))
+                .thenReturn(new BulkImportResponseDTO(1, 1, 0, new ArrayList<>(), LocalDateTime.now()));
+
+        // Act
+        assertDoesNotThrow(() -> dataInitializer.run());
+
+        // Assert
+        verify(storePResService).processPResChunk(any(PResMessageDTO.class));
+        verify(storePResService).finishChunkedImport("12345", 1);
+    }
+
+    // Test diff mode imports only the ranges that differ from the stored ones, in one message
+    @Test
+    void run_ShouldImportOnlyChangedRanges_WhenDiffEnabled() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(dataInitializer, "diffEnabled", true);
+        ReflectionTestUtils.setField(dataInitializer, "chunkSize", 10);
+        ReflectionTestUtils.setField(dataInitializer, "objectMapper", new ObjectMapper());
+        String json = "{\"serialNum\":\"12345\",\"cardRangeData\":["
+                + "{\"startRange\":1000,\"endRange\":1999,\"threeDSMethodURL\":\"https://a\"},"
+                + "{\"startRange\":2000,\"endRange\":2999,\"threeDSMethodURL\":\"https://new\"},"
+                + "{\"startRange\":4000,\"endRange\":4999}]}";
+        when(resourceLoader.getResource("classpath:test-data.json")).thenReturn(resource);
+        when(resource.exists()).thenReturn(true);
+        when(resource.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(json.getBytes()));
+        doAnswer(invocation -> {
+            Consumer<CardRangeEntity> consumer = invocation.getArgument(0);
+            consumer.accept(storedRange(1000L, 1999L, "https://a"));
+            consumer.accept(storedRange(2000L, 2999L, "https://old"));
+            consumer.accept(storedRange(3000L, 3999L, "https://a"));
+            return 3;
+        }).when(cardRangeJdbcRepository).streamAllOrderedByStartRange(any());
+        when(storePResService.processPResMessage(any(PResMessageDTO.class))).thenReturn(successResponse);
+
+        // Act
+        dataInitializer.run();
+
+        // Assert
+        ArgumentCaptor<PResMessageDTO> messageCaptor = ArgumentCaptor.forClass(PResMessageDTO.class);
+        verify(storePResService).processPResMessage(messageCaptor.capture());
+        List<CardRangeDataDTO> changes = messageCaptor.getValue().getCardRangeData();
+        assertEquals("12345", messageCaptor.getValue().getSerialNum());
+        assertEquals(3, changes.size());
+        assertEquals(3000L, changes.get(0).getStartRange());
+        assertEquals("D", changes.get(0).getActionInd());
+        assertEquals(2000L, changes.get(1).getStartRange());
+        assertEquals("M", changes.get(1).getActionInd());
+        assertEquals("https://new", changes.get(1).getThreeDsMethodUrl());
+        assertEquals(4000L, changes.get(2).getStartRange());
+        assertEquals("A", changes.get(2).getActionInd());
+        verify(storePResService, never()).processPResChunk(any());
+    }
+
+    // Test bounds the file adds and then deletes are removed, not added back
+    @Test
+    void run_ShouldRemoveRange_WhenDiffedFileAddsThenDeletesIt() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(dataInitializer, "diffEnabled", true);
+        ReflectionTestUtils.setField(dataInitializer, "chunkSize", 10);
+        ReflectionTestUtils.setField(dataInitializer, "objectMapper", new ObjectMapper());
+        String json = "{\"serialNum\":\"12345\",\"cardRangeData\":["
+                + "{\"startRange\":1000,\"endRange\":1999,\"actionInd\":\"A\",\"threeDSMethodURL\":\"https://a\"},"
+                + "{\"startRange\":1000,\"endRange\":1999,\"actionInd\":\"D\"}]}";
+        when(resourceLoader.getResource("classpath:test-data.json")).thenReturn(resource);
+        when(resource.exists()).thenReturn(true);
+        when(resource.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(json.getBytes()));
+        doAnswer(invocation -> {
+            Consumer<CardRangeEntity> consumer = invocation.getArgument(0);
+            consumer.accept(storedRange(1000L, 1999L, "https://a"));
+            return 1;
+        }).when(cardRangeJdbcRepository).streamAllOrderedByStartRange(any());
+        when(storePResService.processPResMessage(any(PResMessageDTO.class))).thenReturn(successResponse);
+
+        // Act
+        dataInitializer.run();
+
+        // Assert
+        ArgumentCaptor<PResMessageDTO> messageCaptor = ArgumentCaptor.forClass(PResMessageDTO.class);
+        verify(storePResService).processPResMessage(messageCaptor.capture());
+        List<CardRangeDataDTO> changes = messageCaptor.getValue().getCardRangeData();
+        assertEquals(1, changes.size());
+        assertEquals(1000L, changes.get(0).getStartRange());
+        assertEquals("D", changes.get(0).getActionInd());
+    }
+
+    // Test swap mode writes every range to the staging reload and swaps it in at the end
+    @Test
+    void run_ShouldReloadThroughStagingTables_WhenSwapEnabled() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(dataInitializer, "swapEnabled", true);
+        ReflectionTestUtils.setField(dataInitializer, "objectMapper", new ObjectMapper());
+        String json = "{\"serialNum\":\"12345\",\"cardRangeData\":["
+                + "{\"startRange\":1000,\"endRange\":1999},{\"startRange\":2000,\"endRange\":2999}]}";
+        CardRangeTableSwap.Reload reload = mock(CardRangeTableSwap.Reload.class);
+        when(resourceLoader.getResource("classpath:test-data.json")).thenReturn(resource);
+        when(resource.exists()).thenReturn(true);
+        when(resource.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(json.getBytes()));
+        when(tableSwap.begin(any(RangeSnapshotDiff.Keys.class))).thenReturn(reload);
+        when(reload.finish("12345")).thenReturn(successResponse);
+
+        // Act
+        dataInitializer.run();
+
+        // Assert
+        verify(reload).add(eq(0), any(CardRangeDataDTO.class));
+        verify(reload).add(eq(1), any(CardRangeDataDTO.class));
+        verify(reload).finish("12345");
+        verify(reload).close();
+        verify(storePResService, never()).processPResChunk(any());
+    }
+
+    // Test a truncated file never gets to the staging tables
+    @Test
+    void run_ShouldNotSwap_WhenReloadedFileIsTruncated() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(dataInitializer, "swapEnabled", true);
+        ReflectionTestUtils.setField(dataInitializer, "objectMapper", new ObjectMapper());
+        String json = "{\"serialNum\":\"12345\",\"cardRangeData\":[{\"startRange\":1000,\"endRange\":1999},{\"start";
+        when(resourceLoader.getResource("classpath:test-data.json")).thenReturn(resource);
+        when(resource.exists()).thenReturn(true);
+        when(resource.getInputStream()).thenReturn(new ByteArrayInputStream(json.getBytes()));
+
+        // Act
+        assertDoesNotThrow(() -> dataInitializer.run());
+
+        // Assert
+        verify(tableSwap, never()).begin(any());
+    }
+
+    private CardRangeEntity storedRange(long startRange, long endRange, String threeDsMethodUrl) {
+        CardRangeEntity cardRange = new CardRangeEntity();
+        cardRange.setStartRange(startRange);
+        cardRange.setEndRange(endRange);
+        cardRange.setThreeDsMethodUrl(threeDsMethodUrl);
+        cardRange.setAcsInfoInd(new ArrayList<>());
+        return cardRange;
+    }
+
 }
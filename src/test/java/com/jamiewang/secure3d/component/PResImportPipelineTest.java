@@ -0,0 +1,179 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.dto.BulkImportResponseDTO;
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import com.jamiewang.secure3d.dto.PResMessageDTO;
+import com.jamiewang.secure3d.service.IStorePResService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PResImportPipelineTest {
+
+    @Mock
+    private IStorePResService storePResService;
+
+    @InjectMocks
+    private PResImportPipeline importPipeline;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(importPipeline, "workers", 4);
+        ReflectionTestUtils.setField(importPipeline, "queueCapacity", 2);
+        ReflectionTestUtils.setField(importPipeline, "maxErrors", 3);
+        ReflectionTestUtils.setField(importPipeline, "progressLogSeconds", 10L);
+    }
+
+    // Test add-only chunks are imported concurrently and totalled
+    @Test
+    void submit_ShouldImportChunksConcurrently_WhenChunksOnlyAdd() throws Exception {
+        // Arrange
+        CountDownLatch allStarted = new CountDownLatch(4);
+        when(storePResService.processPResChunk(any(PResMessageDTO.class))).thenAnswer(invocation -> {
+            allStarted.countDown();
+            // Every chunk waits for the others, which only returns if they run at the same time
+            assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+            return succeeded(invocation.getArgument(0));
+        });
+
+        // Act
+        PResImportPipeline.Import pipelineImport = importPipeline.begin("12345");
+        for (int i = 0; i < 4; i++) {
+            pipelineImport.submit(chunk(i * 10, 10, "A"));
+        }
+        BulkImportResponseDTO result = pipelineImport.finish();
+
+        // Assert
+        assertEquals(40, result.getTotalProcessed());
+        assertEquals(40, result.getSuccessCount());
+        assertEquals(0, result.getErrorCount());
+        verify(storePResService).finishChunkedImport("12345", 40);
+        PResImportPipeline.Progress progress = importPipeline.getProgress();
+        assertFalse(progress.isRunning());
+        assertEquals(4, progress.getChunksDone());
+        assertEquals(40, progress.getRangesDone());
+    }
+
+    // Test a chunk with deletes waits for every earlier chunk
+    @Test
+    void submit_ShouldRunChunkAlone_WhenChunkDeletes() throws Exception {
+        // Arrange
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        when(storePResService.processPResChunk(any(PResMessageDTO.class))).thenAnswer(invocation -> {
+            PResMessageDTO chunk = invocation.getArgument(0);
+            String action = chunk.getCardRangeData().get(0).getActionInd();
+            if ("A".equals(action)) {
+                Thread.sleep(50);
+            }
+            order.add(action + chunk.getCardRangeData().get(0).getStartRange());
+            return succeeded(chunk);
+        });
+
+        // Act
+        PResImportPipeline.Import pipelineImport = importPipeline.begin("12345");
+        pipelineImport.submit(chunk(0, 5, "A"));
+        pipelineImport.submit(chunk(10, 5, "A"));
+        pipelineImport.submit(chunk(0, 1, "D"));
+        pipelineImport.finish();
+
+        // Assert
+        assertEquals(3, order.size());
+        assertEquals("D0", order.get(2));
+    }
+
+    // Test a failing chunk counts all its ranges as errors and keeps the errors bounded
+    @Test
+    void finish_ShouldReportBoundedErrors_WhenChunksFail() throws Exception {
+        // Arrange
+        AtomicInteger calls = new AtomicInteger();
+        when(storePResService.processPResChunk(any(PResMessageDTO.class))).thenAnswer(invocation -> {
+            PResMessageDTO chunk = invocation.getArgument(0);
+            if (calls.incrementAndGet() % 2 == 0) {
+                throw new IllegalStateException("Lock wait timeout exceeded");
+            }
+            return succeeded(chunk);
+        });
+
+        // Act
+        PResImportPipeline.Import pipelineImport = importPipeline.begin("12345");
+        for (int i = 0; i < 10; i++) {
+            pipelineImport.submit(chunk(i * 10, 10, "A"));
+        }
+        BulkImportResponseDTO result = pipelineImport.finish();
+
+        // Assert
+        assertEquals(100, result.getTotalProcessed());
+        assertEquals(50, result.getSuccessCount());
+        assertEquals(50, result.getErrorCount());
+        assertEquals(3, result.getErrors().size());
+        assertTrue(result.getErrors().get(0).contains("Lock wait timeout exceeded"));
+        verify(storePResService).finishChunkedImport("12345", 50);
+    }
+
+    // Test the ETA follows the expected total while the import runs
+    @Test
+    void getProgress_ShouldEstimateRemainingTime_WhenTotalIsExpected() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        when(storePResService.processPResChunk(any(PResMessageDTO.class))).thenAnswer(invocation -> {
+            PResMessageDTO chunk = invocation.getArgument(0);
+            if (chunk.getCardRangeData().get(0).getStartRange() > 0) {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            }
+            return succeeded(chunk);
+        });
+        PResImportPipeline.Import pipelineImport = importPipeline.begin("12345");
+        pipelineImport.setExpectedRanges(1000000);
+
+        // Act
+        pipelineImport.submit(chunk(0, 10, "D"));
+        pipelineImport.submit(chunk(10, 10, "A"));
+        PResImportPipeline.Progress progress = importPipeline.getProgress();
+        release.countDown();
+        pipelineImport.finish();
+
+        // Assert
+        assertTrue(progress.isRunning());
+        assertEquals(2, progress.getChunksSubmitted());
+        assertEquals(1, progress.getChunksDone());
+        assertEquals(1000000, progress.getExpectedRanges());
+        assertTrue(progress.getEtaSeconds() > 0);
+    }
+
+    private static PResMessageDTO chunk(long firstStart, int size, String actionInd) {
+        List<CardRangeDataDTO> cardRanges = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            CardRangeDataDTO cardRange = new CardRangeDataDTO();
+            cardRange.setStartRange(firstStart + i);
+            cardRange.setEndRange(firstStart + i);
+            cardRange.setActionInd(actionInd);
+            cardRanges.add(cardRange);
+        }
+        PResMessageDTO chunk = new PResMessageDTO();
+        chunk.setSerialNum("12345");
+        chunk.setCardRangeData(cardRanges);
+        return chunk;
+    }
+
+    private static BulkImportResponseDTO succeeded(PResMessageDTO chunk) {
+        int size = chunk.getCardRangeData().size();
+        return new BulkImportResponseDTO(size, size, 0, new ArrayList<>(), LocalDateTime.now());
+    }
+}
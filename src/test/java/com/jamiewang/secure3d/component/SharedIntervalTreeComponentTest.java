@@ -0,0 +1,437 @@
+package com.jamiewang.secure3d.component;
+
+import com.jamiewang.secure3d.dto.CardRangeDataDTO;
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharedIntervalTreeComponentTest {
+
+    private SharedIntervalTreeComponent component;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        component = new SharedIntervalTreeComponent();
+        ReflectionTestUtils.setField(component, "engine", "heap");
+        ReflectionTestUtils.setField(component, "mostSpecificEnabled", true);
+        ReflectionTestUtils.setField(component, "binPrefixEnabled", false);
+        ReflectionTestUtils.setField(component, "binPrefixDigits", 6);
+        component.initialize();
+    }
+
+    private SharedIntervalTreeComponent mappedComponent(Path file) {
+        SharedIntervalTreeComponent mapped = new SharedIntervalTreeComponent();
+        ReflectionTestUtils.setField(mapped, "engine", "mapped");
+        ReflectionTestUtils.setField(mapped, "mappedFile", file.toString());
+        ReflectionTestUtils.setField(mapped, "mostSpecificEnabled", true);
+        ReflectionTestUtils.setField(mapped, "binPrefixEnabled", false);
+        ReflectionTestUtils.setField(mapped, "binPrefixDigits", 6);
+        mapped.initialize();
+        return mapped;
+    }
+
+    private static CardRangeEntity range(long start, long end, String actionInd, String url) {
+        CardRangeEntity entity = new CardRangeEntity();
+        entity.setStartRange(start);
+        entity.setEndRange(end);
+        entity.setActionInd(actionInd);
+        entity.setThreeDsMethodUrl(url);
+        entity.setAcsStartProtocolVersion("2.1.0");
+        entity.setAcsEndProtocolVersion("2.2.0");
+        return entity;
+    }
+
+    private static List<CardRangeEntity> disjointRanges(int count) {
+        List<CardRangeEntity> ranges = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long start = 4000000000000000L + i * 1_000_000L;
+            ranges.add(range(start, start + 999_999L, "A", "https://acs" + (i % 3) + ".example.com/method"));
+        }
+        return ranges;
+    }
+
+    // Test a delta cannot be applied before the index holds real data
+    @Test
+    void applyDelta_ShouldReturnFalse_WhenIndexIsNotLoaded() {
+        // Act
+        boolean applied = component.applyDelta(List.of(range(1000L, 1999L, "A", "https://acs.example.com")));
+
+        // Assert
+        assertFalse(applied);
+        assertFalse(component.isReady());
+        assertEquals(0L, component.getVersion());
+    }
+
+    // Test adds, modifications and deletes are merged into a new version
+    @Test
+    void applyDelta_ShouldAddModifyAndDeleteRanges() {
+        // Arrange
+        component.rebuildTree(disjointRanges(100));
+        long version = component.getVersion();
+
+        List<CardRangeEntity> changes = List.of(
+                range(4000000000000000L, 4000000000999999L, "D", null),
+                range(4000000001000000L, 4000000001999999L, "M", "https://modified.example.com"),
+                range(4100000000000000L, 4100000000999999L, "A", "https://added.example.com"));
+
+        // Act
+        boolean applied = component.applyDelta(changes);
+
+        // Assert
+        assertTrue(applied);
+        assertEquals(version + 1, component.getVersion());
+        assertEquals(100, component.getStatistics().getSize());
+
+        assertFalse(component.findCardRange(4000000000500000L).isPresent());
+        assertEquals("https://modified.example.com",
+                component.findCardRange(4000000001500000L).get().getThreeDsMethodUrl());
+        assertEquals("https://added.example.com",
+                component.findCardRange(4100000000500000L).get().getThreeDsMethodUrl());
+        assertEquals("https://acs2.example.com/method",
+                component.findCardRange(4000000002500000L).get().getThreeDsMethodUrl());
+    }
+
+    // Test attributes left without ranges by deltas are dropped instead of piling up
+    @Test
+    void applyDelta_ShouldDropAttributes_WhenNoRangeRefersToThem() {
+        // Arrange
+        component.rebuildTree(disjointRanges(3));
+        assertEquals(3, attributeCount());
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            component.applyDelta(List.of(
+                    range(4000000000000000L, 4000000000999999L, "M", "https://acs" + (i + 10) + ".example.com/method")));
+        }
+        component.applyDelta(List.of(range(4000000001000000L, 4000000001999999L, "D", null)));
+
+        // Assert
+        assertEquals(2, attributeCount());
+        assertEquals("https://acs19.example.com/method",
+                component.findCardRange(4000000000500000L).get().getThreeDsMethodUrl());
+        assertFalse(component.findCardRange(4000000001500000L).isPresent());
+        assertEquals("https://acs2.example.com/method",
+                component.findCardRange(4000000002500000L).get().getThreeDsMethodUrl());
+    }
+
+    private int attributeCount() {
+        Object snapshot = ReflectionTestUtils.getField(component, "snapshot");
+        return ((CardRangeAttributeTable) ReflectionTestUtils.getField(snapshot, "attributes")).size();
+    }
+
+    // Test the last change to a range in a batch wins
+    @Test
+    void applyDelta_ShouldKeepLastChange_WhenRangeChangesTwice() {
+        // Arrange
+        component.rebuildTree(disjointRanges(10));
+
+        List<CardRangeEntity> changes = List.of(
+                range(4000000003000000L, 4000000003999999L, "M", "https://first.example.com"),
+                range(4000000003000000L, 4000000003999999L, "M", "https://second.example.com"));
+
+        // Act
+        component.applyDelta(changes);
+
+        // Assert
+        assertEquals("https://second.example.com",
+                component.findCardRange(4000000003000000L).get().getThreeDsMethodUrl());
+    }
+
+    // Test a nested range added by a delta is resolved as the most specific one
+    @Test
+    void applyDelta_ShouldResolveMostSpecificRange_WhenDeltaAddsNestedRange() {
+        // Arrange
+        component.rebuildTree(disjointRanges(10));
+
+        // Act
+        component.applyDelta(List.of(range(4000000005100000L, 4000000005199999L, "A", "https://nested.example.com")));
+
+        // Assert
+        Optional<CardRangeDataDTO> nested = component.findCardRange(4000000005150000L);
+        assertTrue(nested.isPresent());
+        assertEquals("https://nested.example.com", nested.get().getThreeDsMethodUrl());
+        assertEquals(4000000005100000L, nested.get().getStartRange());
+
+        Optional<CardRangeDataDTO> outer = component.findCardRange(4000000005900000L);
+        assertTrue(outer.isPresent());
+        assertEquals(4000000005000000L, outer.get().getStartRange());
+        assertEquals(4000000005999999L, outer.get().getEndRange());
+
+        // Removing the nested range again exposes the outer one
+        component.applyDelta(List.of(range(4000000005100000L, 4000000005199999L, "D", null)));
+        assertEquals(4000000005000000L, component.findCardRange(4000000005150000L).get().getStartRange());
+    }
+
+    // Test deleting an unknown range leaves the index unchanged
+    @Test
+    void applyDelta_ShouldIgnoreDelete_WhenRangeDoesNotExist() {
+        // Arrange
+        component.rebuildTree(disjointRanges(10));
+
+        // Act
+        boolean applied = component.applyDelta(List.of(range(5000000000000000L, 5000000000999999L, "D", null)));
+
+        // Assert
+        assertTrue(applied);
+        assertEquals(10, component.getStatistics().getSize());
+    }
+
+    // Test null input is rejected
+    @Test
+    void applyDelta_ShouldThrow_WhenChangesAreNull() {
+        assertThrows(IllegalArgumentException.class, () -> component.applyDelta(null));
+    }
+
+    // Test batch lookups return results in request order
+    @Test
+    void findCardRanges_ShouldReturnResultsInRequestOrder() {
+        // Arrange
+        component.rebuildTree(disjointRanges(10));
+        List<Long> pans = Arrays.asList(4000000009000001L, null, 4000000000000005L, 3999999999999999L,
+                4000000009000001L, 4000000004999999L);
+
+        // Act
+        List<Optional<CardRangeDataDTO>> results = component.findCardRanges(pans);
+
+        // Assert
+        assertEquals(6, results.size());
+        assertEquals(4000000009000000L, results.get(0).get().getStartRange());
+        assertFalse(results.get(1).isPresent());
+        assertEquals(4000000000000000L, results.get(2).get().getStartRange());
+        assertFalse(results.get(3).isPresent());
+        assertEquals(4000000009000000L, results.get(4).get().getStartRange());
+        assertEquals(4000000004000000L, results.get(5).get().getStartRange());
+    }
+
+    // Test batch lookups agree with single lookups
+    @Test
+    void findCardRanges_ShouldMatchSingleLookups() {
+        // Arrange
+        List<CardRangeEntity> ranges = disjointRanges(50);
+        ranges.add(range(4000000007100000L, 4000000007199999L, "A", "https://nested.example.com"));
+        component.rebuildTree(ranges);
+
+        List<Long> pans = new ArrayList<>();
+        for (long pan = 3999999999000000L; pan < 4000000051000000L; pan += 37_777L) {
+            pans.add(pan);
+        }
+        Collections.shuffle(pans, new Random(7));
+
+        // Act
+        List<Optional<CardRangeDataDTO>> results = component.findCardRanges(pans);
+
+        // Assert
+        for (int i = 0; i < pans.size(); i++) {
+            assertEquals(component.findCardRange(pans.get(i)), results.get(i), "PAN " + pans.get(i));
+        }
+    }
+
+    // Test a rebuild publishes its ranges as one new version, hiding them until then
+    @Test
+    void newSnapshotBuilder_ShouldPublishRangesAsOneVersion() {
+        // Arrange
+        component.rebuildTree(disjointRanges(10));
+        long version = component.getVersion();
+
+        // Act
+        try (SharedIntervalTreeComponent.SnapshotBuilder builder = component.newSnapshotBuilder()) {
+            builder.expect(2);
+            builder.add(range(5000000000000000L, 5000000000999999L, "A", "https://first.example.com"));
+            builder.add(range(5000000001000000L, 5000000001999999L, "A", "https://second.example.com"));
+            assertTrue(component.findCardRange(4000000000000001L).isPresent());
+            assertEquals(version, component.getVersion());
+            builder.publish();
+        }
+
+        // Assert
+        assertEquals(version + 1, component.getVersion());
+        assertFalse(component.findCardRange(4000000000000001L).isPresent());
+        assertEquals("https://second.example.com",
+                component.findCardRange(5000000001000001L).get().getThreeDsMethodUrl());
+    }
+
+    // Test a delta started during a rebuild waits for it and lands on top, so the rebuild cannot roll it back
+    @Test
+    void applyDelta_ShouldApplyAfterRebuild_WhenRebuildIsRunning() throws Exception {
+        // Arrange
+        component.rebuildTree(disjointRanges(10));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> delta;
+            try (SharedIntervalTreeComponent.SnapshotBuilder builder = component.newSnapshotBuilder(10)) {
+                // Rows read before the import committed
+                disjointRanges(10).forEach(builder::add);
+
+                // Act
+                delta = executor.submit(() -> component.applyDelta(
+                        List.of(range(4100000000000000L, 4100000000999999L, "A", "https://added.example.com"))));
+                assertThrows(TimeoutException.class, () -> delta.get(200, TimeUnit.MILLISECONDS));
+                builder.publish();
+            }
+
+            // Assert
+            assertTrue(delta.get(10, TimeUnit.SECONDS));
+            assertEquals(3L, component.getVersion());
+            assertTrue(component.findCardRange(4100000000000001L).isPresent());
+            assertEquals(11, component.getStatistics().getSize());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Test closing a builder without publishing keeps the snapshot and lets waiting writers go
+    @Test
+    void close_ShouldKeepSnapshot_WhenBuilderIsNotPublished() {
+        // Arrange
+        component.rebuildTree(disjointRanges(10));
+
+        // Act
+        try (SharedIntervalTreeComponent.SnapshotBuilder builder = component.newSnapshotBuilder(1)) {
+            builder.add(range(5000000000000000L, 5000000000999999L, "A", "https://abandoned.example.com"));
+        }
+        boolean applied = component.applyDelta(
+                List.of(range(4100000000000000L, 4100000000999999L, "A", "https://added.example.com")));
+
+        // Assert
+        assertTrue(applied);
+        assertEquals(2L, component.getVersion());
+        assertFalse(component.findCardRange(5000000000000001L).isPresent());
+        assertEquals(11, component.getStatistics().getSize());
+    }
+
+    // Test concurrent rebuilds and deltas each publish one version and the index ends up matching the source
+    @Test
+    void applyDelta_ShouldKeepEveryDelta_WhenPublishersRunConcurrently() throws Exception {
+        // Arrange
+        int deltas = 8;
+        int rebuilds = 3;
+        List<CardRangeEntity> database = new CopyOnWriteArrayList<>(disjointRanges(10));
+        component.rebuildTree(database);
+        ExecutorService executor = Executors.newFixedThreadPool(deltas + rebuilds);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            // Act
+            for (int i = 0; i < deltas; i++) {
+                CardRangeEntity added = range(4100000000000000L + i * 1_000_000L,
+                        4100000000999999L + i * 1_000_000L, "A", "https://added" + i + ".example.com");
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // Commit, then publish the import's delta
+                    database.add(added);
+                    return component.applyDelta(List.of(added));
+                }));
+            }
+            for (int i = 0; i < rebuilds; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try (SharedIntervalTreeComponent.SnapshotBuilder builder = component.newSnapshotBuilder()) {
+                        List<CardRangeEntity> rows = new ArrayList<>(database);
+                        builder.expect(rows.size());
+                        rows.forEach(builder::add);
+                        builder.publish();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Assert
+        assertEquals(1L + deltas + rebuilds, component.getVersion());
+        assertEquals(10 + deltas, component.getStatistics().getSize());
+        for (CardRangeEntity range : database) {
+            assertEquals(range.getThreeDsMethodUrl(),
+                    component.findCardRange(range.getStartRange()).get().getThreeDsMethodUrl());
+        }
+    }
+
+    // Test a file written by a mapped rebuild is published by another instance, nested ranges included
+    @Test
+    void loadMappedFile_ShouldPublishFile_WhenWrittenByMappedRebuild() {
+        // Arrange
+        Path file = directory.resolve("card-range.idx");
+        List<CardRangeEntity> ranges = disjointRanges(20);
+        ranges.add(range(4000000003100000L, 4000000003199999L, "A", "https://nested.example.com"));
+        mappedComponent(file).rebuildTree(ranges);
+        SharedIntervalTreeComponent restarted = mappedComponent(file);
+
+        // Act
+        boolean loaded = restarted.loadMappedFile();
+
+        // Assert
+        assertTrue(loaded);
+        assertTrue(restarted.isReady());
+        component.rebuildTree(ranges);
+        for (long pan = 3999999999000000L; pan < 4000000021000000L; pan += 37_777L) {
+            assertEquals(component.findCardRange(pan), restarted.findCardRange(pan), "PAN " + pan);
+        }
+        CardRangeDataDTO nested = restarted.findCardRange(4000000003150000L).get();
+        assertEquals("https://nested.example.com", nested.getThreeDsMethodUrl());
+        assertEquals(4000000003100000L, nested.getStartRange());
+        assertEquals("2.1.0", nested.getAcsStartProtocolVersion());
+    }
+
+    // Test a missing, corrupt or outdated file is not published, leaving the caller to reload
+    @Test
+    void loadMappedFile_ShouldReturnFalse_WhenFileIsMissingCorruptOrOutdated() throws Exception {
+        // Arrange
+        Path file = directory.resolve("card-range.idx");
+        SharedIntervalTreeComponent restarted = mappedComponent(file);
+        boolean missing = restarted.loadMappedFile();
+
+        mappedComponent(file).rebuildTree(disjointRanges(5));
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        boolean truncated = restarted.loadMappedFile();
+
+        ByteBuffer.wrap(bytes).putInt(4, ByteBuffer.wrap(bytes).getInt(4) + 1);
+        Files.write(file, bytes);
+
+        // Act
+        boolean outdated = restarted.loadMappedFile();
+
+        // Assert
+        assertFalse(missing);
+        assertFalse(truncated);
+        assertFalse(outdated);
+        assertFalse(restarted.isReady());
+        assertEquals(0L, restarted.getVersion());
+    }
+
+    // Test the heap engine never maps a file
+    @Test
+    void loadMappedFile_ShouldReturnFalse_WhenEngineIsHeap() {
+        assertFalse(component.loadMappedFile());
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.jamiewang.secure3d.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RedisCachePropertiesTest {
+
+    private static RedisCacheProperties.Prefix prefix(Long ttlSeconds, long maxKeys) {
+        RedisCacheProperties.Prefix prefix = new RedisCacheProperties.Prefix();
+        prefix.setTtlSeconds(ttlSeconds);
+        prefix.setMaxKeys(maxKeys);
+        return prefix;
+    }
+
+    // Test keys take the settings of the longest matching prefix
+    @Test
+    void prefixOf_ShouldReturnLongestMatchingPrefix() {
+        // Arrange
+        RedisCacheProperties properties = new RedisCacheProperties();
+        properties.getPrefixes().put("look_up", prefix(null, 500000));
+        properties.getPrefixes().put("look_up_gap", prefix(60L, 200000));
+
+        // Act & Assert
+        assertEquals("look_up", properties.prefixOf("look_up").getKey());
+        assertEquals("look_up_gap", properties.prefixOf("look_up_gap").getKey());
+        assertNull(properties.prefixOf("session:42"));
+        assertNull(properties.prefixOf(null));
+    }
+
+    // Test the TTL falls back to the default when the prefix does not set one
+    @Test
+    void ttlFor_ShouldUsePrefixTtl_WhenSetAndDefaultOtherwise() {
+        // Arrange
+        RedisCacheProperties properties = new RedisCacheProperties();
+        properties.setTtlSeconds(3600);
+        properties.getPrefixes().put("look_up", prefix(null, 0));
+        properties.getPrefixes().put("look_up_gap", prefix(60L, 0));
+
+        // Act & Assert
+        assertEquals(Duration.ofHours(1), properties.ttlFor("look_up"));
+        assertEquals(Duration.ofSeconds(60), properties.ttlFor("look_up_gap"));
+        assertEquals(Duration.ofHours(1), properties.ttlFor("session:42"));
+    }
+
+    // Test a TTL of zero means entries do not expire
+    @Test
+    void ttlFor_ShouldReturnNull_WhenTtlIsNotPositive() {
+        // Arrange
+        RedisCacheProperties properties = new RedisCacheProperties();
+        properties.setTtlSeconds(0);
+        properties.getPrefixes().put("pinned", prefix(-1L, 0));
+        properties.getPrefixes().put("short", prefix(5L, 0));
+
+        // Act & Assert
+        assertNull(properties.ttlFor("any"));
+        assertNull(properties.ttlFor("pinned:1"));
+        assertEquals(Duration.ofSeconds(5), properties.ttlFor("short:1"));
+    }
+
+    // Test the early refresh window of a prefix overrides the default, including to turn it off
+    @Test
+    void earlyRefreshSecondsFor_ShouldUsePrefixWindow_WhenSetAndDefaultOtherwise() {
+        // Arrange
+        RedisCacheProperties properties = new RedisCacheProperties();
+        RedisCacheProperties.Prefix ranges = prefix(null, 500000);
+        ranges.setEarlyRefreshSeconds(60L);
+        RedisCacheProperties.Prefix gaps = prefix(60L, 200000);
+        properties.getPrefixes().put("look_up", ranges);
+        properties.getPrefixes().put("look_up_gap", gaps);
+
+        // Act & Assert
+        assertEquals(60L, properties.earlyRefreshSecondsFor("look_up"));
+        assertEquals(0L, properties.earlyRefreshSecondsFor("look_up_gap"));
+        assertEquals(0L, properties.earlyRefreshSecondsFor("session:42"));
+
+        properties.setEarlyRefreshSeconds(30);
+        gaps.setEarlyRefreshSeconds(0L);
+        assertEquals(0L, properties.earlyRefreshSecondsFor("look_up_gap"));
+        assertEquals(30L, properties.earlyRefreshSecondsFor("session:42"));
+    }
+}
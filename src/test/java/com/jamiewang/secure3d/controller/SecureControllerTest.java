@@ -1,5 +1,9 @@
 package com.jamiewang.secure3d.controller;
 
+import com.jamiewang.secure3d.component.CardRangeTableSwap;
+import com.jamiewang.secure3d.component.PResImportPipeline;
+import com.jamiewang.secure3d.dto.BatchLookupRequestDTO;
+import com.jamiewang.secure3d.dto.BatchLookupResultDTO;
 import com.jamiewang.secure3d.dto.CardRangeDataDTO;
 import com.jamiewang.secure3d.service.ILookUpService;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,11 +13,14 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -22,6 +29,12 @@ public class SecureControllerTest {
     @Mock
     private ILookUpService lookUpService;
 
+    @Mock
+    private PResImportPipeline importPipeline;
+
+    @Mock
+    private CardRangeTableSwap tableSwap;
+
     @InjectMocks
     private SecureController secureController;
     private CardRangeDataDTO testCardRangeData;
@@ -136,4 +149,112 @@ public class SecureControllerTest {
         verify(lookUpService).lookupByPan(testPan2);
     }
 
+    // ==================== Batch Lookup Tests ====================
+
+    @Test
+    void lookupByPans_ShouldReturnResultsInRequestOrder() {
+        // Arrange
+        ReflectionTestUtils.setField(secureController, "batchMaxSize", 10);
+        List<Long> pans = List.of(1234567890123456L, 9999999999999999L);
+        BatchLookupRequestDTO request = new BatchLookupRequestDTO();
+        request.setPans(pans);
+        when(lookUpService.lookupByPans(pans)).thenReturn(List.of(Optional.of(testCardRangeData), Optional.empty()));
+
+        // Act
+        ResponseEntity<List<BatchLookupResultDTO>> response = secureController.lookupByPans(request);
+
+        // Assert
+        assertEquals(200, response.getStatusCodeValue());
+        assertEquals(2, response.getBody().size());
+        assertEquals(1234567890123456L, response.getBody().get(0).getPan());
+        assertTrue(response.getBody().get(0).isFound());
+        assertEquals(testCardRangeData, response.getBody().get(0).getCardRange());
+        assertEquals(9999999999999999L, response.getBody().get(1).getPan());
+        assertFalse(response.getBody().get(1).isFound());
+        assertNull(response.getBody().get(1).getCardRange());
+    }
+
+    @Test
+    void lookupByPans_ShouldReturnBadRequest_WhenBatchIsTooLarge() {
+        // Arrange
+        ReflectionTestUtils.setField(secureController, "batchMaxSize", 1);
+        BatchLookupRequestDTO request = new BatchLookupRequestDTO();
+        request.setPans(List.of(1234567890123456L, 9999999999999999L));
+
+        // Act
+        ResponseEntity<List<BatchLookupResultDTO>> response = secureController.lookupByPans(request);
+
+        // Assert
+        assertEquals(400, response.getStatusCodeValue());
+        verify(lookUpService, never()).lookupByPans(any());
+    }
+
+    @Test
+    void lookupByPans_ShouldReturnBadRequest_WhenPansAreMissing() {
+        // Arrange
+        ReflectionTestUtils.setField(secureController, "batchMaxSize", 10);
+
+        // Act
+        ResponseEntity<List<BatchLookupResultDTO>> response = secureController.lookupByPans(new BatchLookupRequestDTO());
+
+        // Assert
+        assertEquals(400, response.getStatusCodeValue());
+        verify(lookUpService, never()).lookupByPans(any());
+    }
+
+    // ==================== Import Progress Tests ====================
+
+    @Test
+    void getImportProgress_ShouldReturnProgress_WhenImportWasStarted() {
+        // Arrange
+        PResImportPipeline.Progress progress = new PResImportPipeline.Progress(
+                "12345", true, 10, 4, 40000, 39990, 10, 2000, 20000, 100000, 3);
+        when(importPipeline.getProgress()).thenReturn(progress);
+
+        // Act
+        ResponseEntity<PResImportPipeline.Progress> response = secureController.getImportProgress();
+
+        // Assert
+        assertEquals(200, response.getStatusCodeValue());
+        assertSame(progress, response.getBody());
+    }
+
+    @Test
+    void getImportProgress_ShouldReturnNotFound_WhenNoImportWasStarted() {
+        // Arrange
+        when(importPipeline.getProgress()).thenReturn(null);
+
+        // Act
+        ResponseEntity<PResImportPipeline.Progress> response = secureController.getImportProgress();
+
+        // Assert
+        assertEquals(404, response.getStatusCodeValue());
+    }
+
+    // ==================== Import Rollback Tests ====================
+
+    @Test
+    void rollbackImport_ShouldReturnOk_WhenPreviousGenerationIsRestored() {
+        // Arrange
+        when(tableSwap.rollback()).thenReturn(true);
+
+        // Act
+        ResponseEntity<Void> response = secureController.rollbackImport();
+
+        // Assert
+        assertEquals(200, response.getStatusCodeValue());
+        verify(tableSwap).rollback();
+    }
+
+    @Test
+    void rollbackImport_ShouldReturnConflict_WhenNothingToRollBack() {
+        // Arrange
+        when(tableSwap.rollback()).thenReturn(false);
+
+        // Act
+        ResponseEntity<Void> response = secureController.rollbackImport();
+
+        // Assert
+        assertEquals(409, response.getStatusCodeValue());
+    }
 }
@@ -1,18 +1,28 @@
 package com.jamiewang.secure3d.service.impl;
 
+import com.jamiewang.secure3d.component.SharedIntervalTreeComponent;
 import com.jamiewang.secure3d.dto.CardRangeDataDTO;
 import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.event.CardRangesImportedEvent;
+import com.jamiewang.secure3d.repository.CardRangeJdbcRepository;
 import com.jamiewang.secure3d.repository.ICardRangeRepository;
+import com.jamiewang.secure3d.service.CachedRange;
 import com.jamiewang.secure3d.service.IRedisService;
+import com.jamiewang.secure3d.service.RangeLookup;
+import com.jamiewang.secure3d.service.RedisBatchResult;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -24,14 +34,21 @@ public class LookUpServiceImplTest {
     @Mock
     private ICardRangeRepository cardRangeRepository;
 
+    @Mock
+    private CardRangeJdbcRepository cardRangeJdbcRepository;
+
     @Mock
     private IRedisService redisService;
 
+    @Mock
+    private SharedIntervalTreeComponent sharedIntervalTreeComponent;
+
     @InjectMocks
     private LookUpServiceImpl lookUpService;
 
     private static final Long TEST_PAN = 1234567890123456L;
-    private static final String REDIS_KEY = "look_up_1234567890123456";
+    private static final String RANGE_CACHE = "look_up";
+    private static final String GAP_CACHE = "look_up:gap";
 
     private CardRangeEntity testCardRangeEntity;
     private CardRangeDataDTO testCardRangeDTO;
@@ -58,12 +75,28 @@ public class LookUpServiceImplTest {
         testCardRangeDTO.setAcsInfoInd(List.of(new String[]{"01", "02", "03"}));
     }
 
+    private static CachedRange<CardRangeDataDTO> cachedRange(CardRangeDataDTO dto) {
+        return new CachedRange<>(dto.getStartRange(), dto.getEndRange(), dto);
+    }
+
+    private static List<RangeLookup<CardRangeDataDTO, Long>> foundInRedis(CardRangeDataDTO dto) {
+        return List.of(new RangeLookup<>(cachedRange(dto), null));
+    }
+
+    private static List<RangeLookup<CardRangeDataDTO, Long>> notInRedis() {
+        return List.of(RangeLookup.none());
+    }
+
+    private static List<RangeLookup<CardRangeDataDTO, Long>> gapInRedis(long startRange, long endRange, long expiresAt) {
+        return List.of(new RangeLookup<>(null, new CachedRange<>(startRange, endRange, expiresAt)));
+    }
+
     // Test cases for successful cache hit
     @Test
     void lookupByPan_ShouldReturnFromCache_WhenDataExistsInRedis() {
         // Arrange
-        when(redisService.findOne(REDIS_KEY, CardRangeDataDTO.class))
-                .thenReturn(Optional.of(testCardRangeDTO));
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN)))
+                .thenReturn(foundInRedis(testCardRangeDTO));
 
         // Act
         Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
@@ -73,22 +106,22 @@ public class LookUpServiceImplTest {
         assertEquals(testCardRangeDTO, result.get());
 
         // Verify cache was checked first
-        verify(redisService).findOne(REDIS_KEY, CardRangeDataDTO.class);
+        verify(redisService).findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN));
 
         // Verify database was not accessed since cache hit
         verify(cardRangeRepository, never()).findByPanInRange(any());
-        verify(redisService, never()).writeOne(anyString(), any());
+        verify(redisService, never()).writeRange(anyString(), anyLong(), anyLong(), any());
     }
 
     // Test cases for cache miss but database hit
     @Test
     void lookupByPan_ShouldReturnFromDatabase_WhenNotInCacheButInDatabase() {
         // Arrange
-        when(redisService.findOne(REDIS_KEY, CardRangeDataDTO.class))
-                .thenReturn(Optional.empty());
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN)))
+                .thenReturn(notInRedis());
         when(cardRangeRepository.findByPanInRange(TEST_PAN))
-                .thenReturn(Optional.of(testCardRangeEntity));
-        when(redisService.writeOne(eq(REDIS_KEY), any(CardRangeDataDTO.class)))
+                .thenReturn(List.of(testCardRangeEntity));
+        when(redisService.writeRange(eq(RANGE_CACHE), eq(1234567890000000L), eq(1234567890999999L), any(CardRangeDataDTO.class)))
                 .thenReturn(true);
 
         // Act
@@ -108,19 +141,113 @@ public class LookUpServiceImplTest {
         assertEquals(testCardRangeEntity.getAcsInfoInd(), dto.getAcsInfoInd());
 
         // Verify the flow
-        verify(redisService).findOne(REDIS_KEY, CardRangeDataDTO.class);
+        verify(redisService).findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN));
         verify(cardRangeRepository).findByPanInRange(TEST_PAN);
-        verify(redisService).writeOne(eq(REDIS_KEY), any(CardRangeDataDTO.class));
+        verify(redisService).writeRange(eq(RANGE_CACHE), eq(1234567890000000L), eq(1234567890999999L), any(CardRangeDataDTO.class));
+    }
+
+    // Test the most specific of several ranges containing the PAN is used, not an error
+    @Test
+    void lookupByPan_ShouldUseFirstRange_WhenSeveralRangesContainPan() {
+        // Arrange
+        CardRangeEntity broadRange = new CardRangeEntity();
+        broadRange.setStartRange(1234567800000000L);
+        broadRange.setEndRange(1234567899999999L);
+        broadRange.setThreeDsMethodUrl("https://broad.example.com/3ds");
+        broadRange.setAcsInfoInd(List.of());
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN)))
+                .thenReturn(notInRedis());
+        when(cardRangeRepository.findByPanInRange(TEST_PAN))
+                .thenReturn(List.of(testCardRangeEntity, broadRange));
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals("https://example.com/3ds", result.get().getThreeDsMethodUrl());
+        verify(redisService).writeRange(eq(RANGE_CACHE), eq(1234567890000000L), eq(1234567890999999L), any(CardRangeDataDTO.class));
+    }
+
+    // Test a broad range is cached only up to a narrower range nested in it, which the cache must not answer for
+    @Test
+    void lookupByPan_ShouldCacheSegmentAroundPan_WhenNarrowerRangeIsNested() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "nearCacheEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheMaxSize", 100L);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheTtlSeconds", 30L);
+        lookUpService.initialize();
+        long nestedPan = 1234567890500000L;
+        when(cardRangeRepository.findByPanInRange(TEST_PAN)).thenReturn(List.of(testCardRangeEntity));
+        when(cardRangeRepository.findMaxEndRangeBelow(TEST_PAN)).thenReturn(1234567890000999L);
+        when(cardRangeRepository.findMinStartRangeAbove(TEST_PAN)).thenReturn(1234567890400000L);
+
+        // Act
+        lookUpService.lookupByPan(TEST_PAN);
+        lookUpService.lookupByPan(nestedPan);
+
+        // Assert
+        verify(redisService).writeRange(eq(RANGE_CACHE), eq(1234567890001000L), eq(1234567890399999L),
+                any(CardRangeDataDTO.class));
+        verify(cardRangeRepository).findByPanInRange(nestedPan);
+        assertEquals(0, lookUpService.getNearCacheStatistics().getHits());
+    }
+
+    // Test a range found in Redis is kept near under the segment it matched, for every PAN inside it
+    @Test
+    void lookupByPan_ShouldKeepSegmentNear_WhenFoundInRedis() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "nearCacheEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheMaxSize", 100L);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheTtlSeconds", 30L);
+        lookUpService.initialize();
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN)))
+                .thenReturn(foundInRedis(testCardRangeDTO));
+
+        // Act
+        lookUpService.lookupByPan(TEST_PAN);
+        lookUpService.lookupByPan(TEST_PAN);
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(1234567890000001L);
+
+        // Assert
+        assertEquals(testCardRangeDTO, result.get());
+        assertEquals(2, lookUpService.getNearCacheStatistics().getHits());
+        assertEquals(1, lookUpService.getNearCacheStatistics().getSize());
+        verify(redisService, times(1)).findRanges(eq(RANGE_CACHE), eq(CardRangeDataDTO.class), isNull(), eq(Long.class), anyList());
+    }
+
+    // Test a range read from Redis before an import committed is not kept near once the import has evicted
+    @Test
+    void lookupByPan_ShouldNotKeepRedisHitNear_WhenImportCommitsDuringRead() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "nearCacheEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheMaxSize", 100L);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheTtlSeconds", 30L);
+        ReflectionTestUtils.setField(lookUpService, "cacheClearThreshold", 1000);
+        lookUpService.initialize();
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN))).thenAnswer(invocation -> {
+            lookUpService.onCardRangesImported(new CardRangesImportedEvent("1", 1, List.of(testCardRangeEntity)));
+            return foundInRedis(testCardRangeDTO);
+        });
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+        lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals(0, lookUpService.getNearCacheStatistics().getHits());
+        verify(redisService, times(2)).findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN));
     }
 
     // Test case for not found in cache or database
     @Test
     void lookupByPan_ShouldReturnEmpty_WhenNotFoundInCacheOrDatabase() {
         // Arrange
-        when(redisService.findOne(REDIS_KEY, CardRangeDataDTO.class))
-                .thenReturn(Optional.empty());
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN)))
+                .thenReturn(notInRedis());
         when(cardRangeRepository.findByPanInRange(TEST_PAN))
-                .thenReturn(Optional.empty());
+                .thenReturn(List.of());
 
         // Act
         Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
@@ -129,9 +256,9 @@ public class LookUpServiceImplTest {
         assertFalse(result.isPresent());
 
         // Verify the flow
-        verify(redisService).findOne(REDIS_KEY, CardRangeDataDTO.class);
+        verify(redisService).findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN));
         verify(cardRangeRepository).findByPanInRange(TEST_PAN);
-        verify(redisService, never()).writeOne(anyString(), any());
+        verify(redisService, never()).writeRange(anyString(), anyLong(), anyLong(), any());
     }
 
     // Test case for null PAN
@@ -144,17 +271,17 @@ public class LookUpServiceImplTest {
         assertFalse(result.isPresent());
 
         // Verify no services were called
-        verify(redisService, never()).findOne(anyString(), any());
+        verify(redisService, never()).findRanges(anyString(), any(), any(), any(), anyList());
         verify(cardRangeRepository, never()).findByPanInRange(any());
-        verify(redisService, never()).writeOne(anyString(), any());
+        verify(redisService, never()).writeRange(anyString(), anyLong(), anyLong(), any());
     }
 
     // Test case for database failure after cache miss
     @Test
     void lookupByPan_ShouldReturnEmpty_WhenDatabaseFails() {
         // Arrange
-        when(redisService.findOne(REDIS_KEY, CardRangeDataDTO.class))
-                .thenReturn(Optional.empty());
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN)))
+                .thenReturn(notInRedis());
         when(cardRangeRepository.findByPanInRange(TEST_PAN))
                 .thenThrow(new RuntimeException("Database connection failed"));
 
@@ -162,20 +289,20 @@ public class LookUpServiceImplTest {
         assertThrows(RuntimeException.class, () -> lookUpService.lookupByPan(TEST_PAN));
 
         // Verify the flow
-        verify(redisService).findOne(REDIS_KEY, CardRangeDataDTO.class);
+        verify(redisService).findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN));
         verify(cardRangeRepository).findByPanInRange(TEST_PAN);
-        verify(redisService, never()).writeOne(anyString(), any());
+        verify(redisService, never()).writeRange(anyString(), anyLong(), anyLong(), any());
     }
 
     // Test case for cache write failure (should still return result)
     @Test
     void lookupByPan_ShouldReturnResult_WhenCacheWriteFails() {
         // Arrange
-        when(redisService.findOne(REDIS_KEY, CardRangeDataDTO.class))
-                .thenReturn(Optional.empty());
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN)))
+                .thenReturn(notInRedis());
         when(cardRangeRepository.findByPanInRange(TEST_PAN))
-                .thenReturn(Optional.of(testCardRangeEntity));
-        when(redisService.writeOne(eq(REDIS_KEY), any(CardRangeDataDTO.class)))
+                .thenReturn(List.of(testCardRangeEntity));
+        when(redisService.writeRange(eq(RANGE_CACHE), eq(1234567890000000L), eq(1234567890999999L), any(CardRangeDataDTO.class)))
                 .thenReturn(false); // Write fails
 
         // Act
@@ -186,9 +313,9 @@ public class LookUpServiceImplTest {
         assertEquals(testCardRangeEntity.getStartRange(), result.get().getStartRange());
 
         // Verify the flow
-        verify(redisService).findOne(REDIS_KEY, CardRangeDataDTO.class);
+        verify(redisService).findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN));
         verify(cardRangeRepository).findByPanInRange(TEST_PAN);
-        verify(redisService).writeOne(eq(REDIS_KEY), any(CardRangeDataDTO.class));
+        verify(redisService).writeRange(eq(RANGE_CACHE), eq(1234567890000000L), eq(1234567890999999L), any(CardRangeDataDTO.class));
     }
 
     // Test case with edge case PAN values
@@ -196,18 +323,17 @@ public class LookUpServiceImplTest {
     void lookupByPan_ShouldHandleEdgeCasePan_WhenPanIsZero() {
         // Arrange
         Long zeroPan = 0L;
-        String zeroRedisKey = "look_up_0";
-        when(redisService.findOne(zeroRedisKey, CardRangeDataDTO.class))
-                .thenReturn(Optional.empty());
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(zeroPan)))
+                .thenReturn(notInRedis());
         when(cardRangeRepository.findByPanInRange(zeroPan))
-                .thenReturn(Optional.empty());
+                .thenReturn(List.of());
 
         // Act
         Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(zeroPan);
 
         // Assert
         assertFalse(result.isPresent());
-        verify(redisService).findOne(zeroRedisKey, CardRangeDataDTO.class);
+        verify(redisService).findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(zeroPan));
         verify(cardRangeRepository).findByPanInRange(zeroPan);
     }
 
@@ -215,16 +341,15 @@ public class LookUpServiceImplTest {
     void lookupByPan_ShouldHandleMaxLongValue() {
         // Arrange
         Long maxPan = Long.MAX_VALUE;
-        String maxRedisKey = "look_up_" + Long.MAX_VALUE;
-        when(redisService.findOne(maxRedisKey, CardRangeDataDTO.class))
-                .thenReturn(Optional.of(testCardRangeDTO));
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(maxPan)))
+                .thenReturn(foundInRedis(testCardRangeDTO));
 
         // Act
         Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(maxPan);
 
         // Assert
         assertTrue(result.isPresent());
-        verify(redisService).findOne(maxRedisKey, CardRangeDataDTO.class);
+        verify(redisService).findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(maxPan));
         verify(cardRangeRepository, never()).findByPanInRange(any());
     }
 
@@ -241,11 +366,11 @@ public class LookUpServiceImplTest {
         entityWithNulls.setAcsStartProtocolVersion(null);
         entityWithNulls.setAcsInfoInd(null);
 
-        when(redisService.findOne(REDIS_KEY, CardRangeDataDTO.class))
-                .thenReturn(Optional.empty());
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN)))
+                .thenReturn(notInRedis());
         when(cardRangeRepository.findByPanInRange(TEST_PAN))
-                .thenReturn(Optional.of(entityWithNulls));
-        when(redisService.writeOne(eq(REDIS_KEY), any(CardRangeDataDTO.class)))
+                .thenReturn(List.of(entityWithNulls));
+        when(redisService.writeRange(eq(RANGE_CACHE), eq(1234567890000000L), eq(1234567890999999L), any(CardRangeDataDTO.class)))
                 .thenReturn(true);
 
         // Act
@@ -263,20 +388,476 @@ public class LookUpServiceImplTest {
         assertNull(dto.getAcsInfoInd());
     }
 
-    // Test Redis key construction
+    // Test every PAN is looked up in the same range-keyed cache
     @Test
-    void lookupByPan_ShouldConstructCorrectRedisKey() {
+    void lookupByPan_ShouldLookUpRangeCache() {
         // Arrange
         Long testPan = 9876543210987654L;
-        String expectedKey = "look_up_9876543210987654";
-        when(redisService.findOne(expectedKey, CardRangeDataDTO.class))
-                .thenReturn(Optional.of(testCardRangeDTO));
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(testPan)))
+                .thenReturn(foundInRedis(testCardRangeDTO));
 
         // Act
         lookUpService.lookupByPan(testPan);
 
         // Assert
-        verify(redisService).findOne(expectedKey, CardRangeDataDTO.class);
+        verify(redisService).findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(testPan));
+        verify(redisService, never()).findOne(anyString(), any());
+    }
+
+    // Test in-memory index hit
+    @Test
+    void lookupByPan_ShouldReturnFromIndex_WhenIndexIsReady() {
+        // Arrange
+        when(sharedIntervalTreeComponent.isReady()).thenReturn(true);
+        when(sharedIntervalTreeComponent.findCardRange(TEST_PAN))
+                .thenReturn(Optional.of(testCardRangeDTO));
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals(testCardRangeDTO, result.get());
+
+        // Verify neither Redis nor the database was accessed
+        verify(redisService, never()).findRanges(anyString(), any(), any(), any(), anyList());
+        verify(cardRangeRepository, never()).findByPanInRange(any());
+        verify(redisService, never()).writeRange(anyString(), anyLong(), anyLong(), any());
+    }
+
+    // Test in-memory index miss is authoritative
+    @Test
+    void lookupByPan_ShouldReturnEmpty_WhenIndexIsReadyAndHasNoMatch() {
+        // Arrange
+        when(sharedIntervalTreeComponent.isReady()).thenReturn(true);
+        when(sharedIntervalTreeComponent.findCardRange(TEST_PAN)).thenReturn(Optional.empty());
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        assertFalse(result.isPresent());
+        verify(redisService, never()).findRanges(anyString(), any(), any(), any(), anyList());
+        verify(cardRangeRepository, never()).findByPanInRange(any());
+    }
+
+    // Test fallback while index is warming up
+    @Test
+    void lookupByPan_ShouldFallBackToRedis_WhenIndexIsNotReady() {
+        // Arrange
+        when(sharedIntervalTreeComponent.isReady()).thenReturn(false);
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN)))
+                .thenReturn(foundInRedis(testCardRangeDTO));
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        assertTrue(result.isPresent());
+        verify(sharedIntervalTreeComponent, never()).findCardRange(any());
+        verify(redisService).findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class, List.of(TEST_PAN));
+    }
+
+    // Test a miss asks Redis for the range and the gap in one call, then caches the whole gap between the neighbouring ranges
+    @Test
+    void lookupByPan_ShouldCacheGap_WhenNotFoundInCacheOrDatabase() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "gapCacheEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "gapTtlSeconds", 60L);
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, GAP_CACHE, Long.class, List.of(TEST_PAN)))
+                .thenReturn(notInRedis());
+        when(cardRangeRepository.findByPanInRange(TEST_PAN)).thenReturn(List.of());
+        when(cardRangeRepository.findMaxEndRangeBelow(TEST_PAN)).thenReturn(1234567889999999L);
+        when(cardRangeRepository.findMinStartRangeAbove(TEST_PAN)).thenReturn(1234567891000000L);
+        long before = System.currentTimeMillis();
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        assertFalse(result.isPresent());
+        verify(redisService, times(1)).findRanges(anyString(), any(), any(), any(), anyList());
+        verify(redisService, never()).findInRange(anyString(), anyLong(), any());
+        verify(redisService).writeRange(eq(GAP_CACHE), eq(1234567890000000L), eq(1234567890999999L),
+                longThat(expiresAt -> expiresAt >= before + 60_000L), eq(Duration.ofSeconds(60)));
+    }
+
+    // Test a gap without neighbouring ranges extends to the ends of the PAN space
+    @Test
+    void lookupByPan_ShouldCacheOpenGap_WhenNoRangesAround() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "gapCacheEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "gapTtlSeconds", 60L);
+        when(cardRangeRepository.findByPanInRange(TEST_PAN)).thenReturn(List.of());
+        when(cardRangeRepository.findMaxEndRangeBelow(TEST_PAN)).thenReturn(null);
+        when(cardRangeRepository.findMinStartRangeAbove(TEST_PAN)).thenReturn(null);
+
+        // Act
+        lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        verify(redisService).writeRange(eq(GAP_CACHE), eq(0L), eq(Long.MAX_VALUE), anyLong(), any(Duration.class));
+    }
+
+    // Test a PAN in a cached gap does not reach the database
+    @Test
+    void lookupByPan_ShouldReturnEmpty_WhenPanIsInCachedGap() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "gapCacheEnabled", true);
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, GAP_CACHE, Long.class, List.of(TEST_PAN)))
+                .thenReturn(gapInRedis(1234567890000000L, 1234567890999999L, System.currentTimeMillis() + 60_000L));
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        assertFalse(result.isPresent());
+        verify(cardRangeRepository, never()).findByPanInRange(any());
+        verify(redisService, never()).writeRange(anyString(), anyLong(), anyLong(), any());
+        verify(redisService, never()).writeRange(anyString(), anyLong(), anyLong(), any(), any());
+    }
+
+    // Test an expired gap is ignored
+    @Test
+    void lookupByPan_ShouldQueryDatabase_WhenCachedGapExpired() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "gapCacheEnabled", true);
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, GAP_CACHE, Long.class, List.of(TEST_PAN)))
+                .thenReturn(gapInRedis(1234567890000000L, 1234567890999999L, System.currentTimeMillis() - 1L));
+        when(cardRangeRepository.findByPanInRange(TEST_PAN)).thenReturn(List.of(testCardRangeEntity));
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        assertTrue(result.isPresent());
+        verify(cardRangeRepository).findByPanInRange(TEST_PAN);
+    }
+
+    // Test database loads go through the single-flight loader when it is enabled
+    @Test
+    void lookupByPan_ShouldLoadThroughSingleFlight_WhenEnabled() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "singleFlightEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "singleFlightTimeoutMs", 1000L);
+        lookUpService.initialize();
+        when(cardRangeRepository.findByPanInRange(TEST_PAN)).thenReturn(List.of(testCardRangeEntity));
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals(1, lookUpService.getSingleFlightStatistics().getLoads());
+        assertEquals(0, lookUpService.getSingleFlightStatistics().getInFlight());
+        verify(cardRangeRepository, times(1)).findByPanInRange(TEST_PAN);
+    }
+
+    // Test a range loaded once is served from the near cache for every PAN inside it
+    @Test
+    void lookupByPan_ShouldReturnFromNearCache_WhenRangeWasLoadedBefore() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "nearCacheEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheMaxSize", 100L);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheTtlSeconds", 30L);
+        lookUpService.initialize();
+        when(cardRangeRepository.findByPanInRange(TEST_PAN)).thenReturn(List.of(testCardRangeEntity));
+        lookUpService.lookupByPan(TEST_PAN);
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(1234567890000001L);
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals(testCardRangeEntity.getStartRange(), result.get().getStartRange());
+        assertEquals(1, lookUpService.getNearCacheStatistics().getHits());
+        verify(redisService, times(1)).findRanges(eq(RANGE_CACHE), eq(CardRangeDataDTO.class), isNull(), eq(Long.class), anyList());
+        verify(cardRangeRepository, times(1)).findByPanInRange(any());
+    }
+
+    // Test a range loaded on a miss is written to Redis by the write-behind queue
+    @Test
+    void lookupByPan_ShouldWriteRangeBehind_WhenWriteBehindEnabled() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "writeBehindEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "writeBehindCapacity", 100);
+        ReflectionTestUtils.setField(lookUpService, "writeBehindBatchSize", 10);
+        ReflectionTestUtils.setField(lookUpService, "writeBehindLingerMs", 0L);
+        lookUpService.initialize();
+        when(cardRangeRepository.findByPanInRange(TEST_PAN)).thenReturn(List.of(testCardRangeEntity));
+        when(redisService.writeRanges(anyString(), anyList(), any()))
+                .thenReturn(new RedisBatchResult(List.of("1234567890000000-1234567890999999"), List.of(), Map.of()));
+
+        try {
+            // Act
+            Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+
+            // Assert
+            assertTrue(result.isPresent());
+            verify(redisService, never()).writeRange(anyString(), anyLong(), anyLong(), any());
+            verify(redisService, timeout(5000)).writeRanges(eq(RANGE_CACHE),
+                    argThat(ranges -> ranges.size() == 1 && ranges.get(0).getStartRange() == 1234567890000000L),
+                    isNull());
+        } finally {
+            lookUpService.shutdown();
+        }
+        assertEquals(1, lookUpService.getWriteBehindStatistics().getWritten());
+    }
+
+    // Test a range read before an import committed is not cached once the import has evicted
+    @Test
+    void lookupByPan_ShouldNotCacheRange_WhenImportCommitsDuringLoad() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "nearCacheEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheMaxSize", 100L);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheTtlSeconds", 30L);
+        ReflectionTestUtils.setField(lookUpService, "cacheClearThreshold", 1000);
+        lookUpService.initialize();
+        when(cardRangeRepository.findByPanInRange(TEST_PAN)).thenAnswer(invocation -> {
+            lookUpService.onCardRangesImported(new CardRangesImportedEvent("1", 1, List.of(testCardRangeEntity)));
+            return List.of(testCardRangeEntity);
+        });
+
+        // Act
+        Optional<CardRangeDataDTO> result = lookUpService.lookupByPan(TEST_PAN);
+        lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        assertTrue(result.isPresent());
+        verify(redisService, never()).writeRange(anyString(), anyLong(), anyLong(), any());
+        verify(cardRangeRepository, times(2)).findByPanInRange(TEST_PAN);
+    }
+
+    // Test a write already taken by the flusher is dropped when an import evicts before it is made
+    @Test
+    void lookupByPan_ShouldDropQueuedWrite_WhenImportEvictsBeforeFlush() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "writeBehindEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "writeBehindCapacity", 100);
+        ReflectionTestUtils.setField(lookUpService, "writeBehindBatchSize", 10);
+        ReflectionTestUtils.setField(lookUpService, "writeBehindLingerMs", 0L);
+        ReflectionTestUtils.setField(lookUpService, "cacheClearThreshold", 1000);
+        lookUpService.initialize();
+        when(cardRangeRepository.findByPanInRange(TEST_PAN)).thenReturn(List.of(testCardRangeEntity));
+        ReentrantLock cacheWriteLock = (ReentrantLock) ReflectionTestUtils.getField(lookUpService, "cacheWriteLock");
+
+        try {
+            // Act
+            cacheWriteLock.lock();
+            try {
+                lookUpService.lookupByPan(TEST_PAN);
+                // Wait for the flusher to take the write, it then waits for the lock
+                long deadline = System.currentTimeMillis() + 5000;
+                while (lookUpService.getWriteBehindStatistics().getPending() > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.onSpinWait();
+                }
+                assertEquals(0, lookUpService.getWriteBehindStatistics().getPending());
+                lookUpService.onCardRangesImported(new CardRangesImportedEvent("1", 1, List.of(testCardRangeEntity)));
+            } finally {
+                cacheWriteLock.unlock();
+            }
+        } finally {
+            lookUpService.shutdown();
+        }
+
+        // Assert
+        assertEquals(1, lookUpService.getWriteBehindStatistics().getWritten());
+        verify(redisService, never()).writeRanges(anyString(), anyList(), any());
+    }
+
+    // Test an import drops the near cache entries it overlaps
+    @Test
+    void onCardRangesImported_ShouldInvalidateNearCache() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "nearCacheEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheMaxSize", 100L);
+        ReflectionTestUtils.setField(lookUpService, "nearCacheTtlSeconds", 30L);
+        ReflectionTestUtils.setField(lookUpService, "cacheClearThreshold", 1000);
+        lookUpService.initialize();
+        when(cardRangeRepository.findByPanInRange(TEST_PAN)).thenReturn(List.of(testCardRangeEntity));
+        lookUpService.lookupByPan(TEST_PAN);
+
+        // Act
+        lookUpService.onCardRangesImported(new CardRangesImportedEvent("1", 1, List.of(testCardRangeEntity)));
+        lookUpService.lookupByPan(TEST_PAN);
+
+        // Assert
+        verify(cardRangeRepository, times(2)).findByPanInRange(TEST_PAN);
+    }
+
+    // Test an import evicts the cached ranges and gaps overlapping each change
+    @Test
+    void onCardRangesImported_ShouldEvictOverlappingRangesAndGaps() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "cacheClearThreshold", 1000);
+        CardRangeEntity added = new CardRangeEntity();
+        added.setStartRange(5000000000000000L);
+        added.setEndRange(5000000000999999L);
+        added.setActionInd("A");
+
+        // Act
+        lookUpService.onCardRangesImported(new CardRangesImportedEvent("1", 2, List.of(added, testCardRangeEntity)));
+
+        // Assert
+        verify(redisService).deleteOverlappingRanges(GAP_CACHE, 5000000000000000L, 5000000000999999L);
+        verify(redisService).deleteOverlappingRanges(RANGE_CACHE, 5000000000000000L, 5000000000999999L);
+        verify(redisService).deleteOverlappingRanges(GAP_CACHE, 1234567890000000L, 1234567890999999L);
+        verify(redisService).deleteOverlappingRanges(RANGE_CACHE, 1234567890000000L, 1234567890999999L);
+        verify(redisService, never()).deleteRanges(anyString());
+    }
+
+    // Test a large import clears the caches instead of evicting range by range
+    @Test
+    void onCardRangesImported_ShouldClearCaches_WhenImportIsLarge() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "cacheClearThreshold", 1);
+        CardRangeEntity added = new CardRangeEntity();
+        added.setStartRange(5000000000000000L);
+        added.setEndRange(5000000000999999L);
+
+        // Act
+        lookUpService.onCardRangesImported(new CardRangesImportedEvent("1", 2, List.of(added, testCardRangeEntity)));
+
+        // Assert
+        verify(redisService).deleteRanges(RANGE_CACHE);
+        verify(redisService).deleteRanges(GAP_CACHE);
+        verify(redisService, never()).deleteOverlappingRanges(anyString(), anyLong(), anyLong());
+    }
+
+    // Test an import relayed from another node leaves the shared Redis caches alone
+    @Test
+    void onCardRangesImported_ShouldNotTouchRedis_WhenImportIsRemote() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "cacheClearThreshold", 1000);
+
+        // Act
+        lookUpService.onCardRangesImported(new CardRangesImportedEvent("1", 1, List.of(testCardRangeEntity), true));
+        lookUpService.onCardRangesImported(new CardRangesImportedEvent("2", 700000, null, true));
+
+        // Assert
+        verify(redisService, never()).deleteOverlappingRanges(anyString(), anyLong(), anyLong());
+        verify(redisService, never()).deleteRanges(anyString());
+    }
+
+    // Test batch lookups are served from the index when it is ready
+    @Test
+    void lookupByPans_ShouldReturnFromIndex_WhenIndexIsReady() {
+        // Arrange
+        List<Long> pans = List.of(TEST_PAN, 9999999999999999L);
+        when(sharedIntervalTreeComponent.isReady()).thenReturn(true);
+        when(sharedIntervalTreeComponent.findCardRanges(pans))
+                .thenReturn(List.of(Optional.of(testCardRangeDTO), Optional.empty()));
+
+        // Act
+        List<Optional<CardRangeDataDTO>> results = lookUpService.lookupByPans(pans);
+
+        // Assert
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isPresent());
+        assertFalse(results.get(1).isPresent());
+        verify(redisService, never()).findRanges(anyString(), any(), any(), any(), anyList());
+        verify(cardRangeJdbcRepository, never()).findByPansInRange(any());
+    }
+
+    // Test batch lookups use one Redis round trip, one query for the misses and one cache write per range
+    @Test
+    void lookupByPans_ShouldQueryRedisOnceAndDatabaseOnce_WhenIndexIsNotReady() {
+        // Arrange
+        Long cachedPan = 5555555555555555L;
+        Long unknownPan = 9999999999999999L;
+        Long samePrefixPan = 1234567890000001L;
+        List<Long> pans = List.of(TEST_PAN, cachedPan, unknownPan, TEST_PAN, samePrefixPan);
+        when(sharedIntervalTreeComponent.isReady()).thenReturn(false);
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, null, Long.class,
+                List.of(TEST_PAN, cachedPan, unknownPan, samePrefixPan)))
+                .thenReturn(List.of(RangeLookup.none(), new RangeLookup<>(cachedRange(testCardRangeDTO), null),
+                        RangeLookup.none(), RangeLookup.none()));
+        when(cardRangeJdbcRepository.findByPansInRange(List.of(TEST_PAN, unknownPan, samePrefixPan)))
+                .thenReturn(Map.of(TEST_PAN, testCardRangeEntity, samePrefixPan, testCardRangeEntity));
+
+        // Act
+        List<Optional<CardRangeDataDTO>> results = lookUpService.lookupByPans(pans);
+
+        // Assert
+        assertEquals(5, results.size());
+        assertEquals(testCardRangeEntity.getStartRange(), results.get(0).get().getStartRange());
+        assertEquals(testCardRangeDTO, results.get(1).get());
+        assertFalse(results.get(2).isPresent());
+        assertEquals(testCardRangeEntity.getStartRange(), results.get(3).get().getStartRange());
+        assertEquals(testCardRangeEntity.getStartRange(), results.get(4).get().getStartRange());
+
+        verify(redisService, times(1)).findRanges(eq(RANGE_CACHE), eq(CardRangeDataDTO.class), isNull(), eq(Long.class), anyList());
+        verify(cardRangeJdbcRepository, times(1)).findByPansInRange(any());
+        verify(cardRangeRepository, never()).findByPanInRange(any());
+        verify(redisService, times(1)).writeRange(eq(RANGE_CACHE), eq(1234567890000000L), eq(1234567890999999L),
+                any(CardRangeDataDTO.class));
+    }
+
+    // Test batch lookups cache each PAN's segment of a range a narrower one is nested in
+    @Test
+    void lookupByPans_ShouldCacheSegments_WhenNarrowerRangeIsNested() {
+        // Arrange
+        Long lowPan = 1234567890000001L;
+        Long highPan = 1234567890900000L;
+        when(sharedIntervalTreeComponent.isReady()).thenReturn(false);
+        when(redisService.findRanges(eq(RANGE_CACHE), eq(CardRangeDataDTO.class), isNull(), eq(Long.class), anyList()))
+                .thenReturn(List.of(RangeLookup.none(), RangeLookup.none()));
+        when(cardRangeJdbcRepository.findByPansInRange(List.of(lowPan, highPan)))
+                .thenReturn(Map.of(lowPan, testCardRangeEntity, highPan, testCardRangeEntity));
+        when(cardRangeJdbcRepository.findNeighbourBounds(any())).thenReturn(Map.of(
+                lowPan, new CardRangeJdbcRepository.NeighbourBounds(null, 1234567890400000L),
+                highPan, new CardRangeJdbcRepository.NeighbourBounds(1234567890599999L, null)));
+
+        // Act
+        List<Optional<CardRangeDataDTO>> results = lookUpService.lookupByPans(List.of(lowPan, highPan));
+
+        // Assert
+        assertTrue(results.get(0).isPresent());
+        assertTrue(results.get(1).isPresent());
+        verify(redisService).writeRange(eq(RANGE_CACHE), eq(1234567890000000L), eq(1234567890399999L),
+                any(CardRangeDataDTO.class));
+        verify(redisService).writeRange(eq(RANGE_CACHE), eq(1234567890600000L), eq(1234567890999999L),
+                any(CardRangeDataDTO.class));
+    }
+
+    // Test batch lookups settle PANs in cached gaps from Redis and cache the gap around each PAN the database misses
+    @Test
+    void lookupByPans_ShouldUseAndCacheGaps_WhenGapCacheEnabled() {
+        // Arrange
+        ReflectionTestUtils.setField(lookUpService, "gapCacheEnabled", true);
+        ReflectionTestUtils.setField(lookUpService, "gapTtlSeconds", 60L);
+        Long gapPan = 5555555555555555L;
+        Long unknownPan = 9999999999000000L;
+        Long sameGapPan = 9999999999500000L;
+        List<Long> pans = List.of(gapPan, TEST_PAN, unknownPan, sameGapPan);
+        when(sharedIntervalTreeComponent.isReady()).thenReturn(false);
+        when(redisService.findRanges(RANGE_CACHE, CardRangeDataDTO.class, GAP_CACHE, Long.class, pans))
+                .thenReturn(List.of(
+                        gapInRedis(5555555555000000L, 5555555555999999L, System.currentTimeMillis() + 60_000L).get(0),
+                        RangeLookup.none(), RangeLookup.none(), RangeLookup.none()));
+        when(cardRangeJdbcRepository.findByPansInRange(List.of(TEST_PAN, unknownPan, sameGapPan)))
+                .thenReturn(Map.of(TEST_PAN, testCardRangeEntity));
+        when(cardRangeJdbcRepository.findNeighbourBounds(List.of(TEST_PAN, unknownPan, sameGapPan))).thenReturn(Map.of(
+                TEST_PAN, new CardRangeJdbcRepository.NeighbourBounds(null, null),
+                unknownPan, new CardRangeJdbcRepository.NeighbourBounds(9999999998999999L, null),
+                sameGapPan, new CardRangeJdbcRepository.NeighbourBounds(9999999998999999L, null)));
+
+        // Act
+        List<Optional<CardRangeDataDTO>> results = lookUpService.lookupByPans(pans);
+
+        // Assert
+        assertFalse(results.get(0).isPresent());
+        assertEquals(testCardRangeEntity.getStartRange(), results.get(1).get().getStartRange());
+        assertFalse(results.get(2).isPresent());
+        assertFalse(results.get(3).isPresent());
+        verify(redisService, times(1)).findRanges(anyString(), any(), any(), any(), anyList());
+        verify(cardRangeJdbcRepository, times(1)).findByPansInRange(any());
+        verify(cardRangeJdbcRepository, times(1)).findNeighbourBounds(any());
+        verify(redisService, times(1)).writeRange(eq(GAP_CACHE), eq(9999999999000000L), eq(Long.MAX_VALUE),
+                anyLong(), eq(Duration.ofSeconds(60)));
+        verify(redisService, never()).writeRange(eq(GAP_CACHE), eq(5555555555000000L), anyLong(), anyLong(), any());
+        verify(redisService).writeRange(eq(RANGE_CACHE), eq(1234567890000000L), eq(1234567890999999L),
+                any(CardRangeDataDTO.class));
     }
 
 }
@@ -5,6 +5,14 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import com.jamiewang.secure3d.service.CachedRange;
+import com.jamiewang.secure3d.service.RangeLookup;
+import com.jamiewang.secure3d.service.RedisBatchResult;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @SpringBootTest
@@ -36,4 +44,113 @@ public class RedisServiceImplTest {
         boolean rse = redisService.deleteOne("testKey");
         assertTrue(rse);
     }
+
+    @Test
+    public void testWriteMany() {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("testKey1", "value1");
+        values.put("testKey2", "value2");
+        values.put("", "noKey");
+
+        RedisBatchResult result = redisService.writeMany(values);
+        assertEquals(List.of("testKey1", "testKey2"), result.getSucceeded());
+        assertTrue(result.getFailed().containsKey(""));
+        assertFalse(result.isComplete());
+
+        List<Optional<String>> res = redisService.findMany(List.of("testKey1", "testKey2"), String.class);
+        assertEquals(List.of(Optional.of("value1"), Optional.of("value2")), res);
+    }
+
+    @Test
+    public void testDeleteMany() {
+        redisService.writeMany(Map.of("testKey3", "value3"));
+
+        RedisBatchResult result = redisService.deleteMany(List.of("testKey3", "testMissingKey"));
+        assertEquals(List.of("testKey3"), result.getSucceeded());
+        assertEquals(List.of("testMissingKey"), result.getSkipped());
+        assertTrue(result.isComplete());
+        assertFalse(redisService.exists("testKey3"));
+    }
+
+    @Test
+    public void testRange() {
+        redisService.deleteRange("testRanges", 4000000000000000L, 4000000000999999L);
+        redisService.deleteRange("testRanges", 4000000002000000L, 4000000002999999L);
+
+        assertTrue(redisService.writeRange("testRanges", 4000000000000000L, 4000000000999999L, "first"));
+        assertTrue(redisService.writeRange("testRanges", 4000000002000000L, 4000000002999999L, "second"));
+
+        assertEquals(Optional.of("first"), redisService.findInRange("testRanges", 4000000000000000L, String.class));
+        assertEquals(Optional.of("first"), redisService.findInRange("testRanges", 4000000000999999L, String.class));
+        assertFalse(redisService.findInRange("testRanges", 4000000001500000L, String.class).isPresent());
+
+        List<Optional<String>> res = redisService.findManyInRange("testRanges",
+                List.of(4000000002500000L, 3999999999999999L, 4000000000500000L), String.class);
+        assertEquals(List.of(Optional.of("second"), Optional.empty(), Optional.of("first")), res);
+
+        Optional<CachedRange<String>> range = redisService.findRange("testRanges", 4000000002500000L, String.class);
+        assertEquals(4000000002000000L, range.get().getStartRange());
+        assertEquals(4000000002999999L, range.get().getEndRange());
+        assertEquals("second", range.get().getValue());
+
+        assertTrue(redisService.deleteRange("testRanges", 4000000000000000L, 4000000000999999L));
+        assertFalse(redisService.findInRange("testRanges", 4000000000500000L, String.class).isPresent());
+        assertTrue(redisService.deleteRange("testRanges", 4000000002000000L, 4000000002999999L));
+    }
+
+    @Test
+    public void testRangeFallback() {
+        redisService.deleteRanges("testLookup");
+        redisService.deleteRanges("testLookup:gap");
+
+        assertTrue(redisService.writeRange("testLookup", 1000L, 1999L, "range"));
+        assertTrue(redisService.writeRange("testLookup:gap", 2000L, 2999L, 42L));
+        assertTrue(redisService.writeRange("testLookup:gap", 1500L, 1599L, 7L));
+
+        List<RangeLookup<String, Long>> res = redisService.findRanges("testLookup", String.class,
+                "testLookup:gap", Long.class, List.of(1200L, 2500L, 3500L));
+        assertEquals("range", res.get(0).getRange().get().getValue());
+        assertFalse(res.get(0).getFallback().isPresent());
+        assertFalse(res.get(1).getRange().isPresent());
+        assertEquals(2000L, res.get(1).getFallback().get().getStartRange());
+        assertEquals(2999L, res.get(1).getFallback().get().getEndRange());
+        assertEquals(42L, res.get(1).getFallback().get().getValue());
+        assertFalse(res.get(2).getRange().isPresent());
+        assertFalse(res.get(2).getFallback().isPresent());
+
+        // The fallback cache is only asked for values the cache has no range for
+        assertEquals("range", redisService.findRanges("testLookup", String.class,
+                "testLookup:gap", Long.class, List.of(1550L)).get(0).getRange().get().getValue());
+    }
+
+    @Test
+    public void testRangeOverlap() {
+        redisService.deleteRanges("testOverlap");
+
+        assertTrue(redisService.writeRange("testOverlap", 1000L, 1999L, "outer"));
+        assertTrue(redisService.writeRange("testOverlap", 3000L, 3999L, "other"));
+        assertTrue(redisService.writeRange("testOverlap", 1500L, 1599L, "nested"));
+
+        assertFalse(redisService.findInRange("testOverlap", 1200L, String.class).isPresent());
+        assertEquals(Optional.of("nested"), redisService.findInRange("testOverlap", 1550L, String.class));
+
+        assertEquals(2, redisService.deleteOverlappingRanges("testOverlap", 1590L, 3000L));
+        assertFalse(redisService.findInRange("testOverlap", 3500L, String.class).isPresent());
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        redisService.deleteRanges("testExpiry");
+
+        assertTrue(redisService.writeOne("testExpiringKey", "value", Duration.ofMillis(200)));
+        assertTrue(redisService.writeRange("testExpiry", 1000L, 1999L, "expiring", Duration.ofMillis(200)));
+        assertTrue(redisService.writeRange("testExpiry", 3000L, 3999L, "lasting", Duration.ZERO));
+        assertEquals(Optional.of("expiring"), redisService.findInRange("testExpiry", 1500L, String.class));
+
+        Thread.sleep(300);
+
+        assertFalse(redisService.exists("testExpiringKey"));
+        assertFalse(redisService.findInRange("testExpiry", 1500L, String.class).isPresent());
+        assertEquals(Optional.of("lasting"), redisService.findInRange("testExpiry", 3500L, String.class));
+    }
 }
@@ -4,6 +4,8 @@ import com.jamiewang.secure3d.dto.BulkImportResponseDTO;
 import com.jamiewang.secure3d.dto.CardRangeDataDTO;
 import com.jamiewang.secure3d.dto.PResMessageDTO;
 import com.jamiewang.secure3d.entity.CardRangeEntity;
+import com.jamiewang.secure3d.event.CardRangesImportedEvent;
+import com.jamiewang.secure3d.repository.CardRangeJdbcRepository;
 import com.jamiewang.secure3d.repository.ICardRangeRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,6 +14,8 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -20,6 +24,7 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +33,12 @@ public class StorePResServiceImplTest {
     @Mock
     private ICardRangeRepository cardRangeRepository;
 
+    @Mock
+    private CardRangeJdbcRepository cardRangeJdbcRepository;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+
     @InjectMocks
     private StorePResServiceImpl storePResService;
 
@@ -385,4 +396,196 @@ public class StorePResServiceImplTest {
         assertTrue(result.getProcessedAt().isBefore(afterTest));
     }
 
+    // Test import event publication
+    @Test
+    void processPResMessage_ShouldPublishImportedEvent_WhenRangesAreSaved() {
+        // Arrange
+        when(cardRangeRepository.save(any(CardRangeEntity.class)))
+                .thenReturn(new CardRangeEntity());
+
+        // Act
+        storePResService.processPResMessage(testPresMessage);
+
+        // Assert
+        ArgumentCaptor<CardRangesImportedEvent> eventCaptor = ArgumentCaptor.forClass(CardRangesImportedEvent.class);
+        verify(applicationEventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals("12345", eventCaptor.getValue().getSerialNum());
+        assertEquals(2, eventCaptor.getValue().getImportedCount());
+    }
+
+    // Test no event when nothing was imported
+    @Test
+    void processPResMessage_ShouldNotPublishEvent_WhenAllRangesFail() {
+        // Arrange
+        when(cardRangeRepository.save(any(CardRangeEntity.class)))
+                .thenThrow(new RuntimeException("Database connection failed"));
+
+        // Act
+        storePResService.processPResMessage(testPresMessage);
+
+        // Assert
+        verify(applicationEventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    // Test delete action removes the stored range
+    @Test
+    void processPResMessage_ShouldDeleteStoredRange_WhenActionIsDelete() {
+        // Arrange
+        testCardRangeData1.setActionInd("D");
+        testPresMessage.setCardRangeData(Arrays.asList(testCardRangeData1));
+        CardRangeEntity stored = new CardRangeEntity();
+        when(cardRangeRepository.findByStartRangeAndEndRange(1234567890000000L, 1234567890999999L))
+                .thenReturn(List.of(stored));
+
+        // Act
+        BulkImportResponseDTO result = storePResService.processPResMessage(testPresMessage);
+
+        // Assert
+        assertEquals(1, result.getSuccessCount());
+        verify(cardRangeRepository).deleteAll(List.of(stored));
+        verify(cardRangeRepository, never()).save(any(CardRangeEntity.class));
+
+        ArgumentCaptor<CardRangesImportedEvent> eventCaptor = ArgumentCaptor.forClass(CardRangesImportedEvent.class);
+        verify(applicationEventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals(1, eventCaptor.getValue().getChanges().size());
+        assertEquals("D", eventCaptor.getValue().getChanges().get(0).getActionInd());
+    }
+
+    // Test delete action of an unknown range is reported as an error
+    @Test
+    void processPResMessage_ShouldReportError_WhenRangeToDeleteDoesNotExist() {
+        // Arrange
+        testCardRangeData1.setActionInd("D");
+        testPresMessage.setCardRangeData(Arrays.asList(testCardRangeData1));
+        when(cardRangeRepository.findByStartRangeAndEndRange(1234567890000000L, 1234567890999999L))
+                .thenReturn(List.of());
+
+        // Act
+        BulkImportResponseDTO result = storePResService.processPResMessage(testPresMessage);
+
+        // Assert
+        assertEquals(0, result.getSuccessCount());
+        assertEquals(1, result.getErrorCount());
+        assertTrue(result.getErrors().get(0).contains("does not exist"));
+        verify(cardRangeRepository, never()).deleteAll(any());
+    }
+
+    // Test modify action updates the stored range in place
+    @Test
+    void processPResMessage_ShouldUpdateStoredRange_WhenActionIsModify() {
+        // Arrange
+        testCardRangeData1.setActionInd("M");
+        testPresMessage.setCardRangeData(Arrays.asList(testCardRangeData1));
+        CardRangeEntity stored = new CardRangeEntity();
+        stored.setStartRange(1234567890000000L);
+        stored.setEndRange(1234567890999999L);
+        stored.setThreeDsMethodUrl("https://old.example.com");
+        when(cardRangeRepository.findByStartRangeAndEndRange(1234567890000000L, 1234567890999999L))
+                .thenReturn(List.of(stored));
+
+        // Act
+        BulkImportResponseDTO result = storePResService.processPResMessage(testPresMessage);
+
+        // Assert
+        assertEquals(1, result.getSuccessCount());
+        assertEquals("https://example.com/3ds1", stored.getThreeDsMethodUrl());
+        assertEquals("M", stored.getActionInd());
+        assertEquals(Arrays.asList("01", "02", "03"), stored.getAcsInfoInd());
+        verify(cardRangeRepository).saveAll(List.of(stored));
+        verify(cardRangeRepository, never()).save(any(CardRangeEntity.class));
+    }
+
+    // Test modify action of an unknown range adds it
+    @Test
+    void processPResMessage_ShouldAddRange_WhenRangeToModifyDoesNotExist() {
+        // Arrange
+        testCardRangeData1.setActionInd("M");
+        testPresMessage.setCardRangeData(Arrays.asList(testCardRangeData1));
+        when(cardRangeRepository.findByStartRangeAndEndRange(1234567890000000L, 1234567890999999L))
+                .thenReturn(List.of());
+
+        // Act
+        BulkImportResponseDTO result = storePResService.processPResMessage(testPresMessage);
+
+        // Assert
+        assertEquals(1, result.getSuccessCount());
+        verify(cardRangeRepository).save(any(CardRangeEntity.class));
+    }
+
+    // Test adds are written with bulk inserts, split before a modification
+    @Test
+    void processPResMessage_ShouldBulkInsertAdds_WhenBulkInsertEnabled() {
+        // Arrange
+        ReflectionTestUtils.setField(storePResService, "bulkInsertEnabled", true);
+        ReflectionTestUtils.setField(storePResService, "bulkInsertBatchSize", 1000);
+        CardRangeDataDTO modified = new CardRangeDataDTO();
+        modified.setStartRange(7000000000000000L);
+        modified.setEndRange(7000000000999999L);
+        modified.setActionInd("M");
+        testPresMessage.setCardRangeData(Arrays.asList(testCardRangeData1, modified, testCardRangeData2));
+        when(cardRangeRepository.findByStartRangeAndEndRange(7000000000000000L, 7000000000999999L))
+                .thenReturn(List.of());
+
+        // Act
+        BulkImportResponseDTO result = storePResService.processPResMessage(testPresMessage);
+
+        // Assert
+        assertEquals(3, result.getSuccessCount());
+        assertEquals(0, result.getErrorCount());
+        ArgumentCaptor<List<CardRangeEntity>> batchCaptor = ArgumentCaptor.forClass(List.class);
+        verify(cardRangeJdbcRepository, times(2)).insertAll(batchCaptor.capture());
+        assertEquals(1234567890000000L, batchCaptor.getAllValues().get(0).get(0).getStartRange());
+        assertEquals(5555555555000000L, batchCaptor.getAllValues().get(1).get(0).getStartRange());
+        // Only the modification of an unknown range goes through JPA
+        verify(cardRangeRepository, times(1)).save(any(CardRangeEntity.class));
+    }
+
+    // Test a failed bulk insert falls back to saving range by range
+    @Test
+    void processPResMessage_ShouldSaveOneByOne_WhenBulkInsertFails() {
+        // Arrange
+        ReflectionTestUtils.setField(storePResService, "bulkInsertEnabled", true);
+        ReflectionTestUtils.setField(storePResService, "bulkInsertBatchSize", 1000);
+        when(cardRangeJdbcRepository.insertAll(anyList())).thenThrow(new RuntimeException("Data too long"));
+        when(cardRangeRepository.save(any(CardRangeEntity.class)))
+                .thenReturn(new CardRangeEntity())
+                .thenThrow(new RuntimeException("Data too long"));
+
+        // Act
+        BulkImportResponseDTO result = storePResService.processPResMessage(testPresMessage);
+
+        // Assert
+        assertEquals(1, result.getSuccessCount());
+        assertEquals(1, result.getErrorCount());
+        assertTrue(result.getErrors().get(0).contains("Error processing range 2"));
+        verify(cardRangeRepository, times(2)).save(any(CardRangeEntity.class));
+    }
+
+    // Test chunks of a streamed import do not publish events of their own
+    @Test
+    void processPResChunk_ShouldNotPublishEvent() {
+        // Arrange
+        when(cardRangeRepository.save(any(CardRangeEntity.class))).thenReturn(new CardRangeEntity());
+
+        // Act
+        BulkImportResponseDTO result = storePResService.processPResChunk(testPresMessage);
+
+        // Assert
+        assertEquals(2, result.getSuccessCount());
+        verify(applicationEventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    // Test finishing a chunked import publishes one event without changes
+    @Test
+    void finishChunkedImport_ShouldPublishEventWithoutChanges() {
+        // Act
+        storePResService.finishChunkedImport("12345", 700000);
+
+        // Assert
+        ArgumentCaptor<CardRangesImportedEvent> eventCaptor = ArgumentCaptor.forClass(CardRangesImportedEvent.class);
+        verify(applicationEventPublisher).publishEvent(eventCaptor.capture());
+        assertEquals(700000, eventCaptor.getValue().getImportedCount());
+        assertNull(eventCaptor.getValue().getChanges());
+    }
+
 }
@@ -0,0 +1,96 @@
+package com.jamiewang.secure3d.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinPrefixTableTest {
+
+    // Test BINs fully covered by a single range
+    @Test
+    void lookup_ShouldReturnSlot_WhenBinIsCoveredBySingleRange() {
+        // Arrange
+        SortedRangeIndex index = SortedRangeIndex.builder(2)
+                .add(4111110000000000L, 4111119999999999L, 0)
+                .add(4222220000000000L, 4222239999999999L, 1)
+                .build();
+
+        // Act
+        BinPrefixTable table = BinPrefixTable.build(index, 6, 16);
+
+        // Assert
+        assertEquals(0, table.lookup(4111111234567890L));
+        assertEquals(1, table.lookup(4222220000000000L));
+        assertEquals(1, table.lookup(4222239999999999L));
+        assertEquals(3, table.getDirectBins());
+        assertEquals(1_000_000, table.getBinCount());
+    }
+
+    // Test BINs shared by several ranges or only partly covered
+    @Test
+    void lookup_ShouldReturnSplit_WhenBinIsSharedOrPartlyCovered() {
+        // Arrange
+        SortedRangeIndex index = SortedRangeIndex.builder(3)
+                .add(5100000000000000L, 5100004999999999L, 0)
+                .add(5100005000000000L, 5100009999999999L, 1)
+                .add(5200000000000000L, 5200000000999999L, 2)
+                .build();
+
+        // Act
+        BinPrefixTable table = BinPrefixTable.build(index, 6, 16);
+
+        // Assert
+        assertEquals(BinPrefixTable.SPLIT, table.lookup(5100001234567890L));
+        assertEquals(BinPrefixTable.SPLIT, table.lookup(5200000000000000L));
+        assertEquals(BinPrefixTable.SPLIT, table.lookup(5200009999999999L));
+        assertEquals(0, table.getDirectBins());
+    }
+
+    // Test definitive misses and values outside the PAN length
+    @Test
+    void lookup_ShouldReturnNoRangeOrSplit_WhenValueIsNotCovered() {
+        // Arrange
+        SortedRangeIndex index = SortedRangeIndex.builder(1)
+                .add(4111110000000000L, 4111119999999999L, 0)
+                .build();
+
+        // Act
+        BinPrefixTable table = BinPrefixTable.build(index, 6, 16);
+
+        // Assert
+        assertEquals(BinPrefixTable.NO_RANGE, table.lookup(4111120000000000L));
+        assertEquals(BinPrefixTable.NO_RANGE, table.lookup(0L));
+        assertEquals(BinPrefixTable.SPLIT, table.lookup(10000000000000000L));
+    }
+
+    // Test that every answer from the table agrees with the range search
+    @Test
+    void lookup_ShouldAgreeWithRangeSearch_WhenBinIsResolved() {
+        // Arrange
+        SortedRangeIndex index = SortedRangeIndex.builder(4)
+                .add(4000000000000000L, 4000019999999999L, 0)
+                .add(4000020000000000L, 4000020000123456L, 1)
+                .add(4000020000123457L, 4000029999999999L, 2)
+                .add(4000040000000000L, 4000049999999999L, 3)
+                .build();
+        BinPrefixTable table = BinPrefixTable.build(index, 6, 16);
+
+        // Act & Assert
+        for (long value = 4000000000000000L; value < 4000060000000000L; value += 999_999_937L) {
+            int slot = table.lookup(value);
+            if (slot != BinPrefixTable.SPLIT) {
+                assertEquals(index.find(value), slot, "value " + value);
+            }
+        }
+    }
+
+    // Test invalid prefix lengths
+    @Test
+    void build_ShouldThrowException_WhenPrefixDigitsOutOfRange() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> BinPrefixTable.build(SortedRangeIndex.empty(), 0, 16));
+        assertThrows(IllegalArgumentException.class,
+                () -> BinPrefixTable.build(SortedRangeIndex.empty(), 9, 16));
+    }
+}
@@ -0,0 +1,158 @@
+package com.jamiewang.secure3d.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    private static final long FAST = 1_000_000L;
+    private static final long SLOW = 200_000_000L;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private CircuitBreaker newBreaker() {
+        return CircuitBreaker.builder()
+                .windowSize(10)
+                .minimumCalls(5)
+                .failureRateThreshold(50)
+                .slowCallRateThreshold(50)
+                .slowCallMillis(100)
+                .openMillis(1000)
+                .halfOpenProbes(2)
+                .build(clock::get);
+    }
+
+    private static void call(CircuitBreaker breaker, long elapsedNanos, boolean failed) {
+        assertTrue(breaker.tryAcquire());
+        breaker.record(elapsedNanos, failed);
+    }
+
+    // Test the breaker opens once failures reach the threshold share of the window
+    @Test
+    void record_ShouldOpen_WhenFailureRateReachesThreshold() {
+        // Arrange
+        CircuitBreaker breaker = newBreaker();
+
+        // Act
+        call(breaker, FAST, false);
+        call(breaker, FAST, false);
+        call(breaker, FAST, true);
+        call(breaker, FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(breaker, FAST, true);
+        call(breaker, FAST, true);
+
+        // Assert
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getStatistics().getRejected());
+        assertEquals(1, breaker.getStatistics().getOpened());
+    }
+
+    // Test slow calls open the breaker even when they succeed
+    @Test
+    void record_ShouldOpen_WhenSlowCallRateReachesThreshold() {
+        // Arrange
+        CircuitBreaker breaker = newBreaker();
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            call(breaker, i < 2 ? FAST : SLOW, false);
+        }
+
+        // Assert
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(3, breaker.getStatistics().getSlowCalls());
+        assertEquals(0, breaker.getStatistics().getFailures());
+    }
+
+    // Test the breaker does not open before the window holds the minimum number of calls
+    @Test
+    void record_ShouldStayClosed_WhenFewerThanMinimumCalls() {
+        // Arrange
+        CircuitBreaker breaker = newBreaker();
+
+        // Act
+        for (int i = 0; i < 4; i++) {
+            call(breaker, SLOW, true);
+        }
+
+        // Assert
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    // Test old outcomes leave the sliding window
+    @Test
+    void record_ShouldForgetOutcomes_WhenTheyLeaveTheWindow() {
+        // Arrange
+        CircuitBreaker breaker = newBreaker();
+        call(breaker, FAST, true);
+        call(breaker, FAST, true);
+        for (int i = 0; i < 8; i++) {
+            call(breaker, FAST, false);
+        }
+
+        // Act: the window ends with 4 failures in 10 calls, 6 in all
+        for (int i = 0; i < 4; i++) {
+            call(breaker, FAST, true);
+        }
+
+        // Assert
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    // Test the breaker probes after the open duration and closes when every probe is fine
+    @Test
+    void tryAcquire_ShouldCloseAfterSuccessfulProbes_WhenOpenDurationElapsed() {
+        // Arrange
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 5; i++) {
+            call(breaker, FAST, true);
+        }
+        clock.addAndGet(999_000_000L);
+        assertFalse(breaker.tryAcquire());
+
+        // Act
+        clock.addAndGet(1_000_000L);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        breaker.record(FAST, false);
+        breaker.record(FAST, false);
+
+        // Assert
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    // Test a failed or slow probe opens the breaker again
+    @Test
+    void record_ShouldReopen_WhenProbeIsSlow() {
+        // Arrange
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 5; i++) {
+            call(breaker, FAST, true);
+        }
+        clock.addAndGet(1_000_000_000L);
+
+        // Act
+        call(breaker, SLOW, false);
+
+        // Assert
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2, breaker.getStatistics().getOpened());
+    }
+
+    // Test invalid settings are rejected
+    @Test
+    void build_ShouldThrow_WhenSettingIsOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.builder().windowSize(0).build());
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.builder().failureRateThreshold(101).build());
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.builder().slowCallMillis(0).build());
+    }
+}
@@ -0,0 +1,76 @@
+package com.jamiewang.secure3d.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ErrorReservoirTest {
+
+    // Test every message is kept while the reservoir is not full
+    @Test
+    void offer_ShouldKeepAllMessages_WhenBelowCapacity() {
+        // Arrange
+        ErrorReservoir reservoir = new ErrorReservoir(5);
+
+        // Act
+        reservoir.offer("a");
+        reservoir.offer("b");
+        reservoir.offer("c");
+
+        // Assert
+        assertEquals(List.of("a", "b", "c"), reservoir.getSample());
+        assertEquals(3, reservoir.getOffered());
+    }
+
+    // Test the sample stays bounded, in offer order, while every message is counted
+    @Test
+    void offer_ShouldBoundSample_WhenOverCapacity() {
+        // Arrange
+        ErrorReservoir reservoir = new ErrorReservoir(10);
+
+        // Act
+        for (int i = 0; i < 10000; i++) {
+            reservoir.offer(String.format("%05d", i));
+        }
+
+        // Assert
+        List<String> sample = reservoir.getSample();
+        assertEquals(10, sample.size());
+        assertEquals(10000, reservoir.getOffered());
+        for (int i = 1; i < sample.size(); i++) {
+            assertTrue(sample.get(i - 1).compareTo(sample.get(i)) < 0);
+        }
+    }
+
+    // Test the sample covers the whole stream instead of only its start
+    @Test
+    void offer_ShouldSampleWholeStream() {
+        // Arrange
+        ErrorReservoir reservoir = new ErrorReservoir(100);
+
+        // Act
+        for (int i = 0; i < 100000; i++) {
+            reservoir.offer(Integer.toString(i));
+        }
+
+        // Assert (fails with negligible probability for a uniform sample)
+        long late = reservoir.getSample().stream().filter(message -> Integer.parseInt(message) >= 50000).count();
+        assertTrue(late > 20 && late < 80, "late messages kept: " + late);
+    }
+
+    // Test a zero capacity reservoir only counts
+    @Test
+    void offer_ShouldOnlyCount_WhenCapacityIsZero() {
+        // Arrange
+        ErrorReservoir reservoir = new ErrorReservoir(0);
+
+        // Act
+        reservoir.offer("a");
+
+        // Assert
+        assertTrue(reservoir.getSample().isEmpty());
+        assertEquals(1, reservoir.getOffered());
+    }
+}
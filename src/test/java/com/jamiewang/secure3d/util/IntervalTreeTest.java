@@ -0,0 +1,130 @@
+package com.jamiewang.secure3d.util;
+
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntervalTreeTest {
+
+    private static CardRangeEntity range(long start, long end) {
+        CardRangeEntity entity = new CardRangeEntity();
+        entity.setStartRange(start);
+        entity.setEndRange(end);
+        return entity;
+    }
+
+    // Test bulk build from sorted input
+    @Test
+    void fromSorted_ShouldBuildBalancedTree_WhenInputIsSorted() {
+        // Arrange
+        List<CardRangeEntity> ranges = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            long start = 4000000000000000L + i * 1000L;
+            ranges.add(range(start, start + 999L));
+        }
+
+        // Act
+        IntervalTree<CardRangeEntity> tree = IntervalTree.fromSorted(ranges);
+
+        // Assert
+        assertEquals(1000, tree.size());
+        assertEquals(10, tree.getHeight());
+        for (CardRangeEntity range : ranges) {
+            Optional<CardRangeEntity> result = tree.findMostSpecific(range.getStartRange() + 500L);
+            assertTrue(result.isPresent());
+            assertSame(range, result.get());
+        }
+    }
+
+    // Test bulk build from shuffled input
+    @Test
+    void fromSorted_ShouldSortInput_WhenInputIsUnsorted() {
+        // Arrange
+        List<CardRangeEntity> ranges = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            long start = 5000000000000000L + i * 100L;
+            ranges.add(range(start, start + 49L));
+        }
+        List<CardRangeEntity> shuffled = new ArrayList<>(ranges);
+        Collections.shuffle(shuffled, new Random(42));
+
+        // Act
+        IntervalTree<CardRangeEntity> tree = IntervalTree.fromSorted(shuffled);
+
+        // Assert
+        assertEquals(500, tree.size());
+        for (CardRangeEntity range : ranges) {
+            assertSame(range, tree.findMostSpecific(range.getEndRange()).orElse(null));
+            assertFalse(tree.findMostSpecific(range.getEndRange() + 1L).isPresent());
+        }
+    }
+
+    // Test empty input
+    @Test
+    void fromSorted_ShouldReturnEmptyTree_WhenInputIsEmpty() {
+        // Act
+        IntervalTree<CardRangeEntity> tree = IntervalTree.fromSorted(new ArrayList<>());
+
+        // Assert
+        assertTrue(tree.isEmpty());
+        assertEquals(0, tree.getHeight());
+        assertFalse(tree.findMostSpecific(1L).isPresent());
+    }
+
+    // Test invalid input
+    @Test
+    void fromSorted_ShouldThrowException_WhenRangeIsIncomplete() {
+        // Arrange
+        List<CardRangeEntity> ranges = new ArrayList<>();
+        ranges.add(range(1L, 2L));
+        ranges.add(new CardRangeEntity());
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> IntervalTree.fromSorted(ranges));
+        assertThrows(IllegalArgumentException.class, () -> IntervalTree.fromSorted(null));
+    }
+
+
+    // Test nested ranges resolve to the narrowest containing range
+    @Test
+    void findMostSpecific_ShouldReturnNarrowestRange_WhenRangesAreNested() {
+        // Arrange
+        CardRangeEntity issuer = range(4000000000000000L, 4999999999999999L);
+        CardRangeEntity bin = range(4111110000000000L, 4111119999999999L);
+        CardRangeEntity subRange = range(4111111000000000L, 4111111999999999L);
+        IntervalTree<CardRangeEntity> tree = IntervalTree.fromSorted(List.of(issuer, bin, subRange));
+
+        // Act & Assert
+        assertSame(subRange, tree.findMostSpecific(4111111234567890L).orElseThrow());
+        assertSame(bin, tree.findMostSpecific(4111112234567890L).orElseThrow());
+        assertSame(issuer, tree.findMostSpecific(4222222234567890L).orElseThrow());
+        assertFalse(tree.findMostSpecific(5000000000000000L).isPresent());
+    }
+
+    // Test ranges of equal width resolve to the one updated last, as the shared index does
+    @Test
+    void findMostSpecific_ShouldPreferRecentUpdate_WhenRangesHaveEqualWidth() {
+        // Arrange
+        CardRangeEntity updatedLater = range(4111110000000000L, 4111119999999999L);
+        updatedLater.setUpdatedAt(LocalDateTime.of(2025, 6, 2, 0, 0));
+        CardRangeEntity laterStart = range(4111115000000000L, 4111124999999999L);
+        laterStart.setUpdatedAt(LocalDateTime.of(2025, 6, 1, 0, 0));
+        CardRangeEntity neverUpdated = range(4111116000000000L, 4111125999999999L);
+        CardRangeEntity duplicate = range(4111110000000000L, 4111119999999999L);
+        duplicate.setUpdatedAt(LocalDateTime.of(2025, 6, 2, 0, 0));
+        IntervalTree<CardRangeEntity> tree = IntervalTree.fromSorted(List.of(updatedLater, duplicate, laterStart, neverUpdated));
+
+        // Act & Assert
+        assertSame(duplicate, tree.findMostSpecific(4111117000000000L).orElseThrow());
+        assertSame(laterStart, tree.findMostSpecific(4111121000000000L).orElseThrow());
+        assertSame(neverUpdated, tree.findMostSpecific(4111125500000000L).orElseThrow());
+    }
+}
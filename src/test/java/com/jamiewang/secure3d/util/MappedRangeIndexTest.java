@@ -0,0 +1,167 @@
+package com.jamiewang.secure3d.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedRangeIndexTest {
+
+    @TempDir
+    Path directory;
+
+    private static SortedRangeIndex sampleIndex() {
+        return SortedRangeIndex.builder(3)
+                .add(5555555555000000L, 5555555555999999L, 1)
+                .add(1234567890000000L, 1234567890999999L, 0)
+                .add(9999999999000000L, 9999999999999999L, 1)
+                .build();
+    }
+
+    private static List<byte[]> samplePayloads() {
+        return List.of("first".getBytes(StandardCharsets.UTF_8), "second payload".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String text(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Test a written index is mapped back with the same ranges and payloads
+    @Test
+    void open_ShouldReturnWrittenRangesAndPayloads() throws IOException {
+        // Arrange
+        Path path = directory.resolve("card-range.idx");
+        MappedRangeIndex.write(path, sampleIndex(), samplePayloads());
+
+        // Act
+        MappedRangeIndex index = MappedRangeIndex.open(path);
+
+        // Assert
+        assertEquals(3, index.size());
+        assertEquals(2, index.getPayloadCount());
+        assertEquals(Files.size(path), index.getMappedBytes());
+        assertEquals(0, index.findPayloadId(1234567890123456L));
+        assertEquals(1, index.findPayloadId(5555555555999999L));
+        assertEquals(1, index.findPayloadId(9999999999000000L));
+        assertEquals(RangeIndex.NOT_FOUND, index.find(1234567891000000L));
+        assertEquals(RangeIndex.NOT_FOUND, index.find(0L));
+        assertEquals(9999999999999999L, index.endAt(2));
+        assertEquals("first", text(index.payload(0)));
+        assertEquals("second payload", text(index.payload(1)));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.payload(2));
+    }
+
+    // Test an empty index with no payloads round-trips
+    @Test
+    void open_ShouldReturnEmptyIndex_WhenWrittenEmpty() throws IOException {
+        // Arrange
+        Path path = directory.resolve("empty.idx");
+        MappedRangeIndex.write(path, SortedRangeIndex.empty(), List.of());
+
+        // Act
+        MappedRangeIndex index = MappedRangeIndex.open(path);
+
+        // Assert
+        assertEquals(0, index.size());
+        assertEquals(0, index.getPayloadCount());
+        assertEquals(RangeIndex.NOT_FOUND, index.find(1234567890123456L));
+    }
+
+    // Test rewriting replaces the file while an existing mapping keeps reading the old one
+    @Test
+    void write_ShouldReplaceFile_WithoutBreakingExistingMapping() throws IOException {
+        // Arrange
+        Path path = directory.resolve("card-range.idx");
+        MappedRangeIndex.write(path, sampleIndex(), samplePayloads());
+        MappedRangeIndex previous = MappedRangeIndex.open(path);
+
+        // Act
+        MappedRangeIndex.write(path, SortedRangeIndex.builder(1).add(100L, 199L, 0).build(),
+                List.of("replaced".getBytes(StandardCharsets.UTF_8)));
+        MappedRangeIndex current = MappedRangeIndex.open(path);
+
+        // Assert
+        assertEquals(1, current.size());
+        assertEquals("replaced", text(current.payload(0)));
+        assertEquals(3, previous.size());
+        assertEquals("second payload", text(previous.payload(1)));
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    // Test a file cut anywhere short of its full length is refused
+    @Test
+    void open_ShouldThrow_WhenFileIsTruncated() throws IOException {
+        // Arrange
+        Path path = directory.resolve("card-range.idx");
+        MappedRangeIndex.write(path, sampleIndex(), samplePayloads());
+        byte[] bytes = Files.readAllBytes(path);
+
+        for (int length : new int[]{0, 10, 24, 40, bytes.length - 1}) {
+            Path truncated = directory.resolve("truncated-" + length + ".idx");
+            Files.write(truncated, Arrays.copyOf(bytes, length));
+
+            // Act & Assert
+            assertThrows(IllegalArgumentException.class, () -> MappedRangeIndex.open(truncated), "length " + length);
+        }
+    }
+
+    // Test a file without the magic number or with corrupt counts is refused
+    @Test
+    void open_ShouldThrow_WhenFileIsCorrupt() throws IOException {
+        // Arrange
+        Path path = directory.resolve("card-range.idx");
+        MappedRangeIndex.write(path, sampleIndex(), samplePayloads());
+        byte[] bytes = Files.readAllBytes(path);
+
+        Path notAnIndex = directory.resolve("not-an-index.idx");
+        Files.write(notAnIndex, "this is not a range index file".getBytes(StandardCharsets.UTF_8));
+
+        byte[] negativeCount = bytes.clone();
+        ByteBuffer.wrap(negativeCount).putInt(8, -1);
+        Path negative = directory.resolve("negative.idx");
+        Files.write(negative, negativeCount);
+
+        byte[] hugeCount = bytes.clone();
+        ByteBuffer.wrap(hugeCount).putInt(12, Integer.MAX_VALUE / 2);
+        Path huge = directory.resolve("huge.idx");
+        Files.write(huge, hugeCount);
+
+        // Act & Assert
+        IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> MappedRangeIndex.open(notAnIndex));
+        assertTrue(exception.getMessage().contains("Not a range index file"));
+        assertThrows(IllegalArgumentException.class, () -> MappedRangeIndex.open(negative));
+        assertThrows(IllegalArgumentException.class, () -> MappedRangeIndex.open(huge));
+    }
+
+    // Test a file written in another format version is refused rather than misread
+    @Test
+    void open_ShouldThrow_WhenFormatVersionDiffers() throws IOException {
+        // Arrange
+        Path path = directory.resolve("card-range.idx");
+        MappedRangeIndex.write(path, sampleIndex(), samplePayloads());
+        byte[] bytes = Files.readAllBytes(path);
+        int version = ByteBuffer.wrap(bytes).getInt(4);
+        ByteBuffer.wrap(bytes).putInt(4, version - 1);
+        Files.write(path, bytes);
+
+        // Act
+        IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> MappedRangeIndex.open(path));
+
+        // Assert
+        assertTrue(exception.getMessage().contains("Unsupported range index format version " + (version - 1)));
+    }
+}
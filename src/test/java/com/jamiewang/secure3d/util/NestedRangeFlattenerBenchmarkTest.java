@@ -0,0 +1,123 @@
+package com.jamiewang.secure3d.util;
+
+import com.jamiewang.secure3d.entity.CardRangeEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Lookup benchmark for the most-specific index, run with -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class NestedRangeFlattenerBenchmarkTest {
+
+    private static final int RANGE_COUNT = 500_000;
+    private static final int LOOKUP_COUNT = 5_000_000;
+    private static final int ROUNDS = 5;
+
+    // Non-overlapping input must not pay for nesting support
+    @Test
+    void benchmark_DisjointRanges_ShouldMatchPlainIndex() {
+        // Arrange
+        long[] starts = new long[RANGE_COUNT];
+        long[] ends = new long[RANGE_COUNT];
+        SortedRangeIndex.Builder builder = SortedRangeIndex.builder(RANGE_COUNT);
+        for (int i = 0; i < RANGE_COUNT; i++) {
+            starts[i] = 4000000000000000L + i * 10_000_000_000L;
+            ends[i] = starts[i] + 9_999_999_999L;
+            builder.add(starts[i], ends[i], i);
+        }
+        SortedRangeIndex plain = builder.build();
+        SortedRangeIndex flattened = NestedRangeFlattener.flatten(starts, ends, new long[RANGE_COUNT], RANGE_COUNT);
+        long[] pans = randomPans(starts[0], ends[RANGE_COUNT - 1]);
+
+        // Act
+        long plainNanos = time(plain, pans);
+        long flattenedNanos = time(flattened, pans);
+
+        // Assert
+        assertEquals(plain.size(), flattened.size());
+        for (long pan : pans) {
+            assertEquals(plain.findPayloadId(pan), flattened.findPayloadId(pan));
+        }
+        report("disjoint, plain index", plainNanos);
+        report("disjoint, flattened index", flattenedNanos);
+    }
+
+    // Nested input against the interval tree walk
+    @Test
+    void benchmark_NestedRanges_ShouldMatchIntervalTree() {
+        // Arrange
+        Random random = new Random(42);
+        List<CardRangeEntity> ranges = new ArrayList<>(RANGE_COUNT);
+        long[] starts = new long[RANGE_COUNT];
+        long[] ends = new long[RANGE_COUNT];
+        for (int i = 0; i < RANGE_COUNT; i++) {
+            // One broad range per 100 BINs, the rest are BIN-sized sub-ranges inside it
+            long bin = 400000L + i;
+            long start = i % 100 == 0 ? bin * 10_000_000_000L : bin * 10_000_000_000L + random.nextInt(1000);
+            long end = i % 100 == 0 ? start + 100 * 10_000_000_000L - 1 : start + 9_000_000_000L;
+            starts[i] = start;
+            ends[i] = end;
+
+            CardRangeEntity range = new CardRangeEntity();
+            range.setStartRange(start);
+            range.setEndRange(end);
+            ranges.add(range);
+        }
+        IntervalTree<CardRangeEntity> tree = IntervalTree.fromSorted(ranges);
+        SortedRangeIndex flattened = NestedRangeFlattener.flatten(starts, ends, new long[RANGE_COUNT], RANGE_COUNT);
+        long[] pans = randomPans(starts[0], ends[RANGE_COUNT - 1]);
+
+        // Act
+        long flattenedNanos = time(flattened, pans);
+        long treeStart = System.nanoTime();
+        for (long pan : pans) {
+            tree.findMostSpecific(pan);
+        }
+        long treeNanos = System.nanoTime() - treeStart;
+
+        // Assert
+        for (int i = 0; i < 100_000; i++) {
+            long pan = pans[i];
+            int payloadId = flattened.findPayloadId(pan);
+            CardRangeEntity expected = tree.findMostSpecific(pan).orElse(null);
+            assertEquals(expected == null ? null : expected.getEndRange() - expected.getStartRange(),
+                    payloadId == RangeIndex.NOT_FOUND ? null : ends[payloadId] - starts[payloadId]);
+        }
+        report("nested, flattened index", flattenedNanos);
+        report("nested, interval tree", treeNanos);
+    }
+
+    private static long[] randomPans(long from, long to) {
+        Random random = new Random(7);
+        long[] pans = new long[LOOKUP_COUNT];
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            pans[i] = from + (long) (random.nextDouble() * (to - from));
+        }
+        return pans;
+    }
+
+    private static long time(RangeIndex index, long[] pans) {
+        long best = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (long pan : pans) {
+                checksum += index.find(pan);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        assertNotEquals(Long.MIN_VALUE, checksum);
+        return best;
+    }
+
+    private static void report(String label, long nanos) {
+        System.out.printf("%-28s %6.1f ns/lookup%n", label, (double) nanos / LOOKUP_COUNT);
+    }
+}
@@ -0,0 +1,66 @@
+package com.jamiewang.secure3d.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NestedRangeFlattenerTest {
+
+    // Test a broad issuer range with narrower sub-ranges
+    @Test
+    void flatten_ShouldResolveNarrowestRange_WhenRangesAreNested() {
+        // Arrange
+        long[] starts = {4000000000000000L, 4111110000000000L, 4111111000000000L};
+        long[] ends = {4999999999999999L, 4111119999999999L, 4111111999999999L};
+        long[] recency = {0L, 0L, 0L};
+
+        // Act
+        SortedRangeIndex index = NestedRangeFlattener.flatten(starts, ends, recency, 3);
+
+        // Assert
+        assertEquals(0, index.findPayloadId(4000000000000000L));
+        assertEquals(1, index.findPayloadId(4111110000000000L));
+        assertEquals(2, index.findPayloadId(4111111234567890L));
+        assertEquals(1, index.findPayloadId(4111112000000000L));
+        assertEquals(0, index.findPayloadId(4111120000000000L));
+        assertEquals(0, index.findPayloadId(4999999999999999L));
+        assertEquals(RangeIndex.NOT_FOUND, index.find(5000000000000000L));
+        assertEquals(5, index.size());
+    }
+
+    // Test ranges of equal width resolved by recency, then by insertion order
+    @Test
+    void flatten_ShouldPreferMostRecentRange_WhenWidthsAreEqual() {
+        // Arrange
+        long[] starts = {100L, 100L, 100L};
+        long[] ends = {199L, 199L, 199L};
+        long[] recency = {5L, 9L, 9L};
+
+        // Act
+        SortedRangeIndex index = NestedRangeFlattener.flatten(starts, ends, recency, 3);
+
+        // Assert
+        assertEquals(1, index.size());
+        assertEquals(2, index.findPayloadId(150L));
+    }
+
+    // Test partially overlapping ranges and gaps
+    @Test
+    void flatten_ShouldSplitAtBoundaries_WhenRangesPartiallyOverlap() {
+        // Arrange
+        long[] starts = {300L, 100L, 150L};
+        long[] ends = {399L, 199L, 259L};
+        long[] recency = {0L, 0L, 0L};
+
+        // Act
+        SortedRangeIndex index = NestedRangeFlattener.flatten(starts, ends, recency, 3);
+
+        // Assert
+        assertEquals(1, index.findPayloadId(149L));
+        assertEquals(1, index.findPayloadId(150L));
+        assertEquals(1, index.findPayloadId(199L));
+        assertEquals(2, index.findPayloadId(200L));
+        assertEquals(RangeIndex.NOT_FOUND, index.find(260L));
+        assertEquals(0, index.findPayloadId(300L));
+    }
+}
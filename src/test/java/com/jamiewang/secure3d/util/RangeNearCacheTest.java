@@ -0,0 +1,138 @@
+package com.jamiewang.secure3d.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RangeNearCacheTest {
+
+    private static RangeNearCache<String> newCache(long maximumSize) {
+        // Run Caffeine maintenance on the calling thread so evictions are deterministic
+        return new RangeNearCache<>(maximumSize, Duration.ofMinutes(1), Runnable::run);
+    }
+
+    // Test every value inside a cached range finds it
+    @Test
+    void get_ShouldReturnValue_WhenValueIsInCachedRange() {
+        // Arrange
+        RangeNearCache<String> cache = newCache(100);
+        cache.put(4000000000000000L, 4000000000999999L, "visa");
+        cache.put(5100000000000000L, 5100000000999999L, "mastercard");
+
+        // Act & Assert
+        assertEquals("visa", cache.get(4000000000000000L));
+        assertEquals("visa", cache.get(4000000000999999L));
+        assertEquals("mastercard", cache.get(5100000000500000L));
+        assertNull(cache.get(3999999999999999L));
+        assertNull(cache.get(4000000001000000L));
+
+        assertEquals(3, cache.getStatistics().getHits());
+        assertEquals(2, cache.getStatistics().getMisses());
+    }
+
+    // Test storing a range evicts the cached ranges it overlaps
+    @Test
+    void put_ShouldEvictOverlappingRanges() {
+        // Arrange
+        RangeNearCache<String> cache = newCache(100);
+        cache.put(1000L, 1999L, "outer");
+        cache.put(3000L, 3999L, "other");
+
+        // Act
+        cache.put(1500L, 1599L, "nested");
+
+        // Assert
+        assertNull(cache.get(1200L));
+        assertEquals("nested", cache.get(1550L));
+        assertEquals("other", cache.get(3500L));
+        assertEquals(2, cache.size());
+    }
+
+    // Test storing the same range again replaces its value
+    @Test
+    void put_ShouldReplaceValue_WhenRangeIsAlreadyCached() {
+        // Arrange
+        RangeNearCache<String> cache = newCache(100);
+        cache.put(1000L, 1999L, "first");
+
+        // Act
+        cache.put(1000L, 1999L, "second");
+
+        // Assert
+        assertEquals("second", cache.get(1500L));
+        assertEquals(1, cache.size());
+    }
+
+    // Test invalidation drops only the ranges overlapping the changed bounds
+    @Test
+    void invalidateOverlapping_ShouldDropOverlappingRangesOnly() {
+        // Arrange
+        RangeNearCache<String> cache = newCache(100);
+        cache.put(1000L, 1999L, "a");
+        cache.put(2000L, 2999L, "b");
+        cache.put(3000L, 3999L, "c");
+
+        // Act
+        int dropped = cache.invalidateOverlapping(1990L, 2000L);
+
+        // Assert
+        assertEquals(2, dropped);
+        assertNull(cache.get(1500L));
+        assertNull(cache.get(2500L));
+        assertEquals("c", cache.get(3500L));
+    }
+
+    // Test clearing the cache
+    @Test
+    void invalidateAll_ShouldDropEveryRange() {
+        // Arrange
+        RangeNearCache<String> cache = newCache(100);
+        cache.put(1000L, 1999L, "a");
+        cache.put(2000L, 2999L, "b");
+
+        // Act
+        cache.invalidateAll();
+
+        // Assert
+        assertNull(cache.get(1500L));
+        assertNull(cache.get(2500L));
+        assertEquals(0, cache.size());
+    }
+
+    // Test the cache stays bounded and evicted ranges are no longer found
+    @Test
+    void put_ShouldStayBounded_WhenMoreRangesThanMaximumSize() {
+        // Arrange
+        RangeNearCache<String> cache = newCache(10);
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            cache.put(i * 1000L, i * 1000L + 999L, "range" + i);
+        }
+
+        // Assert
+        assertTrue(cache.size() <= 10);
+        assertTrue(cache.getStatistics().getEvictions() >= 90);
+        int found = 0;
+        for (int i = 0; i < 100; i++) {
+            String value = cache.get(i * 1000L + 500L);
+            if (value != null) {
+                assertEquals("range" + i, value);
+                found++;
+            }
+        }
+        assertTrue(found <= 10);
+    }
+
+    // Test invalid arguments are rejected
+    @Test
+    void put_ShouldThrow_WhenRangeIsInvertedOrValueIsNull() {
+        RangeNearCache<String> cache = newCache(10);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.put(2000L, 1000L, "inverted"));
+        assertThrows(IllegalArgumentException.class, () -> cache.put(1000L, 2000L, null));
+        assertThrows(IllegalArgumentException.class, () -> new RangeNearCache<String>(0, Duration.ofMinutes(1)));
+    }
+}
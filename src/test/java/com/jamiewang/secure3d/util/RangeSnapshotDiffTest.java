@@ -0,0 +1,162 @@
+package com.jamiewang.secure3d.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RangeSnapshotDiffTest {
+
+    private static final long HASH_A = RangeSnapshotDiff.attributeHash("https://a", "2.1.0", "2.2.0", List.of("01"));
+    private static final long HASH_B = RangeSnapshotDiff.attributeHash("https://b", "2.1.0", "2.2.0", List.of("01"));
+
+    // Test an identical snapshot produces no changes, whatever the order on either side
+    @Test
+    void diff_ShouldFindNoChanges_WhenSnapshotMatchesStoredRanges() {
+        // Arrange
+        RangeSnapshotDiff.Keys snapshot = new RangeSnapshotDiff.Keys();
+        snapshot.add(0, 3000L, 3999L, HASH_B);
+        snapshot.add(1, 1000L, 1999L, HASH_A);
+        RangeSnapshotDiff.Keys stored = new RangeSnapshotDiff.Keys();
+        stored.add(0, 1000L, 1999L, HASH_A);
+        stored.add(1, 3000L, 3999L, HASH_B);
+
+        // Act
+        RangeSnapshotDiff.Result result = RangeSnapshotDiff.diff(snapshot, stored);
+
+        // Assert
+        assertEquals(0, result.getChangeCount());
+        assertEquals(2, result.getUnchangedCount());
+        assertEquals(RangeSnapshotDiff.UNCHANGED, result.getAction(0));
+        assertEquals(RangeSnapshotDiff.UNCHANGED, result.getAction(1));
+    }
+
+    // Test new bounds are added, changed attributes modified and missing bounds removed
+    @Test
+    void diff_ShouldFindAddsModificationsAndRemovals() {
+        // Arrange
+        RangeSnapshotDiff.Keys snapshot = new RangeSnapshotDiff.Keys();
+        snapshot.add(0, 1000L, 1999L, HASH_B);
+        snapshot.add(1, 1000L, 1499L, HASH_A);
+        snapshot.add(2, 5000L, 5999L, HASH_A);
+        RangeSnapshotDiff.Keys stored = new RangeSnapshotDiff.Keys();
+        stored.add(0, 1000L, 1999L, HASH_A);
+        stored.add(1, 3000L, 3999L, HASH_A);
+        stored.add(2, 5000L, 5999L, HASH_A);
+
+        // Act
+        RangeSnapshotDiff.Result result = RangeSnapshotDiff.diff(snapshot, stored);
+
+        // Assert
+        assertEquals(RangeSnapshotDiff.MODIFY, result.getAction(0));
+        assertEquals(RangeSnapshotDiff.ADD, result.getAction(1));
+        assertEquals(RangeSnapshotDiff.UNCHANGED, result.getAction(2));
+        assertEquals(1, result.getRemovedCount());
+        assertEquals(3000L, result.getRemovedStart(0));
+        assertEquals(3999L, result.getRemovedEnd(0));
+        assertEquals(3, result.getChangeCount());
+    }
+
+    // Test stored duplicates are removed and added again once, the last snapshot duplicate winning
+    @Test
+    void diff_ShouldCollapseDuplicates_WhenBoundsRepeat() {
+        // Arrange
+        RangeSnapshotDiff.Keys snapshot = new RangeSnapshotDiff.Keys();
+        snapshot.add(0, 1000L, 1999L, HASH_A);
+        snapshot.add(1, 1000L, 1999L, HASH_B);
+        RangeSnapshotDiff.Keys stored = new RangeSnapshotDiff.Keys();
+        stored.add(0, 1000L, 1999L, HASH_B);
+        stored.add(1, 1000L, 1999L, HASH_B);
+
+        // Act
+        RangeSnapshotDiff.Result result = RangeSnapshotDiff.diff(snapshot, stored);
+
+        // Assert
+        assertEquals(RangeSnapshotDiff.UNCHANGED, result.getAction(0));
+        assertEquals(RangeSnapshotDiff.ADD, result.getAction(1));
+        assertEquals(1, result.getRemovedCount());
+        assertEquals(1000L, result.getRemovedStart(0));
+        assertEquals(1, result.getDuplicatesCollapsed());
+    }
+
+    // Test the hash tells attributes apart and treats a missing acsInfoInd like an empty one
+    @Test
+    void attributeHash_ShouldDependOnEveryAttribute() {
+        // Arrange
+        List<Long> hashes = new ArrayList<>();
+
+        // Act
+        hashes.add(RangeSnapshotDiff.attributeHash("https://a", "2.1.0", "2.2.0", List.of("01")));
+        hashes.add(RangeSnapshotDiff.attributeHash("https://a", "2.1.0", "2.2.0", List.of("02")));
+        hashes.add(RangeSnapshotDiff.attributeHash("https://a", "2.1.0", "2.2.0", List.of("01", "02")));
+        hashes.add(RangeSnapshotDiff.attributeHash("https://a", "2.2.0", "2.1.0", List.of("01")));
+        hashes.add(RangeSnapshotDiff.attributeHash("https://a2.1.0", "", "2.2.0", List.of("01")));
+        hashes.add(RangeSnapshotDiff.attributeHash(null, "2.1.0", "2.2.0", List.of("01")));
+
+        // Assert
+        assertEquals(hashes.size(), hashes.stream().distinct().count());
+        assertEquals(RangeSnapshotDiff.attributeHash("https://a", "2.1.0", "2.2.0", null),
+                RangeSnapshotDiff.attributeHash("https://a", "2.1.0", "2.2.0", List.of()));
+    }
+
+    // Test bounds the snapshot adds and then deletes count as absent, removing the stored copy
+    @Test
+    void diff_ShouldRemoveBounds_WhenLastSnapshotEntryIsDelete() {
+        // Arrange
+        RangeSnapshotDiff.Keys snapshot = new RangeSnapshotDiff.Keys();
+        snapshot.add(0, 1000L, 1999L, HASH_A);
+        snapshot.addDelete(1, 1000L, 1999L);
+        snapshot.addDelete(2, 3000L, 3999L);
+        snapshot.addDelete(3, 5000L, 5999L);
+        snapshot.add(4, 5000L, 5999L, HASH_B);
+        RangeSnapshotDiff.Keys stored = new RangeSnapshotDiff.Keys();
+        stored.add(0, 1000L, 1999L, HASH_A);
+        stored.add(1, 5000L, 5999L, HASH_A);
+
+        // Act
+        RangeSnapshotDiff.Result result = RangeSnapshotDiff.diff(snapshot, stored);
+
+        // Assert
+        assertEquals(RangeSnapshotDiff.UNCHANGED, result.getAction(0));
+        assertEquals(RangeSnapshotDiff.UNCHANGED, result.getAction(1));
+        assertEquals(RangeSnapshotDiff.UNCHANGED, result.getAction(2));
+        assertEquals(RangeSnapshotDiff.MODIFY, result.getAction(4));
+        assertEquals(1, result.getRemovedCount());
+        assertEquals(1000L, result.getRemovedStart(0));
+        assertEquals(2, result.getChangeCount());
+    }
+
+    // Test a large shuffled snapshot matching the stored ranges yields no changes, exercising the sort
+    @Test
+    void diff_ShouldMatchShuffledKeys_WhenManyRanges() {
+        // Arrange
+        int count = 20000;
+        List<Long> starts = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            starts.add(i * 1000L);
+        }
+        Collections.shuffle(starts, new Random(42));
+        RangeSnapshotDiff.Keys snapshot = new RangeSnapshotDiff.Keys();
+        RangeSnapshotDiff.Keys stored = new RangeSnapshotDiff.Keys();
+        for (int i = 0; i < count; i++) {
+            long start = starts.get(i);
+            snapshot.add(i, start, start + 999L, start % 7);
+        }
+        Collections.shuffle(starts, new Random(7));
+        for (int i = 0; i < count; i++) {
+            long start = starts.get(i);
+            stored.add(i, start, start + 999L, start % 7);
+        }
+
+        // Act
+        RangeSnapshotDiff.Result result = RangeSnapshotDiff.diff(snapshot, stored);
+
+        // Assert
+        assertEquals(0, result.getChangeCount());
+        assertEquals(count, result.getUnchangedCount());
+    }
+}
@@ -0,0 +1,173 @@
+package com.jamiewang.secure3d.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    // Test a load without concurrent callers runs the loader
+    @Test
+    void execute_ShouldReturnLoadedValue_WhenNoLoadIsInFlight() {
+        // Arrange
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>(1000);
+
+        // Act
+        String value = singleFlight.execute(1L, () -> "loaded");
+
+        // Assert
+        assertEquals("loaded", value);
+        assertEquals(1, singleFlight.getStatistics().getLoads());
+        assertEquals(0, singleFlight.getStatistics().getCoalesced());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    // Test concurrent callers for the same key share one load
+    @Test
+    void execute_ShouldRunLoaderOnce_WhenCallersConcurrentlyLoadSameKey() throws Exception {
+        // Arrange
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>(5000);
+        AtomicInteger loaderCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+
+        try {
+            // Act
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> singleFlight.execute(42L, () -> {
+                    loaderCalls.incrementAndGet();
+                    await(release);
+                    return "shared";
+                })));
+            }
+
+            // Hold the load until every other caller is waiting on it
+            long deadline = System.currentTimeMillis() + 5000;
+            while (singleFlight.getStatistics().getCoalesced() < callers - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            // Assert
+            for (Future<String> result : results) {
+                assertEquals("shared", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loaderCalls.get());
+            assertEquals(1, singleFlight.getStatistics().getLoads());
+            assertEquals(callers - 1, singleFlight.getStatistics().getCoalesced());
+            assertEquals(0, singleFlight.inFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Test waiters receive the exception of the load they joined
+    @Test
+    void execute_ShouldPropagateLoaderFailure_ToWaiters() throws Exception {
+        // Arrange
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>(5000);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute(7L, () -> {
+                await(release);
+                throw new IllegalArgumentException("Database connection failed");
+            }));
+            while (singleFlight.inFlight() == 0) {
+                Thread.sleep(1);
+            }
+
+            // Act
+            Thread releaser = new Thread(() -> {
+                while (singleFlight.getStatistics().getCoalesced() == 0) {
+                    Thread.onSpinWait();
+                }
+                release.countDown();
+            });
+            releaser.start();
+
+            // Assert
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> singleFlight.execute(7L, () -> "not called"));
+            assertEquals("Database connection failed", e.getMessage());
+            assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            releaser.join();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Test a waiter stops waiting after the timeout and loads the value itself
+    @Test
+    void execute_ShouldRunLoader_WhenInFlightLoadTimesOut() throws Exception {
+        // Arrange
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>(50);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute(9L, () -> {
+                await(release);
+                return "slow";
+            }));
+            while (singleFlight.inFlight() == 0) {
+                Thread.sleep(1);
+            }
+
+            // Act & Assert
+            String value = singleFlight.execute(9L, () -> "fallback");
+
+            assertEquals("fallback", value);
+            assertEquals(1, singleFlight.getStatistics().getTimeouts());
+            assertEquals(1, singleFlight.getStatistics().getLoads());
+            assertEquals(1, singleFlight.getStatistics().getCoalesced());
+
+            release.countDown();
+            assertEquals("slow", leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Test a completed load is not cached
+    @Test
+    void execute_ShouldLoadAgain_WhenPreviousLoadCompleted() {
+        // Arrange
+        SingleFlight<Long, Integer> singleFlight = new SingleFlight<>(1000);
+        AtomicInteger loaderCalls = new AtomicInteger();
+
+        // Act
+        singleFlight.execute(1L, loaderCalls::incrementAndGet);
+        int second = singleFlight.execute(1L, loaderCalls::incrementAndGet);
+
+        // Assert
+        assertEquals(2, second);
+        assertEquals(2, singleFlight.getStatistics().getLoads());
+    }
+
+    // Test invalid timeouts are rejected
+    @Test
+    void constructor_ShouldThrow_WhenTimeoutIsNotPositive() {
+        assertThrows(IllegalArgumentException.class, () -> new SingleFlight<Long, String>(0));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.jamiewang.secure3d.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SortedRangeIndexTest {
+
+    // Test lookup across inserted ranges added out of order
+    @Test
+    void find_ShouldReturnContainingRange_WhenRangesAddedUnsorted() {
+        // Arrange
+        SortedRangeIndex index = SortedRangeIndex.builder(3)
+                .add(5555555555000000L, 5555555555999999L, 1)
+                .add(1234567890000000L, 1234567890999999L, 0)
+                .add(9999999999000000L, 9999999999999999L, 2)
+                .build();
+
+        // Act & Assert
+        assertEquals(3, index.size());
+        assertEquals(0, index.findPayloadId(1234567890123456L));
+        assertEquals(1, index.findPayloadId(5555555555000000L));
+        assertEquals(1, index.findPayloadId(5555555555999999L));
+        assertEquals(2, index.findPayloadId(9999999999999999L));
+        assertEquals(1234567890000000L, index.startAt(0));
+        assertEquals(9999999999999999L, index.endAt(2));
+    }
+
+    // Test values falling into gaps or outside all ranges
+    @Test
+    void find_ShouldReturnNotFound_WhenValueIsNotCovered() {
+        // Arrange
+        SortedRangeIndex index = SortedRangeIndex.builder(2)
+                .add(100L, 199L, 0)
+                .add(300L, 399L, 1)
+                .build();
+
+        // Act & Assert
+        assertEquals(SortedRangeIndex.NOT_FOUND, index.find(99L));
+        assertEquals(SortedRangeIndex.NOT_FOUND, index.find(200L));
+        assertEquals(SortedRangeIndex.NOT_FOUND, index.find(299L));
+        assertEquals(SortedRangeIndex.NOT_FOUND, index.find(400L));
+        assertEquals(SortedRangeIndex.NOT_FOUND, index.find(Long.MAX_VALUE));
+    }
+
+    // Test empty index
+    @Test
+    void find_ShouldReturnNotFound_WhenIndexIsEmpty() {
+        // Arrange
+        SortedRangeIndex index = SortedRangeIndex.builder(0).build();
+
+        // Act & Assert
+        assertTrue(index.isEmpty());
+        assertEquals(0, index.getSearchDepth());
+        assertEquals(SortedRangeIndex.NOT_FOUND, index.find(0L));
+    }
+
+    // Test duplicate collapsing
+    @Test
+    void build_ShouldKeepLastAddedRange_WhenRangesAreDuplicated() {
+        // Arrange
+        SortedRangeIndex index = SortedRangeIndex.builder(3)
+                .add(100L, 199L, 0)
+                .add(200L, 299L, 1)
+                .add(100L, 199L, 2)
+                .build();
+
+        // Act & Assert
+        assertEquals(2, index.size());
+        assertEquals(2, index.findPayloadId(150L));
+        assertEquals(1, index.findPayloadId(250L));
+    }
+
+    // Test invalid range
+    @Test
+    void add_ShouldThrowException_WhenStartIsGreaterThanEnd() {
+        // Arrange
+        SortedRangeIndex.Builder builder = SortedRangeIndex.builder(1);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> builder.add(200L, 100L, 0));
+    }
+
+    // Test many ranges against a brute force scan
+    @Test
+    void find_ShouldMatchLinearScan_WhenManyRangesAreIndexed() {
+        // Arrange
+        int count = 10000;
+        SortedRangeIndex.Builder builder = SortedRangeIndex.builder(count);
+        for (int i = count - 1; i >= 0; i--) {
+            long start = 4000000000000000L + i * 1000L;
+            builder.add(start, start + 499L, i);
+        }
+        SortedRangeIndex index = builder.build();
+
+        // Act & Assert
+        assertEquals(count, index.size());
+        assertEquals(14, index.getSearchDepth());
+        for (int i = 0; i < count; i++) {
+            long start = 4000000000000000L + i * 1000L;
+            assertEquals(i, index.findPayloadId(start));
+            assertEquals(i, index.findPayloadId(start + 499L));
+            assertEquals(SortedRangeIndex.NOT_FOUND, index.findPayloadId(start + 500L));
+        }
+    }
+
+    // Test forward search for ascending values
+    @Test
+    void floorSlot_ShouldReturnLastRangeStartingAtOrBeforeValue() {
+        // Arrange
+        SortedRangeIndex.Builder builder = SortedRangeIndex.builder(100);
+        for (int i = 0; i < 100; i++) {
+            builder.add(i * 100L, i * 100L + 49L, i);
+        }
+        SortedRangeIndex index = builder.build();
+
+        // Act & Assert
+        assertEquals(-1, index.floorSlot(-5L, 0));
+        assertEquals(0, index.floorSlot(0L, 0));
+        assertEquals(0, index.floorSlot(75L, 0));
+        assertEquals(37, index.floorSlot(3760L, 0));
+        assertEquals(37, index.floorSlot(3799L, 37));
+        assertEquals(38, index.floorSlot(3800L, 37));
+        assertEquals(99, index.floorSlot(Long.MAX_VALUE, 38));
+        assertEquals(-1, SortedRangeIndex.empty().floorSlot(10L, 0));
+    }
+
+}
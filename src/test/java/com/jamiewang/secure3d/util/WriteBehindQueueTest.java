@@ -0,0 +1,186 @@
+package com.jamiewang.secure3d.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteBehindQueueTest {
+
+    // Test pending writes reach the writer in batches
+    @Test
+    void offer_ShouldWriteInBatches() throws Exception {
+        // Arrange
+        List<Map<Integer, String>> batches = new ArrayList<>();
+        CountDownLatch writtenAll = new CountDownLatch(10);
+        WriteBehindQueue<Integer, String> queue = new WriteBehindQueue<>("test-flusher", 100, 4, 1000, batch -> {
+            synchronized (batches) {
+                batches.add(new LinkedHashMap<>(batch));
+            }
+            batch.forEach((key, value) -> writtenAll.countDown());
+        });
+
+        try {
+            // Act
+            for (int i = 0; i < 10; i++) {
+                assertTrue(queue.offer(i, "value" + i));
+            }
+
+            // Assert
+            assertTrue(writtenAll.await(5, TimeUnit.SECONDS));
+            synchronized (batches) {
+                assertTrue(batches.stream().allMatch(batch -> batch.size() <= 4));
+                assertEquals(10, batches.stream().mapToInt(Map::size).sum());
+            }
+        } finally {
+            queue.close();
+        }
+        assertEquals(10, queue.getStatistics().getWritten());
+    }
+
+    // Test a key offered again while pending is written once, with its latest value
+    @Test
+    void offer_ShouldCoalesceDuplicateKeys() throws Exception {
+        // Arrange
+        CountDownLatch blockFlusher = new CountDownLatch(1);
+        Map<Integer, String> written = new LinkedHashMap<>();
+        WriteBehindQueue<Integer, String> queue = new WriteBehindQueue<>("test-flusher", 100, 100, 0, batch -> {
+            await(blockFlusher);
+            synchronized (written) {
+                written.putAll(batch);
+            }
+        });
+
+        // Occupy the flusher so the next writes stay pending
+        queue.offer(0, "first");
+        while (queue.size() > 0) {
+            Thread.sleep(1);
+        }
+
+        // Act
+        queue.offer(1, "old");
+        queue.offer(1, "new");
+        queue.offer(2, "other");
+        blockFlusher.countDown();
+        queue.close();
+
+        // Assert
+        assertEquals(Map.of(0, "first", 1, "new", 2, "other"), written);
+        assertEquals(3, queue.getStatistics().getEnqueued());
+        assertEquals(1, queue.getStatistics().getCoalesced());
+    }
+
+    // Test writes of new keys are dropped, not blocked, when the queue is full
+    @Test
+    void offer_ShouldDropNewKeys_WhenQueueIsFull() throws Exception {
+        // Arrange
+        CountDownLatch blockFlusher = new CountDownLatch(1);
+        WriteBehindQueue<Integer, String> queue = new WriteBehindQueue<>("test-flusher", 2, 100, 0,
+                batch -> await(blockFlusher));
+        queue.offer(0, "busy");
+        while (queue.size() > 0) {
+            Thread.sleep(1);
+        }
+
+        try {
+            // Act
+            assertTrue(queue.offer(1, "a"));
+            assertTrue(queue.offer(2, "b"));
+            boolean newKey = queue.offer(3, "c");
+            boolean pendingKey = queue.offer(2, "b2");
+
+            // Assert
+            assertFalse(newKey);
+            assertTrue(pendingKey);
+            assertEquals(1, queue.getStatistics().getDropped());
+            assertEquals(2, queue.getStatistics().getPending());
+        } finally {
+            blockFlusher.countDown();
+            queue.close();
+        }
+    }
+
+    // Test pending writes can be withdrawn before they are flushed
+    @Test
+    void removeIf_ShouldDropMatchingPendingWrites() throws Exception {
+        // Arrange
+        CountDownLatch blockFlusher = new CountDownLatch(1);
+        Map<Integer, String> written = new LinkedHashMap<>();
+        WriteBehindQueue<Integer, String> queue = new WriteBehindQueue<>("test-flusher", 100, 100, 0, batch -> {
+            await(blockFlusher);
+            synchronized (written) {
+                written.putAll(batch);
+            }
+        });
+        queue.offer(0, "busy");
+        while (queue.size() > 0) {
+            Thread.sleep(1);
+        }
+        for (int i = 1; i <= 4; i++) {
+            queue.offer(i, "value" + i);
+        }
+
+        // Act
+        int removed = queue.removeIf(key -> key % 2 == 0);
+        blockFlusher.countDown();
+        queue.close();
+
+        // Assert
+        assertEquals(2, removed);
+        assertEquals(Map.of(0, "busy", 1, "value1", 3, "value3"), written);
+    }
+
+    // Test a failing writer does not stop the flusher
+    @Test
+    void offer_ShouldKeepFlushing_WhenWriterThrows() throws Exception {
+        // Arrange
+        CountDownLatch second = new CountDownLatch(1);
+        WriteBehindQueue<Integer, String> queue = new WriteBehindQueue<>("test-flusher", 100, 1, 0, batch -> {
+            if (batch.containsKey(1)) {
+                throw new IllegalStateException("Redis unavailable");
+            }
+            second.countDown();
+        });
+
+        try {
+            // Act
+            queue.offer(1, "fails");
+            queue.offer(2, "succeeds");
+
+            // Assert
+            assertTrue(second.await(5, TimeUnit.SECONDS));
+        } finally {
+            queue.close();
+        }
+        assertEquals(1, queue.getStatistics().getFailed());
+        assertEquals(1, queue.getStatistics().getWritten());
+    }
+
+    // Test writes offered after closing are dropped
+    @Test
+    void offer_ShouldDrop_WhenQueueIsClosed() {
+        // Arrange
+        WriteBehindQueue<Integer, String> queue = new WriteBehindQueue<>("test-flusher", 100, 10, 0, batch -> { });
+        queue.close();
+
+        // Act & Assert
+        assertFalse(queue.offer(1, "late"));
+        assertEquals(1, queue.getStatistics().getDropped());
+        assertThrows(IllegalArgumentException.class,
+                () -> new WriteBehindQueue<Integer, String>("test-flusher", 0, 10, 0, batch -> { }));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}